@@ -0,0 +1,18 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests;
+
+/**
+ * Only loaded by ParallelClassLoadingTest, through several class loaders at once, never directly.
+ */
+public final class ClassLoadedInParallel
+{
+   private ClassLoadedInParallel() {}
+
+   public static int twice(int value)
+   {
+      return 2 * value;
+   }
+}
@@ -16,4 +16,13 @@ public final class MultiThreadedCode
       worker.start();
       return worker;
    }
+
+   public static boolean isEven(int i)
+   {
+      if (i % 2 == 0) {
+         return true;
+      }
+
+      return false;
+   }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests.data;
+
+public final class ClassWithStaticCounters
+{
+   private static int hits;
+   private static long total;
+   private static String lastName;
+
+   public static void count(int times)
+   {
+      for (int i = 1; i <= times; i++) {
+         hits++;
+         total += i;
+      }
+   }
+
+   public static int getHits()
+   {
+      return hits;
+   }
+
+   public static void setLastName(String name)
+   {
+      lastName = name;
+   }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests.probes;
+
+public final class ClassWithProbedCode
+{
+   public int sumUpTo(int n)
+   {
+      int sum = 0;
+
+      for (int i = 1; i <= n; i++) {
+         sum += i;
+      }
+
+      return sum;
+   }
+
+   public boolean isPositive(int value)
+   {
+      if (value > 0) {
+         return true;
+      }
+
+      return false;
+   }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage;
@@ -13,6 +13,12 @@ import org.jetbrains.annotations.*;
 
 import mockit.internal.util.*;
 
+/**
+ * A call from a test method, identified by the location of the call in the test.
+ * <p/>
+ * Call points are interned: there is a single instance for each distinct location, including those read from
+ * serialized coverage data, with a numeric id by which coverage data refers to it.
+ */
 public final class CallPoint implements Serializable
 {
    private static final long serialVersionUID = 362727169057343840L;
@@ -20,6 +26,9 @@ public final class CallPoint implements Serializable
    private static final Class<? extends Annotation> testAnnotation;
    private static final boolean checkTestAnnotationOnClass;
    private static final boolean checkIfTestCaseSubclass;
+   private static final Map<StackTraceElement, CallPoint> internedCallPoints =
+      new HashMap<StackTraceElement, CallPoint>();
+   private static final List<CallPoint> callPointsById = new ArrayList<CallPoint>();
 
    static
    {
@@ -68,9 +77,29 @@ public final class CallPoint implements Serializable
    }
 
    @NotNull private final StackTraceElement ste;
+   private transient int id;
 
    private CallPoint(@NotNull StackTraceElement ste) { this.ste = ste; }
 
+   @NotNull private static synchronized CallPoint intern(@NotNull StackTraceElement ste)
+   {
+      CallPoint callPoint = internedCallPoints.get(ste);
+
+      if (callPoint == null) {
+         callPoint = new CallPoint(ste);
+         callPoint.id = callPointsById.size();
+         callPointsById.add(callPoint);
+         internedCallPoints.put(ste, callPoint);
+      }
+
+      return callPoint;
+   }
+
+   @NotNull private Object readResolve() { return intern(ste); }
+
+   @NotNull public static synchronized CallPoint getCallPoint(int id) { return callPointsById.get(id); }
+
+   public int getId() { return id; }
    @NotNull public StackTraceElement getStackTraceElement() { return ste; }
 
    @Nullable static CallPoint create(@NotNull Throwable newThrowable)
@@ -82,7 +111,7 @@ public final class CallPoint implements Serializable
          StackTraceElement ste = st.getElement(i);
 
          if (isTestMethod(ste)) {
-            return new CallPoint(ste);
+            return intern(ste);
          }
       }
 
@@ -4,8 +4,10 @@
  */
 package mockit.coverage;
 
+import java.io.*;
 import java.lang.instrument.*;
 import java.security.*;
+import java.util.*;
 
 import org.jetbrains.annotations.*;
 
@@ -16,6 +18,9 @@ import mockit.coverage.standalone.*;
 public final class CodeCoverage implements ClassFileTransformer
 {
    private static CodeCoverage instance;
+   private static boolean created;
+   @Nullable private static CoverageSnapshots snapshots;
+   @Nullable private static Timer snapshotTimer;
 
    private final ClassModification classModification;
    private final OutputFileGenerator outputGenerator;
@@ -27,10 +32,11 @@ public final class CodeCoverage implements ClassFileTransformer
       generator.generateAggregateReportFromInputFiles(args);
    }
 
-   private static OutputFileGenerator createOutputFileGenerator(@Nullable ClassModification classModification)
+   @NotNull private static OutputFileGenerator createOutputFileGenerator(@Nullable ClassModification classModification)
    {
       OutputFileGenerator generator = new OutputFileGenerator(classModification);
       CoverageData.instance().setWithCallPoints(generator.isWithCallPoints());
+      CoverageData.instance().setWithTestImpact(generator.isWithTestImpact());
       return generator;
    }
 
@@ -46,9 +52,13 @@ public final class CodeCoverage implements ClassFileTransformer
          throw new IllegalStateException("JMockit: coverage tool disabled");
       }
 
+      created = true;
+      TestRun.loadOfflineMetadataIfSpecified();
+
       classModification = new ClassModification();
       outputGenerator = createOutputFileGenerator(classModification);
       instance = this;
+      startPeriodicSnapshotsIfRequested();
 
       Runtime.getRuntime().addShutdownHook(new Thread() {
          @Override
@@ -57,11 +67,7 @@ public final class CodeCoverage implements ClassFileTransformer
             TestRun.terminate();
 
             if (generateOutputOnShutdown) {
-               if (outputGenerator.isOutputToBeGenerated()) {
-                  outputGenerator.generate(CodeCoverage.this);
-               }
-
-               new CoverageCheck().verifyThresholds();
+               generateOutputAndCheckThresholds(outputGenerator, CodeCoverage.this);
             }
 
             Startup.instrumentation().removeTransformer(CodeCoverage.this);
@@ -69,6 +75,116 @@ public final class CodeCoverage implements ClassFileTransformer
       });
    }
 
+   private static void generateOutputAndCheckThresholds(
+      @NotNull OutputFileGenerator outputGenerator, @Nullable CodeCoverage codeCoverage)
+   {
+      if (outputGenerator.isOutputToBeGenerated()) {
+         outputGenerator.generate(codeCoverage);
+
+         if (outputGenerator.isRawOutput()) {
+            return; // the data in a raw file is partial, so thresholds only make sense for the merged reports
+         }
+      }
+
+      new CoverageCheck().verifyThresholds();
+   }
+
+   static boolean isCreated() { return created; }
+
+   /**
+    * Generates output at shutdown for a test run where all classes were modified offline, and therefore no
+    * {@code CodeCoverage} instance exists.
+    */
+   static void generateOutputOnShutdown()
+   {
+      final OutputFileGenerator outputGenerator = createOutputFileGenerator(null);
+
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+         @Override
+         public void run()
+         {
+            TestRun.terminate();
+            generateOutputAndCheckThresholds(outputGenerator, null);
+         }
+      });
+   }
+
+   /**
+    * Starts taking snapshots of the coverage data at the interval in seconds given by the
+    * "jmockit-coverage-snapshotInterval" system property, if specified.
+    */
+   private static synchronized void startPeriodicSnapshotsIfRequested()
+   {
+      String interval = Configuration.getProperty("snapshotInterval");
+
+      if (interval != null && snapshotTimer == null) {
+         if (!CoverageSnapshots.isSupported()) {
+            System.out.println(
+               "JMockit: Snapshots not taken, since they don't support the data coverage metric or call points");
+            return;
+         }
+
+         long periodInMillis;
+
+         try {
+            periodInMillis = Long.parseLong(interval.trim()) * 1000L;
+         }
+         catch (NumberFormatException ignore) {
+            System.out.println("JMockit: invalid snapshot interval \"" + interval + "\"; no snapshots will be taken");
+            return;
+         }
+
+         snapshotTimer = new Timer("JMockit Coverage snapshots", true);
+
+         snapshotTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run()
+            {
+               try {
+                  takeSnapshot();
+               }
+               catch (RuntimeException e) {
+                  System.out.println("JMockit: failed to take snapshot: " + e);
+               }
+            }
+         }, periodInMillis, periodInMillis);
+      }
+   }
+
+   /**
+    * Writes a delta file with the coverage counts changed since the previous snapshot.
+    * Once snapshots are taken, a last one is taken at shutdown, so that the delta files cover the whole run.
+    *
+    * @throws IllegalStateException if the data coverage metric is active, or call points are being recorded
+    */
+   public static synchronized void takeSnapshot()
+   {
+      if (!CoverageSnapshots.isSupported()) {
+         throw new IllegalStateException(
+            "JMockit: Snapshots are not supported with the data coverage metric or with call points");
+      }
+
+      if (snapshots == null) {
+         snapshots = new CoverageSnapshots(Configuration.getProperty("outputDir", ""));
+
+         Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run()
+            {
+               TestRun.terminate();
+               takeSnapshot();
+            }
+         });
+      }
+
+      try {
+         snapshots.takeSnapshot();
+      }
+      catch (IOException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
    @NotNull
    public static CodeCoverage create(boolean generateOutputOnShutdown)
    {
@@ -104,7 +220,7 @@ public final class CodeCoverage implements ClassFileTransformer
 
       String className = internalClassName.replace('/', '.');
 
-      return classModification.modifyClass(className, protectionDomain, originalClassfile);
+      return classModification.modifyClass(className, loader, protectionDomain, originalClassfile);
    }
 
    void deactivate() { inactive = true; }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage;
@@ -59,16 +59,15 @@ final class CoverageCheck
          }
       }
 
-      boolean verifyMinimum(@NotNull Metrics metric)
+      boolean verifyMinimum(@NotNull CoverageTree coverageTree, @NotNull Metrics metric)
       {
-         CoverageData coverageData = CoverageData.instance();
          int percentage;
 
          if ("perFile".equals(sourceFilePrefix)) {
-            percentage = coverageData.getSmallestPerFilePercentage(metric);
+            percentage = CoverageData.instance().getSmallestPerFilePercentage(metric);
          }
          else {
-            percentage = coverageData.getPercentage(metric, sourceFilePrefix);
+            percentage = coverageTree.getPercentage(metric, sourceFilePrefix);
          }
 
          return percentage < 0 || verifyMinimum(metric, percentage);
@@ -115,11 +114,13 @@ final class CoverageCheck
       if (thresholds == null) return;
       allThresholdsSatisfied = true;
 
+      final CoverageTree coverageTree = new CoverageTree(CoverageData.instance().getFileToFileDataMap());
+
       for (final Threshold threshold : thresholds) {
          Metrics.performAction(new Metrics.Action() {
             public void perform(@NotNull Metrics metric)
             {
-               allThresholdsSatisfied &= threshold.verifyMinimum(metric);
+               allThresholdsSatisfied &= threshold.verifyMinimum(coverageTree, metric);
             }
          });
       }
@@ -11,8 +11,15 @@ import org.jetbrains.annotations.*;
 
 import mockit.coverage.data.*;
 
+/**
+ * Merges the coverage data read from "coverage.ser" files and from "coverage-*.raw" files written at the end of test
+ * runs with the "raw" output format.
+ */
 final class DataFileMerging
 {
+   static final String RAW_FILE_PREFIX = "coverage-";
+   static final String RAW_FILE_SUFFIX = ".raw";
+
    @NotNull private final List<File> inputFiles;
 
    DataFileMerging(@NotNull String[] inputPaths)
@@ -30,6 +37,7 @@ final class DataFileMerging
          File inputFile = new File(path);
 
          if (inputFile.isDirectory()) {
+            addRawDataFilesToList(inputFile);
             inputFile = new File(inputFile, "coverage.ser");
          }
 
@@ -37,6 +45,22 @@ final class DataFileMerging
       }
    }
 
+   private void addRawDataFilesToList(@NotNull File inputDir)
+   {
+      File[] rawDataFiles = inputDir.listFiles(new FilenameFilter() {
+         @Override
+         public boolean accept(File dir, @NotNull String name)
+         {
+            return name.startsWith(RAW_FILE_PREFIX) && name.endsWith(RAW_FILE_SUFFIX);
+         }
+      });
+
+      if (rawDataFiles != null) {
+         Arrays.sort(rawDataFiles);
+         inputFiles.addAll(Arrays.asList(rawDataFiles));
+      }
+   }
+
    @NotNull CoverageData merge() throws IOException
    {
       CoverageData mergedData = null;
@@ -55,7 +79,7 @@ final class DataFileMerging
       }
 
       if (mergedData == null) {
-         throw new IllegalArgumentException("No input \"coverage.ser\" files found");
+         throw new IllegalArgumentException("No input \"coverage.ser\" or \"coverage-*.raw\" files found");
       }
 
       return mergedData;
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage;
+
+import org.jetbrains.annotations.*;
+
+/**
+ * The granularity of the probes inserted into classes modified for coverage, as selected through the
+ * "coverage-probes" property, from the cheapest profile to the one gathering the most information.
+ */
+public enum InstrumentationProfile
+{
+   /**
+    * A single probe at the first line of each method, constructor, or static initializer, counting how many times it
+    * was entered.
+    */
+   MethodEntry("methodEntry"),
+
+   /**
+    * A probe for each line, which only registers the first execution of the line; after that, it just checks the
+    * execution count already recorded.
+    */
+   LineOnce("lineOnce"),
+
+   /**
+    * Probes counting the executions of each line and branch, but no probes for paths or fields.
+    */
+   LineAndBranchCounts("lineAndBranchCounts"),
+
+   /**
+    * All the probes required by the selected metrics.
+    */
+   Full("full");
+
+   @NotNull private final String propertyValue;
+
+   InstrumentationProfile(@NotNull String propertyValue) { this.propertyValue = propertyValue; }
+
+   @NotNull public static InstrumentationProfile current()
+   {
+      String probes = Configuration.getProperty("probes", "");
+
+      for (InstrumentationProfile profile : values()) {
+         if (profile.propertyValue.equals(probes)) {
+            return profile;
+         }
+      }
+
+      return Full;
+   }
+
+   public boolean withProbeForEachLine() { return this != MethodEntry; }
+   public boolean withLineProbesCountingAllExecutions() { return this != LineOnce; }
+   public boolean withBranchProbes() { return this == LineAndBranchCounts || this == Full; }
+   public boolean withPathAndDataProbes() { return this == Full; }
+}
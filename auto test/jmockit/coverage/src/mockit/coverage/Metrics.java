@@ -29,7 +29,8 @@ public enum Metrics
 
    PathCoverage
    {
-      @Override public boolean isActive() { return isActive("path"); }
+      @Override
+      public boolean isActive() { return isActive("path") && InstrumentationProfile.current().withPathAndDataProbes(); }
       @Override public String toString() { return "Path"; }
       @Override @NotNull public String itemName() { return "Paths"; }
 
@@ -48,7 +49,9 @@ public enum Metrics
    {
       @Override public boolean isActive()
       {
-         return Startup.isTestRun() && Startup.isJMockitAvailable() && isActive("data");
+         return
+            Startup.isTestRun() && Startup.isJMockitAvailable() && isActive("data") &&
+            InstrumentationProfile.current().withPathAndDataProbes();
       }
 
       @Override public String toString() { return "Data"; }
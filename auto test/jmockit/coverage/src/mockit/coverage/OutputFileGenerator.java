@@ -5,6 +5,7 @@
 package mockit.coverage;
 
 import java.io.*;
+import java.util.*;
 
 import org.jetbrains.annotations.*;
 
@@ -12,6 +13,7 @@ import mockit.coverage.data.*;
 import mockit.coverage.modification.*;
 import mockit.coverage.reporting.*;
 import mockit.coverage.standalone.*;
+import mockit.integration.internal.*;
 
 final class OutputFileGenerator
 {
@@ -41,15 +43,46 @@ final class OutputFileGenerator
       }
    }
 
-   @NotNull private String[] getOutputFormat()
+   @NotNull private static String[] getOutputFormat()
    {
       String format = Configuration.getProperty("output", "");
-      return format.isEmpty() ? new String[] {"html-nocp"} : format.trim().split("\\s*,\\s*|\\s+");
+
+      if (format.isEmpty()) {
+         return new String[] {"html-nocp"};
+      }
+
+      String[] formats = format.trim().split("\\s*,\\s*|\\s+");
+      return Startup.isInitialized() ? rejectFormatsIncompatibleWithRawOutput(formats) : formats;
+   }
+
+   /**
+    * Keeps only the "raw" format when it's combined with other ones, since a raw file holds data which is merged later,
+    * while the other kinds of output need the data of the whole test run.
+    */
+   @NotNull private static String[] rejectFormatsIncompatibleWithRawOutput(@NotNull String[] formats)
+   {
+      if (formats.length > 1 && Arrays.asList(formats).contains("raw")) {
+         StringBuilder rejected = new StringBuilder();
+
+         for (String format : formats) {
+            if (!"raw".equals(format)) {
+               rejected.append(rejected.length() == 0 ? "" : ", ").append(format);
+            }
+         }
+
+         System.out.println(
+            "JMockit: Output format \"raw\" can't be combined with other formats; ignoring " + rejected);
+         return new String[] {"raw"};
+      }
+
+      return formats;
    }
 
    boolean isOutputToBeGenerated()
    {
-      return isOutputWithCallPointsToBeGenerated() || hasOutputFormat("html-nocp");
+      return
+         isOutputWithCallPointsToBeGenerated() || hasOutputFormat("html-nocp") || hasOutputFormat("raw") ||
+         hasOutputFormat("xml") || hasOutputFormat("json") || hasOutputFormat("test-impact");
    }
 
    private boolean isOutputWithCallPointsToBeGenerated()
@@ -64,6 +97,13 @@ final class OutputFileGenerator
          isOutputWithCallPointsToBeGenerated() && !hasOutputFormat("html-nocp");
    }
 
+   boolean isWithTestImpact()
+   {
+      return Startup.isTestRun() && Startup.isJMockitAvailable() && hasOutputFormat("test-impact");
+   }
+
+   boolean isRawOutput() { return hasOutputFormat("raw"); }
+
    private boolean hasOutputFormat(@NotNull String format)
    {
       for (String outputFormat : outputFormats) {
@@ -77,7 +117,13 @@ final class OutputFileGenerator
 
    void generate(@Nullable CodeCoverage codeCoverage)
    {
-      if (classModification != null && classModification.shouldConsiderClassesNotLoaded()) {
+      boolean rawOutput = isRawOutput();
+
+      if (classModification != null) {
+         classModification.reportInnerClassesNotLoaded();
+      }
+
+      if (!rawOutput && classModification != null && classModification.shouldConsiderClassesNotLoaded()) {
          new ClassesNotLoaded(classModification).gatherCoverageData();
       }
 
@@ -97,7 +143,14 @@ final class OutputFileGenerator
       boolean outputDirCreated = createOutputDirIfSpecifiedButNotExists();
 
       try {
+         if (rawOutput) {
+            writeRawDataFile(coverageData);
+            return;
+         }
+
          generateAccretionDataFileIfRequested(coverageData);
+         generateTestImpactIndexIfRequested();
+         generateMachineReadableReportsIfRequested(coverageData);
          generateHTMLReportIfRequested(coverageData, outputDirCreated);
       }
       catch (IOException e) {
@@ -111,6 +164,7 @@ final class OutputFileGenerator
 
       try {
          CoverageData coverageData = new DataFileMerging(inputPaths).merge();
+         generateMachineReadableReportsIfRequested(coverageData);
          generateHTMLReportIfRequested(coverageData, outputDirCreated);
       }
       catch (IOException e) {
@@ -129,6 +183,19 @@ final class OutputFileGenerator
       return dirCreated;
    }
 
+   /**
+    * Writes the coverage data as is to a new "coverage-*.raw" file, with none of the work normally done when output is
+    * generated, such as reading source files.
+    * This is meant for test runs in forked JVMs, where each fork writes its own raw file at shutdown, and a single
+    * report for all forks is later generated by {@link CodeCoverage#main}.
+    */
+   private void writeRawDataFile(@NotNull CoverageData coverageData) throws IOException
+   {
+      File dir = new File(outputDir.isEmpty() ? "." : outputDir);
+      File outputFile = File.createTempFile(DataFileMerging.RAW_FILE_PREFIX, DataFileMerging.RAW_FILE_SUFFIX, dir);
+      coverageData.writeDataToFile(outputFile);
+   }
+
    private void generateAccretionDataFileIfRequested(@NotNull CoverageData newData) throws IOException
    {
       if (hasOutputFormat("serial")) {
@@ -141,6 +208,30 @@ final class OutputFileGenerator
       }
    }
 
+   private void generateTestImpactIndexIfRequested() throws IOException
+   {
+      if (CoverageData.instance().isWithTestImpact()) {
+         if (TestSelection.isParallelExecutionDetected()) {
+            System.out.println(
+               "JMockit: Test impact index not written, since tests ran in parallel and could not be told apart");
+            return;
+         }
+
+         new TestImpactFile(outputDir, TestImpactData.instance()).generate();
+      }
+   }
+
+   private void generateMachineReadableReportsIfRequested(@NotNull CoverageData coverageData) throws IOException
+   {
+      if (hasOutputFormat("xml")) {
+         new XMLCoverageReport(outputDir, sourceDirs, coverageData).generate();
+      }
+
+      if (hasOutputFormat("json")) {
+         new JSONCoverageReport(outputDir, coverageData).generate();
+      }
+   }
+
    private void generateHTMLReportIfRequested(@NotNull CoverageData coverageData, boolean outputDirCreated)
       throws IOException
    {
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jetbrains.annotations.*;
+
+/**
+ * Executes a list of independent tasks on a temporary pool of daemon threads, with one thread per available processor.
+ */
+public final class ParallelTasks
+{
+   private ParallelTasks() {}
+
+   /**
+    * Executes the given tasks, returning their results in the same order.
+    * If there is a single task or a single processor, tasks are executed in the calling thread.
+    */
+   @NotNull public static <T> List<T> execute(@NotNull List<Callable<T>> tasks, @NotNull final String threadName)
+   {
+      int threadCount = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+      List<T> results = new ArrayList<T>(tasks.size());
+
+      try {
+         if (threadCount <= 1) {
+            for (Callable<T> task : tasks) {
+               results.add(task.call());
+            }
+
+            return results;
+         }
+
+         ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NotNull Runnable r)
+            {
+               Thread thread = new Thread(r, threadName);
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+
+         try {
+            for (Future<T> result : executor.invokeAll(tasks)) {
+               results.add(result.get());
+            }
+         }
+         finally {
+            executor.shutdown();
+         }
+      }
+      catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+
+         if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+
+         throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+      }
+      catch (RuntimeException e) {
+         throw e;
+      }
+      catch (Exception e) {
+         throw new RuntimeException(e);
+      }
+
+      return results;
+   }
+}
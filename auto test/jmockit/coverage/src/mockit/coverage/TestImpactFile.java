@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage;
+
+import java.io.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.data.*;
+import mockit.integration.internal.*;
+
+/**
+ * Writes the "coverage-impact.idx" file, next to "coverage.ser", with the classes covered by each test in the current
+ * run.
+ * Tests from an existing index file which did not run this time are kept, so that the index stays complete when
+ * unaffected tests get skipped by passing the same file in the "jmockit-skipUnaffectedTests" system property.
+ */
+final class TestImpactFile
+{
+   @NotNull private final File outputFile;
+   @NotNull private final TestImpactData newData;
+
+   TestImpactFile(@NotNull String outputDir, @NotNull TestImpactData newData)
+   {
+      String parentDir = outputDir.length() == 0 ? null : outputDir;
+      outputFile = new File(parentDir, "coverage-impact.idx");
+      this.newData = newData;
+   }
+
+   void generate() throws IOException
+   {
+      TestImpactIndex index = newData.buildIndex();
+
+      if (outputFile.exists()) {
+         Set<String> testsRun = newData.getTestsRun();
+         TestImpactIndex previousIndex = TestImpactIndex.readFromFile(outputFile);
+         index.addTestsNotRunFrom(previousIndex, testsRun);
+      }
+
+      index.writeToFile(outputFile);
+      System.out.println("JMockit: Test impact index written to " + outputFile.getCanonicalPath());
+   }
+}
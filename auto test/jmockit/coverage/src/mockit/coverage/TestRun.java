@@ -4,24 +4,65 @@
  */
 package mockit.coverage;
 
+import java.io.*;
+
 import org.jetbrains.annotations.*;
 
 import mockit.coverage.data.*;
+import mockit.coverage.dataItems.*;
 import mockit.coverage.lines.*;
 
 @SuppressWarnings("unused")
 public final class TestRun
 {
    private static boolean terminated;
+   private static boolean offlineMetadataLoaded;
+
+   static { loadOfflineMetadataIfSpecified(); }
 
    private TestRun() {}
 
+   /**
+    * Loads the static coverage data for classes modified by the offline instrumenter, if its metadata file was
+    * specified through the "jmockit-coverage-metadata" system property.
+    * This happens before any class gets modified at runtime, so that source files keep the indexes already embedded
+    * in the modified classes.
+    * If the coverage tool was not otherwise initialized (as when tests run without the Java agent), output gets
+    * generated at shutdown.
+    */
+   static synchronized void loadOfflineMetadataIfSpecified()
+   {
+      if (offlineMetadataLoaded) return;
+      offlineMetadataLoaded = true;
+
+      String metadataFile = Configuration.getProperty("metadata");
+
+      if (metadataFile != null) {
+         try {
+            OfflineCoverageMetadata.readFromFile(new File(metadataFile));
+         }
+         catch (IOException e) {
+            throw new RuntimeException(e);
+         }
+
+         if (!CodeCoverage.isCreated()) {
+            CodeCoverage.generateOutputOnShutdown();
+         }
+      }
+   }
+
    public static void lineExecuted(int fileIndex, int line)
    {
       if (terminated) return;
 
       CoverageData coverageData = CoverageData.instance();
-      PerFileLineCoverage fileData = coverageData.getFileData(fileIndex).lineCoverageInfo;
+      FileCoverageData executedFile = coverageData.getFileData(fileIndex);
+
+      if (coverageData.isWithTestImpact()) {
+         TestImpactData.instance().registerExecution(executedFile);
+      }
+
+      PerFileLineCoverage fileData = executedFile.lineCoverageInfo;
       CallPoint callPoint = null;
 
       if (coverageData.isWithCallPoints() && fileData.acceptsAdditionalCallPoints(line)) {
@@ -31,6 +72,52 @@ public final class TestRun
       fileData.registerExecution(line, callPoint);
    }
 
+   /**
+    * Probe for the "lineOnce" instrumentation profile: once a line has been executed, further executions are only
+    * noticed for test impact, if enabled, without counting them or creating call points.
+    * This is the probe for classes which can't have a guard field, as is the case for interfaces and for classes
+    * already loaded when the tool starts; otherwise, {@link #lineExecutedOnceWithGuard} is used.
+    */
+   public static void lineExecutedOnce(int fileIndex, int line)
+   {
+      if (terminated) return;
+
+      CoverageData coverageData = CoverageData.instance();
+      FileCoverageData executedFile = coverageData.getFileData(fileIndex);
+
+      if (executedFile.lineCoverageInfo.getExecutionCount(line) <= 0) {
+         lineExecuted(fileIndex, line);
+      }
+      else if (coverageData.isWithTestImpact()) {
+         TestImpactData.instance().registerExecution(executedFile);
+      }
+   }
+
+   /**
+    * Probe for the "lineOnce" instrumentation profile in classes having a static guard field, which holds the array
+    * returned here.
+    * The class only calls the probe while the element for the line in its guard array is unset, so later executions of
+    * the line cost just the array read.
+    * The guard is a plain array, so threads executing a line for the first time at the same moment can each call the
+    * probe, registering more than one execution.
+    *
+    * @return the guard array to be kept by the class, or {@code null} if the probe is to be called on every execution,
+    * as needed for test impact data
+    */
+   @Nullable
+   public static boolean[] lineExecutedOnceWithGuard(int fileIndex, int line)
+   {
+      lineExecutedOnce(fileIndex, line);
+
+      CoverageData coverageData = CoverageData.instance();
+
+      if (terminated || coverageData.isWithTestImpact()) {
+         return null;
+      }
+
+      return coverageData.getFileData(fileIndex).lineCoverageInfo.markLineAsExecutedOnce(line);
+   }
+
    public static void jumpTargetExecuted(int fileIndex, int line, int segment)
    {
       if (terminated) return;
@@ -88,6 +175,22 @@ public final class TestRun
       fileData.dataCoverageInfo.registerReadOfStaticField(classAndFieldNames);
    }
 
+   public static void staticFieldAssigned(int fileIndex, int slot)
+   {
+      if (terminated) return;
+
+      PerFileDataCoverage fileData = CoverageData.instance().getFileData(fileIndex).dataCoverageInfo;
+      fileData.registerStaticFieldAccess(slot, false);
+   }
+
+   public static void staticFieldRead(int fileIndex, int slot)
+   {
+      if (terminated) return;
+
+      PerFileDataCoverage fileData = CoverageData.instance().getFileData(fileIndex).dataCoverageInfo;
+      fileData.registerStaticFieldAccess(slot, true);
+   }
+
    public static void fieldAssigned(@NotNull Object instance, @NotNull String file, @NotNull String classAndFieldNames)
    {
       if (terminated) return;
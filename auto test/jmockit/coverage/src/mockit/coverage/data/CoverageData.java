@@ -23,6 +23,7 @@ public final class CoverageData implements Serializable
    @NotNull public static CoverageData instance() { return instance; }
 
    private boolean withCallPoints;
+   private transient boolean withTestImpact;
 
    @NotNull private final Map<String, FileCoverageData> fileToFileData = new LinkedHashMap<String, FileCoverageData>();
    @NotNull private final List<FileCoverageData> indexedFileData = new ArrayList<FileCoverageData>(100);
@@ -30,16 +31,19 @@ public final class CoverageData implements Serializable
    public boolean isWithCallPoints() { return withCallPoints; }
    public void setWithCallPoints(boolean withCallPoints) { this.withCallPoints = withCallPoints; }
 
+   public boolean isWithTestImpact() { return withTestImpact; }
+   public void setWithTestImpact(boolean withTestImpact) { this.withTestImpact = withTestImpact; }
+
    /**
     * Returns an immutable map containing all source files with the corresponding coverage data gathered for each
     * file during a test run.
     */
-   @NotNull public Map<String, FileCoverageData> getFileToFileDataMap()
+   @NotNull public synchronized Map<String, FileCoverageData> getFileToFileDataMap()
    {
       return Collections.unmodifiableMap(new LinkedHashMap<String, FileCoverageData>(fileToFileData));
    }
 
-   @NotNull public FileCoverageData getOrAddFile(@NotNull String file, @Nullable String kindOfTopLevelType)
+   @NotNull public synchronized FileCoverageData getOrAddFile(@NotNull String file, @Nullable String kindOfTopLevelType)
    {
       FileCoverageData fileData = fileToFileData.get(file);
 
@@ -57,6 +61,20 @@ public final class CoverageData implements Serializable
       return fileData;
    }
 
+   /**
+    * Adds a source file whose static coverage data was obtained in a previous test run, such as from a cache of
+    * instrumented classes.
+    */
+   @NotNull public synchronized FileCoverageData addFile(@NotNull String file, @NotNull FileCoverageData staticData)
+   {
+      FileCoverageData fileData = new FileCoverageData(indexedFileData.size(), staticData);
+      indexedFileData.add(fileData);
+      fileToFileData.put(file, fileData);
+      return fileData;
+   }
+
+   public synchronized boolean containsFile(@NotNull String file) { return fileToFileData.containsKey(file); }
+
    @NotNull public FileCoverageData getFileData(@NotNull String file) { return fileToFileData.get(file); }
    @NotNull public FileCoverageData getFileData(int fileIndex) { return indexedFileData.get(fileIndex); }
 
@@ -117,10 +135,20 @@ public final class CoverageData implements Serializable
       }
    }
 
+   /**
+    * Fills the last modification times of the classfiles for the source files which have no classfile hashes, removing
+    * those for which no classfile is found.
+    * Source files with hashes, recorded when their classes were modified for coverage, require no class loading.
+    */
    public void fillLastModifiedTimesForAllClassFiles()
    {
       for (Iterator<Map.Entry<String, FileCoverageData>> itr = fileToFileData.entrySet().iterator(); itr.hasNext(); ) {
          Map.Entry<String, FileCoverageData> fileAndFileData = itr.next();
+
+         if (fileAndFileData.getValue().hasClassfileHashes()) {
+            continue;
+         }
+
          File coveredClassFile = getClassFile(fileAndFileData.getKey());
 
          if (coveredClassFile != null) {
@@ -230,7 +258,7 @@ public final class CoverageData implements Serializable
          if (fileData == null) {
             fileToFileData.put(previousFile, previousFileData);
          }
-         else if (previousFileData.lastModified == fileData.lastModified) {
+         else if (fileData.isFromSameClassfilesAs(previousFileData)) {
             fileData.mergeWithDataFromPreviousTestRun(previousFileData);
          }
       }
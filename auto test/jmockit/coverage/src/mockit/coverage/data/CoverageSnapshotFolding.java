@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+
+/**
+ * Folds the delta files written by {@link CoverageSnapshots} into a full "coverage.ser" file, from which the HTML
+ * report can then be generated as for any other serialized coverage data.
+ * <p/>
+ * The output file goes to the directory specified by the "jmockit-coverage-outputDir" system property, if any.
+ */
+public final class CoverageSnapshotFolding
+{
+   public static void main(@NotNull String[] args) throws IOException
+   {
+      if (args.length == 0) {
+         System.out.println(
+            "Usage: java -cp jmockit-coverage.jar " + CoverageSnapshotFolding.class.getName() +
+            " <delta file or dir with delta files>...");
+         System.exit(1);
+      }
+
+      List<File> inputPaths = new ArrayList<File>(args.length);
+
+      for (String arg : args) {
+         inputPaths.add(new File(arg));
+      }
+
+      CoverageData foldedData = new CoverageSnapshotFolding(inputPaths).fold();
+
+      String outputDir = Configuration.getProperty("outputDir", "");
+      File outputFile = new File(outputDir.isEmpty() ? null : outputDir, "coverage.ser");
+      foldedData.writeDataToFile(outputFile);
+      System.out.println("JMockit: Coverage data written to " + outputFile.getCanonicalPath());
+   }
+
+   @NotNull private final List<File> deltaFiles;
+   @NotNull private final Map<String, FileCoverageData> foldedFiles;
+   @NotNull private final Map<String, ExecutionCounts> foldedCounts;
+
+   /**
+    * @param inputPaths delta files and/or directories containing them, in the order the snapshots were taken
+    */
+   public CoverageSnapshotFolding(@NotNull List<File> inputPaths)
+   {
+      deltaFiles = new ArrayList<File>();
+
+      for (File inputPath : inputPaths) {
+         if (inputPath.isDirectory()) {
+            deltaFiles.addAll(CoverageSnapshots.listDeltaFiles(inputPath));
+         }
+         else {
+            deltaFiles.add(inputPath);
+         }
+      }
+
+      foldedFiles = new LinkedHashMap<String, FileCoverageData>();
+      foldedCounts = new HashMap<String, ExecutionCounts>();
+   }
+
+   @NotNull public CoverageData fold() throws IOException
+   {
+      if (deltaFiles.isEmpty()) {
+         throw new IllegalArgumentException("No input \"coverage-*.delta\" files found");
+      }
+
+      for (File deltaFile : deltaFiles) {
+         foldDeltaFile(deltaFile);
+      }
+
+      CoverageData foldedData = new CoverageData();
+
+      for (Map.Entry<String, FileCoverageData> fileAndFileData : foldedFiles.entrySet()) {
+         String file = fileAndFileData.getKey();
+         FileCoverageData fileData = fileAndFileData.getValue();
+         fileData.setExecutionCounts(foldedCounts.get(file));
+         foldedData.addFile(file, fileData);
+      }
+
+      return foldedData;
+   }
+
+   private void foldDeltaFile(@NotNull File deltaFile) throws IOException
+   {
+      DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(deltaFile)));
+
+      try {
+         if (input.readInt() != CoverageSnapshots.FORMAT_ID) {
+            throw new IllegalArgumentException("Not a coverage delta file: " + deltaFile);
+         }
+
+         while (true) {
+            byte entryType = input.readByte();
+            if (entryType == CoverageSnapshots.END) break;
+
+            String file = input.readUTF();
+
+            if (entryType == CoverageSnapshots.FULL_FILE) {
+               readFullFile(input, file);
+            }
+            else {
+               readChangedCounts(input, deltaFile, file);
+            }
+         }
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   private void readFullFile(@NotNull DataInputStream input, @NotNull String file) throws IOException
+   {
+      byte[] serializedData = new byte[input.readInt()];
+      input.readFully(serializedData);
+
+      FileCoverageData fileData = CoverageSnapshots.deserialize(serializedData);
+      ExecutionCounts counts = new ExecutionCounts();
+      fileData.copyExecutionCounts(counts);
+
+      foldedFiles.put(file, fileData);
+      foldedCounts.put(file, counts);
+   }
+
+   private void readChangedCounts(@NotNull DataInputStream input, @NotNull File deltaFile, @NotNull String file)
+      throws IOException
+   {
+      ExecutionCounts counts = foldedCounts.get(file);
+
+      if (counts == null) {
+         throw new IllegalStateException(
+            "Delta file " + deltaFile + " changes counts for " + file + ", which no previous delta file contains");
+      }
+
+      int changedCounts = CoverageSnapshots.readVarInt(input);
+
+      for (int i = 0, position = 0; i < changedCounts; i++) {
+         position += CoverageSnapshots.readVarInt(input);
+         counts.addToCount(position, CoverageSnapshots.readDelta(input));
+      }
+   }
+}
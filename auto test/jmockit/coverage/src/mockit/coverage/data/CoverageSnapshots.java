@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+
+/**
+ * Writes snapshots of the coverage data gathered so far in a long-running JVM, where output is otherwise only
+ * generated at shutdown or on request.
+ * <p/>
+ * Each snapshot goes to a numbered "coverage-NNNNN.delta" file holding only the execution counts which changed since
+ * the previous snapshot.
+ * Counts are copied from the live coverage data without any locking, so threads executing covered code are never
+ * paused; only the structure of the data, such as the set of lines in a file, is read under the locks used when it
+ * gets modified.
+ * Data coverage and call points are not supported, since they consist of more than plain execution counts.
+ * A source file is written in full the first time, and again whenever its structure changes, as happens when more of
+ * its classes get loaded.
+ * The delta files are later folded into a full "coverage.ser" file by {@link CoverageSnapshotFolding}.
+ */
+public final class CoverageSnapshots
+{
+   static final String FILE_NAME_PREFIX = "coverage-";
+   static final String FILE_NAME_SUFFIX = ".delta";
+   static final int FORMAT_ID = 0x4A4D4344;
+   static final byte END = 0;
+   static final byte FULL_FILE = 1;
+   static final byte CHANGED_COUNTS = 2;
+
+   @NotNull private final File outputDir;
+   @NotNull private final Map<String, FileSnapshot> previousSnapshots = new HashMap<String, FileSnapshot>();
+   private int snapshotCount;
+
+   private static final class FileSnapshot
+   {
+      @NotNull final FileCoverageData fileData;
+      @NotNull final ExecutionCounts counts;
+
+      FileSnapshot(@NotNull FileCoverageData fileData, @NotNull ExecutionCounts counts)
+      {
+         this.fileData = fileData;
+         this.counts = counts;
+      }
+   }
+
+   /**
+    * Tells whether snapshots can represent all of the coverage data being gathered, which is not the case when the
+    * data coverage metric is active or call points are being recorded.
+    */
+   public static boolean isSupported()
+   {
+      return !Metrics.DataCoverage.isActive() && !CoverageData.instance().isWithCallPoints();
+   }
+
+   public CoverageSnapshots(@NotNull String outputDir)
+   {
+      this.outputDir = new File(outputDir.isEmpty() ? "." : outputDir);
+   }
+
+   /**
+    * Writes the next delta file.
+    * The first snapshot also deletes any delta files left in the output directory by a previous JVM run.
+    */
+   public synchronized void takeSnapshot() throws IOException
+   {
+      if (snapshotCount == 0) {
+         deleteDeltaFilesFromPreviousRun();
+      }
+
+      Map<String, FileCoverageData> files = CoverageData.instance().getFileToFileDataMap();
+      Map<String, FileSnapshot> newSnapshots = new HashMap<String, FileSnapshot>(files.size());
+      File deltaFile = new File(outputDir, getDeltaFileName(snapshotCount + 1));
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(deltaFile)));
+
+      try {
+         output.writeInt(FORMAT_ID);
+
+         for (Map.Entry<String, FileCoverageData> fileAndFileData : files.entrySet()) {
+            writeChangesToFile(output, fileAndFileData.getKey(), fileAndFileData.getValue(), newSnapshots);
+         }
+
+         output.writeByte(END);
+      }
+      finally {
+         output.close();
+      }
+
+      previousSnapshots.putAll(newSnapshots);
+      snapshotCount++;
+   }
+
+   private void deleteDeltaFilesFromPreviousRun()
+   {
+      for (File deltaFile : listDeltaFiles(outputDir)) {
+         //noinspection ResultOfMethodCallIgnored
+         deltaFile.delete();
+      }
+
+      //noinspection ResultOfMethodCallIgnored
+      outputDir.mkdirs();
+   }
+
+   @NotNull private static String getDeltaFileName(int snapshotNumber)
+   {
+      return String.format("%s%05d%s", FILE_NAME_PREFIX, snapshotNumber, FILE_NAME_SUFFIX);
+   }
+
+   /**
+    * Returns the delta files in the given directory, in the order they were written.
+    */
+   @NotNull static List<File> listDeltaFiles(@NotNull File dir)
+   {
+      File[] deltaFiles = dir.listFiles(new FilenameFilter() {
+         @Override
+         public boolean accept(File dir, @NotNull String name)
+         {
+            return name.startsWith(FILE_NAME_PREFIX) && name.endsWith(FILE_NAME_SUFFIX);
+         }
+      });
+
+      if (deltaFiles == null) {
+         return Collections.emptyList();
+      }
+
+      Arrays.sort(deltaFiles);
+      return Arrays.asList(deltaFiles);
+   }
+
+   private void writeChangesToFile(
+      @NotNull DataOutputStream output, @NotNull String file, @NotNull FileCoverageData fileData,
+      @NotNull Map<String, FileSnapshot> newSnapshots) throws IOException
+   {
+      FileSnapshot previousSnapshot = previousSnapshots.get(file);
+      ExecutionCounts counts = new ExecutionCounts();
+      fileData.copyExecutionCounts(counts);
+
+      if (
+         previousSnapshot != null && previousSnapshot.fileData == fileData &&
+         counts.hasSameLayoutAs(previousSnapshot.counts)
+      ) {
+         writeChangedCounts(output, file, previousSnapshot.counts, counts);
+         newSnapshots.put(file, new FileSnapshot(fileData, counts));
+      }
+      else {
+         byte[] serializedData = serialize(fileData);
+
+         // The counts are taken from the copy actually written, so that no execution gets counted twice or missed.
+         FileCoverageData copiedData = deserialize(serializedData);
+         ExecutionCounts copiedCounts = new ExecutionCounts();
+         copiedData.copyExecutionCounts(copiedCounts);
+
+         output.writeByte(FULL_FILE);
+         output.writeUTF(file);
+         output.writeInt(serializedData.length);
+         output.write(serializedData);
+         newSnapshots.put(file, new FileSnapshot(fileData, copiedCounts));
+      }
+   }
+
+   private static void writeChangedCounts(
+      @NotNull DataOutputStream output, @NotNull String file,
+      @NotNull ExecutionCounts previousCounts, @NotNull ExecutionCounts currentCounts) throws IOException
+   {
+      int n = currentCounts.size();
+      int changedCounts = 0;
+
+      for (int i = 0; i < n; i++) {
+         if (currentCounts.get(i) != previousCounts.get(i)) {
+            changedCounts++;
+         }
+      }
+
+      if (changedCounts > 0) {
+         output.writeByte(CHANGED_COUNTS);
+         output.writeUTF(file);
+         writeVarInt(output, changedCounts);
+
+         for (int i = 0, previousPosition = 0; i < n; i++) {
+            int delta = currentCounts.get(i) - previousCounts.get(i);
+
+            if (delta != 0) {
+               writeVarInt(output, i - previousPosition);
+               writeVarInt(output, (delta << 1) ^ (delta >> 31));
+               previousPosition = i;
+            }
+         }
+      }
+   }
+
+   private static void writeVarInt(@NotNull DataOutput output, int value) throws IOException
+   {
+      while ((value & ~0x7F) != 0) {
+         output.writeByte(value & 0x7F | 0x80);
+         value >>>= 7;
+      }
+
+      output.writeByte(value);
+   }
+
+   static int readVarInt(@NotNull DataInput input) throws IOException
+   {
+      int value = 0;
+
+      for (int shift = 0; ; shift += 7) {
+         int b = input.readByte();
+         value |= (b & 0x7F) << shift;
+
+         if ((b & 0x80) == 0) {
+            return value;
+         }
+      }
+   }
+
+   static int readDelta(@NotNull DataInput input) throws IOException
+   {
+      int value = readVarInt(input);
+      return value >>> 1 ^ -(value & 1);
+   }
+
+   /**
+    * Serializes the coverage data of a source file.
+    * Each part of the data is written while holding the same lock used by the threads which modify its structure.
+    */
+   @NotNull private static byte[] serialize(@NotNull FileCoverageData fileData) throws IOException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+      ObjectOutputStream output = new ObjectOutputStream(bytes);
+
+      try {
+         output.writeObject(fileData);
+      }
+      finally {
+         output.close();
+      }
+
+      return bytes.toByteArray();
+   }
+
+   @NotNull static FileCoverageData deserialize(@NotNull byte[] serializedData) throws IOException
+   {
+      ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(serializedData));
+
+      try {
+         return (FileCoverageData) input.readObject();
+      }
+      catch (ClassNotFoundException e) {
+         throw new RuntimeException("Serialized class for coverage data not found in classpath", e);
+      }
+      finally {
+         input.close();
+      }
+   }
+}
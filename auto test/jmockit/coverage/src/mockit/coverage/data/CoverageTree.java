@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+
+/**
+ * The covered and total item counts of each metric, aggregated at every package of the source files with coverage
+ * data, in a tree built with a single pass over the data.
+ * <p/>
+ * Counts for a package are then found by walking down the tree, one node for each segment of the package name.
+ * Any source file prefix can also be queried, with the same meaning as in {@link CoverageData#getPercentage}: a
+ * prefix not ending at a segment boundary matches all sub-packages and files in the last package whose names begin
+ * with the remaining characters.
+ */
+public final class CoverageTree
+{
+   private static final int METRICS = Metrics.values().length;
+
+   /**
+    * Counts are kept with covered items at the metric's ordinal, and total items at the ordinal plus the number of
+    * metrics.
+    */
+   private static final class PackageNode
+   {
+      @NotNull final int[] countsInSubtree = new int[2 * METRICS];
+      @NotNull final int[] countsInPackage = new int[2 * METRICS];
+      @NotNull final SortedMap<String, PackageNode> subPackages = new TreeMap<String, PackageNode>();
+      @NotNull final SortedMap<String, int[]> files = new TreeMap<String, int[]>();
+   }
+
+   @NotNull private final PackageNode root;
+
+   public CoverageTree(@NotNull Map<String, FileCoverageData> fileToFileData)
+   {
+      root = new PackageNode();
+
+      for (Map.Entry<String, FileCoverageData> fileAndFileData : fileToFileData.entrySet()) {
+         addFile(fileAndFileData.getKey(), fileAndFileData.getValue());
+      }
+   }
+
+   private void addFile(@NotNull String filePath, @NotNull FileCoverageData fileData)
+   {
+      int[] fileCounts = new int[2 * METRICS];
+
+      for (Metrics metric : Metrics.values()) {
+         PerFileCoverage coverageInfo = fileData.getPerFileCoverage(metric);
+         fileCounts[metric.ordinal()] = coverageInfo.getCoveredItems();
+         fileCounts[METRICS + metric.ordinal()] = coverageInfo.getTotalItems();
+      }
+
+      PackageNode node = root;
+      addCounts(node.countsInSubtree, fileCounts);
+
+      for (int p = 0, q = filePath.indexOf('/'); q >= 0; p = q + 1, q = filePath.indexOf('/', p)) {
+         String segment = filePath.substring(p, q);
+         PackageNode subPackage = node.subPackages.get(segment);
+
+         if (subPackage == null) {
+            subPackage = new PackageNode();
+            node.subPackages.put(segment, subPackage);
+         }
+
+         node = subPackage;
+         addCounts(node.countsInSubtree, fileCounts);
+      }
+
+      addCounts(node.countsInPackage, fileCounts);
+      node.files.put(filePath.substring(filePath.lastIndexOf('/') + 1), fileCounts);
+   }
+
+   private static void addCounts(@NotNull int[] counts, @NotNull int[] countsToAdd)
+   {
+      for (int i = 0; i < counts.length; i++) {
+         counts[i] += countsToAdd[i];
+      }
+   }
+
+   /**
+    * Computes the coverage percentage for a given metric over the source files with a given prefix.
+    *
+    * @param sourceFilePrefix a prefix for the paths of the source files to be considered, such as "org/acme/", or
+    *                         {@code null} to consider <em>all</em> files
+    *
+    * @return the percentage from {@literal 0} to {@literal 100} (inclusive), or {@literal -1} if no meaningful value
+    * could be computed for the metric
+    */
+   public int getPercentage(@NotNull Metrics metric, @Nullable String sourceFilePrefix)
+   {
+      int[] counts = getCounts(sourceFilePrefix);
+      return CoveragePercentage.calculate(counts[metric.ordinal()], counts[METRICS + metric.ordinal()]);
+   }
+
+   public int getCoveredItems(@NotNull Metrics metric, @Nullable String sourceFilePrefix)
+   {
+      return getCounts(sourceFilePrefix)[metric.ordinal()];
+   }
+
+   public int getTotalItems(@NotNull Metrics metric, @Nullable String sourceFilePrefix)
+   {
+      return getCounts(sourceFilePrefix)[METRICS + metric.ordinal()];
+   }
+
+   @NotNull private int[] getCounts(@Nullable String sourceFilePrefix)
+   {
+      if (sourceFilePrefix == null) {
+         return root.countsInSubtree;
+      }
+
+      PackageNode node = root;
+      int p = 0;
+
+      for (int q = sourceFilePrefix.indexOf('/'); q >= 0; p = q + 1, q = sourceFilePrefix.indexOf('/', p)) {
+         node = node.subPackages.get(sourceFilePrefix.substring(p, q));
+
+         if (node == null) {
+            return new int[2 * METRICS];
+         }
+      }
+
+      if (p == sourceFilePrefix.length()) {
+         return node.countsInSubtree;
+      }
+
+      return getCountsForNamesWithPrefix(node, sourceFilePrefix.substring(p));
+   }
+
+   @NotNull private static int[] getCountsForNamesWithPrefix(@NotNull PackageNode node, @NotNull String namePrefix)
+   {
+      int[] counts = new int[2 * METRICS];
+      String namePrefixUpperBound = namePrefix + Character.MAX_VALUE;
+
+      for (PackageNode subPackage : node.subPackages.subMap(namePrefix, namePrefixUpperBound).values()) {
+         addCounts(counts, subPackage.countsInSubtree);
+      }
+
+      for (int[] fileCounts : node.files.subMap(namePrefix, namePrefixUpperBound).values()) {
+         addCounts(counts, fileCounts);
+      }
+
+      return counts;
+   }
+
+   /**
+    * Gets the number of covered items for a given metric in the source files of a package, excluding sub-packages.
+    *
+    * @param packagePath the package name with "/" separators, or the empty string for the default package
+    */
+   public int getCoveredItemsInPackage(@NotNull Metrics metric, @NotNull String packagePath)
+   {
+      PackageNode node = findPackage(packagePath);
+      return node == null ? 0 : node.countsInPackage[metric.ordinal()];
+   }
+
+   /**
+    * Gets the total number of items for a given metric in the source files of a package, excluding sub-packages.
+    *
+    * @param packagePath the package name with "/" separators, or the empty string for the default package
+    */
+   public int getTotalItemsInPackage(@NotNull Metrics metric, @NotNull String packagePath)
+   {
+      PackageNode node = findPackage(packagePath);
+      return node == null ? 0 : node.countsInPackage[METRICS + metric.ordinal()];
+   }
+
+   @Nullable private PackageNode findPackage(@NotNull String packagePath)
+   {
+      if (packagePath.isEmpty()) {
+         return root;
+      }
+
+      PackageNode node = root;
+      int p = 0;
+
+      while (node != null) {
+         int q = packagePath.indexOf('/', p);
+
+         if (q < 0) {
+            return node.subPackages.get(packagePath.substring(p));
+         }
+
+         node = node.subPackages.get(packagePath.substring(p, q));
+         p = q + 1;
+      }
+
+      return null;
+   }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+/**
+ * The execution counts of all lines, branches, and paths in a source file, copied in a fixed order so that copies
+ * taken at different times can be compared position by position.
+ */
+public final class ExecutionCounts
+{
+   @NotNull private int[] counts = new int[64];
+   private int size;
+
+   // The structure of the source file when the counts were copied:
+   private int executableLines;
+   private int methods;
+
+   public void add(int count)
+   {
+      if (size == counts.length) {
+         counts = Arrays.copyOf(counts, 2 * size);
+      }
+
+      counts[size++] = count;
+   }
+
+   public int get(int position) { return counts[position]; }
+   int size() { return size; }
+
+   void addToCount(int position, int delta)
+   {
+      if (position >= size) {
+         throw new IllegalArgumentException("Invalid position " + position + " for " + size + " execution counts");
+      }
+
+      counts[position] += delta;
+   }
+
+   void setLayout(int executableLines, int methods)
+   {
+      this.executableLines = executableLines;
+      this.methods = methods;
+   }
+
+   boolean hasSameLayoutAs(@NotNull ExecutionCounts other)
+   {
+      return size == other.size && executableLines == other.executableLines && methods == other.methods;
+   }
+}
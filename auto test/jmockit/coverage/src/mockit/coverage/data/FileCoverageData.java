@@ -1,11 +1,12 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage.data;
 
 import java.io.*;
 import java.util.*;
+import java.util.zip.*;
 
 import org.jetbrains.annotations.*;
 
@@ -21,9 +22,9 @@ public final class FileCoverageData implements Serializable
 {
    private static final long serialVersionUID = 3508572808457541012L;
 
-   @NotNull public final PerFileLineCoverage lineCoverageInfo = new PerFileLineCoverage();
-   @NotNull public final PerFilePathCoverage pathCoverageInfo = new PerFilePathCoverage();
-   @NotNull public final PerFileDataCoverage dataCoverageInfo = new PerFileDataCoverage();
+   @NotNull public final PerFileLineCoverage lineCoverageInfo;
+   @NotNull public final PerFilePathCoverage pathCoverageInfo;
+   @NotNull public final PerFileDataCoverage dataCoverageInfo;
 
    // Used for fast indexed access.
    public final int index;
@@ -31,13 +32,99 @@ public final class FileCoverageData implements Serializable
    // Used for output styling in the HTML report:
    @Nullable public String kindOfTopLevelType;
 
-   // Used to track the last time the ".class" file was modified, to decide if merging can be done:
+   // Used to track the last time the ".class" file was modified, to decide if merging can be done when classfile
+   // hashes are not available:
    long lastModified;
 
+   // Hashes of the original classfiles for the types in the source file, recorded as they get modified for coverage,
+   // to decide if merging can be done:
+   @Nullable private Map<String, Long> classfileHashes;
+
+   // Used to record each test which executed the file only once, when test impact data is being gathered:
+   @Nullable transient String lastTestExecuting;
+
    public FileCoverageData(int index, @Nullable String kindOfTopLevelType)
    {
       this.index = index;
       this.kindOfTopLevelType = kindOfTopLevelType;
+      lineCoverageInfo = new PerFileLineCoverage();
+      pathCoverageInfo = new PerFilePathCoverage();
+      dataCoverageInfo = new PerFileDataCoverage();
+   }
+
+   /**
+    * Creates the data for a file whose static information (executable lines, branches, paths, and fields) was
+    * previously gathered, and which will be identified by the given index in the current test run.
+    */
+   FileCoverageData(int index, @NotNull FileCoverageData staticData)
+   {
+      this.index = index;
+      kindOfTopLevelType = staticData.kindOfTopLevelType;
+      lineCoverageInfo = staticData.lineCoverageInfo;
+      pathCoverageInfo = staticData.pathCoverageInfo;
+      dataCoverageInfo = staticData.dataCoverageInfo;
+      classfileHashes = staticData.classfileHashes;
+   }
+
+   private synchronized void writeObject(@NotNull ObjectOutputStream out) throws IOException
+   {
+      out.defaultWriteObject();
+   }
+
+   /**
+    * Records a hash of the original classfile of a type in the source file, as it gets modified for coverage.
+    */
+   public synchronized void addClassfileHash(@NotNull String internalClassName, @NotNull byte[] classfile)
+   {
+      if (classfileHashes == null) {
+         classfileHashes = new HashMap<String, Long>(4);
+      }
+
+      CRC32 hash = new CRC32();
+      hash.update(classfile, 0, classfile.length);
+      classfileHashes.put(internalClassName, hash.getValue());
+   }
+
+   boolean hasClassfileHashes() { return classfileHashes != null; }
+
+   /**
+    * Adds the classfile hashes for the types in the source file to the given map, if they are known.
+    *
+    * @return whether the hashes are known
+    */
+   synchronized boolean addClassfileHashesTo(@NotNull Map<String, Long> classHashes)
+   {
+      if (classfileHashes == null) {
+         return false;
+      }
+
+      classHashes.putAll(classfileHashes);
+      return true;
+   }
+
+   /**
+    * Indicates whether the data gathered in a previous test run for the same source file can be merged with this
+    * one, which is the case if no type modified in both runs has a different classfile.
+    * If the classfile hashes of either run are not available, the last modification times of the top-level classfile
+    * are compared instead.
+    */
+   boolean isFromSameClassfilesAs(@NotNull FileCoverageData previousData)
+   {
+      Map<String, Long> previousHashes = previousData.classfileHashes;
+
+      if (classfileHashes == null || previousHashes == null) {
+         return lastModified == previousData.lastModified;
+      }
+
+      for (Map.Entry<String, Long> classAndHash : classfileHashes.entrySet()) {
+         Long previousHash = previousHashes.get(classAndHash.getKey());
+
+         if (previousHash != null && !previousHash.equals(classAndHash.getValue())) {
+            return false;
+         }
+      }
+
+      return true;
    }
 
    @NotNull public PerFileLineCoverage getLineCoverageData() { return lineCoverageInfo; }
@@ -63,6 +150,25 @@ public final class FileCoverageData implements Serializable
       dataCoverageInfo.mergeInformation(previousInfo.dataCoverageInfo);
    }
 
+   /**
+    * Copies the execution counts of all lines, branches, and paths in the file, together with the number of
+    * executable lines and methods, which identify the layout of the counts.
+    * Data coverage and call points are not included, as they aren't plain counts; snapshots are not supported when
+    * they are being gathered.
+    */
+   void copyExecutionCounts(@NotNull ExecutionCounts counts)
+   {
+      lineCoverageInfo.copyExecutionCounts(counts);
+      pathCoverageInfo.copyExecutionCounts(counts);
+      counts.setLayout(lineCoverageInfo.getExecutableLineCount(), pathCoverageInfo.firstLineToMethodData.size());
+   }
+
+   void setExecutionCounts(@NotNull ExecutionCounts counts)
+   {
+      int position = lineCoverageInfo.setExecutionCounts(counts, 0);
+      pathCoverageInfo.setExecutionCounts(counts, position);
+   }
+
    void reset()
    {
       lineCoverageInfo.reset();
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.io.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+/**
+ * The static coverage data (executable lines, branches, paths, and fields) for classes modified offline, before the
+ * test run, together with the names of those classes.
+ * <p/>
+ * It is written to a side file by the offline instrumenter, and read back at the start of the test run, so that
+ * each source file gets the same index as the one already embedded in the modified classes.
+ */
+public final class OfflineCoverageMetadata
+{
+   @NotNull private static final Set<String> modifiedClasses = new HashSet<String>();
+
+   private OfflineCoverageMetadata() {}
+
+   /**
+    * Returns the names of the classes modified offline, as read from the metadata file.
+    */
+   @NotNull public static Set<String> getModifiedClasses() { return modifiedClasses; }
+
+   /**
+    * Writes the static data for all source files currently in {@link CoverageData#instance()}, in index order.
+    */
+   public static void writeToFile(@NotNull File metadataFile, @NotNull Collection<String> modifiedClassNames)
+      throws IOException
+   {
+      ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(metadataFile)));
+
+      try {
+         Map<String, FileCoverageData> fileToFileData = CoverageData.instance().getFileToFileDataMap();
+         output.writeInt(fileToFileData.size());
+
+         for (Map.Entry<String, FileCoverageData> fileAndFileData : fileToFileData.entrySet()) {
+            output.writeUTF(fileAndFileData.getKey());
+            output.writeObject(fileAndFileData.getValue());
+         }
+
+         output.writeInt(modifiedClassNames.size());
+
+         for (String className : modifiedClassNames) {
+            output.writeUTF(className);
+         }
+      }
+      finally {
+         output.close();
+      }
+   }
+
+   /**
+    * Adds the source files found in the given metadata file to {@link CoverageData#instance()}, which must not yet
+    * contain any other files.
+    */
+   public static void readFromFile(@NotNull File metadataFile) throws IOException
+   {
+      ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(metadataFile)));
+
+      try {
+         CoverageData coverageData = CoverageData.instance();
+
+         for (int i = 0, n = input.readInt(); i < n; i++) {
+            String sourceFile = input.readUTF();
+            FileCoverageData staticData = (FileCoverageData) input.readObject();
+            FileCoverageData fileData = coverageData.addFile(sourceFile, staticData);
+
+            if (fileData.index != staticData.index) {
+               throw new IllegalStateException(
+                  "JMockit: coverage metadata file \"" + metadataFile + "\" must be loaded before any other class " +
+                  "is modified for coverage");
+            }
+         }
+
+         for (int i = 0, n = input.readInt(); i < n; i++) {
+            modifiedClasses.add(input.readUTF());
+         }
+      }
+      catch (ClassNotFoundException e) {
+         throw new RuntimeException(
+            "Serialized class in coverage metadata file \"" + metadataFile + "\" not found in classpath", e);
+      }
+      finally {
+         input.close();
+      }
+   }
+}
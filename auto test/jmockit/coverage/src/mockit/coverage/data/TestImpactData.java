@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.data;
+
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.integration.internal.*;
+
+/**
+ * The source files executed by each test, as identified by {@link TestSelection#getCurrentTest()}, from which a
+ * {@link TestImpactIndex} gets built at the end of the test run.
+ * <p/>
+ * A file is recorded for a test only the first time it executes while the test is running, so that the only cost for
+ * each line executed afterwards is a comparison with the last test recorded for the file.
+ */
+public final class TestImpactData
+{
+   @NotNull private static final TestImpactData instance = new TestImpactData();
+   @NotNull public static TestImpactData instance() { return instance; }
+
+   @NotNull private final Map<String, Set<FileCoverageData>> testToFiles;
+   @NotNull private final Map<String, Map<String, Long>> testToTestClassHashes;
+   @NotNull private final Map<Class<?>, Map<String, Long>> testClassToHashes;
+
+   private TestImpactData()
+   {
+      testToFiles = new HashMap<String, Set<FileCoverageData>>();
+      testToTestClassHashes = new HashMap<String, Map<String, Long>>();
+      testClassToHashes = new HashMap<Class<?>, Map<String, Long>>();
+   }
+
+   /**
+    * Records that the given file was executed by the test currently running, if any.
+    */
+   public void registerExecution(@NotNull FileCoverageData fileData)
+   {
+      String currentTest = TestSelection.getCurrentTest();
+
+      //noinspection StringEquality
+      if (currentTest != null && currentTest != fileData.lastTestExecuting) {
+         fileData.lastTestExecuting = currentTest;
+         addFileExecutedByTest(currentTest, fileData);
+      }
+   }
+
+   private synchronized void addFileExecutedByTest(@NotNull String test, @NotNull FileCoverageData fileData)
+   {
+      Set<FileCoverageData> filesExecuted = testToFiles.get(test);
+
+      if (filesExecuted == null) {
+         Class<?> testClass = TestSelection.getCurrentTestClass();
+
+         if (testClass == null || !test.startsWith(testClass.getName())) {
+            // Another test started running in the meantime, so the file can't be attributed to either one.
+            return;
+         }
+
+         filesExecuted = new HashSet<FileCoverageData>();
+         testToFiles.put(test, filesExecuted);
+         testToTestClassHashes.put(test, getTestClassHashes(testClass));
+      }
+
+      filesExecuted.add(fileData);
+   }
+
+   @NotNull private Map<String, Long> getTestClassHashes(@NotNull Class<?> testClass)
+   {
+      Map<String, Long> classHashes = testClassToHashes.get(testClass);
+
+      if (classHashes == null) {
+         classHashes = new HashMap<String, Long>();
+         TestImpactIndex.addTestClassHashes(testClass, classHashes);
+         testClassToHashes.put(testClass, classHashes);
+      }
+
+      return classHashes;
+   }
+
+   /**
+    * Gets the tests which ran, including failed ones which may not have executed any covered file.
+    */
+   @NotNull public synchronized Set<String> getTestsRun()
+   {
+      Set<String> testsRun = new HashSet<String>(testToFiles.keySet());
+      testsRun.addAll(TestSelection.getFailedTests());
+      return testsRun;
+   }
+
+   /**
+    * Builds the index of the classes covered by each test, including the test class itself.
+    * Tests which failed get left out, so that they run again instead of being skipped with their failure hidden.
+    * So do tests which executed a source file whose classfile hashes are not known, since there would be no way to
+    * tell if they are affected by changes to the file.
+    */
+   @NotNull public synchronized TestImpactIndex buildIndex()
+   {
+      TestImpactIndex index = new TestImpactIndex();
+
+      for (Map.Entry<String, Set<FileCoverageData>> testAndFiles : testToFiles.entrySet()) {
+         String test = testAndFiles.getKey();
+
+         if (TestSelection.hasFailed(test)) {
+            continue;
+         }
+
+         Map<String, Long> classHashes = getCoveredClassHashes(test, testAndFiles.getValue());
+
+         if (classHashes != null) {
+            index.addTest(test, classHashes);
+         }
+      }
+
+      return index;
+   }
+
+   @Nullable
+   private Map<String, Long> getCoveredClassHashes(@NotNull String test, @NotNull Set<FileCoverageData> filesExecuted)
+   {
+      Map<String, Long> classHashes = new HashMap<String, Long>(testToTestClassHashes.get(test));
+
+      for (FileCoverageData fileData : filesExecuted) {
+         if (!fileData.addClassfileHashesTo(classHashes)) {
+            return null;
+         }
+      }
+
+      return classHashes;
+   }
+}
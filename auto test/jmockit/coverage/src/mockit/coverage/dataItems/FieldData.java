@@ -18,7 +18,12 @@ public abstract class FieldData implements Serializable
 
    private void writeObject(@NotNull ObjectOutputStream out) throws IOException
    {
-      isCovered();
+      // Fields not accessed yet are written without a computed coverage status, since they may still get accessed
+      // after having been written as part of the static coverage data for a cached class.
+      if (readCount > 0 || writeCount > 0) {
+         isCovered();
+      }
+
       out.defaultWriteObject();
    }
 
@@ -4,6 +4,7 @@
  */
 package mockit.coverage.dataItems;
 
+import java.io.*;
 import java.util.*;
 
 import org.jetbrains.annotations.*;
@@ -14,9 +15,15 @@ public final class InstanceFieldData extends FieldData
 {
    private static final long serialVersionUID = 6991762113575259754L;
 
-   @NotNull private final transient Map<Integer, List<Integer>> testIdsToAssignments =
+   @NotNull private transient Map<Integer, List<Integer>> testIdsToAssignments =
       new HashMap<Integer, List<Integer>>();
 
+   private void readObject(@NotNull ObjectInputStream in) throws IOException, ClassNotFoundException
+   {
+      testIdsToAssignments = new HashMap<Integer, List<Integer>>();
+      in.defaultReadObject();
+   }
+
    void registerAssignment(@NotNull Object instance)
    {
       List<Integer> dataForRunningTest = getDataForRunningTest();
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage.dataItems;
@@ -23,13 +23,23 @@ public final class PerFileDataCoverage implements PerFileCoverage
 
    private transient int coveredDataItems = -1;
 
+   // Accesses to static fields recorded through integer slots, when so selected; each slot is the position of the
+   // field in "staticFieldsData":
+   @Nullable private transient volatile StaticFieldSlots staticFieldSlots;
+
    private void readObject(@NotNull ObjectInputStream in) throws IOException, ClassNotFoundException
    {
       coveredDataItems = -1;
       in.defaultReadObject();
    }
 
-   public void addField(@NotNull String className, @NotNull String fieldName, boolean isStatic)
+   private synchronized void writeObject(@NotNull ObjectOutputStream out) throws IOException
+   {
+      transferAccessesFromStaticFieldSlots();
+      out.defaultWriteObject();
+   }
+
+   public synchronized void addField(@NotNull String className, @NotNull String fieldName, boolean isStatic)
    {
       String classAndField = className + '.' + fieldName;
       allFields.add(classAndField);
@@ -58,11 +68,83 @@ public final class PerFileDataCoverage implements PerFileCoverage
       }
    }
 
-   @Nullable public StaticFieldData getStaticFieldData(@NotNull String classAndFieldNames)
+   @Nullable public synchronized StaticFieldData getStaticFieldData(@NotNull String classAndFieldNames)
    {
+      transferAccessesFromStaticFieldSlots();
       return staticFieldsData.get(classAndFieldNames);
    }
 
+   /**
+    * Returns the integer slot through which accesses to the given static field can be registered, or <tt>-1</tt> if the
+    * field has no coverage data.
+    */
+   public synchronized int getStaticFieldSlot(@NotNull String classAndFieldNames)
+   {
+      int slot = 0;
+
+      for (String staticField : staticFieldsData.keySet()) {
+         if (staticField.equals(classAndFieldNames)) {
+            return slot;
+         }
+
+         slot++;
+      }
+
+      return -1;
+   }
+
+   /**
+    * Registers an access to the static field in the given slot, without locking.
+    */
+   public void registerStaticFieldAccess(int slot, boolean read)
+   {
+      StaticFieldSlots slots = staticFieldSlots;
+
+      if (slots == null || slot >= slots.size()) {
+         slots = getStaticFieldSlotsForAllFields();
+      }
+
+      slots.registerAccess(slot, read);
+   }
+
+   @NotNull private synchronized StaticFieldSlots getStaticFieldSlotsForAllFields()
+   {
+      StaticFieldSlots slots = staticFieldSlots;
+      int slotCount = staticFieldsData.size();
+
+      if (slots == null) {
+         slots = new StaticFieldSlots(slotCount);
+         staticFieldSlots = slots;
+      }
+      else if (slots.size() < slotCount) {
+         slots = slots.copyWithSize(slotCount);
+         staticFieldSlots = slots;
+      }
+
+      return slots;
+   }
+
+   private void transferAccessesFromStaticFieldSlots()
+   {
+      StaticFieldSlots slots = staticFieldSlots;
+
+      if (slots != null) {
+         Iterator<StaticFieldData> staticFields = staticFieldsData.values().iterator();
+
+         for (int slot = 0, n = slots.size(); slot < n && staticFields.hasNext(); slot++) {
+            if (slots.transferAccesses(slot, staticFields.next())) {
+               coveredDataItems = -1;
+            }
+         }
+      }
+   }
+
+   @NotNull public synchronized Map<String, StaticFieldData> getStaticFieldsData()
+   {
+      transferAccessesFromStaticFieldSlots();
+      return staticFieldsData;
+   }
+
    public synchronized void registerReadOfStaticField(@NotNull String classAndFieldNames)
    {
       StaticFieldData staticData = getStaticFieldData(classAndFieldNames);
@@ -98,7 +180,7 @@ public final class PerFileDataCoverage implements PerFileCoverage
 
    public boolean hasFields() { return !allFields.isEmpty(); }
 
-   public boolean isCovered(@NotNull String classAndFieldNames)
+   public synchronized boolean isCovered(@NotNull String classAndFieldNames)
    {
       InstanceFieldData instanceData = getInstanceFieldData(classAndFieldNames);
 
@@ -116,8 +198,10 @@ public final class PerFileDataCoverage implements PerFileCoverage
       return staticFieldsData.size() + instanceFieldsData.size();
    }
 
-   public int getCoveredItems()
+   public synchronized int getCoveredItems()
    {
+      transferAccessesFromStaticFieldSlots();
+
       if (coveredDataItems >= 0) {
          return coveredDataItems;
       }
@@ -150,8 +234,9 @@ public final class PerFileDataCoverage implements PerFileCoverage
       return CoveragePercentage.calculate(getCoveredItems(), totalFields);
    }
 
-   public void mergeInformation(@NotNull PerFileDataCoverage previousInfo)
+   public synchronized void mergeInformation(@NotNull PerFileDataCoverage previousInfo)
    {
+      transferAccessesFromStaticFieldSlots();
       addInfoFromPreviousTestRun(staticFieldsData, previousInfo.staticFieldsData);
       addFieldsFromPreviousTestRunIfAbsent(staticFieldsData, previousInfo.staticFieldsData);
 
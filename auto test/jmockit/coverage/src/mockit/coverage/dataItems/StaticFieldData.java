@@ -1,9 +1,10 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage.dataItems;
 
+import java.io.*;
 import java.util.*;
 
 import org.jetbrains.annotations.*;
@@ -14,7 +15,13 @@ public final class StaticFieldData extends FieldData
 {
    private static final long serialVersionUID = -6596622341651601060L;
 
-   @NotNull private final transient Map<Integer, Boolean> testIdsToAssignments = new HashMap<Integer, Boolean>();
+   @NotNull private transient Map<Integer, Boolean> testIdsToAssignments = new HashMap<Integer, Boolean>();
+
+   private void readObject(@NotNull ObjectInputStream in) throws IOException, ClassNotFoundException
+   {
+      testIdsToAssignments = new HashMap<Integer, Boolean>();
+      in.defaultReadObject();
+   }
 
    void registerAssignment()
    {
@@ -30,6 +37,16 @@ public final class StaticFieldData extends FieldData
       readCount++;
    }
 
+   void addAccessesFromSlot(int reads, int writes, boolean coveredInSlot)
+   {
+      readCount += reads;
+      writeCount += writes;
+
+      if (coveredInSlot) {
+         covered = true;
+      }
+   }
+
    @Override
    void markAsCoveredIfNoUnreadValuesAreLeft()
    {
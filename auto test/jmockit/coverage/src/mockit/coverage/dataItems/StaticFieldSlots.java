@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.dataItems;
+
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.internal.state.*;
+
+/**
+ * Accesses to the static fields of a source file, recorded in primitive arrays indexed by the integer slot assigned to
+ * each field when its accessing code was modified, with no locking and no field name lookups.
+ * <p/>
+ * For each slot, the last access is kept as the id of the test which made it, shifted left by one bit, with the lowest
+ * bit set if it was a read; when a different test accesses the field, a field left read by the previous test is
+ * marked as covered.
+ * Concurrent accesses to the same field can then lose counts, which is accepted in exchange for the lower overhead.
+ */
+final class StaticFieldSlots
+{
+   @NotNull private final int[] lastAccesses;
+   @NotNull private final int[] readCounts;
+   @NotNull private final int[] writeCounts;
+   @NotNull private final boolean[] covered;
+
+   StaticFieldSlots(int slotCount)
+   {
+      lastAccesses = new int[slotCount];
+      readCounts = new int[slotCount];
+      writeCounts = new int[slotCount];
+      covered = new boolean[slotCount];
+   }
+
+   private StaticFieldSlots(@NotNull StaticFieldSlots previousSlots, int slotCount)
+   {
+      lastAccesses = Arrays.copyOf(previousSlots.lastAccesses, slotCount);
+      readCounts = Arrays.copyOf(previousSlots.readCounts, slotCount);
+      writeCounts = Arrays.copyOf(previousSlots.writeCounts, slotCount);
+      covered = Arrays.copyOf(previousSlots.covered, slotCount);
+   }
+
+   int size() { return lastAccesses.length; }
+
+   @NotNull StaticFieldSlots copyWithSize(int slotCount) { return new StaticFieldSlots(this, slotCount); }
+
+   void registerAccess(int slot, boolean read)
+   {
+      int testAccessing = TestRun.getTestId() + 1;
+      int lastAccess = lastAccesses[slot];
+
+      if ((lastAccess & 1) != 0 && lastAccess >>> 1 != testAccessing) {
+         covered[slot] = true;
+      }
+
+      if (read) {
+         lastAccesses[slot] = testAccessing << 1 | 1;
+         readCounts[slot]++;
+      }
+      else {
+         lastAccesses[slot] = testAccessing << 1;
+         writeCounts[slot]++;
+      }
+   }
+
+   /**
+    * Adds the accesses recorded in the given slot since the previous transfer to the field data, if any.
+    *
+    * @return <tt>true</tt> if there was anything to transfer, <tt>false</tt> otherwise
+    */
+   boolean transferAccesses(int slot, @NotNull StaticFieldData staticData)
+   {
+      int reads = readCounts[slot];
+      int writes = writeCounts[slot];
+      boolean coveredSoFar = covered[slot] || (lastAccesses[slot] & 1) != 0;
+
+      if (reads == 0 && writes == 0 && !coveredSoFar) {
+         return false;
+      }
+
+      readCounts[slot] = 0;
+      writeCounts[slot] = 0;
+
+      if (coveredSoFar) {
+         // Once covered, the field stays so; only new accesses need to be transferred from now on.
+         covered[slot] = false;
+         lastAccesses[slot] &= ~1;
+      }
+
+      staticData.addAccessesFromSlot(reads, writes, coveredSoFar);
+      return true;
+   }
+}
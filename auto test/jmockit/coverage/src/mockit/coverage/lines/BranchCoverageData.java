@@ -7,6 +7,7 @@ package mockit.coverage.lines;
 import org.jetbrains.annotations.*;
 
 import mockit.coverage.*;
+import mockit.coverage.data.*;
 import mockit.external.asm4.*;
 
 /**
@@ -66,6 +67,19 @@ public final class BranchCoverageData extends LineSegmentData
       jumpExecutionCount += previousData.jumpExecutionCount;
    }
 
+   void copyExecutionCounts(@NotNull ExecutionCounts counts)
+   {
+      counts.add(executionCount);
+      counts.add(jumpExecutionCount);
+   }
+
+   int setExecutionCounts(@NotNull ExecutionCounts counts, int position)
+   {
+      executionCount = counts.get(position);
+      jumpExecutionCount = counts.get(position + 1);
+      return position + 2;
+   }
+
    @Override
    void reset()
    {
@@ -9,6 +9,7 @@ import java.util.*;
 import org.jetbrains.annotations.*;
 
 import mockit.coverage.*;
+import mockit.coverage.data.*;
 import mockit.external.asm4.*;
 
 /**
@@ -125,6 +126,22 @@ public final class LineCoverageData extends LineSegmentData
       }
    }
 
+   void copyBranchCounts(@NotNull ExecutionCounts counts)
+   {
+      for (int i = 0, n = branches.size(); i < n; i++) {
+         branches.get(i).copyExecutionCounts(counts);
+      }
+   }
+
+   int setBranchCounts(@NotNull ExecutionCounts counts, int position)
+   {
+      for (BranchCoverageData branch : branches) {
+         position = branch.setExecutionCounts(counts, position);
+      }
+
+      return position;
+   }
+
    @Override
    public void reset()
    {
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage.lines;
@@ -21,15 +21,42 @@ public class LineSegmentData implements Serializable
 
    // Runtime data:
    int executionCount;
-   @Nullable private List<CallPoint> callPoints;
 
-   public final void markAsUnreachable() { unreachable = true; }
+   // Ids of the interned call points, in the order of execution; serialized as the call points themselves, so that
+   // each distinct call point is only written once to the stream:
+   @Nullable private transient int[] callPointIds;
+   private transient int callPointCount;
 
-   boolean acceptsAdditionalCallPoints()
+   private void writeObject(@NotNull ObjectOutputStream out) throws IOException
    {
-      return callPoints == null || callPoints.size() < MAX_CALL_POINTS;
+      out.defaultWriteObject();
+      out.writeInt(callPointCount);
+
+      for (int i = 0; i < callPointCount; i++) {
+         //noinspection ConstantConditions
+         out.writeObject(CallPoint.getCallPoint(callPointIds[i]));
+      }
    }
 
+   private void readObject(@NotNull ObjectInputStream in) throws IOException, ClassNotFoundException
+   {
+      in.defaultReadObject();
+      callPointCount = in.readInt();
+
+      if (callPointCount > 0) {
+         callPointIds = new int[callPointCount];
+
+         for (int i = 0; i < callPointCount; i++) {
+            CallPoint callPoint = (CallPoint) in.readObject();
+            callPointIds[i] = callPoint.getId();
+         }
+      }
+   }
+
+   public final void markAsUnreachable() { unreachable = true; }
+
+   boolean acceptsAdditionalCallPoints() { return callPointCount < MAX_CALL_POINTS; }
+
    final void registerExecution(@NotNull CallPoint callPoint)
    {
       addCallPoint(callPoint);
@@ -38,11 +65,14 @@ public class LineSegmentData implements Serializable
 
    private void addCallPoint(@NotNull CallPoint callPoint)
    {
-      if (callPoints == null) {
-         callPoints = new ArrayList<CallPoint>(MAX_CALL_POINTS);
+      if (callPointIds == null) {
+         callPointIds = new int[2];
+      }
+      else if (callPointCount == callPointIds.length) {
+         callPointIds = Arrays.copyOf(callPointIds, 2 * callPointCount);
       }
 
-      callPoints.add(callPoint);
+      callPointIds[callPointCount++] = callPoint.getId();
    }
 
    final void addCallPointIfAny(@Nullable CallPoint callPoint)
@@ -52,8 +82,26 @@ public class LineSegmentData implements Serializable
       }
    }
 
-   public final boolean containsCallPoints() { return callPoints != null; }
-   @Nullable public final List<CallPoint> getCallPoints() { return callPoints; }
+   public final boolean containsCallPoints() { return callPointCount > 0; }
+
+   /**
+    * Expands the call point ids stored for this segment into a new list, or returns {@code null} if there are none.
+    */
+   @Nullable public final List<CallPoint> getCallPoints()
+   {
+      if (callPointCount == 0) {
+         return null;
+      }
+
+      List<CallPoint> callPoints = new ArrayList<CallPoint>(callPointCount);
+
+      for (int i = 0; i < callPointCount; i++) {
+         //noinspection ConstantConditions
+         callPoints.add(CallPoint.getCallPoint(callPointIds[i]));
+      }
+
+      return callPoints;
+   }
 
    public int getExecutionCount() { return executionCount; }
    public boolean isCovered() { return unreachable || executionCount > 0; }
@@ -62,13 +110,20 @@ public class LineSegmentData implements Serializable
    {
       executionCount += previousData.executionCount;
 
-      if (previousData.callPoints != null) {
-         if (callPoints != null) {
-            callPoints.addAll(0, previousData.callPoints);
-         }
-         else {
-            callPoints = previousData.callPoints;
+      int previousCount = previousData.callPointCount;
+
+      if (previousCount > 0) {
+         int[] mergedIds = new int[previousCount + callPointCount];
+         //noinspection ConstantConditions
+         System.arraycopy(previousData.callPointIds, 0, mergedIds, 0, previousCount);
+
+         if (callPointCount > 0) {
+            //noinspection ConstantConditions
+            System.arraycopy(callPointIds, 0, mergedIds, previousCount, callPointCount);
          }
+
+         callPointIds = mergedIds;
+         callPointCount = mergedIds.length;
       }
    }
 
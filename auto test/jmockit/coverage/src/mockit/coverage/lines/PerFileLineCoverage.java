@@ -22,10 +22,16 @@ public final class PerFileLineCoverage implements PerFileCoverage
    @NotNull private int[] executionCounts = NO_EXECUTIONS_YET;
    @NotNull private transient LineCoverageData sharedLineData;
 
+   // Used by the probes of the "lineOnce" instrumentation profile to skip lines already executed; when the guard array
+   // needs to grow, the previous one is kept, since modified classes may still be checking it:
+   @Nullable private transient List<boolean[]> executedLineGuards;
+
    // Computed on demand:
    private int lastLine;
    private transient int totalSegments;
    private transient int coveredSegments;
+   private transient int totalBranches;
+   private transient int coveredBranches;
 
    public PerFileLineCoverage()
    {
@@ -46,7 +52,12 @@ public final class PerFileLineCoverage implements PerFileCoverage
       }
    }
 
-   public void addLine(int line)
+   private synchronized void writeObject(@NotNull ObjectOutputStream out) throws IOException
+   {
+      out.defaultWriteObject();
+   }
+
+   public synchronized void addLine(int line)
    {
       if (!lineToLineData.containsKey(line)) {
          lineToLineData.put(line, null);
@@ -57,24 +68,21 @@ public final class PerFileLineCoverage implements PerFileCoverage
          // after another has already executed some code.
          if (executionCounts != NO_EXECUTIONS_YET && line >= executionCounts.length) {
             int[] newCounts = new int[line + 30];
-
-            synchronized (this) {
-               System.arraycopy(executionCounts, 0, newCounts, 0, executionCounts.length);
-               executionCounts = newCounts;
-            }
+            System.arraycopy(executionCounts, 0, newCounts, 0, executionCounts.length);
+            executionCounts = newCounts;
          }
 
          lastLine = line;
       }
    }
 
-   public int addBranch(int line, @NotNull Label jumpSource, @NotNull Label jumpTarget)
+   public synchronized int addBranch(int line, @NotNull Label jumpSource, @NotNull Label jumpTarget)
    {
       LineCoverageData lineData = getOrCreateLineData(line);
       return lineData.addBranch(jumpSource, jumpTarget);
    }
 
-   @NotNull private LineCoverageData getOrCreateLineData(int line)
+   @NotNull private synchronized LineCoverageData getOrCreateLineData(int line)
    {
       LineCoverageData lineData = lineToLineData.get(line);
 
@@ -86,13 +94,13 @@ public final class PerFileLineCoverage implements PerFileCoverage
       return lineData;
    }
 
-   @NotNull public BranchCoverageData getBranchData(int line, int index)
+   @NotNull public synchronized BranchCoverageData getBranchData(int line, int index)
    {
       LineCoverageData lineData = lineToLineData.get(line);
       return lineData.getBranchData(index);
    }
 
-   public int getBranchCount(int line)
+   public synchronized int getBranchCount(int line)
    {
       LineCoverageData lineData = lineToLineData.get(line);
       return lineData == null ? 0 : lineData.getBranches().size();
@@ -173,11 +181,29 @@ public final class PerFileLineCoverage implements PerFileCoverage
       return CoveragePercentage.calculate(coveredSegments, totalSegments);
    }
 
+   /**
+    * Gets the number of branches in all lines, which are also counted as line segments by {@link #getTotalItems()}.
+    */
+   public int getTotalBranches()
+   {
+      computeValuesIfNeeded();
+      return totalBranches;
+   }
+
+   /**
+    * Gets the number of branches executed in either direction, or unreachable, in all lines.
+    */
+   public int getCoveredBranches()
+   {
+      computeValuesIfNeeded();
+      return coveredBranches;
+   }
+
    private void computeValuesIfNeeded()
    {
       if (totalSegments >= 0) return;
 
-      totalSegments = coveredSegments = 0;
+      totalSegments = coveredSegments = totalBranches = coveredBranches = 0;
 
       for (int line = 1, n = lastLine; line <= n; line++) {
          if (lineToLineData.containsKey(line)) {
@@ -193,6 +219,14 @@ public final class PerFileLineCoverage implements PerFileCoverage
             else {
                totalSegments += lineData.getNumberOfSegments();
                coveredSegments += lineData.getNumberOfCoveredSegments();
+
+               for (BranchCoverageData branchData : lineData.getBranches()) {
+                  totalBranches++;
+
+                  if (branchData.isCovered()) {
+                     coveredBranches++;
+                  }
+               }
             }
          }
       }
@@ -208,12 +242,45 @@ public final class PerFileLineCoverage implements PerFileCoverage
       return lineData == null ? 1 : lineData.getNumberOfSegments();
    }
 
+   /**
+    * Marks the given line as executed in the array of guards checked by the probes of the "lineOnce" profile, so that
+    * later executions of the line skip the call to the probe.
+    *
+    * @return the current guard array, which has an element for every line added so far
+    */
+   @NotNull public synchronized boolean[] markLineAsExecutedOnce(int line)
+   {
+      List<boolean[]> guards = executedLineGuards;
+
+      if (guards == null) {
+         executedLineGuards = guards = new ArrayList<boolean[]>(1);
+      }
+
+      boolean[] guard = guards.isEmpty() ? null : guards.get(guards.size() - 1);
+
+      if (guard == null || guard.length <= lastLine) {
+         boolean[] newGuard = new boolean[lastLine + 1];
+
+         if (guard != null) {
+            System.arraycopy(guard, 0, newGuard, 0, guard.length);
+         }
+
+         guards.add(newGuard);
+         guard = newGuard;
+      }
+
+      guard[line] = true;
+      return guard;
+   }
+
    public void reset()
    {
       for (int i = 1; i < executionCounts.length; i++) {
          executionCounts[i] = 0;
       }
 
+      resetExecutedLineGuards();
+
       for (LineCoverageData lineData : lineToLineData.values()) {
          if (lineData != null) {
             lineData.reset();
@@ -230,17 +297,20 @@ public final class PerFileLineCoverage implements PerFileCoverage
 
       for (Map.Entry<Integer, LineCoverageData> lineAndInfo : lineToLineData.entrySet()) {
          Integer line = lineAndInfo.getKey();
-         LineCoverageData previousLineInfo = previousInfo.get(line);
 
-         if (previousLineInfo != null) {
-            LineCoverageData lineInfo = lineAndInfo.getValue();
+         if (previousInfo.containsKey(line)) {
+            LineCoverageData previousLineInfo = previousInfo.get(line);
 
-            if (lineInfo == null) {
-               lineInfo = new LineCoverageData();
-               lineAndInfo.setValue(lineInfo);
-            }
+            if (previousLineInfo != null) {
+               LineCoverageData lineInfo = lineAndInfo.getValue();
 
-            lineInfo.addCountsFromPreviousTestRun(previousLineInfo);
+               if (lineInfo == null) {
+                  lineInfo = new LineCoverageData();
+                  lineAndInfo.setValue(lineInfo);
+               }
+
+               lineInfo.addCountsFromPreviousTestRun(previousLineInfo);
+            }
 
             if (previousRunHadLinesExecuted) {
                createExecutionCountsArrayIfNeeded(previousCoverage);
@@ -262,14 +332,122 @@ public final class PerFileLineCoverage implements PerFileCoverage
             }
          }
       }
+
+      if (previousCoverage.lastLine > lastLine) {
+         lastLine = previousCoverage.lastLine;
+
+         if (executionCounts != NO_EXECUTIONS_YET) {
+            growExecutionCountsIfNeeded(lastLine + 1);
+         }
+      }
+   }
+
+   /**
+    * Makes sure the execution counts array can hold the lines of both data sets, since either one may have lines
+    * the other doesn't, as happens for files with classes which were only loaded in some of the test runs.
+    */
+   private synchronized void resetExecutedLineGuards()
+   {
+      if (executedLineGuards != null) {
+         for (boolean[] guard : executedLineGuards) {
+            Arrays.fill(guard, false);
+         }
+      }
    }
 
    private void createExecutionCountsArrayIfNeeded(@NotNull PerFileLineCoverage previousCoverage)
    {
-      if (executionCounts == NO_EXECUTIONS_YET) {
-         executionCounts = new int[previousCoverage.executionCounts.length];
+      int length = Math.max(Math.max(lastLine, previousCoverage.lastLine) + 1, previousCoverage.executionCounts.length);
+      growExecutionCountsIfNeeded(length);
+   }
+
+   private void growExecutionCountsIfNeeded(int length)
+   {
+      if (executionCounts.length < length) {
+         int[] newCounts = new int[length];
+         System.arraycopy(executionCounts, 0, newCounts, 0, executionCounts.length);
+         executionCounts = newCounts;
       }
    }
 
    public Collection<LineCoverageData> getAllLines() { return lineToLineData.values(); }
+
+   /**
+    * Copies the execution counts of all lines and then of all branches, in order of line number.
+    * The map of lines is read while holding the same lock used to access it elsewhere; the counts themselves are copied
+    * without blocking the threads which may be updating them.
+    */
+   public void copyExecutionCounts(@NotNull ExecutionCounts counts)
+   {
+      int[] lineCounts;
+      int n;
+      LineCoverageData[] linesWithData;
+
+      synchronized (this) {
+         lineCounts = executionCounts;
+         n = lastLine;
+         linesWithData = new LineCoverageData[n + 1];
+
+         for (int line = 1; line <= n; line++) {
+            linesWithData[line] = lineToLineData.get(line);
+         }
+      }
+
+      for (int line = 1; line <= n; line++) {
+         counts.add(line < lineCounts.length ? lineCounts[line] : 0);
+      }
+
+      for (int line = 1; line <= n; line++) {
+         LineCoverageData lineData = linesWithData[line];
+
+         if (lineData != null) {
+            lineData.copyBranchCounts(counts);
+         }
+      }
+   }
+
+   /**
+    * Replaces the execution counts of all lines and branches with those copied by
+    * {@link #copyExecutionCounts(ExecutionCounts)}, starting at the given position.
+    *
+    * @return the position of the first count not belonging to this file
+    */
+   public int setExecutionCounts(@NotNull ExecutionCounts counts, int position)
+   {
+      int n = lastLine;
+
+      if (executionCounts.length <= n && hasNonZeroCount(counts, position, n)) {
+         int[] newCounts = new int[n + 1];
+         System.arraycopy(executionCounts, 0, newCounts, 0, executionCounts.length);
+         executionCounts = newCounts;
+      }
+
+      for (int line = 1; line <= n; line++, position++) {
+         if (line < executionCounts.length) {
+            executionCounts[line] = counts.get(position);
+         }
+      }
+
+      for (int line = 1; line <= n; line++) {
+         LineCoverageData lineData = lineToLineData.get(line);
+
+         if (lineData != null) {
+            position = lineData.setBranchCounts(counts, position);
+         }
+      }
+
+      initializeCache();
+      return position;
+   }
+
+   private static boolean hasNonZeroCount(@NotNull ExecutionCounts counts, int position, int numberOfCounts)
+   {
+      for (int i = position, n = position + numberOfCounts; i < n; i++) {
+         if (counts.get(i) != 0) {
+            return true;
+         }
+      }
+
+      return false;
+   }
 }
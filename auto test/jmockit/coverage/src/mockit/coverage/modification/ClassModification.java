@@ -4,102 +4,50 @@
  */
 package mockit.coverage.modification;
 
-import java.lang.instrument.*;
 import java.security.*;
 import java.util.*;
 
 import org.jetbrains.annotations.*;
 
-import mockit.coverage.standalone.*;
+import mockit.coverage.data.*;
+
 import mockit.external.asm4.*;
 
 public final class ClassModification
 {
-   @NotNull private final Set<String> modifiedClasses;
-   @NotNull final List<ProtectionDomain> protectionDomains;
+   @NotNull private final InstrumentedClasses instrumentedClasses;
    @NotNull private final ClassSelection classSelection;
+   @Nullable private final InstrumentedClassCache classCache;
 
    public ClassModification()
    {
-      modifiedClasses = new HashSet<String>();
-      protectionDomains = new ArrayList<ProtectionDomain>();
+      instrumentedClasses = new InstrumentedClasses(OfflineCoverageMetadata.getModifiedClasses());
       classSelection = new ClassSelection();
-      redefineClassesAlreadyLoadedForCoverage();
-   }
-
-   private void redefineClassesAlreadyLoadedForCoverage()
-   {
-      Instrumentation inst = Startup.instrumentation();
-      Class<?>[] previousLoadedClasses = {};
-
-      while (true) {
-         Class<?>[] loadedClasses = inst.getAllLoadedClasses();
-         if (loadedClasses.length <= previousLoadedClasses.length) break;
-         redefineClassesForCoverage(previousLoadedClasses, loadedClasses);
-         previousLoadedClasses = loadedClasses;
-      }
-   }
-
-   private void redefineClassesForCoverage(@NotNull Class<?>[] previousClasses, @NotNull Class<?>[] newClasses)
-   {
-      int m = previousClasses.length;
-
-      for (int i = 0, n = newClasses.length; i < n; i++) {
-         Class<?> loadedClass = newClasses[i];
-
-         if (
-            (i >= m || loadedClass != previousClasses[i]) &&
-            loadedClass.getClassLoader() != null && !loadedClass.isAnnotation() && !loadedClass.isSynthetic() &&
-            isToBeConsideredForCoverage(loadedClass.getName(), loadedClass.getProtectionDomain())
-         ) {
-            redefineClassForCoverage(loadedClass);
-         }
-      }
+      classCache = InstrumentedClassCache.createIfEnabled();
+      new ClassesAlreadyLoaded(this).redefineClassesForCoverage();
    }
 
-   private void redefineClassForCoverage(@NotNull Class<?> loadedClass)
+   void registerModifiedClass(@NotNull String className, @NotNull ProtectionDomain pd)
    {
-      byte[] modifiedClassfile = readAndModifyClassForCoverage(loadedClass);
-
-      if (modifiedClassfile != null) {
-         redefineClassForCoverage(loadedClass, modifiedClassfile);
-         registerModifiedClass(loadedClass.getName(), loadedClass.getProtectionDomain());
-      }
+      instrumentedClasses.register(className, pd);
    }
 
-   private void registerModifiedClass(@NotNull String className, @NotNull ProtectionDomain pd)
+   @NotNull List<ProtectionDomain> getProtectionDomainsOfModifiedClasses()
    {
-      modifiedClasses.add(className);
-
-      if (pd.getClassLoader() != null && pd.getCodeSource() != null && pd.getCodeSource().getLocation() != null) {
-         addProtectionDomainIfHasUniqueNewPath(pd);
-      }
+      return instrumentedClasses.getProtectionDomainsWithUniquePaths();
    }
 
-   private void addProtectionDomainIfHasUniqueNewPath(ProtectionDomain newPD)
+   /**
+    * Modifies a class already loaded by the JVM, which may be called concurrently for classes from different source
+    * files.
+    */
+   @Nullable byte[] modifyLoadedClassForCoverage(@NotNull Class<?> loadedClass, @NotNull ClassReader cr)
    {
-      String newPath = newPD.getCodeSource().getLocation().getPath();
-
-      for (int i = protectionDomains.size() - 1; i >= 0; i--) {
-         ProtectionDomain previousPD = protectionDomains.get(i);
-         String previousPath = previousPD.getCodeSource().getLocation().getPath();
+      ClassLoader loader = loadedClass.getClassLoader();
 
-         if (previousPath.startsWith(newPath)) {
-            return;
-         }
-         else if (newPath.startsWith(previousPath)) {
-            protectionDomains.set(i, newPD);
-            return;
-         }
-      }
-
-      protectionDomains.add(newPD);
-   }
-
-   @Nullable private byte[] readAndModifyClassForCoverage(@NotNull Class<?> aClass)
-   {
       try {
-         return modifyClassForCoverage(aClass);
+         return modifyLoadedClassForCoverage(
+            loadedClass.getName(), cr, loader == null ? CoverageModifier.class.getClassLoader() : loader);
       }
       catch (VisitInterruptedException ignore) {
          // Ignore the class if the modification was refused for some reason.
@@ -114,39 +62,100 @@ public final class ClassModification
       return null;
    }
 
-   @Nullable private byte[] modifyClassForCoverage(@NotNull Class<?> aClass)
+   @NotNull
+   private byte[] modifyLoadedClassForCoverage(
+      @NotNull String className, @NotNull ClassReader cr, @NotNull ClassLoader definingLoader)
    {
-      String className = aClass.getName();
       byte[] modifiedBytecode = CoverageModifier.recoverModifiedByteCodeIfAvailable(className);
 
+      // Cached classfiles may have been modified with line guards, which a redefinition can't add.
+      if (modifiedBytecode == null && !CoverageModifier.isWithLineGuards()) {
+         modifiedBytecode = findModifiedClassInCache(className, cr.b, definingLoader, true);
+      }
+
       if (modifiedBytecode != null) {
          return modifiedBytecode;
       }
 
-      ClassReader cr = CoverageModifier.createClassReader(aClass);
+      CoverageModifier modifier = CoverageModifier.forClassAlreadyLoaded(cr, classCache != null, definingLoader);
+      return modifyClassForCoverage(cr, modifier);
+   }
+
+   @Nullable
+   private byte[] findModifiedClassInCache(
+      @NotNull String className, @NotNull byte[] classBytecode, @NotNull ClassLoader definingLoader,
+      boolean forClassToBeLoaded)
+   {
+      return classCache == null ?
+         null : classCache.findModifiedClassfile(className, classBytecode, definingLoader, forClassToBeLoaded);
+   }
 
-      return cr == null ? null : modifyClassForCoverage(cr);
+   @NotNull private byte[] modifyClassForCoverage(@NotNull ClassReader cr, @NotNull ClassLoader definingLoader)
+   {
+      CoverageModifier modifier = new CoverageModifier(cr, classCache != null, definingLoader);
+      return modifyClassForCoverage(cr, modifier);
    }
 
-   @NotNull private byte[] modifyClassForCoverage(@NotNull ClassReader cr)
+   @NotNull private byte[] modifyClassForCoverage(@NotNull ClassReader cr, @NotNull CoverageModifier modifier)
    {
-      CoverageModifier modifier = new CoverageModifier(cr);
       cr.accept(modifier, 0);
+
+      if (classCache != null && modifier.isCacheable()) {
+         return classCache.addModifiedClass(cr.b, modifier);
+      }
+
       return modifier.toByteArray();
    }
 
-   private void redefineClassForCoverage(@NotNull Class<?> loadedClass, @NotNull byte[] modifiedClassfile)
+   /**
+    * Registers the static coverage data for a class which was not loaded by the JVM.
+    * The class still goes through the same modification as a loaded class, since that is what registers its data, but
+    * the resulting classfiles, including those of inner classes, are discarded unless stored in the cache of
+    * instrumented classes.
+    * May be called concurrently for classes from different source files.
+    */
+   void gatherStaticDataForClassNotLoaded(
+      @NotNull String className, @NotNull ClassReader cr, @NotNull ClassLoader loaderOfInnerClasses)
    {
-      ClassDefinition[] classDefs = {new ClassDefinition(loadedClass, modifiedClassfile)};
-
       try {
-         Startup.instrumentation().redefineClasses(classDefs);
+         if (findModifiedClassInCache(className, cr.b, loaderOfInnerClasses, false) == null) {
+            CoverageModifier modifier =
+               CoverageModifier.forClassNotLoaded(cr, classCache != null, loaderOfInnerClasses);
+            cr.accept(modifier, 0);
+
+            if (classCache != null && modifier.isCacheable()) {
+               classCache.addModifiedClass(cr.b, modifier);
+            }
+         }
       }
-      catch (ClassNotFoundException e) {
-         throw new RuntimeException(e);
+      catch (VisitInterruptedException ignore) {
+         // Ignore the class if the modification was refused for some reason.
       }
-      catch (UnmodifiableClassException e) {
-         throw new RuntimeException(e);
+      catch (RuntimeException e) {
+         e.printStackTrace();
+      }
+      catch (AssertionError e) {
+         e.printStackTrace();
+      }
+   }
+
+   /**
+    * Reports how many inner classes were modified together with their outer classes, but never loaded, and how many
+    * were left to be modified on their own because the memory bound for those modified ahead of time was reached.
+    */
+   public void reportInnerClassesNotLoaded()
+   {
+      int unusedCount = CoverageModifier.getUnusedInnerClassCount();
+      int deferredCount = CoverageModifier.getDeferredInnerClassCount();
+
+      if (unusedCount > 0) {
+         System.out.println(
+            "JMockit: " + unusedCount + " inner classes were modified along with their outer classes but not loaded");
+      }
+
+      if (deferredCount > 0) {
+         System.out.println(
+            "JMockit: " + deferredCount + " inner classes were only modified when loaded, to limit memory usage");
       }
    }
 
@@ -154,44 +163,60 @@ public final class ClassModification
 
    boolean isToBeConsideredForCoverage(@NotNull String className, @NotNull ProtectionDomain protectionDomain)
    {
-      return !modifiedClasses.contains(className) && classSelection.isSelected(className, protectionDomain);
+      return !instrumentedClasses.contains(className) && classSelection.isSelected(className, protectionDomain);
    }
 
+   /**
+    * Modifies a class being loaded, unless not selected for coverage or already modified.
+    * May be called concurrently from parallel-capable class loaders, in which case only the first thread to claim a
+    * given class modifies it.
+    */
    @Nullable
    public byte[] modifyClass(
-      @NotNull String className, @NotNull ProtectionDomain protectionDomain, @NotNull byte[] originalClassfile)
+      @NotNull String className, @NotNull ClassLoader definingLoader, @NotNull ProtectionDomain protectionDomain,
+      @NotNull byte[] originalClassfile)
    {
-      boolean modifyClassForCoverage = isToBeConsideredForCoverage(className, protectionDomain);
+      if (
+         instrumentedClasses.contains(className) || !classSelection.isSelected(className, protectionDomain) ||
+         !instrumentedClasses.claim(className)
+      ) {
+         return null;
+      }
 
-      if (modifyClassForCoverage) {
-         try {
-            byte[] modifiedClassfile = modifyClassForCoverage(className, originalClassfile);
-            registerModifiedClass(className, protectionDomain);
-            return modifiedClassfile;
-         }
-         catch (VisitInterruptedException ignore) {
-            // Ignore the class if the modification was refused for some reason.
-         }
-         catch (RuntimeException e) {
-            e.printStackTrace();
-         }
-         catch (AssertionError e) {
-            e.printStackTrace();
-         }
+      try {
+         byte[] modifiedClassfile = modifyClassForCoverage(className, originalClassfile, definingLoader);
+         instrumentedClasses.addProtectionDomain(protectionDomain);
+         return modifiedClassfile;
+      }
+      catch (VisitInterruptedException ignore) {
+         // Ignore the class if the modification was refused for some reason.
+      }
+      catch (RuntimeException e) {
+         e.printStackTrace();
+      }
+      catch (AssertionError e) {
+         e.printStackTrace();
       }
 
+      instrumentedClasses.release(className);
       return null;
    }
 
-   @NotNull private byte[] modifyClassForCoverage(@NotNull String className, @NotNull byte[] classBytecode)
+   @NotNull
+   private byte[] modifyClassForCoverage(
+      @NotNull String className, @NotNull byte[] classBytecode, @NotNull ClassLoader definingLoader)
    {
       byte[] modifiedBytecode = CoverageModifier.recoverModifiedByteCodeIfAvailable(className);
 
+      if (modifiedBytecode == null) {
+         modifiedBytecode = findModifiedClassInCache(className, classBytecode, definingLoader, true);
+      }
+
       if (modifiedBytecode != null) {
          return modifiedBytecode;
       }
 
       ClassReader cr = new ClassReader(classBytecode);
-      return modifyClassForCoverage(cr);
+      return modifyClassForCoverage(cr, definingLoader);
    }
 }
@@ -93,6 +93,29 @@ final class ClassSelection
       return codeSourceLocation != null && !isClassFromExternalLibrary(codeSourceLocation.getPath());
    }
 
+   /**
+    * Selects a class to be modified offline, outside of the JVM where tests run; the "classes" and "excludes"
+    * properties are honored, but all other classes from the given input paths are selected.
+    */
+   boolean isSelectedForOfflineModification(@NotNull String className)
+   {
+      if (
+         className.startsWith("mockit.") || className.startsWith("org.junit.") || className.startsWith("junit.") ||
+         className.startsWith("org.testng.")
+      ) {
+         return false;
+      }
+
+      if (classesToExclude != null && classesToExclude.reset(className).matches()) {
+         return false;
+      }
+      else if (testCode != null && testCode.reset(className).matches()) {
+         return false;
+      }
+
+      return classesToInclude == null || classesToInclude.reset(className).matches();
+   }
+
    private boolean canAccessJMockitFromClassToBeMeasured(@NotNull ClassLoader loaderOfClassToBeMeasured)
    {
       try {
@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.lang.instrument.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+import mockit.coverage.standalone.*;
+import mockit.external.asm4.*;
+
+/**
+ * Modifies for coverage the eligible classes already loaded by the JVM when the coverage tool gets initialized, as
+ * happens when attaching it to a running application.
+ * <p/>
+ * Classes are modified in parallel, except that those from the same source file are modified by the same thread since
+ * they share coverage data. Modified classes are then redefined in batches, so that many classes get redefined at
+ * each JVM safepoint.
+ */
+final class ClassesAlreadyLoaded
+{
+   private static final int MAX_CLASSES_PER_REDEFINITION = 500;
+   private static final String THREAD_NAME = "JMockit Coverage startup";
+
+   @NotNull private final ClassModification classModification;
+   private int classesRedefined;
+
+   ClassesAlreadyLoaded(@NotNull ClassModification classModification) { this.classModification = classModification; }
+
+   void redefineClassesForCoverage()
+   {
+      long startTime = System.currentTimeMillis();
+      Instrumentation inst = Startup.instrumentation();
+      Class<?>[] previousLoadedClasses = {};
+
+      while (true) {
+         Class<?>[] loadedClasses = inst.getAllLoadedClasses();
+         if (loadedClasses.length <= previousLoadedClasses.length) break;
+
+         List<Class<?>> classesToModify = selectClassesToModify(previousLoadedClasses, loadedClasses);
+
+         if (!classesToModify.isEmpty()) {
+            List<ClassDefinition> classDefs = modifyClasses(classesToModify);
+            redefineClasses(classDefs);
+         }
+
+         previousLoadedClasses = loadedClasses;
+      }
+
+      if (!Startup.isTestRun() && classesRedefined > 0) {
+         long elapsedTime = System.currentTimeMillis() - startTime;
+         System.out.println(
+            "JMockit: " + classesRedefined + " already loaded classes modified in " + elapsedTime + " ms");
+      }
+   }
+
+   @NotNull
+   private List<Class<?>> selectClassesToModify(@NotNull Class<?>[] previousClasses, @NotNull Class<?>[] newClasses)
+   {
+      List<Class<?>> classesToModify = new ArrayList<Class<?>>();
+      Set<String> classNames = new HashSet<String>();
+      int m = previousClasses.length;
+
+      for (int i = 0, n = newClasses.length; i < n; i++) {
+         Class<?> loadedClass = newClasses[i];
+
+         if (
+            (i >= m || loadedClass != previousClasses[i]) &&
+            loadedClass.getClassLoader() != null && !loadedClass.isAnnotation() && !loadedClass.isSynthetic() &&
+            classModification.isToBeConsideredForCoverage(loadedClass.getName(), loadedClass.getProtectionDomain()) &&
+            classNames.add(loadedClass.getName())
+         ) {
+            classesToModify.add(loadedClass);
+         }
+      }
+
+      return classesToModify;
+   }
+
+   @NotNull private List<ClassDefinition> modifyClasses(@NotNull List<Class<?>> classesToModify)
+   {
+      Collection<List<ClassFileToModify>> classesPerSourceFile = readClassFiles(classesToModify);
+      List<Callable<List<ClassDefinition>>> tasks = new ArrayList<Callable<List<ClassDefinition>>>();
+
+      for (final List<ClassFileToModify> classesFromSourceFile : classesPerSourceFile) {
+         tasks.add(new Callable<List<ClassDefinition>>() {
+            @Override
+            public List<ClassDefinition> call() { return modifyClassesFromSourceFile(classesFromSourceFile); }
+         });
+      }
+
+      List<ClassDefinition> classDefs = new ArrayList<ClassDefinition>(classesToModify.size());
+
+      for (List<ClassDefinition> classDefsForSourceFile : ParallelTasks.execute(tasks, THREAD_NAME)) {
+         classDefs.addAll(classDefsForSourceFile);
+      }
+
+      return classDefs;
+   }
+
+   @NotNull
+   private static Collection<List<ClassFileToModify>> readClassFiles(@NotNull List<Class<?>> classesToModify)
+   {
+      List<Callable<ClassFileToModify>> tasks = new ArrayList<Callable<ClassFileToModify>>(classesToModify.size());
+
+      for (final Class<?> classToModify : classesToModify) {
+         tasks.add(new Callable<ClassFileToModify>() {
+            @Override
+            public ClassFileToModify call() { return ClassFileToModify.read(classToModify); }
+         });
+      }
+
+      Map<String, List<ClassFileToModify>> sourceFilesToClasses = new LinkedHashMap<String, List<ClassFileToModify>>();
+
+      for (ClassFileToModify classFile : ParallelTasks.execute(tasks, THREAD_NAME)) {
+         if (classFile != null) {
+            List<ClassFileToModify> classesFromSourceFile = sourceFilesToClasses.get(classFile.sourceFile);
+
+            if (classesFromSourceFile == null) {
+               classesFromSourceFile = new ArrayList<ClassFileToModify>(2);
+               sourceFilesToClasses.put(classFile.sourceFile, classesFromSourceFile);
+            }
+
+            classesFromSourceFile.add(classFile);
+         }
+      }
+
+      return sourceFilesToClasses.values();
+   }
+
+   @NotNull
+   private List<ClassDefinition> modifyClassesFromSourceFile(@NotNull List<ClassFileToModify> classesFromSourceFile)
+   {
+      List<ClassDefinition> classDefs = new ArrayList<ClassDefinition>(classesFromSourceFile.size());
+
+      for (ClassFileToModify classFile : classesFromSourceFile) {
+         Class<?> loadedClass = classFile.loadedClass;
+         byte[] modifiedClassfile = classModification.modifyLoadedClassForCoverage(loadedClass, classFile.cr);
+
+         if (modifiedClassfile != null) {
+            classDefs.add(new ClassDefinition(loadedClass, modifiedClassfile));
+         }
+      }
+
+      return classDefs;
+   }
+
+   private void redefineClasses(@NotNull List<ClassDefinition> classDefs)
+   {
+      for (int i = 0, n = classDefs.size(); i < n; i += MAX_CLASSES_PER_REDEFINITION) {
+         List<ClassDefinition> batch = classDefs.subList(i, Math.min(i + MAX_CLASSES_PER_REDEFINITION, n));
+         redefineBatchOfClasses(batch);
+
+         for (ClassDefinition classDef : batch) {
+            Class<?> redefinedClass = classDef.getDefinitionClass();
+            classModification.registerModifiedClass(redefinedClass.getName(), redefinedClass.getProtectionDomain());
+         }
+
+         classesRedefined += batch.size();
+      }
+   }
+
+   private static void redefineBatchOfClasses(@NotNull List<ClassDefinition> batch)
+   {
+      ClassDefinition[] classDefs = batch.toArray(new ClassDefinition[batch.size()]);
+
+      if (classDefs.length == 1) {
+         redefineClasses(classDefs);
+      }
+      else if (!redefineClassesIfPossible(classDefs)) {
+         // A single failing class prevents the whole batch from being redefined, so each class is tried separately.
+         for (ClassDefinition classDef : classDefs) {
+            redefineClasses(classDef);
+         }
+      }
+   }
+
+   private static boolean redefineClassesIfPossible(@NotNull ClassDefinition[] classDefs)
+   {
+      try {
+         redefineClasses(classDefs);
+         return true;
+      }
+      catch (RuntimeException ignore) { return false; }
+      catch (LinkageError ignore) { return false; }
+   }
+
+   private static void redefineClasses(@NotNull ClassDefinition... classDefs)
+   {
+      try {
+         Startup.instrumentation().redefineClasses(classDefs);
+      }
+      catch (ClassNotFoundException e) {
+         throw new RuntimeException(e);
+      }
+      catch (UnmodifiableClassException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   private static final class ClassFileToModify
+   {
+      @NotNull final Class<?> loadedClass;
+      @NotNull final ClassReader cr;
+      @NotNull final String sourceFile;
+
+      private ClassFileToModify(@NotNull Class<?> loadedClass, @NotNull ClassReader cr, @NotNull String sourceFile)
+      {
+         this.loadedClass = loadedClass;
+         this.cr = cr;
+         this.sourceFile = sourceFile;
+      }
+
+      @Nullable static ClassFileToModify read(@NotNull Class<?> loadedClass)
+      {
+         ClassReader cr = CoverageModifier.createClassReader(loadedClass);
+
+         if (cr == null) {
+            return null;
+         }
+
+         String sourceFile = SourceFileReader.readSourceFile(cr);
+         return sourceFile == null ? null : new ClassFileToModify(loadedClass, cr, sourceFile);
+      }
+   }
+}
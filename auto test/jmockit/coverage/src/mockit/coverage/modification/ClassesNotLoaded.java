@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage.modification;
@@ -7,14 +7,32 @@ package mockit.coverage.modification;
 import java.io.*;
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.jetbrains.annotations.*;
 
+import mockit.coverage.*;
+import mockit.external.asm4.*;
+
 /**
- * Finds and loads all classes that should also be measured, but were not loaded until now.
+ * Finds all classes that should also be measured, but were not loaded until now, and gathers their static coverage
+ * data (executable lines, branches, paths, and fields).
+ * <p/>
+ * The classes are never loaded: their classfiles are read directly from the class path directories where modified
+ * classes came from, and analyzed in parallel, except that those from the same source file are analyzed by the same
+ * thread since they share coverage data.
+ * Each class still goes through the same modification as a loaded class, with the resulting classfile discarded.
+ * <p/>
+ * Classfiles are read twice: first only to find their source files, and then once more by the thread analyzing each
+ * source file, which drops them when done; so, no more than one source file's classfiles per thread are held in memory
+ * at a time.
+ * When the cache of instrumented classes is enabled, the static data of an unchanged class is read from the cache
+ * instead.
  */
 public final class ClassesNotLoaded
 {
+   private static final String THREAD_NAME = "JMockit Coverage classes not loaded";
+
    @NotNull private final ClassModification classModification;
    private int firstPosAfterParentDir;
 
@@ -22,36 +40,44 @@ public final class ClassesNotLoaded
 
    public void gatherCoverageData()
    {
-      Set<ProtectionDomain> protectionDomainsSoFar = new HashSet<ProtectionDomain>(classModification.protectionDomains);
+      List<ClassFileNotLoaded> classFiles = new ArrayList<ClassFileNotLoaded>();
 
-      for (ProtectionDomain pd : protectionDomainsSoFar) {
+      for (ProtectionDomain pd : classModification.getProtectionDomainsOfModifiedClasses()) {
          File classPathEntry = new File(pd.getCodeSource().getLocation().getPath());
 
          if (!classPathEntry.getPath().endsWith(".jar")) {
             firstPosAfterParentDir = classPathEntry.getPath().length() + 1;
-            loadAdditionalClasses(classPathEntry, pd);
+            findAdditionalClasses(classPathEntry, pd, classFiles);
          }
       }
+
+      if (!classFiles.isEmpty()) {
+         gatherStaticData(groupClassFilesBySourceFile(classFiles));
+      }
    }
 
-   private void loadAdditionalClasses(@NotNull File classPathEntry, @NotNull ProtectionDomain protectionDomain)
+   private void findAdditionalClasses(
+      @NotNull File classPathEntry, @NotNull ProtectionDomain protectionDomain,
+      @NotNull List<ClassFileNotLoaded> classFiles)
    {
       File[] filesInDir = classPathEntry.listFiles();
 
       if (filesInDir != null) {
          for (File fileInDir : filesInDir) {
             if (fileInDir.isDirectory()) {
-               loadAdditionalClasses(fileInDir, protectionDomain);
+               findAdditionalClasses(fileInDir, protectionDomain, classFiles);
             }
             else {
-               loadAdditionalClass(fileInDir.getPath(), protectionDomain);
+               addAdditionalClass(fileInDir, protectionDomain, classFiles);
             }
          }
       }
    }
 
-   private void loadAdditionalClass(@NotNull String filePath, @NotNull ProtectionDomain protectionDomain)
+   private void addAdditionalClass(
+      @NotNull File classFile, @NotNull ProtectionDomain protectionDomain, @NotNull List<ClassFileNotLoaded> classFiles)
    {
+      String filePath = classFile.getPath();
       int p = filePath.lastIndexOf(".class");
 
       if (p > 0) {
@@ -59,17 +85,114 @@ public final class ClassesNotLoaded
          String className = relativePath.replace(File.separatorChar, '.');
 
          if (classModification.isToBeConsideredForCoverage(className, protectionDomain)) {
-            loadClass(className, protectionDomain);
+            classFiles.add(new ClassFileNotLoaded(className, classFile, protectionDomain.getClassLoader()));
+         }
+      }
+   }
+
+   @NotNull
+   private static Collection<List<ClassFileNotLoaded>> groupClassFilesBySourceFile(
+      @NotNull List<ClassFileNotLoaded> classFiles)
+   {
+      List<Callable<ClassFileNotLoaded>> tasks = new ArrayList<Callable<ClassFileNotLoaded>>(classFiles.size());
+
+      for (final ClassFileNotLoaded classFile : classFiles) {
+         tasks.add(new Callable<ClassFileNotLoaded>() {
+            @Override
+            public ClassFileNotLoaded call() { return classFile.readSourceFile() ? classFile : null; }
+         });
+      }
+
+      Map<String, List<ClassFileNotLoaded>> sourceFilesToClasses = new HashMap<String, List<ClassFileNotLoaded>>();
+
+      for (ClassFileNotLoaded classFile : ParallelTasks.execute(tasks, THREAD_NAME)) {
+         if (classFile != null) {
+            List<ClassFileNotLoaded> classesFromSourceFile = sourceFilesToClasses.get(classFile.sourceFile);
+
+            if (classesFromSourceFile == null) {
+               classesFromSourceFile = new ArrayList<ClassFileNotLoaded>(2);
+               sourceFilesToClasses.put(classFile.sourceFile, classesFromSourceFile);
+            }
+
+            classesFromSourceFile.add(classFile);
          }
       }
+
+      return sourceFilesToClasses.values();
    }
 
-   private void loadClass(@NotNull String className, @NotNull ProtectionDomain protectionDomain)
+   private void gatherStaticData(@NotNull Collection<List<ClassFileNotLoaded>> classesPerSourceFile)
    {
-      try {
-         Class.forName(className, false, protectionDomain.getClassLoader());
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(classesPerSourceFile.size());
+
+      for (final List<ClassFileNotLoaded> classesFromSourceFile : classesPerSourceFile) {
+         tasks.add(new Callable<Void>() {
+            @Override
+            public Void call()
+            {
+               gatherStaticDataForSourceFile(classesFromSourceFile);
+               return null;
+            }
+         });
       }
-      catch (ClassNotFoundException ignore) {}
-      catch (NoClassDefFoundError ignored) {}
+
+      ParallelTasks.execute(tasks, THREAD_NAME);
+   }
+
+   private void gatherStaticDataForSourceFile(@NotNull List<ClassFileNotLoaded> classesFromSourceFile)
+   {
+      // Outer classes come first, so that their inner classes get analyzed along with them.
+      Collections.sort(classesFromSourceFile);
+
+      for (ClassFileNotLoaded classFile : classesFromSourceFile) {
+         if (!CoverageModifier.isInnerClassAlreadyModified(classFile.className)) {
+            ClassReader cr = classFile.read();
+
+            if (cr != null) {
+               classModification.gatherStaticDataForClassNotLoaded(classFile.className, cr, classFile.loader);
+            }
+         }
+      }
+   }
+
+   private static final class ClassFileNotLoaded implements Comparable<ClassFileNotLoaded>
+   {
+      @NotNull final String className;
+      @NotNull private final File file;
+      @NotNull final ClassLoader loader;
+      @Nullable String sourceFile;
+
+      ClassFileNotLoaded(@NotNull String className, @NotNull File file, @NotNull ClassLoader loader)
+      {
+         this.className = className;
+         this.file = file;
+         this.loader = loader;
+      }
+
+      boolean readSourceFile()
+      {
+         ClassReader cr = read();
+
+         if (cr == null) {
+            return false;
+         }
+
+         sourceFile = SourceFileReader.readSourceFile(cr);
+         return sourceFile != null;
+      }
+
+      @Nullable ClassReader read()
+      {
+         try {
+            InputStream input = new BufferedInputStream(new FileInputStream(file));
+            try { return new ClassReader(input); } finally { input.close(); }
+         }
+         catch (IOException ignore) {
+            return null;
+         }
+      }
+
+      @Override
+      public int compareTo(@NotNull ClassFileNotLoaded other) { return className.compareTo(other.className); }
    }
 }
@@ -19,22 +19,55 @@ import mockit.external.asm4.*;
 
 final class CoverageModifier extends ClassVisitor
 {
-   private static final Map<String, CoverageModifier> INNER_CLASS_MODIFIERS = new HashMap<String, CoverageModifier>();
+   private static final ModifiedInnerClasses INNER_CLASSES = new ModifiedInnerClasses();
    private static final int FIELD_MODIFIERS_TO_IGNORE = ACC_FINAL + ACC_SYNTHETIC;
-   private static final int MAX_CONDITIONS = Integer.getInteger("jmockit-coverage-maxConditions", 10);
+   private static final boolean WITH_STATIC_FIELD_SLOTS = "slots".equals(Configuration.getProperty("staticFields"));
+   @NotNull private static final InstrumentationProfile PROBES = InstrumentationProfile.current();
+   private static final String LINE_GUARD_FIELD = "$jmockitLinesExecuted";
 
    @Nullable static byte[] recoverModifiedByteCodeIfAvailable(@NotNull String innerClassName)
    {
-      CoverageModifier modifier = INNER_CLASS_MODIFIERS.remove(innerClassName);
-      return modifier == null ? null : modifier.toByteArray();
+      return INNER_CLASSES.removeModifiedClassfile(innerClassName);
    }
 
+   static boolean isInnerClassAlreadyModified(@NotNull String innerClassName)
+   {
+      return INNER_CLASSES.isModified(innerClassName);
+   }
+
+   static void addCachedInnerClass(@NotNull String innerClassName, @NotNull byte[] modifiedClassfile)
+   {
+      INNER_CLASSES.addModifiedClassfile(innerClassName, modifiedClassfile);
+   }
+
+   static void markNestedClassAsModified(@NotNull String nestedClassName)
+   {
+      INNER_CLASSES.markAsModified(nestedClassName);
+   }
+
+   /**
+    * Indicates whether accesses to static fields are registered through integer slots assigned to each field, rather
+    * than by class and field names.
+    */
+   static boolean isWithStaticFieldSlots() { return WITH_STATIC_FIELD_SLOTS; }
+
+   @NotNull static InstrumentationProfile getInstrumentationProfile() { return PROBES; }
+
+   /**
+    * Indicates whether modified classes get a static field holding the guards checked by the probes of the "lineOnce"
+    * profile, in which case they can't replace the definition of a class already loaded.
+    */
+   static boolean isWithLineGuards() { return !PROBES.withLineProbesCountingAllExecutions(); }
+
+   static int getUnusedInnerClassCount() { return INNER_CLASSES.getUnusedCount(); }
+   static int getDeferredInnerClassCount() { return INNER_CLASSES.getDeferredCount(); }
+
    @Nullable static ClassReader createClassReader(@NotNull Class<?> aClass)
    {
       return createClassReader(aClass.getClassLoader(), aClass.getName().replace('.', '/'));
    }
 
-   @Nullable private static ClassReader createClassReader(@NotNull ClassLoader cl, @NotNull String internalClassName)
+   @Nullable static ClassReader createClassReader(@NotNull ClassLoader cl, @NotNull String internalClassName)
    {
       InputStream classFile = cl.getResourceAsStream(internalClassName + ".class");
 
@@ -47,6 +80,14 @@ final class CoverageModifier extends ClassVisitor
    }
 
    @NotNull private final ClassWriter cw;
+   @Nullable private ClassReader classReader;
+   @NotNull private final ClassLoader loaderOfInnerClasses;
+   @NotNull private final ModifiedInnerClasses innerClasses;
+   private final boolean keepingInnerClassfiles;
+   private boolean lineGuardsAllowed;
+   private boolean withLineGuard;
+   private boolean lineGuardUsed;
+   @Nullable private String modifiedClassName;
    @Nullable private String internalClassName;
    @Nullable private String simpleClassName;
    @NotNull private String sourceFileName;
@@ -57,27 +98,130 @@ final class CoverageModifier extends ClassVisitor
    @Nullable private String kindOfTopLevelType;
    private int currentLine;
 
-   CoverageModifier(@NotNull ClassReader cr)
+   // Fields used when the modified class is to be stored in an InstrumentedClassCache:
+   private boolean cacheable;
+   private boolean withFileIndexPlaceholder;
+   private boolean registeredAsInnerClass;
+   @Nullable private byte[] originalClassfile;
+   @Nullable private Map<String, CoverageModifier> innerClassModifiers;
+
+   /**
+    * @param loaderOfInnerClasses the class loader from which to read the classfiles of inner classes, which get
+    *                             modified together with the outer class
+    */
+   CoverageModifier(@NotNull ClassReader cr, boolean cacheable, @NotNull ClassLoader loaderOfInnerClasses)
    {
-      this(cr, false);
+      this(cr, cacheable, loaderOfInnerClasses, INNER_CLASSES, true);
+   }
+
+   /**
+    * Creates a modifier for a class already loaded by the JVM, whose modified classfile is to redefine the class.
+    * Since a redefinition can't add fields, no line guards are used.
+    */
+   @NotNull
+   static CoverageModifier forClassAlreadyLoaded(
+      @NotNull ClassReader cr, boolean cacheable, @NotNull ClassLoader loaderOfInnerClasses)
+   {
+      CoverageModifier modifier = new CoverageModifier(cr, cacheable, loaderOfInnerClasses);
+      modifier.lineGuardsAllowed = false;
+      return modifier;
+   }
+
+   /**
+    * Creates a modifier for a class which was not loaded by the JVM, and which is only modified to register its static
+    * coverage data.
+    * Its inner classes are still modified along with it and marked as such, but their modified classfiles are not kept.
+    */
+   @NotNull
+   static CoverageModifier forClassNotLoaded(
+      @NotNull ClassReader cr, boolean cacheable, @NotNull ClassLoader loaderOfInnerClasses)
+   {
+      return new CoverageModifier(cr, cacheable, loaderOfInnerClasses, INNER_CLASSES, false);
+   }
+
+   /**
+    * @param innerClasses where to keep inner classes modified ahead of time, instead of the shared store
+    * @param keepingInnerClassfiles whether the modified classfiles of inner classes are to be kept until loaded
+    */
+   CoverageModifier(
+      @NotNull ClassReader cr, boolean cacheable, @NotNull ClassLoader loaderOfInnerClasses,
+      @NotNull ModifiedInnerClasses innerClasses, boolean keepingInnerClassfiles)
+   {
+      this(
+         new ClassWriter(cr, ClassWriter.COMPUTE_MAXS), false, loaderOfInnerClasses, innerClasses,
+         keepingInnerClassfiles);
       sourceFileName = "";
+      classReader = cr;
+      this.cacheable = cacheable && InstrumentedClassCache.isFileIndexPlaceholderUnused(cr);
    }
 
-   private CoverageModifier(@NotNull ClassReader cr, boolean forInnerClass)
+   private CoverageModifier(
+      @NotNull ClassWriter cw, boolean forInnerClass, @NotNull ClassLoader loaderOfInnerClasses,
+      @NotNull ModifiedInnerClasses innerClasses, boolean keepingInnerClassfiles)
    {
-      super(new ClassWriter(cr, ClassWriter.COMPUTE_MAXS));
-      //noinspection ConstantConditions
-      cw = (ClassWriter) cv;
+      super(cw);
+      this.cw = cw;
       this.forInnerClass = forInnerClass;
+      this.loaderOfInnerClasses = loaderOfInnerClasses;
+      this.innerClasses = innerClasses;
+      this.keepingInnerClassfiles = keepingInnerClassfiles;
+      lineGuardsAllowed = isWithLineGuards();
    }
 
    private CoverageModifier(@NotNull ClassReader cr, @NotNull CoverageModifier other, @Nullable String simpleClassName)
    {
-      this(cr, true);
+      this(
+         new ClassWriter(cr, ClassWriter.COMPUTE_MAXS), true, other.loaderOfInnerClasses, other.innerClasses,
+         other.keepingInnerClassfiles);
+      lineGuardsAllowed = other.lineGuardsAllowed;
       sourceFileName = other.sourceFileName;
       fileData = other.fileData;
       internalClassName = other.internalClassName;
       this.simpleClassName = simpleClassName;
+      classReader = cr;
+
+      if (other.withFileIndexPlaceholder && InstrumentedClassCache.isFileIndexPlaceholderUnused(cr)) {
+         withFileIndexPlaceholder = true;
+         originalClassfile = cr.b;
+      }
+   }
+
+   /**
+    * Indicates whether the class was modified so that it can be stored in the cache of instrumented classes, which
+    * requires it to be the first class of its source file to be modified in the current test run.
+    */
+   boolean isCacheable() { return cacheable && withFileIndexPlaceholder; }
+
+   @NotNull String getSourceFileName() { return sourceFileName; }
+
+   @NotNull FileCoverageData getFileData()
+   {
+      assert fileData != null;
+      return fileData;
+   }
+
+   boolean isRegisteredAsInnerClass() { return registeredAsInnerClass; }
+
+   @NotNull Map<String, CoverageModifier> getInnerClassModifiers()
+   {
+      return innerClassModifiers == null ? Collections.<String, CoverageModifier>emptyMap() : innerClassModifiers;
+   }
+
+   @Nullable byte[] getOriginalClassfile() { return originalClassfile; }
+
+   @NotNull byte[] toByteArrayWithFileIndexPlaceholder() { return cw.toByteArray(); }
+
+   @Override @NotNull
+   public byte[] toByteArray()
+   {
+      byte[] modifiedClassfile = cw.toByteArray();
+
+      if (withFileIndexPlaceholder) {
+         assert fileData != null;
+         InstrumentedClassCache.replaceFileIndexPlaceholder(modifiedClassfile, fileData.index);
+      }
+
+      return modifiedClassfile;
    }
 
    @Override
@@ -113,13 +257,19 @@ final class CoverageModifier extends ClassVisitor
          cannotModify = (access & ACC_ANNOTATION) != 0;
 
          if (!forEnumClass && (access & ACC_SUPER) != 0 && nestedType) {
-            INNER_CLASS_MODIFIERS.put(name.replace('/', '.'), this);
+            innerClasses.markAsModified(name.replace('/', '.'));
+            registeredAsInnerClass = true;
          }
       }
 
       // A VerifyError can occur with Java 7, related to stack map frames. ASM has a bug affecting "COMPUTE_FRAMES",
       // so the only solution was to "downgrade" the bytecode to Java 6.
       int finalVersion = (version & 0xFFFF) == V1_7 ? V1_6 : version;
+
+      // The jumps around line probes get no stack map frames, which the JVM only accepts for Java 6 or older classes.
+      modifiedClassName = name;
+      withLineGuard = lineGuardsAllowed && (finalVersion & 0xFFFF) <= V1_6 && (access & ACC_INTERFACE) == 0;
+
       cw.visit(finalVersion, access, name, signature, superName, interfaces);
    }
 
@@ -146,7 +296,15 @@ final class CoverageModifier extends ClassVisitor
          }
 
          sourceFileName += file;
-         fileData = CoverageData.instance().getOrAddFile(sourceFileName, kindOfTopLevelType);
+
+         CoverageData coverageData = CoverageData.instance();
+         withFileIndexPlaceholder = cacheable && !coverageData.containsFile(sourceFileName);
+         fileData = coverageData.getOrAddFile(sourceFileName, kindOfTopLevelType);
+      }
+
+      if (fileData != null && classReader != null) {
+         fileData.addClassfileHash(classReader.getClassName(), classReader.b);
+         classReader = null;
       }
 
       cw.visitSource(file, debug);
@@ -163,20 +321,45 @@ final class CoverageModifier extends ClassVisitor
       }
 
       String innerClassName = internalName.replace('/', '.');
+      boolean modifyingInnerClass =
+         keepingInnerClassfiles ?
+            innerClasses.markAsModifiedAheadOfTime(innerClassName) : innerClasses.markAsModified(innerClassName);
 
-      if (INNER_CLASS_MODIFIERS.containsKey(innerClassName)) {
+      if (!modifyingInnerClass) {
          return;
       }
 
-      ClassReader innerCR = createClassReader(CoverageModifier.class.getClassLoader(), internalName);
+      ClassReader innerCR = createClassReader(loaderOfInnerClasses, internalName);
 
       if (innerCR != null) {
          CoverageModifier innerClassModifier = new CoverageModifier(innerCR, this, innerName);
          innerCR.accept(innerClassModifier, 0);
-         INNER_CLASS_MODIFIERS.put(innerClassName, innerClassModifier);
+
+         if (keepingInnerClassfiles) {
+            innerClasses.addModifiedClassfile(innerClassName, innerClassModifier.toByteArray());
+         }
+
+         if (withFileIndexPlaceholder) {
+            addInnerClassModifierForCaching(internalName, innerClassModifier);
+         }
       }
    }
 
+   private void addInnerClassModifierForCaching(
+      @NotNull String innerInternalName, @NotNull CoverageModifier innerClassModifier)
+   {
+      if (!innerClassModifier.withFileIndexPlaceholder) {
+         cacheable = false;
+         return;
+      }
+
+      if (innerClassModifiers == null) {
+         innerClassModifiers = new LinkedHashMap<String, CoverageModifier>();
+      }
+
+      innerClassModifiers.put(innerInternalName, innerClassModifier);
+   }
+
    private boolean isSyntheticOrEnumClass(int access)
    {
       return (access & ACC_SYNTHETIC) != 0 || access == ACC_STATIC + ACC_ENUM;
@@ -226,11 +409,21 @@ final class CoverageModifier extends ClassVisitor
          }
 
          if (withPathOrDataCoverage) {
-            return new ConstructorModifier(mw);
+            return new ConstructorModifier(mw, desc);
          }
       }
 
-      return withPathOrDataCoverage ? new MethodModifier(mw) : new BaseMethodModifier(mw);
+      return withPathOrDataCoverage ? new MethodModifier(mw, name, desc) : new BaseMethodModifier(mw);
+   }
+
+   @Override
+   public void visitEnd()
+   {
+      if (lineGuardUsed) {
+         cw.visitField(ACC_PRIVATE + ACC_STATIC + ACC_SYNTHETIC, LINE_GUARD_FIELD, "[Z", null, null);
+      }
+
+      cw.visitEnd();
    }
 
    private class BaseMethodModifier extends MethodVisitor
@@ -246,6 +439,7 @@ final class CoverageModifier extends ClassVisitor
       boolean assertFoundInCurrentLine;
       boolean nextLabelAfterConditionalJump;
       boolean potentialAssertFalseFound;
+      private boolean entryLineRegistered;
 
       BaseMethodModifier(@NotNull MethodWriter mw)
       {
@@ -267,24 +461,72 @@ final class CoverageModifier extends ClassVisitor
             pendingBranches.clear();
          }
 
-         lineCoverageInfo.addLine(line);
          currentLine = line;
 
          jumpTargetsForCurrentLine.clear();
          nextLabelAfterConditionalJump = false;
          unconditionalJumps.clear();
 
-         generateCallToRegisterLineExecution();
+         // With the method entry profile, only the first line of the method body gets a probe.
+         if (PROBES.withProbeForEachLine() || !entryLineRegistered) {
+            lineCoverageInfo.addLine(line);
+            generateCallToRegisterLineExecution();
+            entryLineRegistered = true;
+         }
 
          mw.visitLineNumber(line, start);
       }
 
       private void generateCallToRegisterLineExecution()
       {
-         assert fileData != null;
-         mw.visitIntInsn(SIPUSH, fileData.index);
+         if (withLineGuard) {
+            generateGuardedCallToRegisterLineExecution();
+            return;
+         }
+
+         pushFileIndexOnTheStack();
          pushCurrentLineOnTheStack();
-         mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, "lineExecuted", "(II)V");
+
+         String probeMethod = PROBES.withLineProbesCountingAllExecutions() ? "lineExecuted" : "lineExecutedOnce";
+         mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, probeMethod, "(II)V");
+      }
+
+      /**
+       * Generates a check of the class's guard array, so that the probe only gets called until the line is executed.
+       * The array is null until the probe first returns it.
+       */
+      private void generateGuardedCallToRegisterLineExecution()
+      {
+         assert modifiedClassName != null;
+         Label callToProbe = new Label();
+         Label afterProbe = new Label();
+
+         mw.visitFieldInsn(GETSTATIC, modifiedClassName, LINE_GUARD_FIELD, "[Z");
+         mw.visitJumpInsn(IFNULL, callToProbe);
+         mw.visitFieldInsn(GETSTATIC, modifiedClassName, LINE_GUARD_FIELD, "[Z");
+         pushCurrentLineOnTheStack();
+         mw.visitInsn(BALOAD);
+         mw.visitJumpInsn(IFNE, afterProbe);
+
+         mw.visitLabel(callToProbe);
+         pushFileIndexOnTheStack();
+         pushCurrentLineOnTheStack();
+         mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, "lineExecutedOnceWithGuard", "(II)[Z");
+         mw.visitFieldInsn(PUTSTATIC, modifiedClassName, LINE_GUARD_FIELD, "[Z");
+         mw.visitLabel(afterProbe);
+
+         lineGuardUsed = true;
+      }
+
+      final void pushFileIndexOnTheStack()
+      {
+         if (withFileIndexPlaceholder) {
+            mw.visitLdcInsn(InstrumentedClassCache.FILE_INDEX_PLACEHOLDER);
+         }
+         else {
+            assert fileData != null;
+            mw.visitIntInsn(SIPUSH, fileData.index);
+         }
       }
 
       private void pushCurrentLineOnTheStack()
@@ -300,7 +542,7 @@ final class CoverageModifier extends ClassVisitor
       @Override
       public void visitJumpInsn(int opcode, @NotNull Label label)
       {
-         if (currentLine == 0 || visitedLabels.contains(label)) {
+         if (currentLine == 0 || !PROBES.withBranchProbes() || visitedLabels.contains(label)) {
             assertFoundInCurrentLine = false;
             mw.visitJumpInsn(opcode, label);
             return;
@@ -395,8 +637,7 @@ final class CoverageModifier extends ClassVisitor
 
       private void generateCallToRegisterBranchTargetExecution(@NotNull String methodName, int branchIndex)
       {
-         assert fileData != null;
-         mw.visitIntInsn(SIPUSH, fileData.index);
+         pushFileIndexOnTheStack();
          pushCurrentLineOnTheStack();
          mw.visitIntInsn(SIPUSH, branchIndex);
          mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, methodName, "(III)V");
@@ -493,13 +734,16 @@ final class CoverageModifier extends ClassVisitor
 
    private class MethodOrConstructorModifier extends BaseMethodModifier
    {
+      @NotNull private final String methodName;
+      @NotNull private final String methodDesc;
       @Nullable private NodeBuilder nodeBuilder;
       @Nullable private Label entryPoint;
-      private int jumpCount;
 
-      MethodOrConstructorModifier(@NotNull MethodWriter mw)
+      MethodOrConstructorModifier(@NotNull MethodWriter mw, @NotNull String methodName, @NotNull String methodDesc)
       {
          super(mw);
+         this.methodName = methodName;
+         this.methodDesc = methodDesc;
          nodeBuilder = new NodeBuilder();
       }
 
@@ -547,14 +791,8 @@ final class CoverageModifier extends ClassVisitor
          }
 
          boolean conditional = isConditionalJump(opcode);
-
-         if (conditional && ++jumpCount > MAX_CONDITIONS) {
-            nodeBuilder = null;
-         }
-         else {
-            int nodeIndex = nodeBuilder.handleJump(label, currentLine, conditional);
-            generateCallToRegisterNodeReached(nodeIndex);
-         }
+         int nodeIndex = nodeBuilder.handleJump(label, currentLine, conditional);
+         generateCallToRegisterNodeReached(nodeIndex);
 
          super.visitJumpInsn(opcode, label);
       }
@@ -647,7 +885,12 @@ final class CoverageModifier extends ClassVisitor
          super.visitFieldInsn(opcode, owner, name, desc);
 
          if (fieldHasData) {
-            generateCallToRegisterFieldCoverage(getField, isStatic, size2, classAndFieldNames);
+            if (isStatic && WITH_STATIC_FIELD_SLOTS) {
+               generateCallToRegisterStaticFieldAccessInSlot(getField, classAndFieldNames);
+            }
+            else {
+               generateCallToRegisterFieldCoverage(getField, isStatic, size2, classAndFieldNames);
+            }
          }
 
          handleRegularInstruction(opcode);
@@ -699,6 +942,24 @@ final class CoverageModifier extends ClassVisitor
          mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, methodToCall, methodDesc);
       }
 
+      private void generateCallToRegisterStaticFieldAccessInSlot(boolean getField, @NotNull String classAndFieldNames)
+      {
+         assert fileData != null;
+         int slot = fileData.dataCoverageInfo.getStaticFieldSlot(classAndFieldNames);
+
+         pushFileIndexOnTheStack();
+
+         if (slot <= Short.MAX_VALUE) {
+            mw.visitIntInsn(SIPUSH, slot);
+         }
+         else {
+            mw.visitLdcInsn(slot);
+         }
+
+         String methodToCall = getField ? "staticFieldRead" : "staticFieldAssigned";
+         mw.visitMethodInsn(INVOKESTATIC, DATA_RECORDING_CLASS, methodToCall, "(II)V");
+      }
+
       @Override
       public final void visitMethodInsn(int opcode, @NotNull String owner, @NotNull String name, @NotNull String desc)
       {
@@ -747,16 +1008,18 @@ final class CoverageModifier extends ClassVisitor
       public final void visitEnd()
       {
          if (currentLine > 0 && nodeBuilder != null && nodeBuilder.hasNodes() && fileData != null) {
-            MethodCoverageData methodData = new MethodCoverageData();
-            methodData.buildPaths(currentLine, nodeBuilder);
-            fileData.addMethod(methodData);
+            MethodCoverageData methodData = new MethodCoverageData(methodName, methodDesc);
+
+            if (methodData.buildPaths(currentLine, nodeBuilder)) {
+               fileData.addMethod(methodData);
+            }
          }
       }
    }
 
    private final class MethodModifier extends MethodOrConstructorModifier
    {
-      MethodModifier(@NotNull MethodWriter mw) { super(mw); }
+      MethodModifier(@NotNull MethodWriter mw, @NotNull String name, @NotNull String desc) { super(mw, name, desc); }
 
       @Override
       public AnnotationVisitor visitAnnotation(@NotNull String desc, boolean visible)
@@ -773,7 +1036,7 @@ final class CoverageModifier extends ClassVisitor
 
    private final class ConstructorModifier extends MethodOrConstructorModifier
    {
-      ConstructorModifier(@NotNull MethodWriter mw) { super(mw); }
+      ConstructorModifier(@NotNull MethodWriter mw, @NotNull String desc) { super(mw, "<init>", desc); }
    }
 
    private final class StaticBlockModifier extends BaseMethodModifier
@@ -0,0 +1,326 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.io.*;
+import java.net.*;
+import java.security.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.coverage.paths.*;
+import mockit.external.asm4.*;
+
+/**
+ * A persistent cache of classes modified for coverage, kept under the output directory so that later test runs (for
+ * example, in other JVM forks) can reuse them instead of modifying the same classes again.
+ * <p/>
+ * Each entry is keyed by a hash of the original classfile, the coverage settings, and the version of the tool.
+ * It holds the modified classfile (together with those of any inner classes modified along with it) and the static
+ * coverage data for the source file, that is, the executable lines, branches, paths, and fields registered during
+ * modification.
+ * Entries are only created and used for the first class of a source file to be modified in a test run, so that their
+ * static data does not depend on other classes from the same file.
+ * <p/>
+ * The index of the source file, which varies between test runs, is referenced from modified classes through a single
+ * constant pool entry, whose value is replaced when the classfile is read from the cache.
+ * <p/>
+ * Enabled with the "jmockit-coverage-classCache" system property.
+ */
+final class InstrumentedClassCache
+{
+   static final int FILE_INDEX_PLACEHOLDER = 0x4A4D4349;
+   private static final int CONSTANT_INTEGER_TAG = 3;
+   private static final String CACHE_FORMAT_VERSION = "2";
+
+   @Nullable
+   static InstrumentedClassCache createIfEnabled()
+   {
+      if (!"true".equals(Configuration.getProperty("classCache"))) {
+         return null;
+      }
+
+      String outputDir = Configuration.getProperty("outputDir", "");
+      File cacheDir = new File(outputDir.isEmpty() ? null : outputDir, "coverage-classes");
+      return new InstrumentedClassCache(cacheDir);
+   }
+
+   @NotNull private final File cacheDir;
+   @NotNull private final byte[] settings;
+
+   private InstrumentedClassCache(@NotNull File cacheDir)
+   {
+      this.cacheDir = cacheDir;
+      settings = describeSettings().getBytes();
+   }
+
+   @NotNull private static String describeSettings()
+   {
+      StringBuilder settings = new StringBuilder(100).append(CACHE_FORMAT_VERSION);
+
+      for (Metrics metric : Metrics.values()) {
+         settings.append(',').append(metric).append('=').append(metric.isActive());
+      }
+
+      settings.append(",maxPaths=").append(MethodCoverageData.MAX_PATHS);
+      settings.append(",staticFieldSlots=").append(CoverageModifier.isWithStaticFieldSlots());
+      settings.append(",probes=").append(CoverageModifier.getInstrumentationProfile());
+      settings.append(",version=").append(getToolVersion());
+      return settings.toString();
+   }
+
+   @NotNull private static String getToolVersion()
+   {
+      String version = CoverageModifier.class.getPackage().getImplementationVersion();
+
+      if (version != null) {
+         return version;
+      }
+
+      URL classfile = CoverageModifier.class.getResource("CoverageModifier.class");
+
+      try {
+         URLConnection connection = classfile.openConnection();
+         return String.valueOf(connection.getLastModified());
+      }
+      catch (IOException ignore) {
+         return "";
+      }
+   }
+
+   static boolean isFileIndexPlaceholderUnused(@NotNull ClassReader cr) { return findFileIndexPlaceholder(cr) < 0; }
+
+   private static int findFileIndexPlaceholder(@NotNull ClassReader cr)
+   {
+      for (int i = 1, n = cr.getItemCount(); i < n; i++) {
+         int offset = cr.getItem(i);
+
+         if (offset > 0 && cr.b[offset - 1] == CONSTANT_INTEGER_TAG && cr.readInt(offset) == FILE_INDEX_PLACEHOLDER) {
+            return offset;
+         }
+      }
+
+      return -1;
+   }
+
+   static void replaceFileIndexPlaceholder(@NotNull byte[] modifiedClassfile, int fileIndex)
+   {
+      int offset = findFileIndexPlaceholder(new ClassReader(modifiedClassfile));
+
+      if (offset > 0) {
+         modifiedClassfile[offset] = (byte) (fileIndex >>> 24);
+         modifiedClassfile[offset + 1] = (byte) (fileIndex >>> 16);
+         modifiedClassfile[offset + 2] = (byte) (fileIndex >>> 8);
+         modifiedClassfile[offset + 3] = (byte) fileIndex;
+      }
+   }
+
+   /**
+    * Returns the modified classfile for the given class, if found in the cache and still usable in the current test
+    * run; if so, the static coverage data for its source file gets registered, and any inner classes modified along
+    * with it become available through {@link CoverageModifier#recoverModifiedByteCodeIfAvailable}.
+    *
+    * @param keepingInnerClassfiles <tt>false</tt> if the class won't be loaded, in which case its inner classes are
+    *                               only marked as modified
+    */
+   @Nullable
+   byte[] findModifiedClassfile(
+      @NotNull String className, @NotNull byte[] originalClassfile, @NotNull ClassLoader definingLoader,
+      boolean keepingInnerClassfiles)
+   {
+      File entryFile = getEntryFile(originalClassfile);
+
+      if (!entryFile.isFile()) {
+         return null;
+      }
+
+      try {
+         return readEntry(className, entryFile, definingLoader, keepingInnerClassfiles);
+      }
+      catch (IOException ignore) {
+         // A corrupted or incompatible entry is simply ignored, and later replaced.
+         return null;
+      }
+      catch (ClassNotFoundException ignore) {
+         return null;
+      }
+      catch (ClassCastException ignore) {
+         return null;
+      }
+   }
+
+   @NotNull private File getEntryFile(@NotNull byte[] originalClassfile)
+   {
+      MessageDigest digest = createDigest();
+      digest.update(settings);
+      String hash = toHexString(digest.digest(originalClassfile));
+      return new File(new File(cacheDir, hash.substring(0, 2)), hash.substring(2) + ".ser");
+   }
+
+   @NotNull private static MessageDigest createDigest()
+   {
+      try {
+         return MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   @NotNull private static String toHexString(@NotNull byte[] bytes)
+   {
+      StringBuilder hex = new StringBuilder(2 * bytes.length);
+
+      for (byte b : bytes) {
+         hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+
+      return hex.toString();
+   }
+
+   @Nullable
+   private static byte[] readEntry(
+      @NotNull String className, @NotNull File entryFile, @NotNull ClassLoader definingLoader,
+      boolean keepingInnerClassfiles)
+      throws IOException, ClassNotFoundException
+   {
+      ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(entryFile)));
+
+      try {
+         String sourceFile = input.readUTF();
+         CoverageData coverageData = CoverageData.instance();
+
+         if (coverageData.containsFile(sourceFile)) {
+            return null;
+         }
+
+         boolean registeredAsInnerClass = input.readBoolean();
+         byte[] modifiedClassfile = (byte[]) input.readObject();
+         int innerClassCount = input.readInt();
+         Map<String, byte[]> innerClasses = new LinkedHashMap<String, byte[]>(innerClassCount);
+
+         for (int i = 0; i < innerClassCount; i++) {
+            String innerInternalName = input.readUTF();
+            byte[] originalHash = (byte[]) input.readObject();
+            byte[] modifiedInnerClassfile = (byte[]) input.readObject();
+            String innerClassName = innerInternalName.replace('/', '.');
+
+            if (
+               CoverageModifier.isInnerClassAlreadyModified(innerClassName) ||
+               !isInnerClassUnchanged(definingLoader, innerInternalName, originalHash)
+            ) {
+               return null;
+            }
+
+            innerClasses.put(innerClassName, modifiedInnerClassfile);
+         }
+
+         FileCoverageData staticData = (FileCoverageData) input.readObject();
+         int fileIndex = coverageData.addFile(sourceFile, staticData).index;
+
+         for (Map.Entry<String, byte[]> innerClassAndClassfile : innerClasses.entrySet()) {
+            String innerClassName = innerClassAndClassfile.getKey();
+
+            if (keepingInnerClassfiles) {
+               byte[] modifiedInnerClassfile = innerClassAndClassfile.getValue();
+               replaceFileIndexPlaceholder(modifiedInnerClassfile, fileIndex);
+               CoverageModifier.addCachedInnerClass(innerClassName, modifiedInnerClassfile);
+            }
+            else {
+               CoverageModifier.markNestedClassAsModified(innerClassName);
+            }
+         }
+
+         replaceFileIndexPlaceholder(modifiedClassfile, fileIndex);
+
+         if (registeredAsInnerClass) {
+            CoverageModifier.markNestedClassAsModified(className);
+         }
+
+         return modifiedClassfile;
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   /**
+    * Compares the current classfile of an inner class with the one cached, reading it through the loader which defined
+    * the outer class, since the loader of the coverage tool may not see application classes.
+    */
+   private static boolean isInnerClassUnchanged(
+      @NotNull ClassLoader definingLoader, @NotNull String innerInternalName, @NotNull byte[] originalHash)
+   {
+      ClassReader innerCR = CoverageModifier.createClassReader(definingLoader, innerInternalName);
+      return innerCR != null && MessageDigest.isEqual(originalHash, createDigest().digest(innerCR.b));
+   }
+
+   /**
+    * Stores a class just modified for coverage, returning its final modified classfile.
+    */
+   @NotNull
+   byte[] addModifiedClass(@NotNull byte[] originalClassfile, @NotNull CoverageModifier modifier)
+   {
+      byte[] modifiedClassfile = modifier.toByteArrayWithFileIndexPlaceholder();
+      File entryFile = getEntryFile(originalClassfile);
+
+      try {
+         writeEntry(entryFile, modifier, modifiedClassfile);
+      }
+      catch (IOException ignore) {
+         // The class will just be modified again in the next test run.
+      }
+
+      replaceFileIndexPlaceholder(modifiedClassfile, modifier.getFileData().index);
+      return modifiedClassfile;
+   }
+
+   private static void writeEntry(
+      @NotNull File entryFile, @NotNull CoverageModifier modifier, @NotNull byte[] modifiedClassfile)
+      throws IOException
+   {
+      File entryDir = entryFile.getParentFile();
+      //noinspection ResultOfMethodCallIgnored
+      entryDir.mkdirs();
+
+      // Writes to a temporary file first, so that concurrent test runs never see a partially written entry.
+      File tempFile = File.createTempFile(entryFile.getName(), ".tmp", entryDir);
+      ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      boolean written = false;
+
+      try {
+         output.writeUTF(modifier.getSourceFileName());
+         output.writeBoolean(modifier.isRegisteredAsInnerClass());
+         output.writeObject(modifiedClassfile);
+
+         Map<String, CoverageModifier> innerClassModifiers = modifier.getInnerClassModifiers();
+         output.writeInt(innerClassModifiers.size());
+
+         for (Map.Entry<String, CoverageModifier> innerClassAndModifier : innerClassModifiers.entrySet()) {
+            CoverageModifier innerClassModifier = innerClassAndModifier.getValue();
+            byte[] originalInnerClassfile = innerClassModifier.getOriginalClassfile();
+            assert originalInnerClassfile != null;
+
+            output.writeUTF(innerClassAndModifier.getKey());
+            output.writeObject(createDigest().digest(originalInnerClassfile));
+            output.writeObject(innerClassModifier.toByteArrayWithFileIndexPlaceholder());
+         }
+
+         output.writeObject(modifier.getFileData());
+         written = true;
+      }
+      finally {
+         output.close();
+      }
+
+      if (!written || !tempFile.renameTo(entryFile)) {
+         //noinspection ResultOfMethodCallIgnored
+         tempFile.delete();
+      }
+   }
+}
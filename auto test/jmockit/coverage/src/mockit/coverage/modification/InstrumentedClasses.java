@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jetbrains.annotations.*;
+
+/**
+ * The names of the classes modified for coverage, and the class path directories they came from, as recorded by
+ * class loading threads which may run concurrently.
+ * <p/>
+ * A thread about to modify a class first claims its name, so that the class gets modified only once even if loaded by
+ * parallel-capable class loaders at the same time.
+ * The protection domains of modified classes are collected by code source path, without locking; the paths nested in
+ * others are only sorted out when the collection is read, at the end of the test run.
+ */
+final class InstrumentedClasses
+{
+   @NotNull private final Set<String> classNames;
+   @NotNull private final ConcurrentMap<String, ProtectionDomain> pathToProtectionDomain;
+
+   InstrumentedClasses(@NotNull Collection<String> classesAlreadyModified)
+   {
+      classNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      classNames.addAll(classesAlreadyModified);
+      pathToProtectionDomain = new ConcurrentHashMap<String, ProtectionDomain>();
+   }
+
+   boolean contains(@NotNull String className) { return classNames.contains(className); }
+
+   /**
+    * Claims the given class for modification.
+    *
+    * @return <tt>true</tt> if the caller is the one to modify the class, <tt>false</tt> if it was already modified or
+    * claimed by another thread
+    */
+   boolean claim(@NotNull String className) { return classNames.add(className); }
+
+   /**
+    * Gives up a previous claim, for a class which ended up not being modified.
+    */
+   void release(@NotNull String className) { classNames.remove(className); }
+
+   void register(@NotNull String className, @NotNull ProtectionDomain pd)
+   {
+      classNames.add(className);
+      addProtectionDomain(pd);
+   }
+
+   void addProtectionDomain(@NotNull ProtectionDomain pd)
+   {
+      CodeSource codeSource = pd.getCodeSource();
+
+      if (pd.getClassLoader() != null && codeSource != null && codeSource.getLocation() != null) {
+         String path = codeSource.getLocation().getPath();
+
+         if (!pathToProtectionDomain.containsKey(path)) {
+            pathToProtectionDomain.putIfAbsent(path, pd);
+         }
+      }
+   }
+
+   /**
+    * Returns the protection domains collected so far, leaving out those whose path is a prefix of another path, so
+    * that no directory gets searched twice for classes not loaded.
+    */
+   @NotNull List<ProtectionDomain> getProtectionDomainsWithUniquePaths()
+   {
+      Set<String> paths = new HashSet<String>(pathToProtectionDomain.keySet());
+      List<ProtectionDomain> protectionDomains = new ArrayList<ProtectionDomain>(paths.size());
+
+      for (String path : paths) {
+         if (!isPrefixOfAnotherPath(path, paths)) {
+            protectionDomains.add(pathToProtectionDomain.get(path));
+         }
+      }
+
+      return protectionDomains;
+   }
+
+   private static boolean isPrefixOfAnotherPath(@NotNull String path, @NotNull Set<String> paths)
+   {
+      for (String otherPath : paths) {
+         if (otherPath.length() > path.length() && otherPath.startsWith(path)) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+}
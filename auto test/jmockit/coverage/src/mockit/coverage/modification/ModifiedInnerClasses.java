@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.jetbrains.annotations.*;
+
+/**
+ * The modified classfiles of inner classes which were modified together with their outer class, kept until the inner
+ * class itself gets loaded, and the names of all inner classes already modified.
+ * <p/>
+ * It can be used concurrently from the threads loading classes, and is bounded by the total size of the classfiles
+ * kept, since an inner class may never get loaded.
+ * Classfiles are never evicted, as their lines and branches were already registered in the coverage data of the source
+ * file, and modifying the same inner class again would register them a second time.
+ * Instead, once the bound is reached no more inner classes get modified ahead of time: each of those is modified on its
+ * own if and when it gets loaded, registering its coverage data only then.
+ */
+final class ModifiedInnerClasses
+{
+   private static final long MAX_TOTAL_BYTES = 32L * 1024 * 1024;
+
+   @NotNull private final Set<String> classesModified;
+   @NotNull private final ConcurrentMap<String, byte[]> classfiles;
+   @NotNull private final AtomicLong totalBytes;
+   @NotNull private final AtomicInteger deferredCount;
+   private final long maxTotalBytes;
+
+   ModifiedInnerClasses() { this(MAX_TOTAL_BYTES); }
+
+   ModifiedInnerClasses(long maxTotalBytes)
+   {
+      classesModified = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+      classfiles = new ConcurrentHashMap<String, byte[]>();
+      totalBytes = new AtomicLong();
+      deferredCount = new AtomicInteger();
+      this.maxTotalBytes = maxTotalBytes;
+   }
+
+   /**
+    * Records that the given inner class is being modified, unless some other thread already did so.
+    *
+    * @return <tt>true</tt> if the caller is the one to modify the inner class, <tt>false</tt> otherwise
+    */
+   boolean markAsModified(@NotNull String className) { return classesModified.add(className); }
+
+   /**
+    * Claims the given inner class for modification together with its outer class, provided there is still room for
+    * its modified classfile.
+    *
+    * @return <tt>true</tt> if the caller is to modify the inner class now and then {@linkplain #addModifiedClassfile
+    * add} its classfile, <tt>false</tt> if it was already modified or has to wait until loaded
+    */
+   boolean markAsModifiedAheadOfTime(@NotNull String className)
+   {
+      if (totalBytes.get() >= maxTotalBytes) {
+         if (!classesModified.contains(className)) {
+            deferredCount.incrementAndGet();
+         }
+
+         return false;
+      }
+
+      return classesModified.add(className);
+   }
+
+   boolean isModified(@NotNull String className) { return classesModified.contains(className); }
+
+   /**
+    * Keeps the modified classfile of an inner class whose coverage data is already registered, until it gets loaded.
+    * The classfile is kept even if over the bound, since it can't be discarded without losing that data.
+    */
+   void addModifiedClassfile(@NotNull String className, @NotNull byte[] modifiedClassfile)
+   {
+      classesModified.add(className);
+      byte[] previousClassfile = classfiles.put(className, modifiedClassfile);
+      int previousLength = previousClassfile == null ? 0 : previousClassfile.length;
+      totalBytes.addAndGet(modifiedClassfile.length - previousLength);
+   }
+
+   /**
+    * Takes out the modified classfile for the given inner class, if available.
+    */
+   @Nullable byte[] removeModifiedClassfile(@NotNull String className)
+   {
+      byte[] modifiedClassfile = classfiles.remove(className);
+
+      if (modifiedClassfile != null) {
+         totalBytes.addAndGet(-modifiedClassfile.length);
+      }
+
+      return modifiedClassfile;
+   }
+
+   /**
+    * Returns the number of inner classes which were modified together with their outer class, but whose modified
+    * classfiles were never used because the inner class wasn't loaded.
+    */
+   int getUnusedCount() { return classfiles.size(); }
+
+   /**
+    * Returns how many times an inner class was left to be modified when loaded, because the bound was reached.
+    */
+   int getDeferredCount() { return deferredCount.get(); }
+}
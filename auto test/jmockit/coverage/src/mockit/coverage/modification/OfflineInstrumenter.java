@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.external.asm4.*;
+
+/**
+ * Modifies classes for coverage ahead of the test run, so that tests can run with no class modification work by the
+ * coverage tool, and with no Java agent.
+ * <p/>
+ * Each input path, being a jar file or a directory of classfiles, is copied into the output directory with its
+ * selected classes modified.
+ * The static coverage data for all modified classes is written to a "coverage-metadata.ser" file in the same output
+ * directory, which must then be specified for the test run through the "jmockit-coverage-metadata" system property.
+ * The "jmockit-coverage-classes" and "jmockit-coverage-excludes" properties select the classes to be modified, as
+ * they do when classes are modified at runtime.
+ */
+public final class OfflineInstrumenter
+{
+   private static final String METADATA_FILE_NAME = "coverage-metadata.ser";
+   private static final String THREAD_NAME = "JMockit Coverage instrumenter";
+
+   public static void main(@NotNull String[] args) throws IOException
+   {
+      if (args.length < 2) {
+         System.out.println(
+            "Usage: java -cp jmockit-coverage.jar " + OfflineInstrumenter.class.getName() +
+            " <output dir> <jar file or classes dir>...");
+         System.exit(1);
+      }
+
+      File outputDir = new File(args[0]);
+      List<File> inputPaths = new ArrayList<File>(args.length - 1);
+
+      for (int i = 1; i < args.length; i++) {
+         inputPaths.add(new File(args[i]));
+      }
+
+      new OfflineInstrumenter(outputDir, inputPaths).instrumentClasses();
+   }
+
+   @NotNull private final File outputDir;
+   @NotNull private final List<InputPath> inputPaths;
+   @NotNull private final ClassLoader loaderOfInputClasses;
+   @NotNull private final ClassSelection classSelection;
+
+   public OfflineInstrumenter(@NotNull File outputDir, @NotNull List<File> inputPaths) throws MalformedURLException
+   {
+      this.outputDir = outputDir;
+      this.inputPaths = new ArrayList<InputPath>(inputPaths.size());
+      Set<String> outputNames = new HashSet<String>();
+      URL[] inputURLs = new URL[inputPaths.size()];
+
+      for (int i = 0; i < inputURLs.length; i++) {
+         File inputPath = inputPaths.get(i);
+
+         if (!inputPath.exists()) {
+            throw new IllegalArgumentException("Input path not found: " + inputPath);
+         }
+
+         if (!outputNames.add(inputPath.getName())) {
+            throw new IllegalArgumentException("Duplicate input name: " + inputPath.getName());
+         }
+
+         this.inputPaths.add(new InputPath(inputPath, new File(outputDir, inputPath.getName())));
+         inputURLs[i] = inputPath.toURI().toURL();
+      }
+
+      loaderOfInputClasses = new URLClassLoader(inputURLs, OfflineInstrumenter.class.getClassLoader());
+      classSelection = new ClassSelection();
+   }
+
+   public void instrumentClasses() throws IOException
+   {
+      long startTime = System.currentTimeMillis();
+      List<ClassfileToModify> classesToModify = new ArrayList<ClassfileToModify>();
+
+      for (InputPath inputPath : inputPaths) {
+         inputPath.readEntries();
+         inputPath.addClassesToModify(classSelection, classesToModify);
+      }
+
+      Collection<List<ClassfileToModify>> classesPerSourceFile = groupBySourceFile(classesToModify);
+      modifyClasses(classesPerSourceFile);
+
+      //noinspection ResultOfMethodCallIgnored
+      outputDir.mkdirs();
+      Set<String> modifiedClasses = new LinkedHashSet<String>();
+
+      for (List<ClassfileToModify> classesFromSourceFile : classesPerSourceFile) {
+         for (ClassfileToModify classfile : classesFromSourceFile) {
+            if (classfile.modifiedClassfile != null) {
+               classfile.inputPath.entries.put(classfile.entryName, classfile.modifiedClassfile);
+               modifiedClasses.add(classfile.className);
+            }
+         }
+      }
+
+      for (InputPath inputPath : inputPaths) {
+         inputPath.writeEntries();
+      }
+
+      File metadataFile = new File(outputDir, METADATA_FILE_NAME);
+      OfflineCoverageMetadata.writeToFile(metadataFile, modifiedClasses);
+
+      long elapsedTime = System.currentTimeMillis() - startTime;
+      System.out.println(
+         "JMockit: " + modifiedClasses.size() + " classes modified in " + elapsedTime + " ms; run tests " +
+         "with -Djmockit-coverage-metadata=" + metadataFile.getCanonicalPath());
+   }
+
+   @NotNull
+   private static Collection<List<ClassfileToModify>> groupBySourceFile(@NotNull List<ClassfileToModify> classfiles)
+   {
+      List<Callable<String>> tasks = new ArrayList<Callable<String>>(classfiles.size());
+
+      for (final ClassfileToModify classfile : classfiles) {
+         tasks.add(new Callable<String>() {
+            @Override
+            public String call() { return SourceFileReader.readSourceFile(classfile.cr); }
+         });
+      }
+
+      List<String> sourceFiles = ParallelTasks.execute(tasks, THREAD_NAME);
+      Map<String, List<ClassfileToModify>> sourceFilesToClasses = new TreeMap<String, List<ClassfileToModify>>();
+
+      for (int i = 0, n = classfiles.size(); i < n; i++) {
+         String sourceFile = sourceFiles.get(i);
+
+         if (sourceFile != null) {
+            List<ClassfileToModify> classesFromSourceFile = sourceFilesToClasses.get(sourceFile);
+
+            if (classesFromSourceFile == null) {
+               classesFromSourceFile = new ArrayList<ClassfileToModify>(2);
+               sourceFilesToClasses.put(sourceFile, classesFromSourceFile);
+            }
+
+            classesFromSourceFile.add(classfiles.get(i));
+         }
+      }
+
+      return sourceFilesToClasses.values();
+   }
+
+   private void modifyClasses(@NotNull Collection<List<ClassfileToModify>> classesPerSourceFile)
+   {
+      List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(classesPerSourceFile.size());
+
+      for (final List<ClassfileToModify> classesFromSourceFile : classesPerSourceFile) {
+         tasks.add(new Callable<Void>() {
+            @Override
+            public Void call()
+            {
+               modifyClassesFromSourceFile(classesFromSourceFile);
+               return null;
+            }
+         });
+      }
+
+      ParallelTasks.execute(tasks, THREAD_NAME);
+   }
+
+   private void modifyClassesFromSourceFile(@NotNull List<ClassfileToModify> classesFromSourceFile)
+   {
+      // Outer classes come before their inner classes, which then get modified together with the outer class.
+      Collections.sort(classesFromSourceFile);
+
+      for (ClassfileToModify classfile : classesFromSourceFile) {
+         byte[] modifiedClassfile = CoverageModifier.recoverModifiedByteCodeIfAvailable(classfile.className);
+
+         if (modifiedClassfile == null) {
+            modifiedClassfile = modifyClass(classfile.cr);
+         }
+
+         classfile.modifiedClassfile = modifiedClassfile;
+      }
+   }
+
+   @Nullable private byte[] modifyClass(@NotNull ClassReader cr)
+   {
+      try {
+         CoverageModifier modifier = new CoverageModifier(cr, false, loaderOfInputClasses);
+         cr.accept(modifier, 0);
+         return modifier.toByteArray();
+      }
+      catch (VisitInterruptedException ignore) {
+         // Ignore the class if the modification was refused for some reason.
+      }
+      catch (RuntimeException e) {
+         e.printStackTrace();
+      }
+      catch (AssertionError e) {
+         e.printStackTrace();
+      }
+
+      return null;
+   }
+
+   private static final class ClassfileToModify implements Comparable<ClassfileToModify>
+   {
+      @NotNull final InputPath inputPath;
+      @NotNull final String entryName;
+      @NotNull final String className;
+      @NotNull final ClassReader cr;
+      @Nullable byte[] modifiedClassfile;
+
+      ClassfileToModify(
+         @NotNull InputPath inputPath, @NotNull String entryName, @NotNull String className, @NotNull ClassReader cr)
+      {
+         this.inputPath = inputPath;
+         this.entryName = entryName;
+         this.className = className;
+         this.cr = cr;
+      }
+
+      @Override
+      public int compareTo(@NotNull ClassfileToModify other) { return className.compareTo(other.className); }
+   }
+
+   /**
+    * A jar file or classes directory, with all its entries held in memory while classes get modified.
+    */
+   private static final class InputPath
+   {
+      @NotNull private final File path;
+      @NotNull private final File outputPath;
+      @NotNull final Map<String, byte[]> entries;
+
+      InputPath(@NotNull File path, @NotNull File outputPath)
+      {
+         this.path = path;
+         this.outputPath = outputPath;
+         entries = new LinkedHashMap<String, byte[]>();
+      }
+
+      void readEntries() throws IOException
+      {
+         if (path.isDirectory()) {
+            readEntriesFromDirectory(path, "");
+         }
+         else {
+            readEntriesFromJarFile();
+         }
+      }
+
+      private void readEntriesFromDirectory(@NotNull File dir, @NotNull String pathPrefix) throws IOException
+      {
+         File[] filesInDir = dir.listFiles();
+
+         if (filesInDir != null) {
+            for (File fileInDir : filesInDir) {
+               String entryName = pathPrefix + fileInDir.getName();
+
+               if (fileInDir.isDirectory()) {
+                  readEntriesFromDirectory(fileInDir, entryName + '/');
+               }
+               else {
+                  InputStream input = new FileInputStream(fileInDir);
+
+                  try {
+                     entries.put(entryName, readBytes(input));
+                  }
+                  finally {
+                     input.close();
+                  }
+               }
+            }
+         }
+      }
+
+      private void readEntriesFromJarFile() throws IOException
+      {
+         ZipInputStream input = new ZipInputStream(new BufferedInputStream(new FileInputStream(path)));
+
+         try {
+            for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+               String entryName = entry.getName();
+
+               // Signatures would no longer match the modified classes.
+               if (!entry.isDirectory() && !isSignatureFile(entryName)) {
+                  entries.put(entryName, readBytes(input));
+               }
+            }
+         }
+         finally {
+            input.close();
+         }
+      }
+
+      private static boolean isSignatureFile(@NotNull String entryName)
+      {
+         return
+            entryName.startsWith("META-INF/") &&
+            (entryName.endsWith(".SF") || entryName.endsWith(".RSA") || entryName.endsWith(".DSA"));
+      }
+
+      @NotNull private static byte[] readBytes(@NotNull InputStream input) throws IOException
+      {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+         byte[] buffer = new byte[8192];
+
+         for (int n = input.read(buffer); n >= 0; n = input.read(buffer)) {
+            bytes.write(buffer, 0, n);
+         }
+
+         return bytes.toByteArray();
+      }
+
+      void addClassesToModify(
+         @NotNull ClassSelection classSelection, @NotNull List<ClassfileToModify> classesToModify)
+      {
+         for (Map.Entry<String, byte[]> entryNameAndContents : entries.entrySet()) {
+            String entryName = entryNameAndContents.getKey();
+
+            if (entryName.endsWith(".class") && !entryName.startsWith("META-INF/")) {
+               String className = entryName.substring(0, entryName.length() - 6).replace('/', '.');
+
+               if (classSelection.isSelectedForOfflineModification(className)) {
+                  ClassReader cr = new ClassReader(entryNameAndContents.getValue());
+                  classesToModify.add(new ClassfileToModify(this, entryName, className, cr));
+               }
+            }
+         }
+      }
+
+      void writeEntries() throws IOException
+      {
+         if (path.isDirectory()) {
+            writeEntriesToDirectory();
+         }
+         else {
+            writeEntriesToJarFile();
+         }
+      }
+
+      private void writeEntriesToDirectory() throws IOException
+      {
+         for (Map.Entry<String, byte[]> entryNameAndContents : entries.entrySet()) {
+            File outputFile = new File(outputPath, entryNameAndContents.getKey());
+            //noinspection ResultOfMethodCallIgnored
+            outputFile.getParentFile().mkdirs();
+            OutputStream output = new FileOutputStream(outputFile);
+
+            try {
+               output.write(entryNameAndContents.getValue());
+            }
+            finally {
+               output.close();
+            }
+         }
+      }
+
+      private void writeEntriesToJarFile() throws IOException
+      {
+         ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(outputPath)));
+
+         try {
+            for (Map.Entry<String, byte[]> entryNameAndContents : entries.entrySet()) {
+               output.putNextEntry(new ZipEntry(entryNameAndContents.getKey()));
+               output.write(entryNameAndContents.getValue());
+               output.closeEntry();
+            }
+         }
+         finally {
+            output.close();
+         }
+      }
+   }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import org.jetbrains.annotations.*;
+
+import mockit.external.asm4.*;
+
+/**
+ * Reads the source file of a class, with the same package-relative path later used for its coverage data.
+ */
+final class SourceFileReader extends ClassVisitor
+{
+   @Nullable private String internalClassName;
+   @Nullable private String sourceFile;
+
+   @Nullable static String readSourceFile(@NotNull ClassReader cr)
+   {
+      SourceFileReader sourceFileReader = new SourceFileReader();
+
+      try {
+         cr.accept(sourceFileReader, ClassReader.SKIP_CODE + ClassReader.SKIP_FRAMES);
+      }
+      catch (VisitInterruptedException ignore) {}
+
+      return sourceFileReader.sourceFile;
+   }
+
+   private SourceFileReader() {}
+
+   @Override
+   public void visit(
+      int version, int access, @NotNull String name, @Nullable String signature, @Nullable String superName,
+      @Nullable String[] interfaces)
+   {
+      internalClassName = name;
+   }
+
+   @Override
+   public void visitSource(@Nullable String file, @Nullable String debug)
+   {
+      if (file != null && internalClassName != null) {
+         int p = internalClassName.lastIndexOf('/');
+         sourceFile = internalClassName.substring(0, p + 1) + file;
+      }
+
+      throw VisitInterruptedException.INSTANCE;
+   }
+}
@@ -1,120 +1,222 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage.paths;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import org.jetbrains.annotations.*;
 
+import mockit.coverage.*;
+import mockit.coverage.data.*;
 import mockit.coverage.paths.Node.*;
 
+/**
+ * Path coverage data for a single method or constructor.
+ * <p/>
+ * Each path is identified by a number, obtained by adding the values assigned to the edges taken between nodes.
+ * Execution counts are kept in an array indexed by path number, while the list of paths (with the nodes in each one)
+ * only gets built when first requested, at report time.
+ * <p/>
+ * The path being executed is tracked separately for each thread, and counts are updated atomically, so that
+ * concurrent executions of the method are counted correctly without locking.
+ */
 public final class MethodCoverageData implements Serializable
 {
-   private static final long serialVersionUID = -5073393714435522417L;
+   private static final long serialVersionUID = -2471689127405812378L;
+
+   /**
+    * Methods with more possible paths than this are not considered for path coverage.
+    */
+   public static final int MAX_PATHS = getMaxPaths();
+
+   private static int getMaxPaths()
+   {
+      String maxPaths = Configuration.getProperty("maxPaths");
+
+      if (maxPaths != null) {
+         return Integer.parseInt(maxPaths.trim());
+      }
+
+      String maxConditions = Configuration.getProperty("maxConditions");
+
+      if (maxConditions != null) {
+         System.out.println(
+            "JMockit: Property \"jmockit-coverage-maxConditions\" is deprecated; use \"jmockit-coverage-maxPaths\" " +
+            "instead");
+
+         // Each condition can at most double the number of paths.
+         int conditions = Integer.parseInt(maxConditions.trim());
+         return 1 << Math.max(0, Math.min(conditions, 30));
+      }
+
+      return 1000;
+   }
+
+   // Null in data files written before these fields were added:
+   @Nullable private String methodName;
+   @Nullable private String methodDesc;
 
    @NotNull private List<Node> nodes;
    private int firstLine;
    private int lastLine;
+   @NotNull private AtomicIntegerArray pathCounts;
 
-   // Helper fields used during node building and path execution:
-   @NotNull private final transient ThreadLocal<List<Node>> nodesReached;
-   @NotNull private final transient ThreadLocal<Integer> previousNodeIndex;
+   // Helper field used during path execution:
+   @NotNull private transient ThreadLocal<CurrentPath> currentPaths;
 
-   @NotNull public List<Path> paths;
-   @NotNull private List<Path> nonShadowedPaths;
+   // Built on demand:
+   @Nullable private transient List<Path> allPaths;
+   @Nullable private transient List<Path> nonShadowedPaths;
 
-   public MethodCoverageData()
+   /**
+    * The path being executed in a given thread: the last node reached, and the sum of the values of the edges taken
+    * so far, which is negative when the nodes reached don't form a path.
+    */
+   private static final class CurrentPath
    {
-      nodes = Collections.emptyList();
-      paths = Collections.emptyList();
-      nonShadowedPaths = Collections.emptyList();
-      nodesReached = new ThreadLocal<List<Node>>();
-      previousNodeIndex = new ThreadLocal<Integer>();
+      int lastNodeIndex;
+      int pathNumber = -1;
    }
 
-   public void buildPaths(int lastLine, @NotNull NodeBuilder nodeBuilder)
+   public MethodCoverageData(@NotNull String methodName, @NotNull String methodDesc)
    {
-      firstLine = nodeBuilder.firstLine;
-      this.lastLine = lastLine;
+      this.methodName = methodName;
+      this.methodDesc = methodDesc;
+      nodes = Collections.emptyList();
+      pathCounts = new AtomicIntegerArray(0);
+      currentPaths = new ThreadLocal<CurrentPath>();
+   }
 
-      nodes = nodeBuilder.nodes;
-      paths = new PathBuilder().buildPaths(nodes);
-      buildListOfNonShadowedPaths();
+   private void readObject(@NotNull ObjectInputStream in) throws IOException, ClassNotFoundException
+   {
+      currentPaths = new ThreadLocal<CurrentPath>();
+      in.defaultReadObject();
    }
 
-   private void buildListOfNonShadowedPaths()
+   /**
+    * Numbers the paths through the nodes built for the method, without enumerating them.
+    *
+    * @return {@code false} if the method has more than {@link #MAX_PATHS} paths, in which case it should be left out
+    */
+   public boolean buildPaths(int lastLine, @NotNull NodeBuilder nodeBuilder)
    {
-      nonShadowedPaths = new ArrayList<Path>(paths.size());
+      int totalPaths = nodeBuilder.nodes.size() == 1 ? 0 : PathBuilder.assignPathNumbers(nodeBuilder.nodes, MAX_PATHS);
 
-      for (Path path : paths) {
-         if (!path.isShadowed()) {
-            nonShadowedPaths.add(path);
-         }
+      if (totalPaths < 0) {
+         return false;
       }
+
+      firstLine = nodeBuilder.firstLine;
+      this.lastLine = lastLine;
+      nodes = nodeBuilder.nodes;
+      pathCounts = new AtomicIntegerArray(totalPaths);
+      return true;
    }
 
+   @Nullable public String getMethodName() { return methodName; }
+   @Nullable public String getMethodDesc() { return methodDesc; }
    public int getFirstLineInBody() { return firstLine; }
    public int getLastLineInBody() { return lastLine; }
 
    public void markNodeAsReached(int nodeIndex)
    {
-      if (nodeIndex == 0) {
-         clearNodes();
-      }
+      CurrentPath currentPath = currentPaths.get();
 
-      Node node = nodes.get(nodeIndex);
-      List<Node> currentNodesReached = nodesReached.get();
+      if (currentPath == null) {
+         currentPath = new CurrentPath();
+         currentPaths.set(currentPath);
+      }
 
-      if (!node.wasReached() && (nodeIndex == 0 || nodeIndex > previousNodeIndex.get())) {
-         node.setReached(Boolean.TRUE);
-         currentNodesReached.add(node);
-         previousNodeIndex.set(nodeIndex);
+      if (nodeIndex == 0) {
+         currentPath.lastNodeIndex = 0;
+         currentPath.pathNumber = 0;
       }
+      else if (nodeIndex > currentPath.lastNodeIndex) {
+         Node node = nodes.get(nodeIndex);
 
-      if (node instanceof Exit) {
-         Exit exitNode = (Exit) node;
+         if (currentPath.pathNumber >= 0) {
+            int edgeValue = nodes.get(currentPath.lastNodeIndex).getValueOfEdgeTo(node);
+            currentPath.pathNumber = edgeValue < 0 ? -1 : currentPath.pathNumber + edgeValue;
+         }
+
+         currentPath.lastNodeIndex = nodeIndex;
 
-         for (Path path : exitNode.paths) {
-            if (path.countExecutionIfAllNodesWereReached(currentNodesReached)) {
-               return;
-            }
+         if (node instanceof Exit && currentPath.pathNumber >= 0) {
+            pathCounts.incrementAndGet(currentPath.pathNumber);
          }
       }
    }
 
-   private void clearNodes()
+   /**
+    * Returns all paths through the method, including shadowed ones.
+    */
+   @NotNull public List<Path> getAllPaths()
    {
-      for (Node node : nodes) {
-         node.setReached(null);
-      }
+      buildPathsIfNeeded();
+      assert allPaths != null;
+      return allPaths;
+   }
 
-      nodesReached.set(new ArrayList<Node>());
-      previousNodeIndex.set(0);
+   /**
+    * Returns the paths to be reported, which exclude shadowed ones.
+    */
+   @NotNull public List<Path> getPaths()
+   {
+      buildPathsIfNeeded();
+      assert nonShadowedPaths != null;
+      return nonShadowedPaths;
    }
 
-   @NotNull public List<Path> getPaths() { return nonShadowedPaths; }
+   private void buildPathsIfNeeded()
+   {
+      if (allPaths != null) {
+         return;
+      }
+
+      List<Path> paths = new PathBuilder().buildPaths(nodes);
+      List<Path> pathsToReport = new ArrayList<Path>(paths.size());
+      boolean[] numberedPaths = new boolean[pathCounts.length()];
+
+      for (Path path : paths) {
+         int pathNumber = path.computePathNumber();
+
+         // Paths through parallel edges have the same nodes, and only the first one gets counted at runtime.
+         if (pathNumber >= 0 && pathNumber < numberedPaths.length && !numberedPaths[pathNumber]) {
+            numberedPaths[pathNumber] = true;
+            path.setPathNumber(pathCounts, pathNumber);
+         }
+
+         if (!path.isShadowed()) {
+            pathsToReport.add(path);
+         }
+      }
+
+      allPaths = paths;
+      nonShadowedPaths = pathsToReport;
+   }
 
    public int getExecutionCount()
    {
       int totalCount = 0;
 
-      for (Path path : nonShadowedPaths) {
+      for (Path path : getPaths()) {
          totalCount += path.getExecutionCount();
       }
 
       return totalCount;
    }
 
-   public int getTotalPaths() { return nonShadowedPaths.size(); }
+   public int getTotalPaths() { return getPaths().size(); }
 
    public int getCoveredPaths()
    {
       int coveredCount = 0;
 
-      for (Path path : nonShadowedPaths) {
+      for (Path path : getPaths()) {
          if (path.getExecutionCount() > 0) {
             coveredCount++;
          }
@@ -123,21 +225,38 @@ public final class MethodCoverageData implements Serializable
       return coveredCount;
    }
 
-   public void addCountsFromPreviousTestRun(MethodCoverageData previousData)
+   public void addCountsFromPreviousTestRun(@NotNull MethodCoverageData previousData)
    {
-      for (int i = 0; i < paths.size(); i++) {
-         Path path = paths.get(i);
-         Path previousPath = previousData.paths.get(i);
-         path.addCountFromPreviousTestRun(previousPath);
+      AtomicIntegerArray previousCounts = previousData.pathCounts;
+      int n = pathCounts.length();
+
+      if (previousCounts.length() == n) {
+         for (int i = 0; i < n; i++) {
+            pathCounts.addAndGet(i, previousCounts.get(i));
+         }
       }
    }
 
-   public void reset()
+   public void copyPathCounts(@NotNull ExecutionCounts counts)
    {
-      clearNodes();
+      for (int i = 0, n = pathCounts.length(); i < n; i++) {
+         counts.add(pathCounts.get(i));
+      }
+   }
 
-      for (Path path : paths) {
-         path.reset();
+   public int setPathCounts(@NotNull ExecutionCounts counts, int position)
+   {
+      for (int i = 0, n = pathCounts.length(); i < n; i++) {
+         pathCounts.set(i, counts.get(position++));
+      }
+
+      return position;
+   }
+
+   public void reset()
+   {
+      for (int i = 0, n = pathCounts.length(); i < n; i++) {
+         pathCounts.set(i, 0);
       }
    }
 }
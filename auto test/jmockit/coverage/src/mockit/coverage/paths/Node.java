@@ -4,8 +4,8 @@
  */
 package mockit.coverage.paths;
 
-import java.util.*;
 import java.io.*;
+import java.util.*;
 
 import org.jetbrains.annotations.*;
 
@@ -13,10 +13,13 @@ public class Node implements Serializable
 {
    private static final long serialVersionUID = 7521062699264845946L;
 
-   @NotNull private final transient ThreadLocal<Boolean> reached = new ThreadLocal<Boolean>();
    public final int line;
    protected int segment;
 
+   // Outgoing edges, and the values they add to the number of a path (see PathBuilder#assignPathNumbers):
+   @Nullable private Node[] successors;
+   @Nullable private int[] edgeValues;
+
    private Node(int line) { this.line = line; }
 
    void setSegmentAccordingToPrecedingNode(@NotNull Node precedingNode)
@@ -27,8 +30,34 @@ public class Node implements Serializable
 
    public final int getSegment() { return segment; }
 
-   final void setReached(@Nullable Boolean reached) { this.reached.set(reached); }
-   final boolean wasReached() { return reached.get() != null; }
+   /**
+    * Adds the nodes which can be reached directly from this one, in the same order used for path building.
+    */
+   void addSuccessors(@NotNull List<Node> successorNodes) {}
+
+   final void setEdges(@NotNull Node[] successors, @NotNull int[] edgeValues)
+   {
+      this.successors = successors;
+      this.edgeValues = edgeValues;
+   }
+
+   /**
+    * Returns the value to add to the number of a path going from this node to the given successor, or {@literal -1}
+    * if there is no such edge.
+    * When there are parallel edges to the same successor, only the first one can be told apart at runtime.
+    */
+   final int getValueOfEdgeTo(@NotNull Node successor)
+   {
+      if (successors != null && edgeValues != null) {
+         for (int i = 0; i < successors.length; i++) {
+            if (successors[i] == successor) {
+               return edgeValues[i];
+            }
+         }
+      }
+
+      return -1;
+   }
 
    @Override
    public final String toString() { return getClass().getSimpleName() + ':' + line + '-' + segment; }
@@ -39,6 +68,14 @@ public class Node implements Serializable
       @Nullable Fork nextNode;
 
       Entry(int entryLine) { super(entryLine); }
+
+      @Override
+      void addSuccessors(@NotNull List<Node> successorNodes)
+      {
+         if (nextNode != null) {
+            successorNodes.add(nextNode);
+         }
+      }
    }
 
    interface ConditionalSuccessor extends Serializable
@@ -54,13 +91,18 @@ public class Node implements Serializable
    static final class Exit extends Node implements ConditionalSuccessor
    {
       private static final long serialVersionUID = -4801498566218642509L;
-      @NotNull final List<Path> paths = new ArrayList<Path>(4);
+      @Nullable transient List<Path> paths;
 
       Exit(int exitLine) { super(exitLine); }
 
       public void addToPath(@NotNull Path path)
       {
          path.addNode(this);
+
+         if (paths == null) {
+            paths = new ArrayList<Path>(4);
+         }
+
          paths.add(path);
       }
    }
@@ -75,6 +117,17 @@ public class Node implements Serializable
 
       public void setNextNodeAfterGoto(@NotNull Join newJoin) { nextNodeAfterGoto = newJoin; }
 
+      @Override
+      void addSuccessors(@NotNull List<Node> successorNodes)
+      {
+         if (nextNodeAfterGoto != null) {
+            successorNodes.add(nextNodeAfterGoto);
+         }
+         else if (nextConsecutiveNode != null) {
+            successorNodes.add((Node) nextConsecutiveNode);
+         }
+      }
+
       public void addToPath(@NotNull Path path)
       {
          path.addNode(this);
@@ -115,6 +168,18 @@ public class Node implements Serializable
       @Override
       void addNextNode(@NotNull Join nextNode) { nextNodeAfterJump = nextNode; }
 
+      @Override
+      void addSuccessors(@NotNull List<Node> successorNodes)
+      {
+         if (nextNodeAfterJump != null) {
+            successorNodes.add(nextNodeAfterJump);
+         }
+
+         if (nextConsecutiveNode != null) {
+            successorNodes.add((Node) nextConsecutiveNode);
+         }
+      }
+
       public void addToPath(@NotNull Path path)
       {
          path.addNode(this);
@@ -133,6 +198,9 @@ public class Node implements Serializable
       @Override
       void addNextNode(@NotNull Join nextNode) { caseNodes.add(nextNode); }
 
+      @Override
+      void addSuccessors(@NotNull List<Node> successorNodes) { successorNodes.addAll(caseNodes); }
+
       public void addToPath(@NotNull Path path)
       {
          path.addNode(this);
@@ -147,12 +215,20 @@ public class Node implements Serializable
    {
       private static final long serialVersionUID = -1983522899831071765L;
       ConditionalSuccessor nextNode;
-      transient boolean fromTrivialFork;
+      boolean fromTrivialFork;
 
       Join(int joiningLine) { super(joiningLine); }
 
       public void setNextNodeAfterGoto(@NotNull Join newJoin) { nextNode = newJoin; }
 
+      @Override
+      void addSuccessors(@NotNull List<Node> successorNodes)
+      {
+         if (nextNode != null) {
+            successorNodes.add((Node) nextNode);
+         }
+      }
+
       public void addToPath(@NotNull Path path)
       {
          path.addNode(this);
@@ -179,6 +255,14 @@ public class Node implements Serializable
 
       public void setNextNodeAfterGoto(@NotNull Join join) { nextNodeAfterGoto = join; }
 
+      @Override
+      void addSuccessors(@NotNull List<Node> successorNodes)
+      {
+         if (nextNodeAfterGoto != null) {
+            successorNodes.add(nextNodeAfterGoto);
+         }
+      }
+
       public void addToPath(@NotNull Path path)
       {
          path.addNode(this);
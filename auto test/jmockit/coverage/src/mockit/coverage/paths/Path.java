@@ -15,10 +15,13 @@ public final class Path implements Serializable
    private static final long serialVersionUID = 8895491272907955543L;
 
    @NotNull final List<Node> nodes = new ArrayList<Node>(4);
-   @NotNull private final AtomicInteger executionCount = new AtomicInteger();
    private final boolean shadowed;
    @Nullable private Path shadowPath;
 
+   // The execution counts of all paths in the method, and the number of this path in it (negative if never counted):
+   @Nullable private AtomicIntegerArray pathCounts;
+   private int pathNumber = -1;
+
    Path(@NotNull Node.Entry entryNode)
    {
       shadowed = false;
@@ -34,15 +37,32 @@ public final class Path implements Serializable
 
    void addNode(@NotNull Node node) { nodes.add(node); }
 
-   boolean countExecutionIfAllNodesWereReached(@NotNull List<Node> nodesReached)
+   /**
+    * Computes the number of this path, as the sum of the values of the edges between its nodes.
+    *
+    * @return the path number, or {@literal -1} if some consecutive nodes in the path are not connected by an edge
+    */
+   int computePathNumber()
    {
-      boolean allNodesReached = nodes.equals(nodesReached);
+      int number = 0;
+
+      for (int i = 1, n = nodes.size(); i < n; i++) {
+         int edgeValue = nodes.get(i - 1).getValueOfEdgeTo(nodes.get(i));
+
+         if (edgeValue < 0) {
+            return -1;
+         }
 
-      if (allNodesReached) {
-         executionCount.getAndIncrement();
+         number += edgeValue;
       }
 
-      return allNodesReached;
+      return number;
+   }
+
+   void setPathNumber(@NotNull AtomicIntegerArray pathCounts, int pathNumber)
+   {
+      this.pathCounts = pathCounts;
+      this.pathNumber = pathNumber;
    }
 
    public boolean isShadowed() { return shadowed; }
@@ -50,24 +70,17 @@ public final class Path implements Serializable
 
    public int getExecutionCount()
    {
-      int count = executionCount.get();
+      int count = getOwnExecutionCount();
 
       if (shadowPath != null) {
-         count += shadowPath.executionCount.get();
+         count += shadowPath.getOwnExecutionCount();
       }
 
       return count;
    }
 
-   void addCountFromPreviousTestRun(@NotNull Path previousPath)
-   {
-      int currentExecutionCount = executionCount.get();
-      int previousExecutionCount = previousPath.executionCount.get();
-      executionCount.set(currentExecutionCount + previousExecutionCount);
-   }
-
-   void reset()
+   private int getOwnExecutionCount()
    {
-      executionCount.set(0);
+      return pathCounts == null || pathNumber < 0 ? 0 : pathCounts.get(pathNumber);
    }
 }
@@ -12,12 +12,79 @@ import mockit.coverage.paths.Node.*;
 
 final class PathBuilder
 {
+   /**
+    * Assigns a value to each edge between nodes (Ball-Larus numbering), so that the sum of values along each path
+    * from the entry node to an exit node is a distinct path number, from zero up to the total number of paths.
+    * Since nodes only have edges to nodes which come later in the method body, they are processed in reverse order,
+    * without enumerating any paths.
+    *
+    * @return the total number of paths, or {@literal -1} if it exceeds the given maximum
+    */
+   static int assignPathNumbers(@NotNull List<Node> nodes, int maxPaths)
+   {
+      Map<Node, Long> nodesToPathCounts = new IdentityHashMap<Node, Long>(nodes.size());
+      List<Node> successors = new ArrayList<Node>();
+
+      for (int i = nodes.size() - 1; i >= 0; i--) {
+         Node node = nodes.get(i);
+         long pathCount;
+
+         if (node instanceof Exit) {
+            pathCount = 1;
+         }
+         else {
+            successors.clear();
+            addSuccessors(nodes, node, successors);
+
+            int[] edgeValues = new int[successors.size()];
+            pathCount = 0;
+
+            for (int j = 0; j < edgeValues.length; j++) {
+               Long successorPathCount = nodesToPathCounts.get(successors.get(j));
+
+               if (successorPathCount == null) {
+                  // Not an edge to a later node, so paths cannot be numbered.
+                  return -1;
+               }
+
+               edgeValues[j] = (int) pathCount;
+               pathCount = Math.min(pathCount + successorPathCount, maxPaths + 1L);
+            }
+
+            node.setEdges(successors.toArray(new Node[edgeValues.length]), edgeValues);
+         }
+
+         nodesToPathCounts.put(node, pathCount);
+      }
+
+      long totalPaths = nodesToPathCounts.get(nodes.get(0));
+      return totalPaths > maxPaths ? -1 : (int) totalPaths;
+   }
+
+   private static void addSuccessors(@NotNull List<Node> nodes, @NotNull Node node, @NotNull List<Node> successors)
+   {
+      if (node instanceof Entry && ((Entry) node).nextNode == null) {
+         if (nodes.size() > 1) {
+            successors.add(nodes.get(1));
+         }
+      }
+      else {
+         node.addSuccessors(successors);
+      }
+   }
+
    @NotNull List<Path> buildPaths(@NotNull List<Node> nodes)
    {
       if (nodes.size() == 1) {
          return Collections.emptyList();
       }
 
+      for (Node node : nodes) {
+         if (node instanceof Exit) {
+            ((Exit) node).paths = null;
+         }
+      }
+
       Entry entryNode = (Entry) nodes.get(0);
       Path path = new Path(entryNode);
 
@@ -38,7 +105,11 @@ final class PathBuilder
 
       for (Node node : nodes) {
          if (node instanceof Exit) {
-            paths.addAll(((Exit) node).paths);
+            List<Path> pathsToExit = ((Exit) node).paths;
+
+            if (pathsToExit != null) {
+               paths.addAll(pathsToExit);
+            }
          }
       }
 
@@ -6,6 +6,7 @@ package mockit.coverage.paths;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.jetbrains.annotations.*;
 
@@ -16,8 +17,9 @@ public final class PerFilePathCoverage implements PerFileCoverage
 {
    private static final long serialVersionUID = 6075064821486644269L;
 
+   // Sorted by line, and safe for lookups from threads executing the methods while other methods are being added.
    @NotNull public final Map<Integer, MethodCoverageData> firstLineToMethodData =
-      new LinkedHashMap<Integer, MethodCoverageData>();
+      new ConcurrentSkipListMap<Integer, MethodCoverageData>();
 
    // Computed on demand:
    private transient int totalPaths;
@@ -37,7 +39,7 @@ public final class PerFilePathCoverage implements PerFileCoverage
       firstLineToMethodData.put(methodData.getFirstLineInBody(), methodData);
    }
 
-   public synchronized void registerExecution(int firstLineInMethodBody, int node)
+   public void registerExecution(int firstLineInMethodBody, int node)
    {
       MethodCoverageData methodData = firstLineToMethodData.get(firstLineInMethodBody);
 
@@ -76,6 +78,23 @@ public final class PerFilePathCoverage implements PerFileCoverage
       }
    }
 
+   public void copyExecutionCounts(@NotNull ExecutionCounts counts)
+   {
+      for (MethodCoverageData methodData : firstLineToMethodData.values()) {
+         methodData.copyPathCounts(counts);
+      }
+   }
+
+   public int setExecutionCounts(@NotNull ExecutionCounts counts, int position)
+   {
+      for (MethodCoverageData methodData : firstLineToMethodData.values()) {
+         position = methodData.setPathCounts(counts, position);
+      }
+
+      initializeCache();
+      return position;
+   }
+
    public void reset()
    {
       for (MethodCoverageData methodData : firstLineToMethodData.values()) {
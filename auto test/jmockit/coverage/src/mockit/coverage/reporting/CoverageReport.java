@@ -10,6 +10,7 @@ import java.util.Map.*;
 
 import org.jetbrains.annotations.*;
 
+import mockit.coverage.*;
 import mockit.coverage.data.*;
 import mockit.coverage.reporting.packages.*;
 import mockit.coverage.reporting.sourceFiles.*;
@@ -18,11 +19,13 @@ class CoverageReport
 {
    @NotNull private final String outputDir;
    private boolean outputDirCreated;
-   @Nullable private final List<File> sourceDirs;
+   @Nullable private final SourceFileIndex sourceFileIndex;
    @NotNull private final Map<String, FileCoverageData> fileToFileData;
    @NotNull private final Map<String, List<String>> packageToFiles;
    private final boolean withCallPoints;
    @Nullable private final Collection<String> sourceFilesNotFound;
+   private final boolean pagedLayout;
+   @Nullable private FilePageHashes filePageHashes;
 
    protected CoverageReport(
       @NotNull String outputDir, boolean outputDirCreated, @Nullable String[] srcDirs,
@@ -30,11 +33,13 @@ class CoverageReport
    {
       this.outputDir = outputDir.isEmpty() ? "coverage-report" : outputDir;
       this.outputDirCreated = outputDirCreated;
-      sourceDirs = srcDirs == null ? null : new SourceFiles().buildListOfSourceDirectories(srcDirs);
+      sourceFileIndex =
+         srcDirs == null ? null : new SourceFileIndex(new SourceFiles().buildListOfSourceDirectories(srcDirs));
       fileToFileData = coverageData.getFileToFileDataMap();
       packageToFiles = new HashMap<String, List<String>>();
       this.withCallPoints = withCallPoints;
       sourceFilesNotFound = srcDirs == null ? null : new ArrayList<String>();
+      pagedLayout = "paged".equals(Configuration.getProperty("reportLayout"));
    }
 
    public final void generate() throws IOException
@@ -47,15 +52,25 @@ class CoverageReport
          return;
       }
 
-      boolean withSourceFilePages = sourceDirs != null;
+      boolean withSourceFilePages = sourceFileIndex != null;
+      List<File> sourceDirs = withSourceFilePages ? sourceFileIndex.getSourceDirs() : null;
 
-      if (withSourceFilePages && sourceDirs.size() > 1) {
+      if (sourceDirs != null && sourceDirs.size() > 1) {
          System.out.println("JMockit: Coverage source dirs: " + sourceDirs);
       }
 
+      if (pagedLayout && withSourceFilePages) {
+         filePageHashes = new FilePageHashes(outputDir, withCallPoints);
+      }
+
       generateFileCoverageReportsWhileBuildingPackageLists();
 
-      new IndexPage(outputFile, sourceDirs, sourceFilesNotFound, packageToFiles, fileToFileData).generate();
+      if (filePageHashes != null) {
+         filePageHashes.writeToFile();
+      }
+
+      new IndexPage(outputFile, sourceDirs, sourceFilesNotFound, packageToFiles, fileToFileData, pagedLayout)
+         .generate();
       new StaticFiles(outputDir).copyToOutputDir(withSourceFilePages);
 
       System.out.println("JMockit: Coverage report written to " + outputFile.getParentFile().getCanonicalPath());
@@ -93,11 +108,14 @@ class CoverageReport
    private void generateFileCoverageReport(@NotNull String sourceFile, @NotNull FileCoverageData fileData)
       throws IOException
    {
-      if (sourceDirs == null) {
+      if (sourceFileIndex == null) {
+         addFileToPackageFileList(sourceFile);
+      }
+      else if (isFilePageUpToDate(sourceFile, fileData)) {
          addFileToPackageFileList(sourceFile);
       }
       else {
-         InputFile inputFile = InputFile.createIfFileExists(sourceDirs, sourceFile);
+         InputFile inputFile = InputFile.createIfFileExists(sourceFileIndex, sourceFile);
 
          if (inputFile != null) {
             new FileCoverageReport(outputDir, inputFile, fileData, withCallPoints).generate();
@@ -114,6 +132,17 @@ class CoverageReport
       }
    }
 
+   private boolean isFilePageUpToDate(@NotNull String filePath, @NotNull FileCoverageData fileData)
+   {
+      if (filePageHashes == null) {
+         return false;
+      }
+
+      assert sourceFileIndex != null;
+      File sourceFile = sourceFileIndex.findSourceFile(filePath);
+      return sourceFile != null && filePageHashes.isPageUpToDate(filePath, sourceFile, fileData);
+   }
+
    private void addFileToPackageFileList(@NotNull String file)
    {
       int p = file.lastIndexOf('/');
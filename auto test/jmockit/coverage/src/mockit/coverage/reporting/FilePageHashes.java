@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting;
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.coverage.dataItems.*;
+import mockit.coverage.lines.*;
+import mockit.coverage.paths.*;
+
+/**
+ * Hashes of the coverage data and source file from which each source file page of the HTML report was generated.
+ * They are kept in a "file-pages.idx" file in the report directory, so that the next report only needs to write the
+ * pages of files whose data or source changed since then.
+ */
+final class FilePageHashes
+{
+   private static final int FORMAT_ID = 0x4A4D4650;
+   private static final OutputStream NO_OUTPUT = new OutputStream() {
+      @Override public void write(int b) {}
+      @Override public void write(@NotNull byte[] b, int off, int len) {}
+   };
+
+   @NotNull private final String outputDir;
+   @NotNull private final File indexFile;
+   @NotNull private final String reportSettings;
+   private final boolean withCallPoints;
+   @NotNull private final Map<String, Long> previousHashes;
+   @NotNull private final Map<String, Long> currentHashes;
+
+   FilePageHashes(@NotNull String outputDir, boolean withCallPoints)
+   {
+      this.outputDir = outputDir;
+      indexFile = new File(outputDir, "file-pages.idx");
+      reportSettings = getReportSettings(withCallPoints);
+      this.withCallPoints = withCallPoints;
+      previousHashes = readPreviousHashes();
+      currentHashes = new HashMap<String, Long>();
+   }
+
+   @NotNull private static String getReportSettings(boolean withCallPoints)
+   {
+      final StringBuilder settings = new StringBuilder(withCallPoints ? "cp" : "nocp");
+
+      Metrics.performAction(new Metrics.Action() {
+         @Override
+         public void perform(@NotNull Metrics metric) { settings.append(',').append(metric.name()); }
+      });
+
+      return settings.toString();
+   }
+
+   @NotNull private Map<String, Long> readPreviousHashes()
+   {
+      Map<String, Long> hashes = new HashMap<String, Long>();
+
+      if (indexFile.exists()) {
+         try {
+            readHashesFromFile(hashes);
+         }
+         catch (IOException ignore) {
+            // All pages get written again, as if there was no previous report.
+            hashes.clear();
+         }
+      }
+
+      return hashes;
+   }
+
+   private void readHashesFromFile(@NotNull Map<String, Long> hashes) throws IOException
+   {
+      DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+
+      try {
+         if (input.readInt() == FORMAT_ID) {
+            for (int n = input.readInt(); n > 0; n--) {
+               String filePath = input.readUTF();
+               hashes.put(filePath, input.readLong());
+            }
+         }
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   /**
+    * Checks whether the page for the given source file was generated from the same coverage data and source file by
+    * the previous report, and still exists, recording the current hash for the next report in any case.
+    */
+   boolean isPageUpToDate(@NotNull String filePath, @NotNull File sourceFile, @NotNull FileCoverageData fileData)
+   {
+      Long currentHash = computeHash(sourceFile, fileData);
+
+      if (currentHash == null) {
+         return false;
+      }
+
+      currentHashes.put(filePath, currentHash);
+
+      return
+         currentHash.equals(previousHashes.get(filePath)) && OutputFile.getOutputFile(outputDir, filePath).exists();
+   }
+
+   /**
+    * Hashes the report settings, the size and time stamp of the source file, and the counters shown in its page.
+    * Fields of the coverage data which don't affect the page, such as its index or the time stamp of the last
+    * modification to the classfile, are left out, so that they don't cause the page to be written again needlessly.
+    */
+   @Nullable private Long computeHash(@NotNull File sourceFile, @NotNull FileCoverageData fileData)
+   {
+      MessageDigest digest = createDigest();
+      DataOutputStream output = new DataOutputStream(new DigestOutputStream(NO_OUTPUT, digest));
+
+      try {
+         output.writeUTF(reportSettings);
+         output.writeLong(sourceFile.lastModified());
+         output.writeLong(sourceFile.length());
+         writeLineCounters(output, fileData.lineCoverageInfo);
+
+         if (Metrics.PathCoverage.isActive()) {
+            writePathCounters(output, fileData.getMethods());
+         }
+
+         if (Metrics.DataCoverage.isActive()) {
+            writeFieldCounters(output, fileData.dataCoverageInfo);
+         }
+
+         output.close();
+      }
+      catch (IOException ignore) {
+         return null;
+      }
+
+      byte[] hash = digest.digest();
+      long hashValue = 0;
+
+      for (int i = 0; i < 8; i++) {
+         hashValue = hashValue << 8 | hash[i] & 0xFF;
+      }
+
+      return hashValue;
+   }
+
+   private void writeLineCounters(@NotNull DataOutputStream output, @NotNull PerFileLineCoverage lineInfo)
+      throws IOException
+   {
+      int lineCount = lineInfo.getLineCount();
+      output.writeInt(lineCount);
+
+      for (int line = 1; line <= lineCount; line++) {
+         int segments = lineInfo.getNumberOfSegments(line);
+         output.writeInt(segments);
+
+         if (segments > 0 && lineInfo.hasLineData(line)) {
+            writeSegmentCounters(output, lineInfo.getLineData(line));
+
+            for (int i = 0, n = lineInfo.getBranchCount(line); i < n; i++) {
+               writeSegmentCounters(output, lineInfo.getBranchData(line, i));
+            }
+         }
+      }
+   }
+
+   private void writeSegmentCounters(@NotNull DataOutputStream output, @NotNull LineSegmentData segment)
+      throws IOException
+   {
+      output.writeInt(segment.getExecutionCount());
+      output.writeBoolean(segment.isCovered());
+
+      if (withCallPoints) {
+         List<CallPoint> callPoints = segment.getCallPoints();
+
+         if (callPoints == null) {
+            output.writeInt(0);
+         }
+         else {
+            output.writeInt(callPoints.size());
+
+            for (CallPoint callPoint : callPoints) {
+               output.writeUTF(callPoint.getStackTraceElement().toString());
+            }
+         }
+      }
+   }
+
+   private static void writePathCounters(
+      @NotNull DataOutputStream output, @NotNull Collection<MethodCoverageData> methods) throws IOException
+   {
+      for (MethodCoverageData method : methods) {
+         output.writeInt(method.getFirstLineInBody());
+
+         for (Path path : method.getPaths()) {
+            output.writeInt(path.getExecutionCount());
+         }
+      }
+   }
+
+   private static void writeFieldCounters(@NotNull DataOutputStream output, @NotNull PerFileDataCoverage dataInfo)
+      throws IOException
+   {
+      for (String classAndFieldNames : dataInfo.allFields) {
+         output.writeUTF(classAndFieldNames);
+         output.writeBoolean(dataInfo.isCovered(classAndFieldNames));
+
+         FieldData fieldData = dataInfo.getStaticFieldData(classAndFieldNames);
+
+         if (fieldData == null) {
+            fieldData = dataInfo.getInstanceFieldData(classAndFieldNames);
+         }
+
+         if (fieldData != null) {
+            output.writeInt(fieldData.getReadCount());
+            output.writeInt(fieldData.getWriteCount());
+         }
+      }
+   }
+
+   @NotNull private static MessageDigest createDigest()
+   {
+      try {
+         return MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   void writeToFile() throws IOException
+   {
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+
+      try {
+         output.writeInt(FORMAT_ID);
+         output.writeInt(currentHashes.size());
+
+         for (Map.Entry<String, Long> filePathAndHash : currentHashes.entrySet()) {
+            output.writeUTF(filePathAndHash.getKey());
+            output.writeLong(filePathAndHash.getValue());
+         }
+      }
+      finally {
+         output.close();
+      }
+   }
+}
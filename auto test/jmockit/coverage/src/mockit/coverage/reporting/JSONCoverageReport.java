@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting;
+
+import java.io.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.coverage.dataItems.*;
+import mockit.coverage.lines.*;
+import mockit.coverage.paths.*;
+
+/**
+ * Writes a "coverage.json" file with the totals for the whole report, each package, and each source file, followed by
+ * the execution counts of each line of a file.
+ * Line coverage totals are in line segments, as in the HTML report, with the branches among them also counted apart.
+ * <p/>
+ * A line with branches also has the execution count of each branch.
+ * When path coverage is active, each method has its name and descriptor, line range, execution count, and number of
+ * paths executed; when data coverage is active, each field has its read and write counts, and whether it was fully exercised.
+ */
+public final class JSONCoverageReport extends MachineReadableReport
+{
+   private boolean firstPackage;
+   private boolean firstFile;
+
+   public JSONCoverageReport(@NotNull String outputDir, @NotNull CoverageData coverageData)
+   {
+      super(outputDir, "coverage.json", coverageData);
+   }
+
+   @Override
+   void writeStartOfReport(@NotNull Counters totals) throws IOException
+   {
+      write("{\"timestamp\":");
+      write(System.currentTimeMillis());
+      writeCounters(totals);
+      write(",\"packages\":[");
+      firstPackage = true;
+   }
+
+   @Override
+   void writeStartOfPackage(@NotNull String packageName, @NotNull Counters totals) throws IOException
+   {
+      write(firstPackage ? "\n{\"name\":" : ",\n{\"name\":");
+      writeString(packageName);
+      writeCounters(totals);
+      write(",\"files\":[");
+      firstPackage = false;
+      firstFile = true;
+   }
+
+   @Override
+   void writeFile(@NotNull String filePath, @NotNull FileCoverageData fileData, @NotNull Counters totals)
+      throws IOException
+   {
+      write(firstFile ? "\n {\"path\":" : ",\n {\"path\":");
+      writeString(filePath);
+
+      if (fileData.kindOfTopLevelType != null) {
+         write(",\"kind\":");
+         writeString(fileData.kindOfTopLevelType);
+      }
+
+      writeCounters(totals);
+      writeLines(fileData.lineCoverageInfo);
+
+      if (withPaths) {
+         writeMethods(fileData.pathCoverageInfo);
+      }
+
+      if (withFields) {
+         writeFields(fileData.dataCoverageInfo);
+      }
+
+      write("}");
+      firstFile = false;
+   }
+
+   private void writeLines(@NotNull PerFileLineCoverage lineInfo) throws IOException
+   {
+      write(",\n  \"lines\":[");
+      String separator = "";
+
+      for (int line = 1, n = lineInfo.getLineCount(); line <= n; line++) {
+         if (lineInfo.getNumberOfSegments(line) > 0) {
+            write(separator);
+            write("{\"line\":");
+            write(line);
+            write(",\"hits\":");
+            write(Math.max(lineInfo.getExecutionCount(line), 0));
+            writeBranches(lineInfo, line);
+            write("}");
+            separator = ",";
+         }
+      }
+
+      write("]");
+   }
+
+   private void writeBranches(@NotNull PerFileLineCoverage lineInfo, int line) throws IOException
+   {
+      int branches = lineInfo.getBranchCount(line);
+
+      if (branches > 0) {
+         write(",\"branches\":[");
+
+         for (int i = 0; i < branches; i++) {
+            if (i > 0) write(",");
+            write(lineInfo.getBranchData(line, i).getExecutionCount());
+         }
+
+         write("]");
+      }
+   }
+
+   private void writeMethods(@NotNull PerFilePathCoverage pathInfo) throws IOException
+   {
+      write(",\n  \"methods\":[");
+      String separator = "";
+
+      for (MethodCoverageData methodData : pathInfo.firstLineToMethodData.values()) {
+         write(separator);
+         write("{");
+         writeMethodNameAndDesc(methodData);
+         write("\"firstLine\":");
+         write(methodData.getFirstLineInBody());
+         write(",\"lastLine\":");
+         write(methodData.getLastLineInBody());
+         write(",\"hits\":");
+         write(methodData.getExecutionCount());
+         write(",\"paths\":");
+         write(methodData.getTotalPaths());
+         write(",\"coveredPaths\":");
+         write(methodData.getCoveredPaths());
+         write("}");
+         separator = ",";
+      }
+
+      write("]");
+   }
+
+   private void writeMethodNameAndDesc(@NotNull MethodCoverageData methodData) throws IOException
+   {
+      String methodName = methodData.getMethodName();
+      String methodDesc = methodData.getMethodDesc();
+
+      if (methodName != null && methodDesc != null) {
+         write("\"name\":");
+         writeString(methodName);
+         write(",\"desc\":");
+         writeString(methodDesc);
+         write(",");
+      }
+   }
+
+   private void writeFields(@NotNull PerFileDataCoverage dataInfo) throws IOException
+   {
+      write(",\n  \"fields\":[");
+      boolean noFieldsWritten = writeFields(dataInfo.getStaticFieldsData(), true, true);
+      writeFields(dataInfo.instanceFieldsData, false, noFieldsWritten);
+      write("]");
+   }
+
+   private boolean writeFields(
+      @NotNull Map<String, ? extends FieldData> fieldsData, boolean isStatic, boolean noFieldsWrittenYet)
+      throws IOException
+   {
+      boolean first = noFieldsWrittenYet;
+
+      for (Map.Entry<String, ? extends FieldData> fieldAndData : fieldsData.entrySet()) {
+         FieldData fieldData = fieldAndData.getValue();
+
+         write(first ? "{\"name\":" : ",{\"name\":");
+         writeString(fieldAndData.getKey());
+         write(isStatic ? ",\"static\":true,\"reads\":" : ",\"static\":false,\"reads\":");
+         write(fieldData.getReadCount());
+         write(",\"writes\":");
+         write(fieldData.getWriteCount());
+         write(fieldData.isCovered() ? ",\"covered\":true}" : ",\"covered\":false}");
+         first = false;
+      }
+
+      return first;
+   }
+
+   @Override
+   void writeEndOfPackage() throws IOException { write("]}"); }
+
+   @Override
+   void writeEndOfReport() throws IOException { write("\n]}\n"); }
+
+   private void writeCounters(@NotNull Counters counters) throws IOException
+   {
+      writeCounter("segments", counters, Metrics.LineCoverage);
+      writeCounter("branches", counters.coveredBranches, counters.branches);
+
+      if (withPaths) {
+         writeCounter("paths", counters, Metrics.PathCoverage);
+      }
+
+      if (withFields) {
+         writeCounter("fields", counters, Metrics.DataCoverage);
+      }
+   }
+
+   private void writeCounter(@NotNull String name, @NotNull Counters counters, @NotNull Metrics metric)
+      throws IOException
+   {
+      writeCounter(name, counters.getCoveredItems(metric), counters.getTotalItems(metric));
+   }
+
+   private void writeCounter(@NotNull String name, int covered, int total) throws IOException
+   {
+      write(",\"");
+      write(name);
+      write("\":{\"covered\":");
+      write(covered);
+      write(",\"total\":");
+      write(total);
+      write("}");
+   }
+
+   private void write(@NotNull String text) throws IOException
+   {
+      assert output != null;
+      output.write(text);
+   }
+
+   private void write(long value) throws IOException { write(String.valueOf(value)); }
+
+   private void writeString(@NotNull String text) throws IOException
+   {
+      assert output != null;
+      output.write('"');
+
+      for (int i = 0, n = text.length(); i < n; i++) {
+         char c = text.charAt(i);
+
+         if (c == '"' || c == '\\') {
+            output.write('\\');
+            output.write(c);
+         }
+         else if (c < ' ') {
+            output.write(String.format("\\u%04x", (int) c));
+         }
+         else {
+            output.write(c);
+         }
+      }
+
+      output.write('"');
+   }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting;
+
+import java.io.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+
+/**
+ * Base class for coverage reports meant to be consumed by tools rather than people, written in a single file.
+ * <p/>
+ * The coverage data is walked package by package, with each source file written as soon as it's visited, straight to
+ * a buffered output stream; no in-memory representation of the document is ever built.
+ * The totals for the report and for each package are taken from a {@link CoverageTree}, the same one from which the
+ * HTML report gets them, since they are written before the files they cover.
+ */
+abstract class MachineReadableReport
+{
+   @NotNull private final File outputFile;
+   @NotNull private final Map<String, FileCoverageData> fileToFileData;
+   @NotNull private final Map<String, List<String>> packageToFiles;
+   final boolean withPaths;
+   final boolean withFields;
+   @Nullable Writer output;
+
+   MachineReadableReport(
+      @NotNull String outputDir, @NotNull String outputFileName, @NotNull CoverageData coverageData)
+   {
+      outputFile = new File(outputDir.isEmpty() ? null : outputDir, outputFileName);
+      fileToFileData = coverageData.getFileToFileDataMap();
+      packageToFiles = new TreeMap<String, List<String>>();
+      withPaths = Metrics.PathCoverage.isActive();
+      withFields = Metrics.DataCoverage.isActive();
+   }
+
+   public final void generate() throws IOException
+   {
+      CoverageTree coverageTree = new CoverageTree(fileToFileData);
+      Map<String, Counters> packageToTotals = buildPackageListsAndTotals(coverageTree);
+      Counters totals = new Counters(coverageTree, null);
+
+      for (Counters packageTotals : packageToTotals.values()) {
+         totals.addBranches(packageTotals);
+      }
+
+      output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8"), 65536);
+
+      try {
+         writeStartOfReport(totals);
+
+         for (Map.Entry<String, List<String>> packageAndFiles : packageToFiles.entrySet()) {
+            String packagePath = packageAndFiles.getKey();
+            writeStartOfPackage(packagePath.replace('/', '.'), packageToTotals.get(packagePath));
+
+            for (String filePath : packageAndFiles.getValue()) {
+               FileCoverageData fileData = fileToFileData.get(filePath);
+               writeFile(filePath, fileData, new Counters(fileData));
+            }
+
+            writeEndOfPackage();
+         }
+
+         writeEndOfReport();
+      }
+      finally {
+         output.close();
+      }
+
+      System.out.println("JMockit: Coverage report written to " + outputFile.getCanonicalPath());
+   }
+
+   @NotNull private Map<String, Counters> buildPackageListsAndTotals(@NotNull CoverageTree coverageTree)
+   {
+      Map<String, Counters> packageToTotals = new HashMap<String, Counters>();
+
+      for (Map.Entry<String, FileCoverageData> fileAndFileData : fileToFileData.entrySet()) {
+         String filePath = fileAndFileData.getKey();
+         int p = filePath.lastIndexOf('/');
+         String packagePath = p < 0 ? "" : filePath.substring(0, p);
+         List<String> filesInPackage = packageToFiles.get(packagePath);
+         Counters packageTotals = packageToTotals.get(packagePath);
+
+         if (filesInPackage == null) {
+            filesInPackage = new ArrayList<String>();
+            packageToFiles.put(packagePath, filesInPackage);
+            packageTotals = new Counters(coverageTree, packagePath);
+            packageToTotals.put(packagePath, packageTotals);
+         }
+
+         filesInPackage.add(filePath);
+         packageTotals.addBranches(fileAndFileData.getValue().lineCoverageInfo);
+      }
+
+      for (List<String> filesInPackage : packageToFiles.values()) {
+         Collections.sort(filesInPackage);
+      }
+
+      return packageToTotals;
+   }
+
+   abstract void writeStartOfReport(@NotNull Counters totals) throws IOException;
+   abstract void writeStartOfPackage(@NotNull String packageName, @NotNull Counters totals) throws IOException;
+   abstract void writeFile(@NotNull String filePath, @NotNull FileCoverageData fileData, @NotNull Counters totals)
+      throws IOException;
+   abstract void writeEndOfPackage() throws IOException;
+   abstract void writeEndOfReport() throws IOException;
+
+   /**
+    * The covered and total items of each metric, with the same values as in the HTML report, so that line coverage is
+    * measured in line segments.
+    * The branches among those segments are also counted, each one covered if executed in either direction.
+    */
+   static final class Counters
+   {
+      @NotNull private final int[] coveredItems;
+      @NotNull private final int[] totalItems;
+      int branches;
+      int coveredBranches;
+
+      private Counters()
+      {
+         coveredItems = new int[Metrics.values().length];
+         totalItems = new int[coveredItems.length];
+      }
+
+      /**
+       * Gets the counts for all source files, or for those of a package, not including sub-packages; branches are
+       * added separately.
+       */
+      Counters(@NotNull CoverageTree coverageTree, @Nullable String packagePath)
+      {
+         this();
+
+         for (Metrics metric : Metrics.values()) {
+            int i = metric.ordinal();
+
+            if (packagePath == null) {
+               coveredItems[i] = coverageTree.getCoveredItems(metric, null);
+               totalItems[i] = coverageTree.getTotalItems(metric, null);
+            }
+            else {
+               coveredItems[i] = coverageTree.getCoveredItemsInPackage(metric, packagePath);
+               totalItems[i] = coverageTree.getTotalItemsInPackage(metric, packagePath);
+            }
+         }
+      }
+
+      Counters(@NotNull FileCoverageData fileData)
+      {
+         this();
+
+         for (Metrics metric : Metrics.values()) {
+            PerFileCoverage coverageInfo = fileData.getPerFileCoverage(metric);
+            coveredItems[metric.ordinal()] = coverageInfo.getCoveredItems();
+            totalItems[metric.ordinal()] = coverageInfo.getTotalItems();
+         }
+
+         addBranches(fileData.lineCoverageInfo);
+      }
+
+      int getCoveredItems(@NotNull Metrics metric) { return coveredItems[metric.ordinal()]; }
+      int getTotalItems(@NotNull Metrics metric) { return totalItems[metric.ordinal()]; }
+
+      void addBranches(@NotNull PerFileLineCoverage lineInfo)
+      {
+         branches += lineInfo.getTotalBranches();
+         coveredBranches += lineInfo.getCoveredBranches();
+      }
+
+      void addBranches(@NotNull Counters other)
+      {
+         branches += other.branches;
+         coveredBranches += other.coveredBranches;
+      }
+   }
+}
@@ -12,20 +12,22 @@ import org.jetbrains.annotations.*;
 public final class OutputFile extends PrintWriter
 {
    private static final Pattern PATH_SEPARATOR = Pattern.compile("/");
+   private static final int BUFFER_SIZE = 65536;
 
    @NotNull private final String relPathToOutDir;
    private final boolean withPrettyPrint;
 
    public OutputFile(@NotNull File file) throws IOException
    {
-      super(new FileWriter(file));
+      super(new BufferedWriter(new FileWriter(file), BUFFER_SIZE));
       relPathToOutDir = "";
       withPrettyPrint = false;
    }
 
    public OutputFile(@NotNull String outputDir, @NotNull String sourceFilePath) throws IOException
    {
-      super(new FileWriter(getOutputFileCreatingDirIfNeeded(outputDir, sourceFilePath)));
+      super(new BufferedWriter(
+         new FileWriter(getOutputFileCreatingDirIfNeeded(outputDir, sourceFilePath)), BUFFER_SIZE));
       relPathToOutDir = getRelativeSubPathToOutputDir(sourceFilePath);
       withPrettyPrint = true;
    }
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting;
+
+import java.io.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+import mockit.coverage.paths.*;
+
+/**
+ * Writes a "coverage.xml" file in the format of Cobertura reports, which is understood by most CI servers.
+ * <p/>
+ * Each source file becomes a {@code class} element, named after the top-level type with the same name as the file.
+ * Line counters and rates are in line segments, matching the line coverage percentages of the HTML report, while the
+ * hits of each {@code line} element are those of the line itself.
+ * Branch counters refer to the branches considered by line coverage, each one covered if executed in either direction.
+ * Methods are only listed when path coverage is active, since only then the coverage data knows about them.
+ * Path and data coverage counters, when these metrics are active, are written as additional {@code paths-*} and
+ * {@code fields-*} attributes, which aren't in the Cobertura DTD; hence, no {@code DOCTYPE} is declared.
+ */
+public final class XMLCoverageReport extends MachineReadableReport
+{
+   @Nullable private final String[] sourceDirs;
+
+   public XMLCoverageReport(
+      @NotNull String outputDir, @Nullable String[] sourceDirs, @NotNull CoverageData coverageData)
+   {
+      super(outputDir, "coverage.xml", coverageData);
+      this.sourceDirs = sourceDirs;
+   }
+
+   @Override
+   void writeStartOfReport(@NotNull Counters totals) throws IOException
+   {
+      write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<coverage");
+      writeRates(totals);
+      writeAttribute("lines-covered", totals.getCoveredItems(Metrics.LineCoverage));
+      writeAttribute("lines-valid", totals.getTotalItems(Metrics.LineCoverage));
+      writeAttribute("branches-covered", totals.coveredBranches);
+      writeAttribute("branches-valid", totals.branches);
+      writeAdditionalCounters(totals);
+      write(" complexity=\"0\" version=\"JMockit\"");
+      writeAttribute("timestamp", String.valueOf(System.currentTimeMillis()));
+      write(">\n <sources>\n");
+
+      if (sourceDirs != null) {
+         for (String sourceDir : sourceDirs) {
+            write("  <source>");
+            writeEscaped(sourceDir);
+            write("</source>\n");
+         }
+      }
+
+      write(" </sources>\n <packages>\n");
+   }
+
+   @Override
+   void writeStartOfPackage(@NotNull String packageName, @NotNull Counters totals) throws IOException
+   {
+      write("  <package");
+      writeAttribute("name", packageName);
+      writeRates(totals);
+      writeAdditionalCounters(totals);
+      write(" complexity=\"0\">\n   <classes>\n");
+   }
+
+   @Override
+   void writeFile(@NotNull String filePath, @NotNull FileCoverageData fileData, @NotNull Counters totals)
+      throws IOException
+   {
+      String className = filePath.substring(0, filePath.lastIndexOf('.')).replace('/', '.');
+
+      write("    <class");
+      writeAttribute("name", className);
+      writeAttribute("filename", filePath);
+      writeRates(totals);
+      writeAdditionalCounters(totals);
+      write(" complexity=\"0\">\n");
+
+      PerFileLineCoverage lineInfo = fileData.lineCoverageInfo;
+      writeMethods(lineInfo, fileData.getMethods());
+
+      write("     <lines>\n");
+      writeLines(lineInfo, 1, lineInfo.getLineCount(), "      ");
+      write("     </lines>\n    </class>\n");
+   }
+
+   private void writeMethods(@NotNull PerFileLineCoverage lineInfo, @NotNull Collection<MethodCoverageData> methods)
+      throws IOException
+   {
+      if (methods.isEmpty()) {
+         write("     <methods/>\n");
+         return;
+      }
+
+      write("     <methods>\n");
+
+      for (MethodCoverageData method : methods) {
+         String methodName = method.getMethodName();
+         String methodDesc = method.getMethodDesc();
+
+         if (methodName != null && methodDesc != null) {
+            writeMethod(lineInfo, method, methodName, methodDesc);
+         }
+      }
+
+      write("     </methods>\n");
+   }
+
+   private void writeMethod(
+      @NotNull PerFileLineCoverage lineInfo, @NotNull MethodCoverageData method, @NotNull String methodName,
+      @NotNull String methodDesc) throws IOException
+   {
+      int firstLine = method.getFirstLineInBody();
+      int lastLine = method.getLastLineInBody();
+      int segments = 0;
+      int coveredSegments = 0;
+      int branches = 0;
+      int coveredBranches = 0;
+
+      for (int line = firstLine; line <= lastLine; line++) {
+         int lineSegments = lineInfo.getNumberOfSegments(line);
+
+         if (lineSegments > 0) {
+            segments += lineSegments;
+
+            if (lineInfo.hasLineData(line)) {
+               coveredSegments += lineInfo.getLineData(line).getNumberOfCoveredSegments();
+            }
+
+            for (int i = 0, n = lineInfo.getBranchCount(line); i < n; i++) {
+               branches++;
+
+               if (lineInfo.getBranchData(line, i).isCovered()) {
+                  coveredBranches++;
+               }
+            }
+         }
+      }
+
+      write("      <method");
+      writeAttribute("name", methodName);
+      writeAttribute("signature", methodDesc);
+      writeAttribute("line-rate", rate(coveredSegments, segments));
+      writeAttribute("branch-rate", rate(coveredBranches, branches));
+
+      if (withPaths) {
+         writeAttribute("paths-covered", method.getCoveredPaths());
+         writeAttribute("paths-valid", method.getTotalPaths());
+      }
+
+      write(" complexity=\"0\">\n       <lines>\n");
+      writeLines(lineInfo, firstLine, lastLine, "        ");
+      write("       </lines>\n      </method>\n");
+   }
+
+   private void writeLines(@NotNull PerFileLineCoverage lineInfo, int firstLine, int lastLine, @NotNull String indent)
+      throws IOException
+   {
+      for (int line = firstLine; line <= lastLine; line++) {
+         if (lineInfo.getNumberOfSegments(line) > 0) {
+            write(indent);
+            writeLine(lineInfo, line);
+         }
+      }
+   }
+
+   private void writeLine(@NotNull PerFileLineCoverage lineInfo, int line) throws IOException
+   {
+      write("<line");
+      writeAttribute("number", line);
+      writeAttribute("hits", Math.max(lineInfo.getExecutionCount(line), 0));
+
+      int branches = lineInfo.getBranchCount(line);
+
+      if (branches == 0) {
+         write(" branch=\"false\"/>\n");
+         return;
+      }
+
+      int coveredBranches = 0;
+
+      for (int i = 0; i < branches; i++) {
+         if (lineInfo.getBranchData(line, i).isCovered()) {
+            coveredBranches++;
+         }
+      }
+
+      write(" branch=\"true\" condition-coverage=\"");
+      write(String.valueOf(100 * coveredBranches / branches));
+      write("% (");
+      write(String.valueOf(coveredBranches));
+      write("/");
+      write(String.valueOf(branches));
+      write(")\"/>\n");
+   }
+
+   @Override
+   void writeEndOfPackage() throws IOException { write("   </classes>\n  </package>\n"); }
+
+   @Override
+   void writeEndOfReport() throws IOException { write(" </packages>\n</coverage>\n"); }
+
+   private void writeRates(@NotNull Counters counters) throws IOException
+   {
+      int coveredSegments = counters.getCoveredItems(Metrics.LineCoverage);
+      writeAttribute("line-rate", rate(coveredSegments, counters.getTotalItems(Metrics.LineCoverage)));
+      writeAttribute("branch-rate", rate(counters.coveredBranches, counters.branches));
+   }
+
+   private void writeAdditionalCounters(@NotNull Counters counters) throws IOException
+   {
+      if (withPaths) {
+         writeAttribute("paths-covered", counters.getCoveredItems(Metrics.PathCoverage));
+         writeAttribute("paths-valid", counters.getTotalItems(Metrics.PathCoverage));
+      }
+
+      if (withFields) {
+         writeAttribute("fields-covered", counters.getCoveredItems(Metrics.DataCoverage));
+         writeAttribute("fields-valid", counters.getTotalItems(Metrics.DataCoverage));
+      }
+   }
+
+   @NotNull private static String rate(int covered, int total)
+   {
+      return total == 0 ? "1.0" : String.valueOf((double) covered / total);
+   }
+
+   private void write(@NotNull String text) throws IOException
+   {
+      assert output != null;
+      output.write(text);
+   }
+
+   private void writeAttribute(@NotNull String name, int value) throws IOException
+   {
+      writeAttribute(name, String.valueOf(value));
+   }
+
+   private void writeAttribute(@NotNull String name, @NotNull String value) throws IOException
+   {
+      write(" ");
+      write(name);
+      write("=\"");
+      writeEscaped(value);
+      write("\"");
+   }
+
+   private void writeEscaped(@NotNull String text) throws IOException
+   {
+      assert output != null;
+
+      for (int i = 0, n = text.length(); i < n; i++) {
+         char c = text.charAt(i);
+
+         switch (c) {
+            case '&': output.write("&amp;"); break;
+            case '<': output.write("&lt;"); break;
+            case '>': output.write("&gt;"); break;
+            case '"': output.write("&quot;"); break;
+            default: output.write(c);
+         }
+      }
+   }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2011 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 var cellShown;
@@ -94,6 +94,79 @@ function showHideFiles(files)
    filesTable.style.display = filesShown ? 'none' : 'block';
 }
 
+function loadFiles(packageCell, dataFile)
+{
+   var filesCell = packageCell.parentNode.cells[1];
+
+   if (filesCell.getElementsByTagName('table')[0]) {
+      showHideFiles(packageCell);
+   }
+   else {
+      var script = document.createElement('script');
+      script.src = dataFile;
+      document.getElementsByTagName('head')[0].appendChild(script);
+   }
+}
+
+function packageFilesLoaded(packageName, fileNameWidth, itemNames, files)
+{
+   var rows = document.getElementById('packages').rows;
+
+   for (var i = 1; i < rows.length - 1; i++) {
+      var packageCell = rows[i].cells[0];
+      var filesCell = rows[i].cells[1];
+
+      if (packageCell.textContent == packageName && !filesCell.getElementsByTagName('table')[0]) {
+         filesCell.appendChild(createFilesTable(fileNameWidth, itemNames, files));
+         return;
+      }
+   }
+}
+
+function createFilesTable(fileNameWidth, itemNames, files)
+{
+   var table = document.createElement('table');
+   table.width = '100%';
+
+   for (var i = 0; i < files.length; i++) {
+      var file = files[i];
+      var row = table.insertRow(-1);
+      var fileCell = row.insertCell(-1);
+      fileCell.className = 'file ' + file.kind;
+      var fileName = document.createTextNode(file.name);
+
+      if (file.page) {
+         var link = document.createElement('a');
+         link.target = '_blank';
+         link.href = file.page;
+         link.appendChild(fileName);
+         fileCell.appendChild(link);
+      }
+      else {
+         fileCell.appendChild(fileName);
+      }
+
+      fileCell.appendChild(document.createTextNode(new Array(fileNameWidth - file.name.length + 1).join(' ')));
+
+      for (var j = 0; j < file.metrics.length; j++) {
+         var metric = file.metrics[j];
+         var cell = row.insertCell(-1);
+
+         if (metric) {
+            cell.style.backgroundColor = '#' + metric[3];
+            cell.title = itemNames[j] + ': ' + metric[0] + '/' + metric[1];
+            cell.appendChild(document.createTextNode(metric[2] + '%'));
+         }
+         else {
+            cell.className = 'nocode';
+            cell.appendChild(document.createTextNode('N/A'));
+         }
+      }
+   }
+
+   return table;
+}
+
 function showHideLines(cell)
 {
    var content = cell.children;
@@ -21,7 +21,7 @@ final class LineCoverageFormatter
 
    LineCoverageFormatter(boolean withCallPoints)
    {
-      formattedLine = new StringBuilder(200);
+      formattedLine = new StringBuilder(512);
       segmentsFormatter = new LineSegmentsFormatter(withCallPoints, formattedLine);
       listOfCallPoints = withCallPoints ? new ListOfCallPoints() : null;
    }
@@ -62,7 +62,8 @@ final class LineCoverageFormatter
       }
 
       formattedLine.append("' id='l").append(lineParser.getNumber()).append("s0'>");
-      formattedLine.append(lineParser.getInitialElement().toString()).append("</pre>");
+      lineParser.getInitialElement().appendAllBefore(formattedLine, null);
+      formattedLine.append("</pre>");
 
       if (lineWithCallPoints) {
          listOfCallPoints.insertListOfCallPoints(callPoints);
@@ -17,20 +17,34 @@ public final class IndexPage extends ListWithFilesAndPercentages
 {
    @Nullable private final List<File> sourceDirs;
    @NotNull private final Map<String, List<String>> packageToFiles;
-   @NotNull private final Map<String, int[]> packageToPackagePercentages;
-   @NotNull private final PackageCoverageReport packageReport;
+   @NotNull private final CoverageTree coverageTree;
+   @Nullable private final PackageCoverageReport packageReport;
+   @Nullable private final PackageDataFile packageDataFile;
    private final int totalFileCount;
 
    public IndexPage(
       @NotNull File outputFile, @Nullable List<File> sourceDirs, @Nullable Collection<String> sourceFilesNotFound,
-      @NotNull Map<String, List<String>> packageToFiles, @NotNull Map<String, FileCoverageData> fileToFileData)
+      @NotNull Map<String, List<String>> packageToFiles, @NotNull Map<String, FileCoverageData> fileToFileData,
+      boolean pagedLayout)
       throws IOException
    {
       super(new OutputFile(outputFile), "    ");
       this.sourceDirs = sourceDirs;
       this.packageToFiles = packageToFiles;
-      packageToPackagePercentages = new HashMap<String, int[]>();
-      packageReport = new PackageCoverageReport(output, sourceFilesNotFound, fileToFileData, packageToFiles.values());
+      coverageTree = new CoverageTree(fileToFileData);
+
+      if (pagedLayout) {
+         int fileNameWidth = PackageCoverageReport.maximumSourceFileNameLength(packageToFiles.values());
+         packageReport = null;
+         packageDataFile =
+            new PackageDataFile(outputFile.getParentFile(), sourceFilesNotFound, fileToFileData, fileNameWidth);
+      }
+      else {
+         packageReport =
+            new PackageCoverageReport(output, sourceFilesNotFound, fileToFileData, packageToFiles.values());
+         packageDataFile = null;
+      }
+
       totalFileCount = totalNumberOfSourceFilesWithCoverageData(fileToFileData.values());
    }
 
@@ -39,7 +53,7 @@ public final class IndexPage extends ListWithFilesAndPercentages
       return fileData.size() - Collections.frequency(fileData, null);
    }
 
-   public void generate()
+   public void generate() throws IOException
    {
       try {
          writeHeader();
@@ -88,7 +102,14 @@ public final class IndexPage extends ListWithFilesAndPercentages
    private void writeTableFirstRowWithColumnTitles()
    {
       output.println("    <tr>");
-      output.write("      <th style='cursor: col-resize' onclick='showHideAllFiles()'>Packages: ");
+
+      if (packageDataFile == null) {
+         output.write("      <th style='cursor: col-resize' onclick='showHideAllFiles()'>Packages: ");
+      }
+      else {
+         output.write("      <th>Packages: ");
+      }
+
       output.print(packageToFiles.keySet().size());
       output.println("</th>");
       output.write(
@@ -138,8 +159,8 @@ public final class IndexPage extends ListWithFilesAndPercentages
 
    private void writeLineWithCoverageTotals(@NotNull Metrics metric)
    {
-      int covered = coveredItems[metric.ordinal()];
-      int total = totalItems[metric.ordinal()];
+      int covered = coverageTree.getCoveredItems(metric, null);
+      int total = coverageTree.getTotalItems(metric, null);
       int percentage = CoveragePercentage.calculate(covered, total);
 
       printCoveragePercentage(metric, covered, total, percentage);
@@ -157,7 +178,7 @@ public final class IndexPage extends ListWithFilesAndPercentages
    }
 
    @Override
-   protected void writeMetricsForFile(String unused, @NotNull final String packageName)
+   protected void writeMetricsForFile(String unused, @NotNull final String packageName) throws IOException
    {
       writeRowStart();
       writeTableCellWithPackageName(packageName);
@@ -178,7 +199,12 @@ public final class IndexPage extends ListWithFilesAndPercentages
 
       List<String> filesInPackage = packageToFiles.get(packageName);
 
-      if (filesInPackage.size() > 1) {
+      if (packageDataFile != null) {
+         output.write(" click' onclick='loadFiles(this, \"");
+         output.write(PackageDataFile.getRelativePath(packageName));
+         output.write("\")");
+      }
+      else if (filesInPackage.size() > 1) {
          output.write(" click' onclick='showHideFiles(this)");
       }
 
@@ -187,8 +213,16 @@ public final class IndexPage extends ListWithFilesAndPercentages
       output.println("</td>");
    }
 
-   private void writeInternalTableForSourceFiles(@NotNull final String packageName)
+   private void writeInternalTableForSourceFiles(@NotNull String packageName) throws IOException
    {
+      if (packageDataFile != null) {
+         packageDataFile.generate(packageName, packageToFiles.get(packageName));
+         printIndent();
+         output.println("  <td></td>");
+         return;
+      }
+
+      assert packageReport != null;
       printIndent();
       output.println("  <td>");
       printIndent();
@@ -196,48 +230,19 @@ public final class IndexPage extends ListWithFilesAndPercentages
 
       packageReport.writeMetricsForEachFile(packageName, packageToFiles.get(packageName));
 
-      Metrics.performAction(new Metrics.Action() {
-         @Override
-         public void perform(@NotNull Metrics metric) { recordCoverageInformationForPackage(packageName, metric); }
-      });
-
       printIndent();
       output.println("    </table>");
       printIndent();
       output.println("  </td>");
    }
 
-   private void recordCoverageInformationForPackage(@NotNull String packageName, @NotNull Metrics metric)
-   {
-      int coveredInPackage = packageReport.coveredItems[metric.ordinal()];
-      int totalInPackage = packageReport.totalItems[metric.ordinal()];
-      int packagePercentage = CoveragePercentage.calculate(coveredInPackage, totalInPackage);
-
-      setPackageCoveragePercentage(packageName, metric, packagePercentage);
-
-      totalItems[metric.ordinal()] += totalInPackage;
-      coveredItems[metric.ordinal()] += coveredInPackage;
-   }
-
-   private void setPackageCoveragePercentage(@NotNull String packageName, @NotNull Metrics metric, int percentage)
-   {
-      int[] percentages = packageToPackagePercentages.get(packageName);
-
-      if (percentages == null) {
-         percentages = new int[Metrics.values().length];
-         packageToPackagePercentages.put(packageName, percentages);
-      }
-
-      percentages[metric.ordinal()] = percentage;
-   }
-
    private void writeCoveragePercentageForPackage(@NotNull String packageName, @NotNull Metrics metric)
    {
-      int coveredInPackage = packageReport.coveredItems[metric.ordinal()];
-      int totalInPackage = packageReport.totalItems[metric.ordinal()];
-      int filePercentage = packageToPackagePercentages.get(packageName)[metric.ordinal()];
+      int coveredInPackage = coverageTree.getCoveredItemsInPackage(metric, packageName);
+      int totalInPackage = coverageTree.getTotalItemsInPackage(metric, packageName);
+      int packagePercentage = CoveragePercentage.calculate(coveredInPackage, totalInPackage);
 
-      printCoveragePercentage(metric, coveredInPackage, totalInPackage, filePercentage);
+      printCoveragePercentage(metric, coveredInPackage, totalInPackage, packagePercentage);
    }
 
    @Override
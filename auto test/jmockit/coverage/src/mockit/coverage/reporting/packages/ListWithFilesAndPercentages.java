@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage.reporting.packages;
@@ -15,8 +15,6 @@ abstract class ListWithFilesAndPercentages
 {
    @NotNull protected final PrintWriter output;
    @NotNull private final String baseIndent;
-   @NotNull final int[] totalItems = new int[Metrics.values().length];
-   @NotNull final int[] coveredItems = new int[Metrics.values().length];
 
    protected ListWithFilesAndPercentages(@NotNull PrintWriter output, @NotNull String baseIndent)
    {
@@ -25,14 +23,13 @@ abstract class ListWithFilesAndPercentages
    }
 
    final void writeMetricsForEachFile(@Nullable String packageName, @NotNull List<String> fileNames)
+      throws IOException
    {
       if (fileNames.isEmpty()) {
          return;
       }
 
       Collections.sort(fileNames);
-      Arrays.fill(totalItems, 0);
-      Arrays.fill(coveredItems, 0);
 
       for (String fileName : fileNames) {
          writeMetricsForFile(packageName, fileName);
@@ -53,7 +50,8 @@ abstract class ListWithFilesAndPercentages
 
    final void printIndent() { output.write(baseIndent); }
 
-   protected abstract void writeMetricsForFile(@Nullable String packageName, @NotNull String fileName);
+   protected abstract void writeMetricsForFile(@Nullable String packageName, @NotNull String fileName)
+      throws IOException;
 
    final void printCoveragePercentage(@NotNull Metrics metric, int covered, int total, int percentage)
    {
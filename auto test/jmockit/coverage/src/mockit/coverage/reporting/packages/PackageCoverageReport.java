@@ -28,7 +28,7 @@ final class PackageCoverageReport extends ListWithFilesAndPercentages
       fileNameWithSpaces = new char[maximumSourceFileNameLength(allSourceFileNames)];
    }
 
-   private int maximumSourceFileNameLength(@NotNull Collection<List<String>> allSourceFileNames)
+   static int maximumSourceFileNameLength(@NotNull Collection<List<String>> allSourceFileNames)
    {
       int maxLength = 0;
 
@@ -105,9 +105,6 @@ final class PackageCoverageReport extends ListWithFilesAndPercentages
       int covered = coverageInfo.getCoveredItems();
       int total = coverageInfo.getTotalItems();
 
-      coveredItems[metric.ordinal()] += covered;
-      totalItems[metric.ordinal()] += total;
-
       printCoveragePercentage(metric, covered, total, percentage);
    }
 
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting.packages;
+
+import java.io.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+
+/**
+ * Writes the coverage metrics of the files in a package to a separate data file, for the paged layout of the index
+ * page, where "coverage.js" only loads the files of a package when it gets expanded.
+ * <p/>
+ * The data is a JSON array passed to the <code>packageFilesLoaded</code> function, since browsers don't let a page
+ * opened from the local file system read JSON files directly, but do let it load scripts.
+ */
+final class PackageDataFile
+{
+   @NotNull private final File dataDir;
+   @Nullable private final Collection<String> sourceFilesNotFound;
+   @NotNull private final Map<String, FileCoverageData> filesToFileData;
+   private final int fileNameWidth;
+   @NotNull private final String itemNames;
+
+   PackageDataFile(
+      @NotNull File outputDir, @Nullable Collection<String> sourceFilesNotFound,
+      @NotNull Map<String, FileCoverageData> filesToFileData, int fileNameWidth)
+   {
+      dataDir = new File(outputDir, "data");
+      this.sourceFilesNotFound = sourceFilesNotFound;
+      this.filesToFileData = filesToFileData;
+      this.fileNameWidth = fileNameWidth;
+      itemNames = getItemNamesOfActiveMetrics();
+   }
+
+   @NotNull private static String getItemNamesOfActiveMetrics()
+   {
+      final StringBuilder names = new StringBuilder();
+
+      Metrics.performAction(new Metrics.Action() {
+         @Override
+         public void perform(@NotNull Metrics metric)
+         {
+            names.append(names.length() == 0 ? '[' : ',');
+            names.append('"').append(metric.itemName()).append('"');
+         }
+      });
+
+      return names.length() == 0 ? "[]" : names.append(']').toString();
+   }
+
+   /**
+    * Returns the path of the data file for the given package, relative to the output directory.
+    * The default package is written to "data/default-package.js", which can't clash with a real package name.
+    */
+   @NotNull static String getRelativePath(@NotNull String packageName)
+   {
+      return "data/" + (packageName.isEmpty() ? "default-package" : packageName.replace('/', '.')) + ".js";
+   }
+
+   void generate(@NotNull String packageName, @NotNull List<String> fileNames) throws IOException
+   {
+      if (!dataDir.exists()) {
+         boolean dataDirCreated = dataDir.mkdirs();
+         assert dataDirCreated : "Failed to create data dir: " + dataDir;
+      }
+
+      File dataFile = new File(dataDir.getParentFile(), getRelativePath(packageName));
+      PrintWriter output = new PrintWriter(new BufferedWriter(new FileWriter(dataFile)));
+
+      try {
+         output.write("packageFilesLoaded(");
+         writeString(output, packageName.replace('/', '.'));
+         output.write(", ");
+         output.print(fileNameWidth);
+         output.write(", ");
+         output.write(itemNames);
+         output.println(", [");
+
+         Collections.sort(fileNames);
+         String separator = "";
+
+         for (String fileName : fileNames) {
+            output.write(separator);
+            writeFile(output, packageName, fileName);
+            separator = ",\n";
+         }
+
+         output.println();
+         output.println("]);");
+      }
+      finally {
+         output.close();
+      }
+   }
+
+   private void writeFile(@NotNull final PrintWriter output, @NotNull String packageName, @NotNull String fileName)
+   {
+      String filePath = packageName.isEmpty() ? fileName : packageName + '/' + fileName;
+      final FileCoverageData fileData = filesToFileData.get(filePath);
+
+      output.write("{\"name\":");
+      writeString(output, fileName);
+      output.write(",\"kind\":\"");
+      output.write(fileData.kindOfTopLevelType != null ? fileData.kindOfTopLevelType : "class");
+      output.write('"');
+
+      if (sourceFilesNotFound != null && !sourceFilesNotFound.contains(filePath)) {
+         output.write(",\"page\":");
+         writeString(output, filePath.substring(0, filePath.lastIndexOf('.')) + ".html");
+      }
+
+      output.write(",\"metrics\":[");
+
+      Metrics.performAction(new Metrics.Action() {
+         String separator = "";
+
+         @Override
+         public void perform(@NotNull Metrics metric)
+         {
+            output.write(separator);
+            writeMetric(output, fileData.getPerFileCoverage(metric));
+            separator = ",";
+         }
+      });
+
+      output.write("]}");
+   }
+
+   /**
+    * Writes a JavaScript string literal, escaping characters which would otherwise end it or the script, since package
+    * and file names come from the file system and can contain any of them.
+    */
+   private static void writeString(@NotNull PrintWriter output, @NotNull String text)
+   {
+      output.write('"');
+
+      for (int i = 0, n = text.length(); i < n; i++) {
+         char c = text.charAt(i);
+
+         if (c == '"' || c == '\\' || c == '\'') {
+            output.write('\\');
+            output.write(c);
+         }
+         else if (c < ' ' || c == '<' || c == '\u2028' || c == '\u2029') {
+            output.write(String.format("\\u%04x", (int) c));
+         }
+         else {
+            output.write(c);
+         }
+      }
+
+      output.write('"');
+   }
+
+   private static void writeMetric(@NotNull PrintWriter output, @NotNull PerFileCoverage coverageInfo)
+   {
+      int total = coverageInfo.getTotalItems();
+
+      if (total == 0) {
+         output.write("null");
+         return;
+      }
+
+      int covered = coverageInfo.getCoveredItems();
+      int percentage = coverageInfo.getCoveragePercentage();
+
+      output.write('[');
+      output.print(covered);
+      output.write(',');
+      output.print(total);
+      output.write(",\"");
+      output.write(percentage < 100 ? String.valueOf(percentage) : covered == total ? "100" : ">99");
+      output.write("\",\"");
+      output.write(CoveragePercentage.percentageColor(covered, total));
+      output.write("\"]");
+   }
+}
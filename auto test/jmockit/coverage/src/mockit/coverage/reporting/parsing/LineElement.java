@@ -1,23 +1,30 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage.reporting.parsing;
 
-import static java.util.Arrays.*;
 import java.util.*;
 
 import org.jetbrains.annotations.*;
 
+/**
+ * A segment of a source line, whose text is kept as a range of positions in the line buffer of the {@link LineParser}.
+ * Elements are only valid until the next line is parsed; {@link #getText()} gives a copy of the text when needed.
+ * <p/>
+ * The "&lt;" character is escaped for HTML when the text is appended to a formatted line.
+ */
 public final class LineElement implements Iterable<LineElement>
 {
-   private static final List<String> CONDITIONAL_OPERATORS = asList("||", "&&", ":", "else");
-   private static final List<String> CONDITIONAL_INSTRUCTIONS = asList("if", "for", "while");
+   private static final String[] CONDITIONAL_OPERATORS = {"||", "&&", ":", "else"};
+   private static final String[] CONDITIONAL_INSTRUCTIONS = {"if", "for", "while"};
 
    enum ElementType { CODE, COMMENT, SEPARATOR }
 
-   @NotNull private final ElementType type;
-   @NotNull private final String text;
+   @NotNull private ElementType type;
+   @NotNull private char[] line;
+   private int start;
+   private int end;
    @Nullable private String openingTag;
    @Nullable private String closingTag;
    @Nullable private LineElement next;
@@ -25,10 +32,23 @@ public final class LineElement implements Iterable<LineElement>
    private boolean underConditionalStatement;
    private int parenthesesBalance;
 
-   LineElement(@NotNull ElementType type, @NotNull String text)
+   LineElement()
+   {
+      type = ElementType.SEPARATOR;
+      line = new char[0];
+   }
+
+   void reset(@NotNull ElementType type, @NotNull char[] line, int start, int end)
    {
       this.type = type;
-      this.text = text.replaceAll("<", "&lt;");
+      this.line = line;
+      this.start = start;
+      this.end = end;
+      openingTag = null;
+      closingTag = null;
+      next = null;
+      underConditionalStatement = false;
+      parenthesesBalance = 0;
    }
 
    public boolean isCode() { return type == ElementType.CODE; }
@@ -36,15 +56,59 @@ public final class LineElement implements Iterable<LineElement>
 
    public boolean isKeyword(@NotNull String keyword)
    {
-      return isCode() && text.equals(keyword);
+      return isCode() && textEquals(keyword);
+   }
+
+   private boolean textEquals(@NotNull String word)
+   {
+      int n = word.length();
+
+      if (end - start != n) {
+         return false;
+      }
+
+      for (int i = 0; i < n; i++) {
+         if (line[start + i] != word.charAt(i)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   private boolean textEqualsOneOf(@NotNull String[] words)
+   {
+      for (String word : words) {
+         if (textEquals(word)) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   private boolean textContains(char c)
+   {
+      for (int i = start; i < end; i++) {
+         if (line[i] == c) {
+            return true;
+         }
+      }
+
+      return false;
    }
 
    public boolean isDotSeparator()
    {
-      return type == ElementType.SEPARATOR && text.charAt(0) == '.';
+      return type == ElementType.SEPARATOR && end > start && line[start] == '.';
    }
 
-   @NotNull public String getText() { return text; }
+   @NotNull public String getText()
+   {
+      StringBuilder text = new StringBuilder(end - start + 8);
+      appendEscapedText(text);
+      return text.toString();
+   }
 
    @Nullable public LineElement getNext() { return next; }
    void setNext(@Nullable LineElement next) { this.next = next; }
@@ -68,12 +132,12 @@ public final class LineElement implements Iterable<LineElement>
       this.closingTag = closingTag;
    }
 
-   @Nullable public LineElement appendUntilNextCodeElement(@NotNull StringBuilder line)
+   @Nullable public LineElement appendUntilNextCodeElement(@NotNull StringBuilder formattedLine)
    {
       LineElement element = this;
 
       while (!element.isCode()) {
-         element.appendText(line);
+         element.appendText(formattedLine);
          element = element.next;
 
          if (element == null) {
@@ -92,14 +156,30 @@ public final class LineElement implements Iterable<LineElement>
       destination.parenthesesBalance = parenthesesBalance;
    }
 
-   private void appendText(@NotNull StringBuilder line)
+   private void appendText(@NotNull StringBuilder formattedLine)
    {
       if (openingTag == null) {
-         line.append(text);
+         appendEscapedText(formattedLine);
       }
       else {
-         line.append(openingTag).append(text).append(closingTag);
+         formattedLine.append(openingTag);
+         appendEscapedText(formattedLine);
+         formattedLine.append(closingTag);
+      }
+   }
+
+   private void appendEscapedText(@NotNull StringBuilder formattedLine)
+   {
+      int runStart = start;
+
+      for (int i = start; i < end; i++) {
+         if (line[i] == '<') {
+            formattedLine.append(line, runStart, i - runStart).append("&lt;");
+            runStart = i + 1;
+         }
       }
+
+      formattedLine.append(line, runStart, end - runStart);
    }
 
    @Nullable public LineElement findNextBranchingPoint()
@@ -133,15 +213,15 @@ public final class LineElement implements Iterable<LineElement>
       return next.findNextBranchingPoint();
    }
 
-   private boolean isConditionalStatement() { return CONDITIONAL_INSTRUCTIONS.contains(text); }
-   public boolean isBranchingElement() { return CONDITIONAL_OPERATORS.contains(text); }
+   private boolean isConditionalStatement() { return textEqualsOneOf(CONDITIONAL_INSTRUCTIONS); }
+   public boolean isBranchingElement() { return textEqualsOneOf(CONDITIONAL_OPERATORS); }
 
    private int getParenthesisBalance()
    {
-      if (text.indexOf('(') >= 0) {
+      if (textContains('(')) {
          return 1;
       }
-      else if (text.indexOf(')') >= 0) {
+      else if (textContains(')')) {
          return -1;
       }
 
@@ -151,7 +231,7 @@ public final class LineElement implements Iterable<LineElement>
    @Nullable public LineElement findWord(@NotNull String word)
    {
       for (LineElement element : this) {
-         if (element.isCode() && word.equals(element.text)) {
+         if (element.isCode() && element.textEquals(word)) {
             return element;
          }
       }
@@ -172,8 +252,8 @@ public final class LineElement implements Iterable<LineElement>
 
    private int getBraceBalance()
    {
-      if (isCode() && text.length() == 1) {
-         char c = text.charAt(0);
+      if (isCode() && end - start == 1) {
+         char c = line[start];
 
          if (c == '{') {
             return 1;
@@ -186,12 +266,12 @@ public final class LineElement implements Iterable<LineElement>
       return 0;
    }
 
-   public void appendAllBefore(@NotNull StringBuilder line, @Nullable LineElement elementToStopBefore)
+   public void appendAllBefore(@NotNull StringBuilder formattedLine, @Nullable LineElement elementToStopBefore)
    {
       LineElement elementToPrint = this;
 
       do {
-         elementToPrint.appendText(line);
+         elementToPrint.appendText(formattedLine);
          elementToPrint = elementToPrint.next;
       }
       while (elementToPrint != null && elementToPrint != elementToStopBefore);
@@ -227,12 +307,12 @@ public final class LineElement implements Iterable<LineElement>
    @Override
    public String toString()
    {
-      StringBuilder line = new StringBuilder(200);
+      StringBuilder formattedLine = new StringBuilder(200);
 
       for (LineElement element : this) {
-         element.appendText(line);
+         element.appendText(formattedLine);
       }
 
-      return line.toString();
+      return formattedLine.toString();
    }
 }
@@ -1,9 +1,11 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.coverage.reporting.parsing;
 
+import java.util.*;
+
 import org.jetbrains.annotations.*;
 
 import mockit.coverage.reporting.parsing.LineElement.*;
@@ -12,23 +14,37 @@ import mockit.coverage.reporting.parsing.LineElement.*;
  * Parses a source line into one or more consecutive segments, identifying which ones contain Java code and which ones
  * contain only comments.
  * Block comments initiated in a previous line are kept track of until the end of the block is reached.
+ * <p/>
+ * Each line is scanned once, from a character buffer which gets reused for all lines of the file.
+ * Line elements only hold the positions of their text in the buffer, and are themselves reused for the next line.
+ * String and character literals are kept whole, so that their contents are not mistaken for comments, separators, or
+ * conditional operators.
  */
 public final class LineParser
 {
    private static final String SEPARATORS = ".,;()";
 
    private int lineNum;
-   @NotNull private String line;
+   @NotNull private char[] line;
+   private int lineLength;
    @Nullable private LineElement initialElement;
    private boolean inComments;
 
+   // Elements from previous lines, reused for the current one:
+   @NotNull private final List<LineElement> elements;
+   private int elementCount;
+
    // Helper fields:
    @Nullable private LineElement currentElement;
-   private int lineLength;
    private int startPos;
    private boolean inCodeElement;
    private int pos;
-   private int currChar;
+
+   public LineParser()
+   {
+      line = new char[256];
+      elements = new ArrayList<LineElement>();
+   }
 
    public int getNumber() { return lineNum; }
 
@@ -36,12 +52,8 @@ public final class LineParser
 
    public boolean isBlankLine()
    {
-      int n = line.length();
-
-      for (int i = 0; i < n; i++) {
-         char c = line.charAt(i);
-
-         if (!Character.isWhitespace(c)) {
+      for (int i = 0; i < lineLength; i++) {
+         if (!Character.isWhitespace(line[i])) {
             return false;
          }
       }
@@ -54,151 +66,150 @@ public final class LineParser
    boolean parse(@NotNull String line)
    {
       lineNum++;
+      readIntoBuffer(line);
       initialElement = null;
       currentElement = null;
-      this.line = line;
-      lineLength = line.length();
+      elementCount = 0;
       startPos = inComments ? 0 : -1;
       inCodeElement = false;
+      pos = 0;
 
-      for (pos = 0; pos < lineLength; pos++) {
-         currChar = line.codePointAt(pos);
-
-         if (parseComment()) {
-            break;
-         }
-
-         parseSeparatorsAndCode();
+      if (!inComments || findEndOfBlockComment()) {
+         parseCodeAndComments();
       }
 
       if (startPos >= 0) {
-         addFinalElement();
+         addElement();
       }
       else if (initialElement == null) {
-         initialElement = new LineElement(ElementType.SEPARATOR, "");
+         addElement(ElementType.SEPARATOR, 0);
          return false;
       }
 
       return !inComments && !isBlankLine();
    }
 
-   private void parseSeparatorsAndCode()
+   private void readIntoBuffer(@NotNull String text)
    {
-      boolean separator = isSeparator();
+      lineLength = text.length();
 
-      if (separator && !inCodeElement) {
-         startNewElementIfNotYetStarted();
-      }
-      else if (!separator && !inCodeElement) {
-         if (startPos >= 0) {
-            addElement();
-         }
-
-         inCodeElement = true;
-         startPos = pos;
-      }
-      else if (separator) {
-         addElement();
-         inCodeElement = false;
-         startPos = pos;
+      if (lineLength > line.length) {
+         line = new char[Math.max(lineLength, 2 * line.length)];
       }
-   }
 
-   private boolean isSeparator()
-   {
-      return Character.isWhitespace(currChar) || SEPARATORS.indexOf(currChar) >= 0;
+      text.getChars(0, lineLength, line, 0);
    }
 
-   private void startNewElementIfNotYetStarted()
+   private void parseCodeAndComments()
    {
-      if (startPos < 0) {
-         startPos = pos;
-      }
-   }
-
-   private boolean parseComment()
-   {
-      if (inComments && parseUntilEndOfLineOrEndOfComment()) {
-         return true;
-      }
-
-      while (currChar == '/' && pos < lineLength - 1) {
-         int c2 = line.codePointAt(pos + 1);
+      while (pos < lineLength) {
+         char c = line[pos];
 
-         if (c2 == '/') {
-            endCodeElementIfPending();
-            startNewElementIfNotYetStarted();
-            inComments = true;
-            addFinalElement();
-            inComments = false;
-            startPos = -1;
-            return true;
+         if (c == '/' && pos < lineLength - 1 && (line[pos + 1] == '/' || line[pos + 1] == '*')) {
+            if (!parseComment()) {
+               return;
+            }
          }
-         else if (c2 == '*') {
-            endCodeElementIfPending();
-            startNewElementIfNotYetStarted();
-            inComments = true;
-            pos += 2;
-
-            if (parseUntilEndOfLineOrEndOfComment()) {
-               return true;
+         else if (c == '"' || c == '\'') {
+            startCodeElementIfNotYetStarted();
+            skipLiteral(c);
+         }
+         else if (Character.isWhitespace(c) || SEPARATORS.indexOf(c) >= 0) {
+            if (inCodeElement) {
+               addElement();
+               inCodeElement = false;
+               startPos = pos;
             }
+            else if (startPos < 0) {
+               startPos = pos;
+            }
+
+            pos++;
          }
          else {
-            break;
+            startCodeElementIfNotYetStarted();
+            pos++;
          }
       }
-
-      return false;
    }
 
-   private void endCodeElementIfPending()
+   /**
+    * Parses a comment starting at the current position; any separators immediately preceding it become part of the
+    * comment element.
+    *
+    * @return {@code true} if the line continues after the end of a block comment, {@code false} otherwise
+    */
+   private boolean parseComment()
    {
       if (inCodeElement) {
          addElement();
-         startPos = pos;
          inCodeElement = false;
+         startPos = pos;
+      }
+      else if (startPos < 0) {
+         startPos = pos;
+      }
+
+      inComments = true;
+
+      if (line[pos + 1] == '/') {
+         pos = lineLength;
+         addElement();
+         inComments = false;
+         startPos = -1;
+         return false;
       }
+
+      pos += 2;
+      return findEndOfBlockComment();
    }
 
-   private boolean parseUntilEndOfLineOrEndOfComment()
+   private boolean findEndOfBlockComment()
    {
-      while (pos < lineLength) {
-         currChar = line.codePointAt(pos);
-
-         if (currChar == '*' && pos < lineLength - 1 && line.codePointAt(pos + 1) == '/') {
+      for (; pos < lineLength - 1; pos++) {
+         if (line[pos] == '*' && line[pos + 1] == '/') {
             pos += 2;
             addElement();
             startPos = -1;
             inComments = false;
-            break;
+            return true;
          }
-
-         pos++;
       }
 
-      if (pos < lineLength) {
-         currChar = line.codePointAt(pos);
-         return false;
-      }
-      else {
-         return true;
-      }
+      pos = lineLength;
+      return false;
    }
 
-   private void addFinalElement()
+   private void startCodeElementIfNotYetStarted()
    {
-      String text = line.substring(startPos);
-      addElement(text);
+      if (!inCodeElement) {
+         if (startPos >= 0) {
+            addElement();
+         }
+
+         inCodeElement = true;
+         startPos = pos;
+      }
    }
 
-   private void addElement()
+   private void skipLiteral(char quote)
    {
-      String text = pos > 0 ? line.substring(startPos, pos) : line.substring(startPos);
-      addElement(text);
+      for (pos++; pos < lineLength; pos++) {
+         char c = line[pos];
+
+         if (c == '\\') {
+            pos++;
+         }
+         else if (c == quote) {
+            pos++;
+            return;
+         }
+      }
+
+      pos = lineLength;
    }
 
-   private void addElement(@NotNull String text)
+   private void addElement()
    {
       ElementType type;
 
@@ -212,7 +223,23 @@ public final class LineParser
          type = ElementType.SEPARATOR;
       }
 
-      LineElement newElement = new LineElement(type, text);
+      addElement(type, startPos);
+   }
+
+   private void addElement(@NotNull ElementType type, int start)
+   {
+      LineElement newElement;
+
+      if (elementCount < elements.size()) {
+         newElement = elements.get(elementCount);
+      }
+      else {
+         newElement = new LineElement();
+         elements.add(newElement);
+      }
+
+      elementCount++;
+      newElement.reset(type, line, start, pos);
 
       if (initialElement == null) {
          initialElement = newElement;
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting.sourceFiles;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.*;
+
+/**
+ * An index of the ".java" files found under the source directories, built once for the whole report so that source
+ * files don't need to be searched for in the directories one at a time.
+ * <p/>
+ * The directories are walked in parallel, one task for each top-level sub-directory.
+ * A source file is then looked up by name, and by its package-relative path matching the end of the file path.
+ * Results are memoized, including for source files not found.
+ */
+public final class SourceFileIndex
+{
+   @NotNull private static final File NOT_FOUND = new File("");
+
+   @NotNull private final List<File> sourceDirs;
+   @NotNull private final List<Map<String, List<File>>> fileNameToFilesPerSourceDir;
+   @NotNull private final ConcurrentMap<String, File> filePathToFile;
+
+   public SourceFileIndex(@NotNull List<File> sourceDirs)
+   {
+      this.sourceDirs = new ArrayList<File>(sourceDirs);
+      fileNameToFilesPerSourceDir = new ArrayList<Map<String, List<File>>>(sourceDirs.size());
+      filePathToFile = new ConcurrentHashMap<String, File>();
+      buildIndex();
+   }
+
+   private void buildIndex()
+   {
+      List<Callable<List<File>>> tasks = new ArrayList<Callable<List<File>>>();
+      List<Integer> sourceDirForEachTask = new ArrayList<Integer>();
+
+      for (int i = 0; i < sourceDirs.size(); i++) {
+         fileNameToFilesPerSourceDir.add(new HashMap<String, List<File>>());
+
+         File[] filesInSourceDir = sourceDirs.get(i).listFiles();
+         if (filesInSourceDir == null) continue;
+
+         Arrays.sort(filesInSourceDir);
+         final List<File> filesAtTopLevel = new ArrayList<File>();
+
+         for (final File file : filesInSourceDir) {
+            if (file.isDirectory()) {
+               if (!file.isHidden()) {
+                  tasks.add(new Callable<List<File>>() {
+                     @Override
+                     public List<File> call() { return listFilesRecursively(file, new ArrayList<File>()); }
+                  });
+                  sourceDirForEachTask.add(i);
+               }
+            }
+            else if (isJavaFile(file)) {
+               filesAtTopLevel.add(file);
+            }
+         }
+
+         tasks.add(new Callable<List<File>>() {
+            @Override
+            public List<File> call() { return filesAtTopLevel; }
+         });
+         sourceDirForEachTask.add(i);
+      }
+
+      List<List<File>> filesFound = ParallelTasks.execute(tasks, "JMockit Coverage report");
+
+      for (int j = 0; j < filesFound.size(); j++) {
+         Map<String, List<File>> fileNameToFiles = fileNameToFilesPerSourceDir.get(sourceDirForEachTask.get(j));
+
+         for (File file : filesFound.get(j)) {
+            addToIndex(fileNameToFiles, file);
+         }
+      }
+   }
+
+   @NotNull private static List<File> listFilesRecursively(@NotNull File dir, @NotNull List<File> files)
+   {
+      File[] filesInDir = dir.listFiles();
+
+      if (filesInDir != null) {
+         for (File file : filesInDir) {
+            if (!file.isDirectory()) {
+               if (isJavaFile(file)) {
+                  files.add(file);
+               }
+            }
+            else if (!file.isHidden()) {
+               listFilesRecursively(file, files);
+            }
+         }
+      }
+
+      return files;
+   }
+
+   private static boolean isJavaFile(@NotNull File file) { return file.getName().endsWith(".java"); }
+
+   private static void addToIndex(@NotNull Map<String, List<File>> fileNameToFiles, @NotNull File file)
+   {
+      String fileName = file.getName();
+      List<File> filesWithSameName = fileNameToFiles.get(fileName);
+
+      if (filesWithSameName == null) {
+         filesWithSameName = new ArrayList<File>(1);
+         fileNameToFiles.put(fileName, filesWithSameName);
+      }
+
+      filesWithSameName.add(file);
+   }
+
+   /**
+    * Returns the source directories, preceded by the root directories where source files were actually found, as they
+    * got discovered.
+    */
+   @NotNull public synchronized List<File> getSourceDirs() { return sourceDirs; }
+
+   /**
+    * Finds the source file with the given package-relative path, such as "org/acme/Foo.java".
+    * When found in more than one source directory, the file from the first directory is returned; when found more
+    * than once in the same directory, the one with the shortest path is.
+    */
+   @Nullable public File findSourceFile(@NotNull String filePath)
+   {
+      File sourceFile = filePathToFile.get(filePath);
+
+      if (sourceFile == null) {
+         sourceFile = searchIndex(filePath);
+
+         if (sourceFile == null) {
+            sourceFile = NOT_FOUND;
+         }
+         else {
+            addRootSourceDirIfNew(filePath, sourceFile);
+         }
+
+         filePathToFile.put(filePath, sourceFile);
+      }
+
+      return sourceFile == NOT_FOUND ? null : sourceFile;
+   }
+
+   private synchronized void addRootSourceDirIfNew(@NotNull String filePath, @NotNull File sourceFile)
+   {
+      String sourceFilePath = sourceFile.getPath();
+      String sourceRootDir = sourceFilePath.substring(0, sourceFilePath.length() - filePath.length());
+      File newSourceDir = new File(sourceRootDir);
+
+      if (!sourceDirs.contains(newSourceDir)) {
+         sourceDirs.add(0, newSourceDir);
+      }
+   }
+
+   @Nullable private File searchIndex(@NotNull String filePath)
+   {
+      String fileName = filePath.substring(filePath.lastIndexOf('/') + 1);
+      String pathSuffix = File.separatorChar + filePath.replace('/', File.separatorChar);
+
+      for (Map<String, List<File>> fileNameToFiles : fileNameToFilesPerSourceDir) {
+         List<File> filesWithSameName = fileNameToFiles.get(fileName);
+
+         if (filesWithSameName != null) {
+            File sourceFile = findFileWithShortestPath(filesWithSameName, pathSuffix);
+
+            if (sourceFile != null) {
+               return sourceFile;
+            }
+         }
+      }
+
+      return null;
+   }
+
+   @Nullable private static File findFileWithShortestPath(@NotNull List<File> files, @NotNull String pathSuffix)
+   {
+      File fileFound = null;
+
+      for (File file : files) {
+         String path = file.getPath();
+
+         if (path.endsWith(pathSuffix) && (fileFound == null || path.length() < fileFound.getPath().length())) {
+            fileFound = file;
+         }
+      }
+
+      return fileFound;
+   }
+}
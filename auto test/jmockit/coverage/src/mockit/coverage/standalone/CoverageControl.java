@@ -13,6 +13,7 @@ import javax.management.*;
 import org.jetbrains.annotations.*;
 
 import mockit.coverage.*;
+import mockit.coverage.data.*;
 
 public final class CoverageControl extends StandardMBean implements CoverageControlMBean, PersistentMBean
 {
@@ -44,7 +45,7 @@ public final class CoverageControl extends StandardMBean implements CoverageCont
    @Override
    @NotNull protected String getParameterName(MBeanOperationInfo op, MBeanParameterInfo param, int sequence)
    {
-      return "resetState";
+      return "getCoveragePercentages".equals(op.getName()) ? "sourceFilePrefix" : "resetState";
    }
 
    @Override
@@ -156,6 +157,39 @@ public final class CoverageControl extends StandardMBean implements CoverageCont
       CodeCoverage.generateOutput(resetState);
    }
 
+   public void takeSnapshot()
+   {
+      CodeCoverage.takeSnapshot();
+   }
+
+   @NotNull public String getCoveragePercentages(@Nullable String sourceFilePrefix)
+   {
+      String prefix =
+         sourceFilePrefix == null || sourceFilePrefix.isEmpty() ? null : sourceFilePrefix.replace('.', '/');
+      CoverageTree coverageTree = new CoverageTree(CoverageData.instance().getFileToFileDataMap());
+      StringBuilder percentages = new StringBuilder();
+
+      for (Metrics metric : Metrics.values()) {
+         if (metric.isActive()) {
+            int covered = coverageTree.getCoveredItems(metric, prefix);
+            int total = coverageTree.getTotalItems(metric, prefix);
+
+            if (percentages.length() > 0) percentages.append(", ");
+            percentages.append(metric).append(": ");
+
+            if (total == 0) {
+               percentages.append("N/A");
+            }
+            else {
+               percentages.append(CoveragePercentage.calculate(covered, total));
+               percentages.append("% (").append(covered).append('/').append(total).append(')');
+            }
+         }
+      }
+
+      return percentages.toString();
+   }
+
    public void load() throws MBeanException
    {
       Preferences preferences = Preferences.userNodeForPackage(CoverageControl.class);
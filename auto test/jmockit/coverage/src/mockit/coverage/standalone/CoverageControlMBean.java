@@ -42,4 +42,15 @@ public interface CoverageControlMBean
    void generateOutput(
       @Description("Indicates whether coverage data gathered so far should be discarded after generating the output")
       boolean resetState);
+
+   @Description(
+      "Writes a \"coverage-NNNNN.delta\" file to the output directory, with the coverage counts changed since the " +
+      "previous snapshot")
+   void takeSnapshot();
+
+   @Description(
+      "Gets the coverage percentages for each active metric, over all source files or over those in a given package")
+   String getCoveragePercentages(
+      @Description("Package name or source file path prefix, such as \"org.acme\" or \"org/acme/Foo\"; empty for all")
+      String sourceFilePrefix);
 }
@@ -101,7 +101,7 @@ public class CoverageTest extends Assert
       int i = currentPathIndex + 1;
       currentPathIndex = -1;
 
-      Path path = methodData.paths.get(i);
+      Path path = methodData.getAllPaths().get(i);
       assertEquals("Path node count:", expectedNodeCount, path.getNodes().size());
       assertEquals("Path execution count:", expectedExecutionCount, path.getExecutionCount());
 
@@ -127,7 +127,7 @@ public class CoverageTest extends Assert
       int nextPathIndex = currentPathIndex + 1;
 
       if (methodData != null && nextPathIndex > 0) {
-         assertEquals("Path " + nextPathIndex + " was not verified;", nextPathIndex, methodData.paths.size());
+         assertEquals("Path " + nextPathIndex + " was not verified;", nextPathIndex, methodData.getAllPaths().size());
       }
    }
 
@@ -150,7 +150,8 @@ public class CoverageTest extends Assert
    private static boolean isStaticFieldCovered(@NotNull String fieldName)
    {
       String classAndFieldNames = testedClassSimpleName + '.' + fieldName;
-      StaticFieldData staticFieldData = fileData.dataCoverageInfo.staticFieldsData.get(classAndFieldNames);
+      StaticFieldData staticFieldData = fileData.dataCoverageInfo.getStaticFieldData(classAndFieldNames);
+      assertNotNull("Static field " + fieldName + " has no coverage data", staticFieldData);
 
       return staticFieldData.isCovered();
    }
@@ -28,4 +28,33 @@ public final class MultiThreadedCodeTest extends CoverageTest
       assertMethodLines(7, 17);
       assertPath(2, 1);
    }
+
+   @Test
+   public void concurrentExecutionsOfMethodWithTwoPaths() throws Exception
+   {
+      Thread[] workers = new Thread[4];
+
+      for (int i = 0; i < workers.length; i++) {
+         workers[i] = new Thread() {
+            @Override
+            public void run()
+            {
+               for (int j = 0; j < 1000; j++) {
+                  MultiThreadedCode.isEven(j);
+               }
+            }
+         };
+         workers[i].start();
+      }
+
+      for (Thread worker : workers) {
+         worker.join();
+      }
+
+      findMethodData(22);
+      assertPaths(2, 2, 4000);
+      assertMethodLines(22, 26);
+      assertPath(4, 2000);
+      assertPath(5, 2000);
+   }
 }
\ No newline at end of file
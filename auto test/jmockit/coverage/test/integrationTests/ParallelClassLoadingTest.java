@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.jetbrains.annotations.*;
+
+import org.junit.*;
+
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+import mockit.external.asm4.*;
+
+public final class ParallelClassLoadingTest extends Assert
+{
+   static final String CLASS_NAME = "integrationTests.ClassLoadedInParallel";
+   static final String SOURCE_FILE = "integrationTests/ClassLoadedInParallel.java";
+   static final int LINE_IN_METHOD = 16;
+   static final int LOADERS = 8;
+
+   // Classes defined with the protection domain of the other classes under test get selected for coverage.
+   @NotNull final ProtectionDomain protectionDomain = ClassInRegularPackage.class.getProtectionDomain();
+   byte[] classfile;
+
+   @Before
+   public void readClassfile() throws IOException
+   {
+      InputStream input = getClass().getClassLoader().getResourceAsStream(CLASS_NAME.replace('.', '/') + ".class");
+      assertNotNull(input);
+      classfile = new ClassReader(input).b;
+   }
+
+   @Test
+   public void modifyClassOnlyOnceWhenLoadedConcurrentlyByDifferentClassLoaders() throws Exception
+   {
+      final CyclicBarrier allLoadersReady = new CyclicBarrier(LOADERS);
+      ExecutorService executor = Executors.newFixedThreadPool(LOADERS);
+      List<Future<Integer>> results = new ArrayList<Future<Integer>>(LOADERS);
+
+      for (int i = 0; i < LOADERS; i++) {
+         results.add(executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception
+            {
+               allLoadersReady.await();
+               return callMethodInNewCopyOfClass(3);
+            }
+         }));
+      }
+
+      try {
+         for (Future<Integer> result : results) {
+            assertEquals(6, result.get().intValue());
+         }
+      }
+      finally {
+         executor.shutdown();
+      }
+
+      // Every copy of the class executed the method, but only the one which claimed the class was modified.
+      assertTrue(CoverageData.instance().containsFile(SOURCE_FILE));
+      PerFileLineCoverage lineInfo = CoverageData.instance().getFileData(SOURCE_FILE).lineCoverageInfo;
+      assertEquals(1, lineInfo.getExecutionCount(LINE_IN_METHOD));
+
+      // A copy loaded afterwards is not modified either.
+      assertEquals(8, callMethodInNewCopyOfClass(4));
+      assertEquals(1, lineInfo.getExecutionCount(LINE_IN_METHOD));
+   }
+
+   private int callMethodInNewCopyOfClass(int value) throws Exception
+   {
+      ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+         @Override
+         protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+         {
+            if (!CLASS_NAME.equals(name)) {
+               return super.loadClass(name, resolve);
+            }
+
+            Class<?> loadedClass = findLoadedClass(name);
+
+            if (loadedClass == null) {
+               loadedClass = defineClass(name, classfile, 0, classfile.length, protectionDomain);
+            }
+
+            return loadedClass;
+         }
+      };
+
+      Method twice = loader.loadClass(CLASS_NAME).getDeclaredMethod("twice", int.class);
+      return (Integer) twice.invoke(null, value);
+   }
+}
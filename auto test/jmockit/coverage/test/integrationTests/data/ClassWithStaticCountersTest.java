@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests.data;
+
+import java.io.*;
+import java.util.regex.*;
+
+import org.jetbrains.annotations.*;
+
+import org.junit.*;
+
+import integrationTests.*;
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.coverage.reporting.*;
+
+/**
+ * Runs with static field accesses recorded by name, and again with "coverage-staticFields=slots" in a later test
+ * execution, which checks that the JSON report shows the same data for the tested class in both modes.
+ */
+public final class ClassWithStaticCountersTest extends CoverageTest
+{
+   static final File JSON_DIR = new File("target/static-field-data");
+   static final Pattern FILE_IN_JSON = Pattern.compile(
+      "\\{\"path\":\"integrationTests/data/ClassWithStaticCounters\\.java\".*?\"fields\":\\[[^\\]]*\\]\\}",
+      Pattern.DOTALL);
+
+   ClassWithStaticCounters tested;
+
+   @Test
+   public void countAndReadHits()
+   {
+      ClassWithStaticCounters.count(3);
+      assertTrue(ClassWithStaticCounters.getHits() >= 3);
+   }
+
+   @Test
+   public void countWithoutReadingHits()
+   {
+      ClassWithStaticCounters.count(2);
+   }
+
+   @Test
+   public void assignLastName()
+   {
+      ClassWithStaticCounters.setLastName("test");
+   }
+
+   @AfterClass
+   public static void verifyDataCoverageAndCompareWithOtherMode() throws IOException
+   {
+      assertStaticFieldCovered("hits");
+      assertStaticFieldUncovered("total");
+      assertStaticFieldUncovered("lastName");
+      verifyDataCoverage(3, 1, 33);
+
+      String fileInJSON = generateJSONReportForTestedClass();
+      boolean withSlots = "slots".equals(Configuration.getProperty("staticFields"));
+      writeFile(new File(JSON_DIR, withSlots ? "slots.json" : "names.json"), fileInJSON);
+
+      if (withSlots) {
+         File jsonWithNames = new File(JSON_DIR, "names.json");
+         assertTrue("Test not run first with static fields recorded by name", jsonWithNames.exists());
+         assertEquals(readFile(jsonWithNames), fileInJSON);
+      }
+   }
+
+   @NotNull private static String generateJSONReportForTestedClass() throws IOException
+   {
+      File outputDir = File.createTempFile("coverage-json", "");
+      assertTrue(outputDir.delete());
+      assertTrue(outputDir.mkdir());
+
+      File jsonFile = new File(outputDir, "coverage.json");
+
+      try {
+         new JSONCoverageReport(outputDir.getPath(), CoverageData.instance()).generate();
+         Matcher fileInJSON = FILE_IN_JSON.matcher(readFile(jsonFile));
+         assertTrue("Tested class not found in JSON report", fileInJSON.find());
+         return fileInJSON.group();
+      }
+      finally {
+         assertTrue(jsonFile.delete());
+         assertTrue(outputDir.delete());
+      }
+   }
+
+   @NotNull private static String readFile(@NotNull File file) throws IOException
+   {
+      Reader input = new InputStreamReader(new FileInputStream(file), "UTF-8");
+
+      try {
+         StringBuilder text = new StringBuilder();
+         char[] buffer = new char[4096];
+
+         for (int n = input.read(buffer); n >= 0; n = input.read(buffer)) {
+            text.append(buffer, 0, n);
+         }
+
+         return text.toString();
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   private static void writeFile(@NotNull File file, @NotNull String text) throws IOException
+   {
+      assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+      Writer output = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+      try {
+         output.write(text);
+      }
+      finally {
+         output.close();
+      }
+   }
+}
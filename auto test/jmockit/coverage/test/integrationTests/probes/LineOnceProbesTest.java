@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests.probes;
+
+import java.lang.reflect.*;
+
+import org.jetbrains.annotations.*;
+
+import org.junit.*;
+
+import integrationTests.*;
+
+/**
+ * Only runs with "coverage-probes=lineOnce", in a test execution of its own.
+ */
+public final class LineOnceProbesTest extends CoverageTest
+{
+   ClassWithProbedCode tested;
+
+   @Test
+   public void registerOnlyTheFirstExecutionOfEachLine()
+   {
+      assertEquals(15, tested.sumUpTo(5));
+      assertEquals(6, tested.sumUpTo(3));
+
+      assertLines(11, 17, 4);
+      assertLine(11, 1, 1, 1);
+      assertLine(13, 1, 1, 1);
+      assertLine(14, 1, 1, 1);
+      assertLine(17, 1, 1, 1);
+   }
+
+   @Test
+   public void registerLinesWithoutBranches()
+   {
+      assertTrue(tested.isPositive(1));
+      assertFalse(tested.isPositive(-1));
+      assertFalse(tested.isPositive(0));
+
+      assertLines(22, 26, 3);
+      assertLine(22, 1, 1, 1);
+      assertEquals(0, fileData.lineCoverageInfo.getBranchCount(22));
+      assertLine(23, 1, 1, 1);
+      assertLine(26, 1, 1, 1);
+   }
+
+   @Test
+   public void keepFlagsForExecutedLinesInSyntheticStaticFieldOfTheClass() throws Exception
+   {
+      tested.sumUpTo(1);
+
+      Field guardField = findLineGuardField();
+      guardField.setAccessible(true);
+      boolean[] executedLines = (boolean[]) guardField.get(null);
+
+      assertNotNull(executedLines);
+      assertTrue(executedLines[14]);
+   }
+
+   @NotNull private static Field findLineGuardField()
+   {
+      for (Field field : ClassWithProbedCode.class.getDeclaredFields()) {
+         if (field.isSynthetic() && Modifier.isStatic(field.getModifiers()) && field.getType() == boolean[].class) {
+            return field;
+         }
+      }
+
+      fail("No line guard field found");
+      return null;
+   }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package integrationTests.probes;
+
+import org.junit.*;
+
+import integrationTests.*;
+
+/**
+ * Only runs with "coverage-probes=methodEntry", in a test execution of its own.
+ */
+public final class MethodEntryProbesTest extends CoverageTest
+{
+   ClassWithProbedCode tested;
+
+   @Test
+   public void countEntriesIntoMethodAtItsFirstLineOnly()
+   {
+      assertEquals(15, tested.sumUpTo(5));
+      assertEquals(6, tested.sumUpTo(3));
+
+      assertLine(11, 1, 1, 2);
+      assertNoProbe(13);
+      assertNoProbe(14);
+      assertNoProbe(17);
+   }
+
+   @Test
+   public void countEntriesIntoMethodWithBranches()
+   {
+      assertTrue(tested.isPositive(1));
+      assertFalse(tested.isPositive(-1));
+      assertFalse(tested.isPositive(0));
+
+      assertLine(22, 1, 1, 3);
+      assertNoProbe(23);
+      assertNoProbe(26);
+   }
+
+   private static void assertNoProbe(int line)
+   {
+      assertEquals("Segments in line " + line + ':', 0, fileData.lineCoverageInfo.getNumberOfSegments(line));
+   }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage;
+
+import java.io.*;
+
+import org.jetbrains.annotations.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+
+public final class DataFileMergingTest
+{
+   static final String SOURCE_FILE = "mockit/coverage/SomeClass.java";
+
+   File outputDir;
+
+   @Before
+   public void createOutputDir() throws IOException
+   {
+      outputDir = File.createTempFile("coverage-merging", "");
+      assertTrue(outputDir.delete());
+      assertTrue(outputDir.mkdir());
+   }
+
+   @After
+   public void deleteOutputDir()
+   {
+      File[] files = outputDir.listFiles();
+
+      if (files != null) {
+         for (File file : files) {
+            assertTrue(file.delete());
+         }
+      }
+
+      assertTrue(outputDir.delete());
+   }
+
+   @Test
+   public void mergeRawFilesWhereThePreviousOneHasMoreLines() throws Exception
+   {
+      // Raw files are merged in name order, so the second one is merged into the first.
+      writeRawFile("coverage-1", 5, 6);
+      writeRawFile("coverage-2", 5, 6, 40, 41);
+
+      PerFileLineCoverage lineInfo = mergeRawFiles();
+
+      assertEquals(41, lineInfo.getLineCount());
+      assertEquals(4, lineInfo.getExecutableLineCount());
+      assertEquals(2, lineInfo.getExecutionCount(5));
+      assertEquals(2, lineInfo.getExecutionCount(6));
+      assertEquals(1, lineInfo.getExecutionCount(40));
+      assertEquals(1, lineInfo.getExecutionCount(41));
+      assertEquals(100, lineInfo.getCoveragePercentage());
+   }
+
+   @Test
+   public void mergeRawFilesWhereThePreviousOneHasFewerLines() throws Exception
+   {
+      writeRawFile("coverage-1", 5, 6, 40, 41);
+      writeRawFile("coverage-2", 5, 6);
+
+      PerFileLineCoverage lineInfo = mergeRawFiles();
+
+      assertEquals(41, lineInfo.getLineCount());
+      assertEquals(4, lineInfo.getExecutableLineCount());
+      assertEquals(2, lineInfo.getExecutionCount(5));
+      assertEquals(1, lineInfo.getExecutionCount(40));
+   }
+
+   @Test
+   public void mergeRawFilesWhereOnlyThePreviousOneHasLinesExecuted() throws Exception
+   {
+      writeRawFile("coverage-1");
+      writeRawFile("coverage-2", 5, 6, 40, 41);
+
+      PerFileLineCoverage lineInfo = mergeRawFiles();
+
+      assertEquals(41, lineInfo.getLineCount());
+      assertEquals(1, lineInfo.getExecutionCount(41));
+      assertEquals(100, lineInfo.getCoveragePercentage());
+   }
+
+   private void writeRawFile(@NotNull String name, @NotNull int... executedLines) throws IOException
+   {
+      CoverageData coverageData = new CoverageData();
+      PerFileLineCoverage lineInfo = coverageData.getOrAddFile(SOURCE_FILE, "cls").lineCoverageInfo;
+
+      for (int line : new int[] {5, 6}) {
+         lineInfo.addLine(line);
+      }
+
+      for (int line : executedLines) {
+         lineInfo.addLine(line);
+      }
+
+      for (int line : executedLines) {
+         lineInfo.registerExecution(line, null);
+      }
+
+      File rawFile = new File(outputDir, name + DataFileMerging.RAW_FILE_SUFFIX);
+      coverageData.writeDataToFile(rawFile);
+   }
+
+   @NotNull private PerFileLineCoverage mergeRawFiles() throws IOException
+   {
+      CoverageData mergedData = new DataFileMerging(new String[] {outputDir.getPath()}).merge();
+      return mergedData.getFileData(SOURCE_FILE).lineCoverageInfo;
+   }
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+/**
+ * Only loaded after being modified explicitly by {@link ModifiedInnerClassesTest}, never directly.
+ */
+public final class ClassWithTwoInnerClasses
+{
+   public static int useBothInnerClasses(boolean b)
+   {
+      return new First().getValue(b) + new Second().getValue(!b);
+   }
+
+   static final class First
+   {
+      int getValue(boolean b) { return b ? 1 : 2; }
+   }
+
+   static final class Second
+   {
+      int getValue(boolean b) { return b ? 3 : 4; }
+   }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.net.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.jetbrains.annotations.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+public final class InstrumentedClassesTest
+{
+   static final int THREADS = 8;
+
+   @NotNull final InstrumentedClasses instrumentedClasses =
+      new InstrumentedClasses(Collections.singletonList("pkg.ModifiedOffline"));
+
+   @Test
+   public void grantClaimToOnlyOneOfManyThreadsClaimingTheSameClass() throws Exception
+   {
+      final CyclicBarrier allThreadsReady = new CyclicBarrier(THREADS);
+      final AtomicInteger claimsGranted = new AtomicInteger();
+      Thread[] threads = new Thread[THREADS];
+
+      for (int i = 0; i < THREADS; i++) {
+         threads[i] = new Thread() {
+            @Override
+            public void run()
+            {
+               try {
+                  allThreadsReady.await();
+               }
+               catch (Exception e) {
+                  throw new RuntimeException(e);
+               }
+
+               for (int j = 0; j < 1000; j++) {
+                  if (instrumentedClasses.claim("pkg.Class" + j)) {
+                     claimsGranted.incrementAndGet();
+                  }
+               }
+            }
+         };
+         threads[i].start();
+      }
+
+      for (Thread thread : threads) {
+         thread.join();
+      }
+
+      assertEquals(1000, claimsGranted.get());
+      assertTrue(instrumentedClasses.contains("pkg.Class999"));
+   }
+
+   @Test
+   public void refuseClaimForClassAlreadyModifiedOffline()
+   {
+      assertTrue(instrumentedClasses.contains("pkg.ModifiedOffline"));
+      assertFalse(instrumentedClasses.claim("pkg.ModifiedOffline"));
+   }
+
+   @Test
+   public void allowClassToBeClaimedAgainAfterClaimIsReleased()
+   {
+      assertTrue(instrumentedClasses.claim("pkg.NotModifiable"));
+      assertFalse(instrumentedClasses.claim("pkg.NotModifiable"));
+
+      instrumentedClasses.release("pkg.NotModifiable");
+
+      assertFalse(instrumentedClasses.contains("pkg.NotModifiable"));
+      assertTrue(instrumentedClasses.claim("pkg.NotModifiable"));
+   }
+
+   @Test
+   public void collectProtectionDomainsLeavingOutPathsNestedInOthers() throws Exception
+   {
+      ClassLoader loader = getClass().getClassLoader();
+      ProtectionDomain classesDir = createProtectionDomain("file:/project/classes/", loader);
+      ProtectionDomain parentDir = createProtectionDomain("file:/project/", loader);
+      ProtectionDomain otherDir = createProtectionDomain("file:/other/classes/", loader);
+
+      instrumentedClasses.addProtectionDomain(parentDir);
+      instrumentedClasses.register("pkg.A", classesDir);
+      instrumentedClasses.register("pkg.B", createProtectionDomain("file:/project/classes/", loader));
+      instrumentedClasses.addProtectionDomain(otherDir);
+      instrumentedClasses.addProtectionDomain(createProtectionDomain("file:/bootstrap/", null));
+
+      List<ProtectionDomain> protectionDomains = instrumentedClasses.getProtectionDomainsWithUniquePaths();
+
+      assertEquals(2, protectionDomains.size());
+      assertTrue(protectionDomains.contains(classesDir));
+      assertTrue(protectionDomains.contains(otherDir));
+      assertTrue(instrumentedClasses.contains("pkg.B"));
+   }
+
+   @NotNull
+   private static ProtectionDomain createProtectionDomain(@NotNull String location, @Nullable ClassLoader loader)
+      throws MalformedURLException
+   {
+      CodeSource codeSource = new CodeSource(new URL(location), (CodeSigner[]) null);
+      return new ProtectionDomain(codeSource, null, loader, null);
+   }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.modification;
+
+import java.lang.reflect.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+import mockit.external.asm4.*;
+
+public final class ModifiedInnerClassesTest
+{
+   static final String OUTER_CLASS = "mockit.coverage.modification.ClassWithTwoInnerClasses";
+   static final String[] INNER_CLASSES = {OUTER_CLASS + "$First", OUTER_CLASS + "$Second"};
+
+   @NotNull final ModifiedInnerClasses innerClasses = new ModifiedInnerClasses(1);
+   @NotNull final Map<String, byte[]> modifiedClassfiles = new HashMap<String, byte[]>();
+
+   @Test
+   public void keepCoverageCorrectForInnerClassesModifiedBeyondTheMemoryBound() throws Exception
+   {
+      modifiedClassfiles.put(OUTER_CLASS, modifyClass(OUTER_CLASS));
+
+      // The first inner class takes the store beyond its bound, so the other one is left to be modified when loaded.
+      assertEquals(1, innerClasses.getUnusedCount());
+      assertEquals(1, innerClasses.getDeferredCount());
+
+      for (String innerClass : INNER_CLASSES) {
+         byte[] modifiedClassfile = innerClasses.removeModifiedClassfile(innerClass);
+
+         if (modifiedClassfile == null) {
+            assertFalse(innerClasses.isModified(innerClass));
+            modifiedClassfile = modifyClass(innerClass);
+         }
+
+         modifiedClassfiles.put(innerClass, modifiedClassfile);
+      }
+
+      assertEquals(0, innerClasses.getUnusedCount());
+      exerciseModifiedClasses();
+
+      // Branches registered a second time for an inner class would never get covered.
+      FileCoverageData fileData = CoverageData.instance().getFileData(OUTER_CLASS.replace('.', '/') + ".java");
+      assertAllBranchingLinesFullyCovered(fileData.lineCoverageInfo);
+   }
+
+   @Test
+   public void gatherStaticDataForClassNotLoadedWithoutKeepingModifiedInnerClasses()
+   {
+      String outerClass = "mockit.coverage.modification.ClassWithInnerClassesNotLoaded";
+      ClassLoader loader = getClass().getClassLoader();
+      ClassReader cr = CoverageModifier.createClassReader(loader, outerClass.replace('.', '/'));
+      assertNotNull(cr);
+
+      cr.accept(new CoverageModifier(cr, false, loader, innerClasses, false), 0);
+
+      // Both inner classes get analyzed along with the outer one, regardless of the bound, but none is kept.
+      assertTrue(innerClasses.isModified(outerClass + "$First"));
+      assertTrue(innerClasses.isModified(outerClass + "$Second"));
+      assertEquals(0, innerClasses.getUnusedCount());
+      assertEquals(0, innerClasses.getDeferredCount());
+
+      FileCoverageData fileData = CoverageData.instance().getFileData(outerClass.replace('.', '/') + ".java");
+      assertEquals(3, getNumberOfBranchingLines(fileData.lineCoverageInfo));
+   }
+
+   private static int getNumberOfBranchingLines(@NotNull PerFileLineCoverage lineCoverageInfo)
+   {
+      int branchingLines = 0;
+
+      for (int line = 1, n = lineCoverageInfo.getLineCount(); line <= n; line++) {
+         if (lineCoverageInfo.getBranchCount(line) > 0) {
+            branchingLines++;
+         }
+      }
+
+      return branchingLines;
+   }
+
+   private static void assertAllBranchingLinesFullyCovered(@NotNull PerFileLineCoverage lineCoverageInfo)
+   {
+      for (int line = 1, n = lineCoverageInfo.getLineCount(); line <= n; line++) {
+         if (lineCoverageInfo.getBranchCount(line) > 0) {
+            LineCoverageData lineData = lineCoverageInfo.getLineData(line);
+            assertEquals("Line " + line, lineData.getNumberOfSegments(), lineData.getNumberOfCoveredSegments());
+         }
+      }
+   }
+
+   @NotNull private byte[] modifyClass(@NotNull String className)
+   {
+      ClassLoader loader = getClass().getClassLoader();
+      ClassReader cr = CoverageModifier.createClassReader(loader, className.replace('.', '/'));
+      assertNotNull(cr);
+
+      CoverageModifier modifier = new CoverageModifier(cr, false, loader, innerClasses, true);
+      cr.accept(modifier, 0);
+      return modifier.toByteArray();
+   }
+
+   private void exerciseModifiedClasses() throws Exception
+   {
+      ClassLoader modifiedClassLoader = new ClassLoader(getClass().getClassLoader()) {
+         @Override
+         protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+         {
+            byte[] modifiedClassfile = modifiedClassfiles.get(name);
+
+            if (modifiedClassfile == null) {
+               return super.loadClass(name, resolve);
+            }
+
+            Class<?> loadedClass = findLoadedClass(name);
+            return loadedClass != null ? loadedClass : defineClass(name, modifiedClassfile, 0, modifiedClassfile.length);
+         }
+      };
+
+      Class<?> outerClass = modifiedClassLoader.loadClass(OUTER_CLASS);
+      Method useBothInnerClasses = outerClass.getDeclaredMethod("useBothInnerClasses", boolean.class);
+
+      assertEquals(5, useBothInnerClasses.invoke(null, true));
+      assertEquals(5, useBothInnerClasses.invoke(null, false));
+   }
+}
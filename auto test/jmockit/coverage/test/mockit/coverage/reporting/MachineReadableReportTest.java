@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting;
+
+import java.io.*;
+import java.util.*;
+import java.util.regex.*;
+import javax.xml.parsers.*;
+
+import org.jetbrains.annotations.*;
+import org.w3c.dom.*;
+
+import org.junit.*;
+import static org.junit.Assert.*;
+
+import mockit.coverage.*;
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+import mockit.external.asm4.*;
+
+public final class MachineReadableReportTest
+{
+   static final Pattern FILE_IN_PACKAGE_DATA =
+      Pattern.compile("\\{\"name\":\"([^\"]+)\".*?\"metrics\":\\[\\[(\\d+),(\\d+),");
+   static final Pattern FILE_IN_JSON =
+      Pattern.compile("\\{\"path\":\"([^\"]+)\",\"segments\":\\{\"covered\":(\\d+),\"total\":(\\d+)\\}");
+
+   File outputDir;
+   CoverageData coverageData;
+
+   @Before
+   public void createOutputDirAndCoverageData() throws IOException
+   {
+      outputDir = File.createTempFile("coverage-reports", "");
+      assertTrue(outputDir.delete());
+      assertTrue(outputDir.mkdir());
+
+      coverageData = new CoverageData();
+      addFile("pkg/A.java", new int[] {1, 3, 4, 5, 6}, new int[] {1, 3, 4});
+      addFile("pkg/B.java", new int[] {2, 3}, new int[] {2});
+      addFile("pkg/sub/C.java", new int[] {1, 2, 3}, new int[] {1, 2, 3});
+
+      PerFileLineCoverage lineInfo = coverageData.getFileData("pkg/A.java").lineCoverageInfo;
+      lineInfo.addBranch(3, new Label(), new Label());
+      lineInfo.addBranch(3, new Label(), new Label());
+      lineInfo.getBranchData(3, 0).setHasJumpTarget();
+      lineInfo.getBranchData(3, 1).setHasNoJumpTarget();
+      lineInfo.registerExecution(3, 0, true, null);
+   }
+
+   private void addFile(@NotNull String filePath, @NotNull int[] lines, @NotNull int[] executedLines)
+   {
+      PerFileLineCoverage lineInfo = coverageData.getOrAddFile(filePath, null).lineCoverageInfo;
+
+      for (int line : lines) {
+         lineInfo.addLine(line);
+      }
+
+      for (int line : executedLines) {
+         lineInfo.registerExecution(line, null);
+      }
+   }
+
+   @After
+   public void deleteOutputDir()
+   {
+      deleteRecursively(outputDir);
+      System.clearProperty("jmockit-coverage-reportLayout");
+   }
+
+   private static void deleteRecursively(@NotNull File file)
+   {
+      File[] files = file.listFiles();
+
+      if (files != null) {
+         for (File fileInDir : files) {
+            deleteRecursively(fileInDir);
+         }
+      }
+
+      assertTrue(file.delete());
+   }
+
+   @Test
+   public void writeSameLineSegmentCountsInJSONAsInHTMLReport() throws Exception
+   {
+      Map<String, int[]> htmlCounts = generateHTMLReportAndReadFileCounts();
+      new JSONCoverageReport(outputDir.getPath(), coverageData).generate();
+      String json = readFile("coverage.json");
+
+      Map<String, int[]> jsonCounts = new HashMap<String, int[]>();
+      Matcher fileMatcher = FILE_IN_JSON.matcher(json);
+
+      while (fileMatcher.find()) {
+         String fileName = fileMatcher.group(1).substring(fileMatcher.group(1).lastIndexOf('/') + 1);
+         jsonCounts.put(fileName, counts(fileMatcher.group(2), fileMatcher.group(3)));
+      }
+
+      assertCountsEqual(htmlCounts, jsonCounts);
+
+      CoverageTree tree = new CoverageTree(coverageData.getFileToFileDataMap());
+      int coveredSegments = tree.getCoveredItems(Metrics.LineCoverage, null);
+      int totalSegments = tree.getTotalItems(Metrics.LineCoverage, null);
+      assertTrue(json.contains(segmentsCounter(coveredSegments, totalSegments)));
+      assertTrue(json.contains("{\"name\":\"pkg\"" + segmentsCounter(tree, "pkg")));
+      assertTrue(json.contains("{\"name\":\"pkg.sub\"" + segmentsCounter(tree, "pkg/sub")));
+      assertTrue(json.contains(",\"branches\":{\"covered\":1,\"total\":2}"));
+   }
+
+   @NotNull private static String segmentsCounter(@NotNull CoverageTree tree, @NotNull String packagePath)
+   {
+      return segmentsCounter(
+         tree.getCoveredItemsInPackage(Metrics.LineCoverage, packagePath),
+         tree.getTotalItemsInPackage(Metrics.LineCoverage, packagePath));
+   }
+
+   @NotNull private static String segmentsCounter(int covered, int total)
+   {
+      return ",\"segments\":{\"covered\":" + covered + ",\"total\":" + total + '}';
+   }
+
+   @Test
+   public void writeSameLineSegmentRatesInXMLAsInHTMLReport() throws Exception
+   {
+      Map<String, int[]> htmlCounts = generateHTMLReportAndReadFileCounts();
+      new XMLCoverageReport(outputDir.getPath(), null, coverageData).generate();
+
+      Document xml =
+         DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new File(outputDir, "coverage.xml"));
+      Element coverage = xml.getDocumentElement();
+      CoverageTree tree = new CoverageTree(coverageData.getFileToFileDataMap());
+
+      assertEquals(
+         String.valueOf(tree.getCoveredItems(Metrics.LineCoverage, null)), coverage.getAttribute("lines-covered"));
+      assertEquals(
+         String.valueOf(tree.getTotalItems(Metrics.LineCoverage, null)), coverage.getAttribute("lines-valid"));
+      assertEquals("1", coverage.getAttribute("branches-covered"));
+      assertEquals("2", coverage.getAttribute("branches-valid"));
+
+      NodeList classes = xml.getElementsByTagName("class");
+      Map<String, int[]> xmlRates = new HashMap<String, int[]>();
+
+      for (int i = 0; i < classes.getLength(); i++) {
+         Element classElement = (Element) classes.item(i);
+         String fileName = classElement.getAttribute("filename");
+         fileName = fileName.substring(fileName.lastIndexOf('/') + 1);
+         int[] htmlFileCounts = htmlCounts.get(fileName);
+
+         assertNotNull(fileName, htmlFileCounts);
+         assertEquals(
+            fileName, (double) htmlFileCounts[0] / htmlFileCounts[1],
+            Double.parseDouble(classElement.getAttribute("line-rate")), 0.0);
+         xmlRates.put(fileName, htmlFileCounts);
+      }
+
+      assertEquals(htmlCounts.keySet(), xmlRates.keySet());
+   }
+
+   @NotNull private Map<String, int[]> generateHTMLReportAndReadFileCounts() throws IOException
+   {
+      System.setProperty("jmockit-coverage-reportLayout", "paged");
+      new BasicCoverageReport(outputDir.getPath(), false, null, coverageData).generate();
+
+      Map<String, int[]> fileCounts = new HashMap<String, int[]>();
+
+      for (String packageName : new String[] {"pkg", "pkg.sub"}) {
+         Matcher fileMatcher = FILE_IN_PACKAGE_DATA.matcher(readFile("data/" + packageName + ".js"));
+
+         while (fileMatcher.find()) {
+            fileCounts.put(fileMatcher.group(1), counts(fileMatcher.group(2), fileMatcher.group(3)));
+         }
+      }
+
+      assertEquals(3, fileCounts.size());
+      return fileCounts;
+   }
+
+   @NotNull private static int[] counts(@NotNull String covered, @NotNull String total)
+   {
+      return new int[] {Integer.parseInt(covered), Integer.parseInt(total)};
+   }
+
+   private static void assertCountsEqual(@NotNull Map<String, int[]> expected, @NotNull Map<String, int[]> actual)
+   {
+      assertEquals(expected.keySet(), actual.keySet());
+
+      for (Map.Entry<String, int[]> fileAndCounts : expected.entrySet()) {
+         String fileName = fileAndCounts.getKey();
+         assertArrayEquals(fileName, fileAndCounts.getValue(), actual.get(fileName));
+      }
+   }
+
+   @NotNull private String readFile(@NotNull String relativePath) throws IOException
+   {
+      BufferedReader input =
+         new BufferedReader(new InputStreamReader(new FileInputStream(new File(outputDir, relativePath)), "UTF-8"));
+
+      try {
+         StringBuilder text = new StringBuilder();
+         char[] buffer = new char[4096];
+
+         for (int n = input.read(buffer); n >= 0; n = input.read(buffer)) {
+            text.append(buffer, 0, n);
+         }
+
+         return text.toString();
+      }
+      finally {
+         input.close();
+      }
+   }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.coverage.reporting;
+
+import java.io.*;
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+import mockit.coverage.data.*;
+import mockit.coverage.lines.*;
+import mockit.coverage.reporting.sourceFiles.*;
+import mockit.external.asm4.*;
+
+/**
+ * Measures the throughput of the HTML rendering of source files, in lines per second.
+ * <p/>
+ * The corpus consists of all ".java" files under the given source directories ("src" by default), each one rendered
+ * with synthetic coverage data where every other line is covered and every fifth line has a branch.
+ * Usage: {@code java -cp <test classpath> mockit.coverage.reporting.ReportRenderingBenchmark [srcDir...]}
+ */
+public final class ReportRenderingBenchmark
+{
+   private static final int WARMUP_ITERATIONS = 3;
+   private static final int MEASURED_ITERATIONS = 10;
+
+   public static void main(@NotNull String[] args) throws IOException
+   {
+      List<File> sourceDirs = new ArrayList<File>();
+
+      for (String arg : args.length == 0 ? new String[] {"src"} : args) {
+         sourceDirs.add(new File(arg));
+      }
+
+      ReportRenderingBenchmark benchmark = new ReportRenderingBenchmark(sourceDirs);
+
+      try {
+         for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            benchmark.renderCorpus();
+         }
+
+         long startTime = System.nanoTime();
+         long linesRendered = 0;
+
+         for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            linesRendered += benchmark.renderCorpus();
+         }
+
+         double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+
+         System.out.printf(
+            "Rendered %d files (%d lines) %d times in %.2f s: %.0f lines/s%n",
+            benchmark.fileToFileData.size(), benchmark.corpusLines, MEASURED_ITERATIONS, elapsedSeconds,
+            linesRendered / elapsedSeconds);
+      }
+      finally {
+         deleteRecursively(new File(benchmark.outputDir));
+      }
+   }
+
+   private static void deleteRecursively(@NotNull File fileOrDir)
+   {
+      File[] files = fileOrDir.listFiles();
+
+      if (files != null) {
+         for (File file : files) {
+            deleteRecursively(file);
+         }
+      }
+
+      //noinspection ResultOfMethodCallIgnored
+      fileOrDir.delete();
+   }
+
+   @NotNull private final SourceFileIndex sourceFileIndex;
+   @NotNull private final Map<String, FileCoverageData> fileToFileData;
+   @NotNull private final String outputDir;
+   private int corpusLines;
+
+   private ReportRenderingBenchmark(@NotNull List<File> sourceDirs) throws IOException
+   {
+      sourceFileIndex = new SourceFileIndex(sourceDirs);
+      fileToFileData = new LinkedHashMap<String, FileCoverageData>();
+
+      for (File sourceDir : sourceDirs) {
+         addSourceFiles(sourceDir, "");
+      }
+
+      File tempFile = File.createTempFile("coverage-benchmark", "");
+      //noinspection ResultOfMethodCallIgnored
+      tempFile.delete();
+      outputDir = tempFile.getPath();
+   }
+
+   private void addSourceFiles(@NotNull File dir, @NotNull String relativePath) throws IOException
+   {
+      File[] files = dir.listFiles();
+      if (files == null) return;
+
+      Arrays.sort(files);
+
+      for (File file : files) {
+         String filePath = relativePath + file.getName();
+
+         if (file.isDirectory()) {
+            addSourceFiles(file, filePath + '/');
+         }
+         else if (filePath.endsWith(".java") && sourceFileIndex.findSourceFile(filePath) != null) {
+            fileToFileData.put(filePath, createCoverageData(file));
+         }
+      }
+   }
+
+   @NotNull private FileCoverageData createCoverageData(@NotNull File sourceFile) throws IOException
+   {
+      FileCoverageData fileData = new FileCoverageData(fileToFileData.size(), null);
+      PerFileLineCoverage lineData = fileData.lineCoverageInfo;
+      int lineCount = countLines(sourceFile);
+
+      for (int line = 1; line <= lineCount; line++) {
+         lineData.addLine(line);
+
+         if (line % 5 == 0) {
+            int branchIndex = lineData.addBranch(line, new Label(), new Label());
+            BranchCoverageData branchData = lineData.getBranchData(line, branchIndex);
+            branchData.setHasJumpTarget();
+            branchData.setHasNoJumpTarget();
+         }
+      }
+
+      for (int line = 1; line <= lineCount; line += 2) {
+         lineData.registerExecution(line, null);
+      }
+
+      corpusLines += lineCount;
+      return fileData;
+   }
+
+   private static int countLines(@NotNull File sourceFile) throws IOException
+   {
+      BufferedReader input = new BufferedReader(new FileReader(sourceFile));
+
+      try {
+         int lineCount = 0;
+         while (input.readLine() != null) lineCount++;
+         return lineCount;
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   private int renderCorpus() throws IOException
+   {
+      int linesRendered = 0;
+
+      for (Map.Entry<String, FileCoverageData> fileAndFileData : fileToFileData.entrySet()) {
+         InputFile inputFile = InputFile.createIfFileExists(sourceFileIndex, fileAndFileData.getKey());
+
+         if (inputFile != null) {
+            FileCoverageData fileData = fileAndFileData.getValue();
+            new FileCoverageReport(outputDir, inputFile, fileData, false).generate();
+            linesRendered += fileData.lineCoverageInfo.getLineCount();
+         }
+      }
+
+      return linesRendered;
+   }
+}
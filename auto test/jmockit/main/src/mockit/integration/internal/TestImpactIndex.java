@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.integration.internal;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import org.jetbrains.annotations.*;
+
+/**
+ * Maps each test to the classes it covered in a test run, along with a hash of each classfile, so that a later run
+ * can tell which tests are unaffected by the changes made since.
+ * <p/>
+ * A test is identified by the name of its test class followed by "#" and the name of the test method.
+ * The classes covered while a test class was running but outside any of its test methods (such as in "before" and
+ * "after" methods) are kept under the name of the test class alone.
+ * <p/>
+ * In the file, each distinct pair of class name and hash is written only once, in a table referenced by index from the
+ * entries for the tests.
+ */
+public final class TestImpactIndex
+{
+   private static final int FORMAT_ID = 0x4A4D5449;
+
+   @NotNull private final Map<String, Map<String, Long>> testToClassHashes;
+   @NotNull private final Map<String, Long> currentClassHashes;
+
+   public TestImpactIndex()
+   {
+      testToClassHashes = new LinkedHashMap<String, Map<String, Long>>();
+      currentClassHashes = new HashMap<String, Long>();
+   }
+
+   public void addTest(@NotNull String testName, @NotNull Map<String, Long> classHashes)
+   {
+      testToClassHashes.put(testName, classHashes);
+   }
+
+   /**
+    * Adds the tests from a previous index which did not run in the current one, as happens for tests which were
+    * skipped or not selected for execution.
+    * The tests which did run but are not in this index, for having covered classes without known hashes, are left out.
+    */
+   public void addTestsNotRunFrom(@NotNull TestImpactIndex previousIndex, @NotNull Set<String> testsRun)
+   {
+      for (Map.Entry<String, Map<String, Long>> testAndClassHashes : previousIndex.testToClassHashes.entrySet()) {
+         String testName = testAndClassHashes.getKey();
+
+         if (!testsRun.contains(testName)) {
+            testToClassHashes.put(testName, testAndClassHashes.getValue());
+         }
+      }
+   }
+
+   public int getTestCount() { return testToClassHashes.size(); }
+
+   /**
+    * Indicates whether a test was indexed and none of the classes it covered has changed since, including the ones
+    * covered by its test class outside of test methods.
+    *
+    * @param testClass the test class, whose class loader is used to find the current classfiles
+    */
+   public boolean isUnaffectedByChanges(@NotNull Class<?> testClass, @NotNull String testMethodName)
+   {
+      String testClassName = testClass.getName();
+      Map<String, Long> classHashes = testToClassHashes.get(testClassName + '#' + testMethodName);
+
+      if (classHashes == null) {
+         return false;
+      }
+
+      ClassLoader loader = testClass.getClassLoader();
+
+      if (!areClassfilesUnchanged(loader, classHashes)) {
+         return false;
+      }
+
+      Map<String, Long> classHashesOutsideTestMethods = testToClassHashes.get(testClassName);
+      return classHashesOutsideTestMethods == null || areClassfilesUnchanged(loader, classHashesOutsideTestMethods);
+   }
+
+   private boolean areClassfilesUnchanged(@Nullable ClassLoader loader, @NotNull Map<String, Long> classHashes)
+   {
+      for (Map.Entry<String, Long> classAndHash : classHashes.entrySet()) {
+         Long currentHash = getCurrentClassfileHash(loader, classAndHash.getKey());
+
+         if (!classAndHash.getValue().equals(currentHash)) {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   @Nullable
+   private synchronized Long getCurrentClassfileHash(@Nullable ClassLoader loader, @NotNull String internalClassName)
+   {
+      if (currentClassHashes.containsKey(internalClassName)) {
+         return currentClassHashes.get(internalClassName);
+      }
+
+      Long hash = getClassfileHash(loader, internalClassName);
+      currentClassHashes.put(internalClassName, hash);
+      return hash;
+   }
+
+   /**
+    * Adds the classfile hashes for a test class, its nested and anonymous classes (where expectation blocks usually
+    * are), and its superclasses, except for those in the bootstrap class path.
+    */
+   public static void addTestClassHashes(@NotNull Class<?> testClass, @NotNull Map<String, Long> classHashes)
+   {
+      for (Class<?> aClass = testClass; aClass.getClassLoader() != null; aClass = aClass.getSuperclass()) {
+         addClassHashes(aClass, classHashes);
+      }
+   }
+
+   private static void addClassHashes(@NotNull Class<?> aClass, @NotNull Map<String, Long> classHashes)
+   {
+      ClassLoader loader = aClass.getClassLoader();
+      String internalClassName = aClass.getName().replace('.', '/');
+      Long hash = getClassfileHash(loader, internalClassName);
+
+      if (hash != null) {
+         classHashes.put(internalClassName, hash);
+      }
+
+      for (int i = 1; (hash = getClassfileHash(loader, internalClassName + '$' + i)) != null; i++) {
+         classHashes.put(internalClassName + '$' + i, hash);
+      }
+
+      for (Class<?> nestedClass : aClass.getDeclaredClasses()) {
+         addClassHashes(nestedClass, classHashes);
+      }
+   }
+
+   /**
+    * Computes the CRC-32 hash of the classfile for a given class, as found by the given class loader.
+    *
+    * @return the hash, or {@code null} if the classfile was not found or could not be read
+    */
+   @Nullable
+   public static Long getClassfileHash(@Nullable ClassLoader loader, @NotNull String internalClassName)
+   {
+      String resourceName = internalClassName + ".class";
+      InputStream classfile = loader == null ?
+         ClassLoader.getSystemResourceAsStream(resourceName) : loader.getResourceAsStream(resourceName);
+
+      if (classfile == null) {
+         return null;
+      }
+
+      CRC32 hash = new CRC32();
+      byte[] buffer = new byte[8192];
+
+      try {
+         try {
+            for (int n = classfile.read(buffer); n >= 0; n = classfile.read(buffer)) {
+               hash.update(buffer, 0, n);
+            }
+         }
+         finally {
+            classfile.close();
+         }
+      }
+      catch (IOException ignore) {
+         return null;
+      }
+
+      return hash.getValue();
+   }
+
+   @NotNull
+   public static TestImpactIndex readFromFile(@NotNull File indexFile) throws IOException
+   {
+      DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+
+      try {
+         if (input.readInt() != FORMAT_ID) {
+            throw new IOException("Not a test impact index: " + indexFile);
+         }
+
+         int classCount = input.readInt();
+         String[] classNames = new String[classCount];
+         Long[] hashes = new Long[classCount];
+
+         for (int i = 0; i < classCount; i++) {
+            classNames[i] = input.readUTF();
+            hashes[i] = input.readLong();
+         }
+
+         TestImpactIndex index = new TestImpactIndex();
+
+         for (int i = 0, testCount = input.readInt(); i < testCount; i++) {
+            String testName = input.readUTF();
+            int n = input.readInt();
+            Map<String, Long> classHashes = new HashMap<String, Long>(n * 4 / 3 + 1);
+
+            for (int j = 0; j < n; j++) {
+               int classIndex = input.readInt();
+               classHashes.put(classNames[classIndex], hashes[classIndex]);
+            }
+
+            index.addTest(testName, classHashes);
+         }
+
+         return index;
+      }
+      finally {
+         input.close();
+      }
+   }
+
+   public void writeToFile(@NotNull File indexFile) throws IOException
+   {
+      Map<Map.Entry<String, Long>, Integer> classTable = new LinkedHashMap<Map.Entry<String, Long>, Integer>();
+
+      for (Map<String, Long> classHashes : testToClassHashes.values()) {
+         for (Map.Entry<String, Long> classAndHash : classHashes.entrySet()) {
+            if (!classTable.containsKey(classAndHash)) {
+               classTable.put(classAndHash, classTable.size());
+            }
+         }
+      }
+
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+
+      try {
+         output.writeInt(FORMAT_ID);
+         output.writeInt(classTable.size());
+
+         for (Map.Entry<String, Long> classAndHash : classTable.keySet()) {
+            output.writeUTF(classAndHash.getKey());
+            output.writeLong(classAndHash.getValue());
+         }
+
+         output.writeInt(testToClassHashes.size());
+
+         for (Map.Entry<String, Map<String, Long>> testAndClassHashes : testToClassHashes.entrySet()) {
+            Map<String, Long> classHashes = testAndClassHashes.getValue();
+            output.writeUTF(testAndClassHashes.getKey());
+            output.writeInt(classHashes.size());
+
+            for (Map.Entry<String, Long> classAndHash : classHashes.entrySet()) {
+               output.writeInt(classTable.get(classAndHash));
+            }
+         }
+      }
+      finally {
+         output.close();
+      }
+   }
+}
@@ -11,6 +11,7 @@ import org.jetbrains.annotations.*;
 import mockit.internal.*;
 import mockit.internal.expectations.*;
 import mockit.internal.expectations.injection.*;
+import mockit.internal.expectations.invocation.*;
 import mockit.internal.expectations.mocking.*;
 import mockit.internal.state.*;
 import mockit.internal.util.*;
@@ -76,6 +77,8 @@ public class TestRunnerDecorator
 
       if (forTestClassAsWell) {
          SavePoint.rollbackForTestClass();
+         MockedTypeCascade.discardCascadePlans();
+         ImplementationClass.releaseGeneratedClassLoaders();
       }
 
       SharedFieldTypeRedefinitions redefinitions = TestRun.getSharedFieldTypeRedefinitions();
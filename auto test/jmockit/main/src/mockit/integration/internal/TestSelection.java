@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.integration.internal;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.jetbrains.annotations.*;
+
+/**
+ * Keeps track of the test currently running, so that the coverage tool can record the classes covered by each test in
+ * a {@link TestImpactIndex}.
+ * <p/>
+ * When the "jmockit-skipUnaffectedTests" system property specifies the file of an index written in a previous run,
+ * test methods found to be unaffected by the changes made since then are skipped.
+ * <p/>
+ * The test currently running is a single JVM-wide value, so that code executed by any thread is attributed to it.
+ * Therefore, tests running in parallel threads can't be told apart; when that is detected, no new index should be
+ * written.
+ */
+public final class TestSelection
+{
+   public static final String SKIP_MESSAGE = "unaffected by changes since last run";
+
+   @Nullable private static volatile Class<?> currentTestClass;
+   @Nullable private static volatile String currentTest;
+   @Nullable private static volatile TestImpactIndex indexOfPreviousRun = readIndexOfPreviousRunIfSpecified();
+   @NotNull private static final Set<String> failedTests =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+   @NotNull private static final AtomicReference<Thread> threadRunningTest = new AtomicReference<Thread>();
+   private static volatile boolean parallelExecutionDetected;
+
+   private TestSelection() {}
+
+   @Nullable private static TestImpactIndex readIndexOfPreviousRunIfSpecified()
+   {
+      String indexFileName = System.getProperty("jmockit-skipUnaffectedTests");
+
+      if (indexFileName == null || indexFileName.isEmpty()) {
+         return null;
+      }
+
+      File indexFile = new File(indexFileName);
+
+      if (!indexFile.exists()) {
+         return null;
+      }
+
+      try {
+         return TestImpactIndex.readFromFile(indexFile);
+      }
+      catch (IOException e) {
+         System.out.println("JMockit: Test impact index could not be read, so no tests will be skipped: " + e);
+         return null;
+      }
+   }
+
+   /**
+    * Replaces the index read at startup, so that the skipping of tests can itself be tested.
+    */
+   static void useIndexOfPreviousRun(@Nullable TestImpactIndex index) { indexOfPreviousRun = index; }
+
+   /**
+    * Gets the name of the test currently running, as used in the test impact index.
+    * A new string is created every time a test method starts running, so an identity comparison is enough to detect
+    * that a different test is running.
+    */
+   @Nullable public static String getCurrentTest() { return currentTest; }
+
+   /**
+    * Gets the test class of the test currently running.
+    * Since it's set before the test name, a caller which already got the name may get the class of a test which
+    * started running afterwards, in another thread.
+    */
+   @Nullable public static Class<?> getCurrentTestClass() { return currentTestClass; }
+
+   public static void setRunningTestClass(@Nullable Class<?> testClass)
+   {
+      threadRunningTest.compareAndSet(Thread.currentThread(), null);
+      currentTestClass = testClass;
+      currentTest = testClass == null ? null : testClass.getName();
+   }
+
+   public static void setRunningTestMethod(@NotNull Class<?> testClass, @NotNull Method testMethod)
+   {
+      Thread currentThread = Thread.currentThread();
+
+      if (!threadRunningTest.compareAndSet(null, currentThread) && threadRunningTest.get() != currentThread) {
+         parallelExecutionDetected = true;
+      }
+
+      currentTestClass = testClass;
+      currentTest = testClass.getName() + '#' + testMethod.getName();
+   }
+
+   /**
+    * Indicates whether a test method started running while another one was still running in a different thread, in
+    * which case the files executed during the test run could have been attributed to the wrong tests.
+    */
+   public static boolean isParallelExecutionDetected() { return parallelExecutionDetected; }
+
+   /**
+    * Records that the given test method failed or had an error, so that it gets left out of the test impact index and
+    * runs again in the next test run, instead of being skipped with its failure hidden.
+    */
+   public static void setTestFailed(@NotNull String testClassName, @NotNull String testMethodName)
+   {
+      failedTests.add(testClassName + '#' + testMethodName);
+   }
+
+   public static boolean hasFailed(@NotNull String test) { return failedTests.contains(test); }
+   @NotNull public static Set<String> getFailedTests() { return new HashSet<String>(failedTests); }
+
+   public static boolean isUnaffectedByChanges(@NotNull Class<?> testClass, @NotNull Method testMethod)
+   {
+      TestImpactIndex index = indexOfPreviousRun;
+      return index != null && index.isUnaffectedByChanges(testClass, testMethod.getName());
+   }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.integration.junit4.internal;
@@ -8,6 +8,7 @@ import java.lang.reflect.*;
 
 import org.jetbrains.annotations.*;
 
+import org.junit.internal.AssumptionViolatedException;
 import org.junit.runners.*;
 import org.junit.runners.model.*;
 
@@ -52,8 +53,7 @@ public final class BlockJUnit4ClassRunnerDecorator extends MockUp<BlockJUnit4Cla
          ParentRunner<?> it = invocation.getInvokedInstance();
          assert it != null;
 
-         TestClass junitTestClass = getTestClass == null ? it.getTestClass() : (TestClass) getTestClass.invoke(it);
-         Class<?> newTestClass = junitTestClass.getJavaClass();
+         Class<?> newTestClass = getJavaTestClass(it);
          Class<?> currentTestClass = TestRun.getCurrentTestClass();
 
          if (currentTestClass != null && !currentTestClass.isAssignableFrom(newTestClass)) {
@@ -71,4 +71,41 @@ public final class BlockJUnit4ClassRunnerDecorator extends MockUp<BlockJUnit4Cla
          TestRun.exitNoMockingZone();
       }
    }
+
+   @NotNull private static Class<?> getJavaTestClass(@NotNull ParentRunner<?> runner) throws Exception
+   {
+      TestClass junitTestClass =
+         getTestClass == null ? runner.getTestClass() : (TestClass) getTestClass.invoke(runner);
+      return junitTestClass.getJavaClass();
+   }
+
+   /**
+    * Skips a test method found to be unaffected by changes since the previous test run, before any of its fixtures
+    * (the test instance, rules, and "@Before" methods) get created or executed.
+    */
+   @Mock
+   @NotNull public Statement methodBlock(@NotNull Invocation invocation, @NotNull FrameworkMethod method)
+      throws Exception
+   {
+      boolean unaffectedByChanges;
+      TestRun.enterNoMockingZone();
+
+      try {
+         ParentRunner<?> it = invocation.getInvokedInstance();
+         assert it != null;
+         unaffectedByChanges = TestSelection.isUnaffectedByChanges(getJavaTestClass(it), method.getMethod());
+      }
+      finally {
+         TestRun.exitNoMockingZone();
+      }
+
+      if (unaffectedByChanges) {
+         return new Statement() {
+            @Override
+            public void evaluate() { throw new AssumptionViolatedException(TestSelection.SKIP_MESSAGE); }
+         };
+      }
+
+      return invocation.proceed();
+   }
 }
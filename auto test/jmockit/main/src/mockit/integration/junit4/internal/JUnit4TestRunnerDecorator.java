@@ -43,6 +43,7 @@ final class JUnit4TestRunnerDecorator extends TestRunnerDecorator
          }
 
          TestRun.setRunningIndividualTest(target);
+         TestSelection.setRunningTestClass(testClass);
 
          try {
             invocation.prepareToProceed();
@@ -68,6 +69,7 @@ final class JUnit4TestRunnerDecorator extends TestRunnerDecorator
       assert target != null;
 
       try {
+         TestSelection.setRunningTestMethod(testClass, method);
          executeTestMethod(invocation, target, params);
          return null; // it's a test method, therefore has void return type
       }
@@ -77,6 +79,7 @@ final class JUnit4TestRunnerDecorator extends TestRunnerDecorator
       }
       finally {
          TestRun.finishCurrentTestExecution(true);
+         TestSelection.setRunningTestClass(testClass);
       }
    }
 
@@ -4,6 +4,8 @@
  */
 package mockit.integration.junit4.internal;
 
+import org.jetbrains.annotations.*;
+
 import org.junit.runner.notification.*;
 import org.junit.runner.*;
 
@@ -31,4 +33,19 @@ public final class RunNotifierDecorator extends MockUp<RunNotifier>
          TestRun.exitNoMockingZone();
       }
    }
+
+   @Mock
+   public static void fireTestFailure(@NotNull Invocation invocation, @NotNull Failure failure)
+   {
+      Description description = failure.getDescription();
+      String testMethodName = description.getMethodName();
+
+      if (testMethodName != null) {
+         int p = testMethodName.indexOf('[');
+         String testMethod = p < 0 ? testMethodName : testMethodName.substring(0, p);
+         TestSelection.setTestFailed(description.getClassName(), testMethod);
+      }
+
+      invocation.proceed();
+   }
 }
@@ -124,6 +124,12 @@ public final class TestNGRunnerDecorator extends TestRunnerDecorator
 
          Method method = testResult.getMethod().getConstructorOrMethod().getMethod();
 
+         if (TestSelection.isUnaffectedByChanges(testClass, method)) {
+            throw new SkipException(TestSelection.SKIP_MESSAGE);
+         }
+
+         TestSelection.setRunningTestMethod(testClass, method);
+
          if (!isMethodWithParametersProvidedByTestNG(method)) {
             Object[] parameters = testResult.getParameters();
             Object[] mockParameters = createInstancesForMockParameters(testInstance, method, parameters);
@@ -147,6 +153,7 @@ public final class TestNGRunnerDecorator extends TestRunnerDecorator
       try {
          Class<?> testClass = testResult.getTestClass().getRealClass();
          updateTestClassState(null, testClass);
+         TestSelection.setRunningTestClass(testClass);
 
          ITestNGMethod method = testResult.getMethod();
 
@@ -210,6 +217,13 @@ public final class TestNGRunnerDecorator extends TestRunnerDecorator
       }
       finally {
          TestRun.finishCurrentTestExecution(false);
+         Class<?> testClass = testResult.getTestClass().getRealClass();
+
+         if (!testResult.isSuccess()) {
+            TestSelection.setTestFailed(testClass.getName(), testResult.getMethod().getMethodName());
+         }
+
+         TestSelection.setRunningTestClass(testClass);
          TestRun.exitNoMockingZone();
       }
    }
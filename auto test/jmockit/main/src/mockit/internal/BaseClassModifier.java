@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.internal;
@@ -27,14 +27,6 @@ public class BaseClassModifier extends ClassVisitor
          return mw.visitAnnotation(annotationDesc, visible);
       }
 
-      @Override
-      public void visitLocalVariable(
-         @NotNull String name, @NotNull String desc, String signature, @NotNull Label start, @NotNull Label end,
-         int index)
-      {
-         registerParameterName(name, index);
-      }
-
       @Override
       public AnnotationVisitor visitParameterAnnotation(int parameter, String annotationDesc, boolean visible)
       {
@@ -42,18 +34,12 @@ public class BaseClassModifier extends ClassVisitor
       }
    };
 
-   protected final void registerParameterName(@NotNull String name, int index)
-   {
-      ParameterNames.registerName(classDesc, methodAccess, methodName, methodDesc, name, index);
-   }
-
    @NotNull protected final ClassWriter cw;
    protected MethodVisitor mw;
    protected boolean useMockingBridge;
    protected String superClassName;
    protected Label startOfRealImplementation;
    private String classDesc;
-   private int methodAccess;
    protected String methodName;
    protected String methodDesc;
    private boolean callToAnotherConstructorAlreadyDisregarded;
@@ -67,6 +53,14 @@ public class BaseClassModifier extends ClassVisitor
       cw = (ClassWriter) cv;
    }
 
+   @NotNull @Override
+   public byte[] toByteArray()
+   {
+      byte[] classfile = super.toByteArray();
+      RuntimeMetrics.count(RuntimeMetrics.Metric.GeneratedClassfiles, 1, classfile.length);
+      return classfile;
+   }
+
    protected final void setUseMockingBridge(@Nullable ClassLoader classLoader)
    {
       useMockingBridge = classLoader == null;
@@ -102,7 +96,6 @@ public class BaseClassModifier extends ClassVisitor
       //noinspection UnnecessarySuperQualifier
       mw = super.visitMethod(access & ACCESS_MASK, name, desc, signature, exceptions);
 
-      methodAccess = access;
       methodName = name;
       methodDesc = desc;
       callToAnotherConstructorAlreadyDisregarded = false;
@@ -155,7 +148,7 @@ public class BaseClassModifier extends ClassVisitor
 
    protected final void generateCodeToCreateArrayOfObject(int arrayLength)
    {
-      mw.visitIntInsn(BIPUSH, arrayLength);
+      generateCodeToPushInt(arrayLength);
       mw.visitTypeInsn(ANEWARRAY, "java/lang/Object");
    }
 
@@ -167,7 +160,7 @@ public class BaseClassModifier extends ClassVisitor
 
       for (Type argType : argTypes) {
          mw.visitInsn(DUP);
-         mw.visitIntInsn(BIPUSH, i++);
+         generateCodeToPushInt(i++);
          mw.visitVarInsn(argType.getOpcode(ILOAD), j);
          TypeConversion.generateCastToObject(mw, argType);
          mw.visitInsn(AASTORE);
@@ -189,13 +182,13 @@ public class BaseClassModifier extends ClassVisitor
    protected final void generateCodeToFillArrayElement(int arrayIndex, @Nullable Object value)
    {
       mw.visitInsn(DUP);
-      mw.visitIntInsn(BIPUSH, arrayIndex);
+      generateCodeToPushInt(arrayIndex);
 
       if (value == null) {
          mw.visitInsn(ACONST_NULL);
       }
       else if (value instanceof Integer) {
-         mw.visitIntInsn(SIPUSH, (Integer) value);
+         generateCodeToPushInt((Integer) value);
          mw.visitMethodInsn(INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;");
       }
       else if (value instanceof Boolean) {
@@ -209,6 +202,25 @@ public class BaseClassModifier extends ClassVisitor
       mw.visitInsn(AASTORE);
    }
 
+   /**
+    * Pushes the given int value with the shortest instruction able to hold it.
+    */
+   protected final void generateCodeToPushInt(int value)
+   {
+      if (value >= -1 && value <= 5) {
+         mw.visitInsn(ICONST_0 + value);
+      }
+      else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+         mw.visitIntInsn(BIPUSH, value);
+      }
+      else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+         mw.visitIntInsn(SIPUSH, value);
+      }
+      else {
+         mw.visitLdcInsn(value);
+      }
+   }
+
    private void pushDefaultValueForType(@NotNull Type type)
    {
       switch (type.getSort()) {
@@ -1,14 +1,17 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.internal;
 
+import java.lang.ref.*;
 import java.lang.reflect.Type;
+import java.util.*;
 
 import org.jetbrains.annotations.*;
 
 import mockit.external.asm4.*;
+import mockit.internal.state.*;
 import mockit.internal.util.*;
 
 /**
@@ -44,21 +47,122 @@ public abstract class ImplementationClass<T>
 
    public final byte[] getGeneratedBytecode() { return generatedBytecode; }
 
+   /**
+    * Defines a generated class in a class loader shared by all classes generated for the same parent loader.
+    * <p/>
+    * If a class of the same name and bytecode was already generated, and it's not currently redefined, then it gets
+    * reused.
+    * Otherwise, if the name is already taken, the class gets defined in another loader chained to the first one.
+    * The shared loaders are released at the end of each test class, through {@link #releaseGeneratedClassLoaders}.
+    */
    @NotNull
    public static Class<?> defineNewClass(
-      @Nullable ClassLoader parentLoader, @NotNull final byte[] bytecode, @NotNull String className)
+      @Nullable ClassLoader parentLoader, @NotNull byte[] bytecode, @NotNull String className)
    {
       if (parentLoader == null) {
          //noinspection AssignmentToMethodParameter
          parentLoader = ImplementationClass.class.getClassLoader();
       }
 
-      return new ClassLoader(parentLoader) {
-         @Override
-         protected Class<?> findClass(String name)
-         {
-            return defineClass(name, bytecode, 0, bytecode.length);
+      synchronized (generatedClassLoaders) {
+         GeneratedClassLoader loader = getGeneratedClassLoader(parentLoader);
+
+         while (true) {
+            Class<?> generatedClass = loader.findGeneratedClass(className);
+
+            if (generatedClass == null) {
+               RuntimeMetrics.count(RuntimeMetrics.Metric.GeneratedClassDefinitions, 1);
+               return loader.defineGeneratedClass(className, bytecode);
+            }
+
+            if (
+               loader.hasSameBytecode(className, bytecode) &&
+               !TestRun.mockFixture().containsRedefinedClass(generatedClass)
+            ) {
+               RuntimeMetrics.count(RuntimeMetrics.Metric.GeneratedClassReuses, 1);
+               return generatedClass;
+            }
+
+            loader = loader.getNextLoader();
+         }
+      }
+   }
+
+   @NotNull private static final Map<ClassLoader, WeakReference<GeneratedClassLoader>> generatedClassLoaders =
+      new WeakHashMap<ClassLoader, WeakReference<GeneratedClassLoader>>(2);
+
+   /**
+    * Releases the shared loaders of generated classes, so that classes generated afterwards go to new loaders.
+    * Each released loader is also unlinked from the next one in its chain, so that it can be garbage collected as soon
+    * as none of its own classes is in use, regardless of the classes in other loaders.
+    */
+   public static void releaseGeneratedClassLoaders()
+   {
+      synchronized (generatedClassLoaders) {
+         for (WeakReference<GeneratedClassLoader> loaderRef : generatedClassLoaders.values()) {
+            GeneratedClassLoader loader = loaderRef.get();
+
+            while (loader != null) {
+               GeneratedClassLoader nextLoader = loader.nextLoader;
+               loader.nextLoader = null;
+               loader = nextLoader;
+            }
+         }
+
+         generatedClassLoaders.clear();
+      }
+   }
+
+   @NotNull private static GeneratedClassLoader getGeneratedClassLoader(@NotNull ClassLoader parentLoader)
+   {
+      WeakReference<GeneratedClassLoader> loaderRef = generatedClassLoaders.get(parentLoader);
+      GeneratedClassLoader loader = loaderRef == null ? null : loaderRef.get();
+
+      if (loader == null) {
+         loader = new GeneratedClassLoader(parentLoader);
+         generatedClassLoaders.put(parentLoader, new WeakReference<GeneratedClassLoader>(loader));
+      }
+
+      return loader;
+   }
+
+   private static final class GeneratedClassLoader extends ClassLoader
+   {
+      @NotNull private final Map<String, byte[]> namesToBytecode;
+      @Nullable private GeneratedClassLoader nextLoader;
+
+      GeneratedClassLoader(@NotNull ClassLoader parentLoader)
+      {
+         super(parentLoader);
+         namesToBytecode = new HashMap<String, byte[]>();
+         RuntimeMetrics.count(RuntimeMetrics.Metric.GeneratedClassLoaders, 1);
+      }
+
+      @Nullable Class<?> findGeneratedClass(@NotNull String className)
+      {
+         return namesToBytecode.containsKey(className) ? findLoadedClass(className) : null;
+      }
+
+      boolean hasSameBytecode(@NotNull String className, @NotNull byte[] bytecode)
+      {
+         return Arrays.equals(namesToBytecode.get(className), bytecode);
+      }
+
+      @NotNull Class<?> defineGeneratedClass(@NotNull String className, @NotNull byte[] bytecode)
+      {
+         Class<?> generatedClass = defineClass(className, bytecode, 0, bytecode.length);
+         namesToBytecode.put(className, bytecode);
+         return generatedClass;
+      }
+
+      @NotNull GeneratedClassLoader getNextLoader()
+      {
+         if (nextLoader == null) {
+            //noinspection ConstantConditions
+            nextLoader = new GeneratedClassLoader(getParent());
          }
-      }.findClass(className);
+
+         return nextLoader;
+      }
    }
 }
@@ -76,6 +76,8 @@ final class PhasedExecutionState
       else {
          expectations.add(expectation);
       }
+
+      RuntimeMetrics.count(RuntimeMetrics.Metric.RecordedExpectations, 1);
    }
 
    private void forceMatchingOnMockInstanceIfRequired(@NotNull ExpectedInvocation invocation)
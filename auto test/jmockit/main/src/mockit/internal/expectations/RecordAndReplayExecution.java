@@ -197,7 +197,11 @@ public final class RecordAndReplayExecution
          return Void.class;
       }
 
-      RECORD_OR_REPLAY_LOCK.lock();
+      if (!RECORD_OR_REPLAY_LOCK.tryLock()) {
+         long startTime = RuntimeMetrics.startTimer();
+         RECORD_OR_REPLAY_LOCK.lock();
+         RuntimeMetrics.stopTimer(RuntimeMetrics.Metric.RecordOrReplayLockWaits, startTime, 1);
+      }
 
       try {
          RecordAndReplayExecution instance = TestRun.getOrCreateRecordAndReplayForRunningTest();
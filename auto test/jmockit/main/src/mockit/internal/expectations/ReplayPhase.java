@@ -57,6 +57,8 @@ final class ReplayPhase extends Phase
       @Nullable String genericSignature, @Nullable String exceptions, boolean withRealImpl, @NotNull Object[] args)
       throws Throwable
    {
+      RuntimeMetrics.count(RuntimeMetrics.Metric.ReplayedInvocations, 1);
+
       Expectation nonStrictExpectation =
          recordAndReplay.executionState.findNonStrictExpectation(mock, mockClassDesc, mockDesc, args);
       Object replacementInstance =
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.internal.expectations;
@@ -253,7 +253,8 @@ final class ReturnTypeConversion
       StringBuilder msg = new StringBuilder(200);
       msg.append("Value of type ").append(valueTypeName);
       msg.append(" incompatible with return type ").append(returnTypeName).append(" of ");
-      msg.append(new MethodFormatter(invocation.getClassDesc(), invocation.getMethodNameAndDescription()));
+      msg.append(new MethodFormatter(
+         invocation.getClassLoader(), invocation.getClassDesc(), invocation.getMethodNameAndDescription()));
 
       return new IllegalArgumentException(msg.toString());
    }
@@ -112,8 +112,6 @@ public final class TestedClassInstantiations
 
    public boolean findTestedAndInjectableFields(@NotNull Class<?> testClass)
    {
-      new ParameterNameExtractor(true).extractNames(testClass);
-
       Field[] fieldsInTestClass = testClass.getDeclaredFields();
 
       for (Field field : fieldsInTestClass) {
@@ -269,11 +267,8 @@ public final class TestedClassInstantiations
 
       private final class ConstructorSearch
       {
-         @NotNull private final String testedClassDesc;
-
          ConstructorSearch()
          {
-            testedClassDesc = new ParameterNameExtractor(false).extractNames(declaredClass);
             injectablesForConstructor = new ArrayList<MockedType>();
          }
 
@@ -361,7 +356,7 @@ public final class TestedClassInstantiations
             for (int i = 0; i < n; i++) {
                setTypeOfInjectionPoint(parameterTypes[i]);
 
-               String parameterName = ParameterNames.getName(testedClassDesc, constructorDesc, i);
+               String parameterName = ParameterNames.getName(declaredClass, constructorDesc, i);
                MockedType injectable = parameterName == null ? null : findInjectable(parameterName);
 
                if (injectable == null || injectablesFound.contains(injectable)) {
@@ -503,9 +498,11 @@ public final class TestedClassInstantiations
          @NotNull
          private String missingInjectableDescription(@NotNull String name)
          {
-            String classDesc = mockit.external.asm4.Type.getInternalName(constructor.getDeclaringClass());
+            Class<?> declaringClass = constructor.getDeclaringClass();
+            String classDesc = mockit.external.asm4.Type.getInternalName(declaringClass);
             String constructorDesc = "<init>" + mockit.external.asm4.Type.getConstructorDescriptor(constructor);
-            String constructorDescription = new MethodFormatter(classDesc, constructorDesc).toString();
+            String constructorDescription =
+               new MethodFormatter(declaringClass.getClassLoader(), classDesc, constructorDesc).toString();
 
             return
                " for parameter \"" + name + "\" in constructor " +
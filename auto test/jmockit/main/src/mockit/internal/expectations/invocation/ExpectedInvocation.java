@@ -42,7 +42,8 @@ public final class ExpectedInvocation
    {
       instance = mock;
       this.matchInstance = matchInstance;
-      arguments = new InvocationArguments(access, mockedClassDesc, mockNameAndDesc, genericSignature, exceptions, args);
+      arguments =
+         new InvocationArguments(mock, access, mockedClassDesc, mockNameAndDesc, genericSignature, exceptions, args);
       invocationCause = new ExpectationError();
       determineDefaultReturnValueFromMethodSignature();
    }
@@ -57,6 +58,7 @@ public final class ExpectedInvocation
 
    @NotNull public String getClassDesc() { return arguments.classDesc; }
    @NotNull public String getClassName() { return arguments.getClassName(); }
+   @Nullable public ClassLoader getClassLoader() { return arguments.getClassLoader(); }
    @NotNull public String getMethodNameAndDescription() { return arguments.methodNameAndDesc; }
    @NotNull public Object[] getArgumentValues() { return arguments.getValues(); }
    public boolean isConstructor() { return arguments.isForConstructor(); }
@@ -156,7 +158,7 @@ public final class ExpectedInvocation
    {
       instance = mockedInstance;
       matchInstance = false;
-      arguments = new InvocationArguments(0, classDesc, methodNameAndDesc, null, null, args);
+      arguments = new InvocationArguments(mockedInstance, 0, classDesc, methodNameAndDesc, null, null, args);
       invocationCause = null;
    }
 
@@ -220,7 +222,9 @@ public final class ExpectedInvocation
    {
       StringBuilder message = new StringBuilder(200);
       message.append("Unexpected invocation of:\n");
-      message.append(new MethodFormatter(invokedClassDesc, invokedMethod));
+      ClassLoader classLoader = mock == null ?
+         TestRun.mockFixture().findLoaderOfMockedClass(invokedClassDesc) : mock.getClass().getClassLoader();
+      message.append(new MethodFormatter(classLoader, invokedClassDesc, invokedMethod));
 
       if (replayArgs.length > 0) {
          ArgumentMismatch argumentMismatch = new ArgumentMismatch();
@@ -20,6 +20,7 @@ public final class InvocationArguments
    @NotNull private static final String EOL = System.getProperty("line.separator");
 
    @NotNull final String classDesc;
+   @Nullable private final Class<?> mockClass;
    @NotNull final String methodNameAndDesc;
    @Nullable final String genericSignature;
    @Nullable final String[] exceptions;
@@ -27,10 +28,11 @@ public final class InvocationArguments
    @Nullable private RealMethod realMethod;
 
    InvocationArguments(
-      int access, @NotNull String classDesc, @NotNull String methodNameAndDesc,
+      @Nullable Object mock, int access, @NotNull String classDesc, @NotNull String methodNameAndDesc,
       @Nullable String genericSignature, @Nullable String exceptions, @NotNull Object[] args)
    {
       this.classDesc = classDesc;
+      mockClass = mock == null ? null : mock.getClass();
       this.methodNameAndDesc = methodNameAndDesc;
       this.genericSignature = genericSignature;
       this.exceptions = exceptions == null ? null : exceptions.split(" ");
@@ -42,6 +44,15 @@ public final class InvocationArguments
 
    @NotNull String getClassName() { return classDesc.replace('/', '.'); }
 
+   /**
+    * Gets the loader of the mocked class, through the class of the mock instance if any, or else through the classes
+    * currently mocked.
+    */
+   @Nullable ClassLoader getClassLoader()
+   {
+      return mockClass != null ? mockClass.getClassLoader() : TestRun.mockFixture().findLoaderOfMockedClass(classDesc);
+   }
+
    boolean isForConstructor() { return methodNameAndDesc.charAt(0) == '<'; }
 
    @NotNull public Object[] getValues() { return valuesAndMatchers.values; }
@@ -93,7 +104,8 @@ public final class InvocationArguments
 
       message.append("Parameter ");
 
-      String parameterName = ParameterNames.getName(classDesc, methodNameAndDesc, paramIndex);
+      ClassLoader classLoader = getClassLoader();
+      String parameterName = ParameterNames.getName(classLoader, classDesc, methodNameAndDesc, paramIndex);
 
       if (parameterName == null) {
          message.append(paramIndex);
@@ -102,7 +114,7 @@ public final class InvocationArguments
          message.appendFormatted(parameterName);
       }
 
-      message.append(" of ").append(new MethodFormatter(classDesc, methodNameAndDesc).toString());
+      message.append(" of ").append(new MethodFormatter(classLoader, classDesc, methodNameAndDesc).toString());
       message.append(" expected ").appendFormatted(expected);
 
       if (!message.isFinished()) {
@@ -140,7 +152,7 @@ public final class InvocationArguments
    @Override
    public String toString()
    {
-      MethodFormatter methodFormatter = new MethodFormatter(classDesc, methodNameAndDesc);
+      MethodFormatter methodFormatter = new MethodFormatter(getClassLoader(), classDesc, methodNameAndDesc);
       return valuesAndMatchers.toString(methodFormatter);
    }
 
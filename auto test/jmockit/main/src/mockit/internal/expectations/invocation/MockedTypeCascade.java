@@ -6,6 +6,7 @@ package mockit.internal.expectations.invocation;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.jetbrains.annotations.*;
 
@@ -15,6 +16,22 @@ import mockit.internal.util.*;
 
 public final class MockedTypeCascade
 {
+   /**
+    * Return type resolutions for cascading methods, shared by the tests in the current test class, and discarded when
+    * a different test class starts so that mocked types and their class loaders aren't kept alive for the whole JVM.
+    * Keyed by the mocked type (which carries the generic context), and then by the method name and descriptor.
+    */
+   @NotNull private static final ConcurrentMap<Type, Map<String, CascadePlan>> CASCADE_PLANS =
+      new ConcurrentHashMap<Type, Map<String, CascadePlan>>();
+
+   private static final class CascadePlan
+   {
+      @Nullable final String returnTypeInternalName;
+      @Nullable volatile Type returnType;
+
+      CascadePlan(@Nullable String returnTypeInternalName) { this.returnTypeInternalName = returnTypeInternalName; }
+   }
+
    private final boolean fromMockField;
    @NotNull private final Type mockedType;
    @NotNull private final Map<String, Type> cascadedTypesAndMocks;
@@ -28,6 +45,8 @@ public final class MockedTypeCascade
 
    public boolean isSharedBetweenTests() { return fromMockField; }
 
+   public static void discardCascadePlans() { CASCADE_PLANS.clear(); }
+
    @Nullable
    public static Object getMock(
       @NotNull String mockedTypeDesc, @NotNull String mockedMethodNameAndDesc, @Nullable Object mockInstance,
@@ -45,21 +64,49 @@ public final class MockedTypeCascade
          return null;
       }
 
-      String resolvedReturnTypeDesc = null;
+      CascadePlan plan = getCascadePlan(cascade, mockedMethodNameAndDesc, returnTypeDesc, genericReturnTypeDesc);
 
-      if (genericReturnTypeDesc != null) {
-         resolvedReturnTypeDesc = getGenericReturnType(genericReturnTypeDesc, cascade);
+      if (plan.returnTypeInternalName == null) {
+         return null;
       }
 
-      if (resolvedReturnTypeDesc == null) {
-         resolvedReturnTypeDesc = getReturnTypeIfCascadingSupportedForIt(returnTypeDesc);
+      return cascade.getCascadedMock(mockedMethodNameAndDesc, plan);
+   }
+
+   @NotNull
+   private static CascadePlan getCascadePlan(
+      @NotNull MockedTypeCascade cascade, @NotNull String mockedMethodNameAndDesc, @NotNull String returnTypeDesc,
+      @Nullable String genericReturnTypeDesc)
+   {
+      Map<String, CascadePlan> plansForMockedType = CASCADE_PLANS.get(cascade.mockedType);
+
+      if (plansForMockedType == null) {
+         plansForMockedType = new ConcurrentHashMap<String, CascadePlan>(8);
+         Map<String, CascadePlan> previousPlans = CASCADE_PLANS.putIfAbsent(cascade.mockedType, plansForMockedType);
+
+         if (previousPlans != null) {
+            plansForMockedType = previousPlans;
+         }
       }
 
-      if (resolvedReturnTypeDesc == null) {
-         return null;
+      CascadePlan plan = plansForMockedType.get(mockedMethodNameAndDesc);
+
+      if (plan == null) {
+         String resolvedReturnTypeDesc = null;
+
+         if (genericReturnTypeDesc != null) {
+            resolvedReturnTypeDesc = getGenericReturnType(genericReturnTypeDesc, cascade);
+         }
+
+         if (resolvedReturnTypeDesc == null) {
+            resolvedReturnTypeDesc = getReturnTypeIfCascadingSupportedForIt(returnTypeDesc);
+         }
+
+         plan = new CascadePlan(resolvedReturnTypeDesc);
+         plansForMockedType.put(mockedMethodNameAndDesc, plan);
       }
 
-      return cascade.getCascadedMock(mockedMethodNameAndDesc, resolvedReturnTypeDesc);
+      return plan;
    }
 
    @Nullable
@@ -138,35 +185,46 @@ public final class MockedTypeCascade
    }
 
    @NotNull
-   private Object getCascadedMock(@NotNull String methodNameAndDesc, @NotNull String returnTypeInternalName)
+   private Object getCascadedMock(@NotNull String methodNameAndDesc, @NotNull CascadePlan plan)
    {
+      String returnTypeInternalName = plan.returnTypeInternalName;
+      assert returnTypeInternalName != null;
       Type returnType = cascadedTypesAndMocks.get(returnTypeInternalName);
 
       if (returnType == null) {
-         returnType = registerIntermediateCascadingType(methodNameAndDesc, returnTypeInternalName);
+         returnType = plan.returnType;
+
+         if (returnType == null) {
+            returnType = resolveReturnType(methodNameAndDesc);
+            plan.returnType = returnType;
+         }
+
+         registerIntermediateCascadingType(returnTypeInternalName, returnType);
       }
 
       return createNewCascadedInstanceOrUseNonCascadedOneIfAvailable(returnType);
    }
 
    @NotNull
-   private Type registerIntermediateCascadingType(@NotNull String methodNameAndDesc, @NotNull String returnTypeDesc)
+   private Type resolveReturnType(@NotNull String methodNameAndDesc)
    {
-      Type returnType;
-
       Class<?> cascadingClass = mockedType instanceof Class<?> ?
          (Class<?>) mockedType : (Class<?>) ((ParameterizedType) mockedType).getRawType();
       Method cascadingMethod = new RealMethod(cascadingClass, methodNameAndDesc).method;
-      returnType = cascadingMethod.getGenericReturnType();
+      Type returnType = cascadingMethod.getGenericReturnType();
 
       if (returnType instanceof TypeVariable<?>) {
          GenericTypeReflection typeReflection = new GenericTypeReflection(cascadingClass, mockedType);
          returnType = typeReflection.resolveReturnType((TypeVariable<?>) returnType);
       }
 
+      return returnType;
+   }
+
+   private void registerIntermediateCascadingType(@NotNull String returnTypeDesc, @NotNull Type returnType)
+   {
       cascadedTypesAndMocks.put(returnTypeDesc, returnType);
       TestRun.getExecutingTest().addCascadingType(returnTypeDesc, fromMockField, returnType);
-      return returnType;
    }
 
    @NotNull
@@ -296,8 +296,6 @@ final class ExpectationsModifier extends MockedTypeModifier
          @NotNull String name, @NotNull String desc, @Nullable String signature,
          @NotNull Label start, @NotNull Label end, int index)
       {
-         registerParameterName(name, index);
-
          // For some reason, the start position for "this" gets displaced by bytecode inserted at the beginning,
          // in a method modified by the EMMA tool. If not treated, this causes a ClassFormatError.
          if (end.position > 0 && start.position > end.position) {
@@ -108,7 +108,7 @@ public final class MockedType
    }
 
    MockedType(
-      @NotNull String testClassDesc, @NotNull String testMethodDesc, int paramIndex, @NotNull Type parameterType,
+      @NotNull Class<?> testClass, @NotNull String testMethodDesc, int paramIndex, @NotNull Type parameterType,
       @NotNull Annotation[] annotationsOnParameter)
    {
       field = null;
@@ -120,7 +120,7 @@ public final class MockedType
       Injectable injectableAnnotation = getAnnotation(annotationsOnParameter, Injectable.class);
       injectable = injectableAnnotation != null;
       declaredType = parameterType;
-      mockId = ParameterNames.getName(testClassDesc, testMethodDesc, paramIndex);
+      mockId = ParameterNames.getName(testClass, testMethodDesc, paramIndex);
       providedValue = getDefaultInjectableValue(injectableAnnotation);
       registerCascadingIfSpecified();
    }
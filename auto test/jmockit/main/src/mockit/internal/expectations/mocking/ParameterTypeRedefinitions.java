@@ -35,11 +35,11 @@ public final class ParameterTypeRedefinitions extends TypeRedefinitions
          mockParameters = new MockedType[n];
          injectableParameters = new ArrayList<MockedType>(n);
 
-         String testClassDesc = mockit.external.asm4.Type.getInternalName(testMethod.getDeclaringClass());
+         Class<?> testClass = testMethod.getDeclaringClass();
          String testMethodDesc = testMethod.getName() + mockit.external.asm4.Type.getMethodDescriptor(testMethod);
 
          for (int i = 0; i < n; i++) {
-            getMockedTypeFromMockParameterDeclaration(testClassDesc, testMethodDesc, i);
+            getMockedTypeFromMockParameterDeclaration(testClass, testMethodDesc, i);
          }
 
          redefineAndInstantiateMockedTypes();
@@ -50,13 +50,13 @@ public final class ParameterTypeRedefinitions extends TypeRedefinitions
    }
 
    private void getMockedTypeFromMockParameterDeclaration(
-      @NotNull String testClassDesc, @NotNull String testMethodDesc, int paramIndex)
+      @NotNull Class<?> testClass, @NotNull String testMethodDesc, int paramIndex)
    {
       Type paramType = paramTypes[paramIndex];
       Annotation[] annotationsOnParameter = paramAnnotations[paramIndex];
 
       MockedType mockedType =
-         new MockedType(testClassDesc, testMethodDesc, paramIndex, paramType, annotationsOnParameter);
+         new MockedType(testClass, testMethodDesc, paramIndex, paramType, annotationsOnParameter);
       mockParameters[paramIndex] = mockedType;
 
       if (mockedType.injectable) {
@@ -116,7 +116,8 @@ public final class MockClassSetup
 
       if (!remainingMocks.isEmpty()) {
          String classDesc = mockMethods.getMockClassInternalName();
-         String mockSignatures = new MethodFormatter(classDesc).friendlyMethodSignatures(remainingMocks);
+         String mockSignatures =
+            new MethodFormatter(mockMethods.getMockClassLoader(), classDesc).friendlyMethodSignatures(remainingMocks);
 
          throw new IllegalArgumentException(
             "Matching real methods not found for the following mocks:\n" + mockSignatures);
@@ -70,11 +70,11 @@ public final class MockMethodBridge extends MockingBridge
       MockStates mockStates = TestRun.getMockStates();
       Class<?>[] paramClasses = TypeDescriptor.getParameterTypes(mockDesc);
       Method mockMethod = mockStateIndex < 0 ?
-         null : mockStates.getMockMethod(mockClassInternalName, mockStateIndex, mockClass, paramClasses);
+         null : mockStates.getMockMethod(mockStateIndex, mockClass, paramClasses);
       MockInvocation invocation = null;
 
       if (paramClasses.length > 0 && paramClasses[0] == Invocation.class) {
-         invocation = mockStates.createMockInvocation(mockClassInternalName, mockStateIndex, mocked, mockArgs);
+         invocation = mockStates.createMockInvocation(mockStateIndex, mocked, mockArgs);
 
          if (invocation != null) {
             //noinspection AssignmentToMethodParameter
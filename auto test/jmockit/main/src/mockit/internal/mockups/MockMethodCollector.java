@@ -13,7 +13,6 @@ import static mockit.external.asm4.Opcodes.*;
 import mockit.*;
 import mockit.external.asm4.*;
 import mockit.internal.*;
-import mockit.internal.state.*;
 import mockit.internal.util.*;
 
 /**
@@ -34,6 +33,7 @@ final class MockMethodCollector extends ClassVisitor
    void collectMockMethods(@NotNull Class<?> mockClass)
    {
       ClassLoad.registerLoadedClass(mockClass);
+      mockMethods.setMockClassLoader(mockClass.getClassLoader());
 
       Class<?> classToCollectMocksFrom = mockClass;
 
@@ -102,15 +102,6 @@ final class MockMethodCollector extends ClassVisitor
 
             return null;
          }
-
-         @Override
-         public void visitLocalVariable(
-            @NotNull String paramName, @NotNull String paramDesc, @Nullable String paramSignature,
-            @NotNull Label start, @NotNull Label end, int index)
-         {
-            String classDesc = mockMethods.getMockClassInternalName();
-            ParameterNames.registerName(classDesc, access, methodName, methodDesc, paramName, index);
-         }
       };
    }
 
@@ -24,6 +24,7 @@ final class MockMethods
    @NotNull private final List<MockMethod> methods;
    @NotNull private final GenericTypeReflection typeParametersToTypeArguments;
    @NotNull private String mockClassInternalName;
+   @Nullable private ClassLoader mockClassLoader;
    @Nullable private List<MockState> mockStates;
 
    final class MockMethod
@@ -35,7 +36,7 @@ final class MockMethods
       @NotNull String mockedMethodDesc;
       @NotNull private final String mockDescWithoutInvocationParameter;
       @Nullable private GenericSignature mockSignature;
-      private int indexForMockState;
+      @Nullable private MockState mockState;
       private boolean nativeRealMethod;
 
       private MockMethod(@NotNull String nameAndDesc, boolean isStatic)
@@ -47,7 +48,6 @@ final class MockMethods
          hasInvocationParameter = desc.startsWith("(Lmockit/Invocation;");
          mockedMethodDesc = "";
          mockDescWithoutInvocationParameter = hasInvocationParameter ? '(' + desc.substring(20) : desc;
-         indexForMockState = -1;
       }
 
       boolean isMatch(@NotNull String methodName, @NotNull String methodDesc, @Nullable String signature)
@@ -79,7 +79,7 @@ final class MockMethods
 
       @NotNull Class<?> getRealClass() { return realClass; }
       @NotNull String getMockNameAndDesc() { return name + desc; }
-      int getIndexForMockState() { return indexForMockState; }
+      int getIndexForMockState() { return mockState == null ? -1 : mockState.slot; }
 
       boolean isForGenericMethod() { return mockSignature != null; }
       boolean isForConstructor() { return "$init".equals(name); }
@@ -94,7 +94,7 @@ final class MockMethods
 
       boolean isReentrant()
       {
-         return indexForMockState >= 0 && mockStates != null && mockStates.get(indexForMockState).isReentrant();
+         return mockState != null && mockState.isReentrant();
       }
 
       boolean isDynamic() { return isReentrant() || hasInvocationParameter && isForConstructor(); }
@@ -104,9 +104,10 @@ final class MockMethods
       @NotNull String errorMessage(@NotNull String quantifier, int numExpectedInvocations, int timesInvoked)
       {
          String nameAndDesc = getMockNameAndDesc();
+         MethodFormatter mockDescription = new MethodFormatter(mockClassLoader, mockClassInternalName, nameAndDesc);
          return
-            "Expected " + quantifier + ' ' + numExpectedInvocations + " invocation(s) of " +
-            new MethodFormatter(mockClassInternalName, nameAndDesc) + ", but was invoked " + timesInvoked + " time(s)";
+            "Expected " + quantifier + ' ' + numExpectedInvocations + " invocation(s) of " + mockDescription +
+            ", but was invoked " + timesInvoked + " time(s)";
       }
 
       @Override
@@ -174,7 +175,8 @@ final class MockMethods
          mockStates = new ArrayList<MockState>(4);
       }
 
-      mockState.mockMethod.indexForMockState = mockStates.size();
+      TestRun.getMockStates().assignSlot(mockState);
+      mockState.mockMethod.mockState = mockState;
       mockStates.add(mockState);
    }
 
@@ -202,6 +204,9 @@ final class MockMethods
       this.mockClassInternalName = mockClassInternalName;
    }
 
+   @Nullable ClassLoader getMockClassLoader() { return mockClassLoader; }
+   void setMockClassLoader(@Nullable ClassLoader mockClassLoader) { this.mockClassLoader = mockClassLoader; }
+
    boolean hasUnusedMocks()
    {
       for (MockMethod method : methods) {
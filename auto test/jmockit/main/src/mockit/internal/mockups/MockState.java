@@ -5,6 +5,7 @@
 package mockit.internal.mockups;
 
 import java.lang.reflect.*;
+import java.util.concurrent.atomic.*;
 
 import org.jetbrains.annotations.*;
 
@@ -14,7 +15,15 @@ import mockit.internal.mockups.MockMethods.MockMethod;
 
 final class MockState
 {
+   // Invocation counts are kept in a few cells indexed by thread id, each cell padded to its own cache line, so that
+   // concurrent invocations of the same mock don't contend on a single counter; the cells are only added up when the
+   // count is read for verification. Mocks with an Invocation parameter, which read the count on every invocation,
+   // use a single cell instead.
+   private static final int CELL_COUNT = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors()), 8);
+   private static final int CELL_PADDING = 8;
+
    @NotNull final MockMethod mockMethod;
+   int slot = -1;
    @Nullable private RealMethod realMethod;
    @Nullable private Method actualMockMethod;
 
@@ -25,13 +34,16 @@ final class MockState
    int maxExpectedInvocations = -1;
 
    // Current mock invocation state:
-   private int invocationCount;
+   private final int cellCount;
+   @NotNull private final AtomicLongArray invocationCounts;
    @Nullable private ThreadLocal<Boolean> proceeding;
 
-   // Helper field just for synchronization:
-   @NotNull private final Object invocationCountLock = new Object();
-
-   MockState(@NotNull MockMethod mockMethod) { this.mockMethod = mockMethod; }
+   MockState(@NotNull MockMethod mockMethod)
+   {
+      this.mockMethod = mockMethod;
+      cellCount = mockMethod.hasInvocationParameter ? 1 : CELL_COUNT;
+      invocationCounts = new AtomicLongArray(cellCount * CELL_PADDING);
+   }
 
    @NotNull Class<?> getRealClass() { return mockMethod.getRealClass(); }
 
@@ -56,10 +68,8 @@ final class MockState
          return false;
       }
 
-      synchronized (invocationCountLock) {
-         invocationCount++;
-      }
-
+      int cell = (int) Thread.currentThread().getId() & (cellCount - 1);
+      invocationCounts.incrementAndGet(cell * CELL_PADDING);
       return true;
    }
 
@@ -85,15 +95,19 @@ final class MockState
 
    int getTimesInvoked()
    {
-      synchronized (invocationCountLock) {
-         return invocationCount;
+      long timesInvoked = 0;
+
+      for (int cell = 0; cell < cellCount; cell++) {
+         timesInvoked += invocationCounts.get(cell * CELL_PADDING);
       }
+
+      return (int) timesInvoked;
    }
 
    void reset()
    {
-      synchronized (invocationCountLock) {
-         invocationCount = 0;
+      for (int cell = 0; cell < cellCount; cell++) {
+         invocationCounts.set(cell * CELL_PADDING, 0L);
       }
    }
 
@@ -6,6 +6,7 @@ package mockit.internal.mockups;
 
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import org.jetbrains.annotations.*;
 
@@ -26,10 +27,51 @@ public final class MockStates
     */
    @NotNull private final Set<MockState> mockStatesWithExpectations;
 
+   /**
+    * All mock states in use, indexed by the slot number baked into the modified real methods.
+    * Slots are never reused: a real method modified for a mock-up already torn down can still be executing in some
+    * thread, and its call must then find no mock state rather than the state of a different mock.
+    */
+   @NotNull private volatile AtomicReferenceArray<MockState> slotsToMockStates;
+   private int slotCount;
+
    public MockStates()
    {
       mockClassToMockStates = new HashMap<String, List<MockState>>(8);
       mockStatesWithExpectations = new LinkedHashSet<MockState>(10);
+      slotsToMockStates = new AtomicReferenceArray<MockState>(32);
+   }
+
+   synchronized void assignSlot(@NotNull MockState mockState)
+   {
+      AtomicReferenceArray<MockState> mockStates = slotsToMockStates;
+      int slot = slotCount++;
+
+      if (slot == mockStates.length()) {
+         AtomicReferenceArray<MockState> newMockStates = new AtomicReferenceArray<MockState>(2 * slot);
+
+         for (int i = 0; i < slot; i++) {
+            newMockStates.set(i, mockStates.get(i));
+         }
+
+         slotsToMockStates = mockStates = newMockStates;
+      }
+
+      mockStates.set(slot, mockState);
+      mockState.slot = slot;
+   }
+
+   private synchronized void releaseSlots(@NotNull List<MockState> mockStates)
+   {
+      AtomicReferenceArray<MockState> slots = slotsToMockStates;
+
+      for (MockState mockState : mockStates) {
+         int slot = mockState.slot;
+
+         if (slot >= 0 && slots.compareAndSet(slot, mockState, null)) {
+            mockState.slot = -1;
+         }
+      }
    }
 
    void addMockStates(@NotNull List<MockState> mockStates)
@@ -72,6 +114,7 @@ public final class MockStates
 
          if (mockState.getRealClass() == redefinedClass) {
             mockStatesWithExpectations.removeAll(mockStates);
+            releaseSlots(mockStates);
             mockStates.clear();
             itr.remove();
          }
@@ -84,26 +127,32 @@ public final class MockStates
 
       if (mockStates != null) {
          mockStatesWithExpectations.removeAll(mockStates);
+         releaseSlots(mockStates);
       }
    }
 
-   public boolean updateMockState(@NotNull String mockClassName, int mockStateIndex)
+   public boolean updateMockState(int mockStateIndex)
    {
-      MockState mockState = getMockState(mockClassName, mockStateIndex);
+      MockState mockState = getMockState(mockStateIndex);
       return mockState != null && mockState.update();
    }
 
    @Nullable MockState getMockState(@NotNull String mockClassInternalName, int mockStateIndex)
    {
       List<MockState> mockStates = mockClassToMockStates.get(mockClassInternalName);
-      return mockStates.get(mockStateIndex);
+      return mockStates == null ? null : mockStates.get(mockStateIndex);
+   }
+
+   @Nullable private MockState getMockState(int mockStateIndex)
+   {
+      AtomicReferenceArray<MockState> mockStates = slotsToMockStates;
+      return mockStateIndex < mockStates.length() ? mockStates.get(mockStateIndex) : null;
    }
 
    @Nullable
-   public Method getMockMethod(
-      @NotNull String mockClassDesc, int mockStateIndex, @NotNull Class<?> mockClass, @NotNull Class<?>[] paramTypes)
+   public Method getMockMethod(int mockStateIndex, @NotNull Class<?> mockClass, @NotNull Class<?>[] paramTypes)
    {
-      MockState mockState = getMockState(mockClassDesc, mockStateIndex);
+      MockState mockState = getMockState(mockStateIndex);
 
       if (mockState != null) {
          return mockState.getMockMethod(mockClass, paramTypes);
@@ -114,10 +163,9 @@ public final class MockStates
 
    @Nullable
    public MockInvocation createMockInvocation(
-      @NotNull String mockClassInternalName, int mockStateIndex, @Nullable Object invokedInstance,
-      @NotNull Object[] invokedArguments)
+      int mockStateIndex, @Nullable Object invokedInstance, @NotNull Object[] invokedArguments)
    {
-      MockState mockState = getMockState(mockClassInternalName, mockStateIndex);
+      MockState mockState = getMockState(mockStateIndex);
       return mockState == null ? null : new MockInvocation(invokedInstance, invokedArguments, mockState);
    }
 
@@ -29,7 +29,7 @@ public final class MockupBridge extends MockingBridge
 
       if (enteringMethod) {
          int mockStateIndex = (Integer) args[2];
-         return TestRun.updateMockState(mockClassDesc, mockStateIndex);
+         return TestRun.updateMockState(mockStateIndex);
       }
 
       return null;
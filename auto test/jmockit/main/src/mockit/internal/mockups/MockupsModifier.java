@@ -235,10 +235,8 @@ final class MockupsModifier extends BaseClassModifier
             mw.visitMethodInsn(INVOKEVIRTUAL, "java/lang/Boolean", "booleanValue", "()Z");
          }
          else {
-            mw.visitLdcInsn(mockMethods.getMockClassInternalName());
-            mw.visitIntInsn(SIPUSH, mockStateIndex);
-            mw.visitMethodInsn(
-               INVOKESTATIC, "mockit/internal/state/TestRun", "updateMockState", "(Ljava/lang/String;I)Z");
+            generateCodeToPushInt(mockStateIndex);
+            mw.visitMethodInsn(INVOKESTATIC, "mockit/internal/state/TestRun", "updateMockState", "(I)Z");
          }
       }
    }
@@ -14,6 +14,7 @@ import mockit.integration.junit4.internal.*;
 import mockit.integration.robolectric.internal.*;
 import mockit.integration.testng.internal.*;
 import mockit.internal.*;
+import mockit.internal.state.*;
 import mockit.internal.util.*;
 
 final class JMockitInitialization
@@ -25,6 +26,7 @@ final class JMockitInitialization
    void initialize()
    {
       MockingBridge.preventEventualClassLoadingConflicts();
+      RuntimeMetrics.initialize();
 
       if (MockTestNG.hasDependenciesInClasspath()) {
          new MockTestNG();
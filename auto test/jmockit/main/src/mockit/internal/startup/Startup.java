@@ -280,10 +280,25 @@ public final class Startup
       redefineMethods(new ClassDefinition(classToRedefine, modifiedClassfile));
    }
 
+   private static boolean affectsSystemClass(@NotNull ClassDefinition[] classDefs)
+   {
+      for (ClassDefinition classDef : classDefs) {
+         if (classDef.getDefinitionClass() == System.class) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
    public static void redefineMethods(@NotNull ClassDefinition... classDefs)
    {
+      long startTime = RuntimeMetrics.startTimer();
+
       try {
          instrumentation().redefineClasses(classDefs);
+         boolean untimed = startTime == 0L || affectsSystemClass(classDefs);
+         RuntimeMetrics.stopTimer(RuntimeMetrics.Metric.ClassRedefinitions, untimed ? 0L : startTime, classDefs.length);
       }
       catch (ClassNotFoundException e) {
          // should never happen
@@ -92,7 +92,10 @@ public final class CachedClassfiles implements ClassFileTransformer
       if (cached != null) return cached;
 
       INSTANCE.classBeingCached = aClass;
+      long startTime = RuntimeMetrics.startTimer();
       Startup.retransformClass(aClass);
+      RuntimeMetrics.stopTimer(
+         RuntimeMetrics.Metric.ClassRetransformations, aClass == System.class ? 0L : startTime, 1);
       return INSTANCE.findClassfile(aClass);
    }
 
@@ -157,6 +157,7 @@ public final class MockFixture
    public void restoreAndRemoveRedefinedClasses(@Nullable Set<Class<?>> desiredClasses)
    {
       Set<Class<?>> classesToRestore = desiredClasses == null ? redefinedClasses.keySet() : desiredClasses;
+      RuntimeMetrics.count(RuntimeMetrics.Metric.ClassRestorations, classesToRestore.size());
       RedefinitionEngine redefinitionEngine = new RedefinitionEngine();
 
       for (Class<?> redefinedClass : classesToRestore) {
@@ -210,6 +211,7 @@ public final class MockFixture
 
    private void restoreAndRemoveTransformedClasses(@NotNull Set<ClassIdentification> classesToRestore)
    {
+      RuntimeMetrics.count(RuntimeMetrics.Metric.ClassRestorations, classesToRestore.size());
       RedefinitionEngine redefinitionEngine = new RedefinitionEngine();
 
       for (ClassIdentification transformedClassId : classesToRestore) {
@@ -237,6 +239,7 @@ public final class MockFixture
 
          if (currentDefinition != previousDefinition) {
             redefinitionEngine.restoreDefinition(redefinedClass, previousDefinition);
+            RuntimeMetrics.count(RuntimeMetrics.Metric.ClassRestorations, 1);
 
             if (previousDefinition == null) {
                restoreDefinition(redefinedClass);
@@ -308,6 +311,29 @@ public final class MockFixture
       return redefinedClasses.containsKey(redefinedClass);
    }
 
+   /**
+    * Finds the class loader of a currently redefined or transformed class, for when only its internal name is known,
+    * such as in an invocation to a mocked static method.
+    */
+   @Nullable public ClassLoader findLoaderOfMockedClass(@NotNull String classDesc)
+   {
+      String className = classDesc.replace('/', '.');
+
+      for (Class<?> redefinedClass : redefinedClasses.keySet()) {
+         if (redefinedClass.getName().equals(className)) {
+            return redefinedClass.getClassLoader();
+         }
+      }
+
+      for (ClassIdentification transformedClass : transformedClasses.keySet()) {
+         if (transformedClass.name.equals(className)) {
+            return transformedClass.loader;
+         }
+      }
+
+      return null;
+   }
+
    // Methods dealing with capture transformers ///////////////////////////////////////////////////////////////////////
 
    public void addCaptureTransformer(@NotNull CaptureTransformer transformer) { captureTransformers.add(transformer); }
@@ -1,69 +1,171 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.internal.state;
 
-import java.lang.reflect.*;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.jetbrains.annotations.*;
 
-import mockit.external.asm4.Type;
+import static mockit.external.asm4.Opcodes.*;
 
+import mockit.external.asm4.*;
+
+/**
+ * Provides the parameter names of methods and constructors, as found in the {@code LocalVariableTable}s of class files.
+ * <p/>
+ * Names are extracted lazily, for a whole class at a time, when first requested.
+ * They are kept separately for each class loader, and discarded when the class loader gets garbage collected.
+ */
 public final class ParameterNames
 {
-   private static final Map<String, Map<String, String[]>> classesToMethodsToParameters =
-      new HashMap<String, Map<String, String[]>>();
-   private static final String[] NO_PARAMETERS = new String[0];
+   @NotNull private static final Map<ClassLoader, ConcurrentMap<String, Map<String, String[]>>> classLoadersToClasses =
+      new WeakHashMap<ClassLoader, ConcurrentMap<String, Map<String, String[]>>>(2);
+
+   private ParameterNames() {}
 
-   public static boolean hasNamesForClass(@NotNull String classDesc)
+   /**
+    * Gets the name of a parameter in a method of the class with the given internal name, as seen from the given class
+    * loader, which is expected to have already loaded it.
+    */
+   @Nullable
+   public static String getName(
+      @Nullable ClassLoader loader, @NotNull String classDesc, @NotNull String methodDesc, int index)
    {
-      return classesToMethodsToParameters.containsKey(classDesc);
+      Class<?> aClass;
+
+      try { aClass = Class.forName(classDesc.replace('/', '.'), false, loader); }
+      catch (ClassNotFoundException ignore) { return null; }
+      catch (LinkageError ignore) { return null; }
+
+      return getName(aClass, methodDesc, index);
    }
 
-   public static void registerName(
-      @NotNull String classDesc, int methodAccess, @NotNull String methodName, @NotNull String methodDesc,
-      @NotNull String name, int index)
+   @Nullable public static String getName(@NotNull Class<?> aClass, @NotNull String methodDesc, int index)
    {
-      if ("this".equals(name)) {
-         return;
-      }
+      Map<String, String[]> methodsToParameters = getNamesForClass(aClass);
+      return getName(methodsToParameters, methodDesc, index);
+   }
+
+   @Nullable
+   private static String getName(@NotNull Map<String, String[]> methodsToParameters, @NotNull String methodDesc, int i)
+   {
+      String[] parameterNames = methodsToParameters.get(methodDesc);
+      return parameterNames == null || i >= parameterNames.length ? null : parameterNames[i];
+   }
 
-      Map<String, String[]> methodsToParameters = classesToMethodsToParameters.get(classDesc);
+   @NotNull private static Map<String, String[]> getNamesForClass(@NotNull Class<?> aClass)
+   {
+      ConcurrentMap<String, Map<String, String[]>> classesToMethods = getClassesForLoader(aClass.getClassLoader());
+      String classDesc = aClass.getName().replace('.', '/');
+      Map<String, String[]> methodsToParameters = classesToMethods.get(classDesc);
 
       if (methodsToParameters == null) {
-         methodsToParameters = new HashMap<String, String[]>();
-         classesToMethodsToParameters.put(classDesc, methodsToParameters);
+         methodsToParameters = extractNames(aClass, classDesc);
+         Map<String, String[]> previousNames = classesToMethods.putIfAbsent(classDesc, methodsToParameters);
+
+         if (previousNames != null) {
+            methodsToParameters = previousNames;
+         }
+      }
+
+      return methodsToParameters;
+   }
+
+   @NotNull
+   private static ConcurrentMap<String, Map<String, String[]>> getClassesForLoader(@Nullable ClassLoader loader)
+   {
+      synchronized (classLoadersToClasses) {
+         ConcurrentMap<String, Map<String, String[]>> classesToMethods = classLoadersToClasses.get(loader);
+
+         if (classesToMethods == null) {
+            classesToMethods = new ConcurrentHashMap<String, Map<String, String[]>>();
+            classLoadersToClasses.put(loader, classesToMethods);
+         }
+
+         return classesToMethods;
       }
+   }
 
-      String methodKey = methodName + methodDesc;
-      String[] parameterNames = methodsToParameters.get(methodKey);
+   @NotNull private static Map<String, String[]> extractNames(@NotNull Class<?> aClass, @NotNull String classDesc)
+   {
+      // Reads class from file, since JRE 1.6 (but not 1.7) discards parameter names on retransformation.
+      InputStream classFile = aClass.getResourceAsStream('/' + classDesc + ".class");
 
-      if (parameterNames == null) {
-         int numParameters = Type.getArgumentTypes(methodDesc).length;
-         parameterNames = numParameters == 0 ? NO_PARAMETERS : new String[numParameters];
-         methodsToParameters.put(methodKey, parameterNames);
+      if (classFile == null) {
+         return Collections.emptyMap();
       }
 
-      if (!Modifier.isStatic(methodAccess)) {
-         index--;
+      NameExtractor extractor = new NameExtractor();
+
+      try {
+         ClassReader cr = new ClassReader(classFile);
+         cr.accept(extractor, ClassReader.SKIP_FRAMES);
       }
+      catch (IOException ignore) {
+         return Collections.emptyMap();
+      }
+
+      return extractor.methodsToParameters;
+   }
+
+   private static final class NameExtractor extends ClassVisitor
+   {
+      @NotNull final Map<String, String[]> methodsToParameters = new HashMap<String, String[]>();
+
+      @Override @Nullable
+      public MethodVisitor visitMethod(
+         int access, @NotNull String name, @NotNull String desc, @Nullable String signature, @Nullable String[] exceptions)
+      {
+         if ((access & ACC_SYNTHETIC) != 0) {
+            return null;
+         }
+
+         Type[] parameterTypes = Type.getArgumentTypes(desc);
+
+         if (parameterTypes.length == 0) {
+            return null;
+         }
+
+         int[] parameterSlots = new int[parameterTypes.length];
+         int slot = (access & ACC_STATIC) == 0 ? 1 : 0;
 
-      if (index < parameterNames.length) {
-         parameterNames[index] = name;
+         for (int i = 0; i < parameterTypes.length; i++) {
+            parameterSlots[i] = slot;
+            slot += parameterTypes[i].getSize();
+         }
+
+         String[] parameterNames = new String[parameterTypes.length];
+         methodsToParameters.put(name + desc, parameterNames);
+         return new ParameterNameCollector(parameterSlots, parameterNames);
       }
    }
 
-   @Nullable public static String getName(@NotNull String classDesc, @NotNull String methodDesc, int index)
+   private static final class ParameterNameCollector extends MethodVisitor
    {
-      Map<String, String[]> methodsToParameters = classesToMethodsToParameters.get(classDesc);
+      @NotNull private final int[] parameterSlots;
+      @NotNull private final String[] parameterNames;
 
-      if (methodsToParameters == null) {
-         return null;
+      ParameterNameCollector(@NotNull int[] parameterSlots, @NotNull String[] parameterNames)
+      {
+         this.parameterSlots = parameterSlots;
+         this.parameterNames = parameterNames;
       }
 
-      String[] parameterNames = methodsToParameters.get(methodDesc);
-      return parameterNames == null ? null : parameterNames[index];
+      @Override
+      public void visitLocalVariable(
+         @NotNull String name, @NotNull String desc, @Nullable String signature,
+         @NotNull Label start, @NotNull Label end, int index)
+      {
+         for (int i = 0; i < parameterSlots.length; i++) {
+            if (parameterSlots[i] == index && parameterNames[i] == null) {
+               parameterNames[i] = name;
+               break;
+            }
+         }
+      }
    }
 }
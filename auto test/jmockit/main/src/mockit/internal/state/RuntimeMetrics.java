@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.state;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+import org.jetbrains.annotations.*;
+
+/**
+ * Optional counters and timers for the main activities performed by JMockit during a test run, such as class
+ * redefinition and bytecode generation.
+ * <p/>
+ * Metrics are only collected when the "jmockit-metrics" system property is set to "true".
+ * When so, they are exposed through the "JMockit:type=RuntimeMetrics" MXBean, and a summary for each test class gets
+ * printed to standard output at JVM exit.
+ */
+public final class RuntimeMetrics implements RuntimeMetricsMXBean
+{
+   public static final boolean ENABLED = Boolean.getBoolean("jmockit-metrics");
+
+   public enum Metric
+   {
+      ClassRedefinitions("classes redefined", true),
+      ClassRetransformations("classes retransformed", true),
+      GeneratedClassfiles("classfiles generated", false),
+      GeneratedClassDefinitions("generated classes defined", false),
+      GeneratedClassReuses("generated classes reused", false),
+      GeneratedClassLoaders("class loaders created for generated classes", false),
+      ClassRestorations("classes restored", false),
+      RecordedExpectations("expectations recorded", false),
+      ReplayedInvocations("invocations replayed", false),
+      RecordOrReplayLockWaits("waits for the record/replay lock", true);
+
+      @NotNull final String description;
+      final boolean timed;
+
+      Metric(@NotNull String description, boolean timed)
+      {
+         this.description = description;
+         this.timed = timed;
+      }
+   }
+
+   private static final int NUM_METRICS = Metric.values().length;
+   @NotNull private static final String NO_TEST_CLASS = "(outside test classes)";
+
+   @NotNull private static final AtomicLongArray totals = new AtomicLongArray(2 * NUM_METRICS);
+   @NotNull private static final ConcurrentMap<String, AtomicLongArray> testClassesToTotals =
+      new ConcurrentHashMap<String, AtomicLongArray>();
+
+   private RuntimeMetrics() {}
+
+   public static void initialize()
+   {
+      if (ENABLED && registerMXBean()) {
+         Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() { printSummary(); }
+         });
+      }
+   }
+
+   private static boolean registerMXBean()
+   {
+      MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+      try {
+         ObjectName name = new ObjectName("JMockit:type=RuntimeMetrics");
+
+         if (mbeanServer.isRegistered(name)) {
+            return false;
+         }
+
+         mbeanServer.registerMBean(new RuntimeMetrics(), name);
+         return true;
+      }
+      catch (JMException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   /**
+    * Returns the current time in nanoseconds to be later passed to {@link #stopTimer}, or zero if metrics are not
+    * enabled or the clock is not currently usable.
+    */
+   public static long startTimer() { return ENABLED && isClockUsable() ? System.nanoTime() : 0L; }
+
+   /**
+    * Records the given number of occurrences for a timed metric.
+    * A zero start time records the occurrences without timing them; callers pass zero when the {@code System} class
+    * itself was affected by the timed activity.
+    */
+   public static void stopTimer(@NotNull Metric metric, long startTime, int count)
+   {
+      if (ENABLED) {
+         long elapsedTime = startTime == 0L || !isClockUsable() ? 0L : System.nanoTime() - startTime;
+         record(metric, count, elapsedTime);
+      }
+   }
+
+   /**
+    * {@code System.nanoTime()} can't be used while the {@code System} class is redefined, since it may be mocked or
+    * have its native implementation unregistered.
+    */
+   private static boolean isClockUsable() { return !TestRun.mockFixture().containsRedefinedClass(System.class); }
+
+   public static void count(@NotNull Metric metric, int count)
+   {
+      if (ENABLED) {
+         record(metric, count, 0L);
+      }
+   }
+
+   public static void count(@NotNull Metric metric, int count, long amount)
+   {
+      if (ENABLED) {
+         record(metric, count, amount);
+      }
+   }
+
+   private static void record(@NotNull Metric metric, int count, long amount)
+   {
+      int i = 2 * metric.ordinal();
+      add(totals, i, count, amount);
+      add(getTotalsForCurrentTestClass(), i, count, amount);
+   }
+
+   private static void add(@NotNull AtomicLongArray values, int i, int count, long amount)
+   {
+      values.addAndGet(i, count);
+
+      if (amount != 0L) {
+         values.addAndGet(i + 1, amount);
+      }
+   }
+
+   @NotNull private static AtomicLongArray getTotalsForCurrentTestClass()
+   {
+      Class<?> testClass = TestRun.getCurrentTestClass();
+      String testClassName = testClass == null ? NO_TEST_CLASS : testClass.getName();
+      AtomicLongArray values = testClassesToTotals.get(testClassName);
+
+      if (values == null) {
+         values = new AtomicLongArray(2 * NUM_METRICS);
+         AtomicLongArray previousValues = testClassesToTotals.putIfAbsent(testClassName, values);
+
+         if (previousValues != null) {
+            values = previousValues;
+         }
+      }
+
+      return values;
+   }
+
+   @Override @NotNull
+   public Map<String, Long> getCounts()
+   {
+      Map<String, Long> counts = new LinkedHashMap<String, Long>();
+
+      for (Metric metric : Metric.values()) {
+         counts.put(metric.name(), totals.get(2 * metric.ordinal()));
+      }
+
+      return counts;
+   }
+
+   @Override @NotNull
+   public Map<String, Long> getElapsedTimesInMillis()
+   {
+      Map<String, Long> times = new LinkedHashMap<String, Long>();
+
+      for (Metric metric : Metric.values()) {
+         if (metric.timed) {
+            times.put(metric.name(), TimeUnit.NANOSECONDS.toMillis(totals.get(2 * metric.ordinal() + 1)));
+         }
+      }
+
+      return times;
+   }
+
+   @Override
+   public long getGeneratedBytes() { return totals.get(2 * Metric.GeneratedClassfiles.ordinal() + 1); }
+
+   @Override @NotNull
+   public List<String> getTestClassSummaries()
+   {
+      List<String> summaries = new ArrayList<String>(testClassesToTotals.size());
+
+      for (String testClassName : new TreeSet<String>(testClassesToTotals.keySet())) {
+         summaries.add(testClassName + ": " + describe(testClassesToTotals.get(testClassName)));
+      }
+
+      return summaries;
+   }
+
+   @Override
+   public void reset()
+   {
+      for (int i = 0; i < totals.length(); i++) {
+         totals.set(i, 0L);
+      }
+
+      testClassesToTotals.clear();
+   }
+
+   @NotNull private static String describe(@NotNull AtomicLongArray values)
+   {
+      StringBuilder description = new StringBuilder(200);
+
+      for (Metric metric : Metric.values()) {
+         int i = 2 * metric.ordinal();
+         long count = values.get(i);
+
+         if (count > 0L) {
+            if (description.length() > 0) {
+               description.append(", ");
+            }
+
+            description.append(count).append(' ').append(metric.description);
+            long amount = values.get(i + 1);
+
+            if (metric.timed) {
+               description.append(" (").append(TimeUnit.NANOSECONDS.toMillis(amount)).append(" ms)");
+            }
+            else if (amount > 0L) {
+               description.append(" (").append(amount).append(" bytes)");
+            }
+         }
+      }
+
+      return description.toString();
+   }
+
+   private static void printSummary()
+   {
+      System.out.println("JMockit: runtime metrics per test class");
+
+      for (String summary : new RuntimeMetrics().getTestClassSummaries()) {
+         System.out.println("  " + summary);
+      }
+
+      System.out.println("  Total: " + describe(totals));
+   }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.internal.state;
+
+import java.util.*;
+
+import org.jetbrains.annotations.*;
+
+/**
+ * Management interface for the {@link RuntimeMetrics} collected during a test run.
+ */
+public interface RuntimeMetricsMXBean
+{
+   /**
+    * The number of occurrences so far for each metric, keyed by metric name.
+    */
+   @NotNull Map<String, Long> getCounts();
+
+   /**
+    * The total time spent so far in each timed metric, in milliseconds.
+    */
+   @NotNull Map<String, Long> getElapsedTimesInMillis();
+
+   /**
+    * The total size of all classfiles generated so far.
+    */
+   long getGeneratedBytes();
+
+   /**
+    * A one-line summary of the metrics collected for each test class, in alphabetical order.
+    */
+   @NotNull List<String> getTestClassSummaries();
+
+   /**
+    * Discards all metrics collected so far.
+    */
+   void reset();
+}
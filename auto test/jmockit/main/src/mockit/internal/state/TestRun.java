@@ -132,10 +132,10 @@ public final class TestRun
       return getMockClasses().startupMocks.getMock(index);
    }
 
-   public static boolean updateMockState(@NotNull String mockClassDesc, int mockStateIndex)
+   public static boolean updateMockState(int mockStateIndex)
    {
       MockStates mockStates = getMockStates();
-      return mockStates.updateMockState(mockClassDesc, mockStateIndex);
+      return mockStates.updateMockState(mockStateIndex);
    }
 
    @NotNull public static MockStates getMockStates()
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2006-2013 Rogério Liesenfeld
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
  * This file is subject to the terms of the MIT license (see LICENSE.txt).
  */
 package mockit.internal.util;
@@ -14,6 +14,7 @@ public final class MethodFormatter
 {
    @NotNull private final StringBuilder out;
    @NotNull private final List<String> parameterTypes;
+   @Nullable private final ClassLoader classLoader;
    @Nullable private final String classDesc;
    @NotNull private String methodDesc;
 
@@ -23,17 +24,22 @@ public final class MethodFormatter
    private char typeCode;
    private int arrayDimensions;
 
-   public MethodFormatter(@Nullable String classDesc)
+   /**
+    * @param classLoader the loader of the class with the given internal name, from which parameter names are obtained
+    */
+   public MethodFormatter(@Nullable ClassLoader classLoader, @Nullable String classDesc)
    {
       out = new StringBuilder();
       parameterTypes = new ArrayList<String>(5);
+      this.classLoader = classLoader;
       this.classDesc = classDesc;
       methodDesc = "";
    }
 
-   public MethodFormatter(@NotNull String classDesc, @NotNull String methodNameAndDesc)
+   public MethodFormatter(
+      @Nullable ClassLoader classLoader, @NotNull String classDesc, @NotNull String methodNameAndDesc)
    {
-      this(classDesc);
+      this(classLoader, classDesc);
       methodDesc = methodNameAndDesc;
       appendFriendlyMethodSignature();
    }
@@ -132,7 +138,7 @@ public final class MethodFormatter
    private void appendParameterName()
    {
       if (classDesc != null) {
-         String name = ParameterNames.getName(classDesc, methodDesc, parameterIndex);
+         String name = ParameterNames.getName(classLoader, classDesc, methodDesc, parameterIndex);
 
          if (name != null) {
             out.append(' ').append(name);
@@ -202,6 +202,16 @@ public final class CascadingParametersTest
       assertNotNull(u);
    }
 
+   @Test
+   public void cascadeGenericMethodsWithOtherTypeArguments(@Cascading GenericFoo<Runnable, SubBar> foo)
+   {
+      Runnable t = foo.returnTypeWithUnboundedTypeVariable();
+      assertNotNull(t);
+
+      SubBar u = foo.returnTypeWithBoundedTypeVariable();
+      assertNotNull(u);
+   }
+
    @Test
    public void cascadeOneLevelAndVerifyInvocationOnLastMockOnly(@Cascading Foo foo, @Injectable final Bar bar)
    {
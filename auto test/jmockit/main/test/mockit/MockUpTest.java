@@ -74,6 +74,56 @@ public final class MockUpTest
       assertEquals(123, new Collaborator(true).doSomething("test"));
    }
 
+   @Test
+   public void mockUpClassWithInvocationCountConstraintForCallsFromMultipleThreads() throws Exception
+   {
+      new MockUp<Collaborator>() {
+         @Mock(invocations = 400)
+         int doSomething(String s) { return 123; }
+      };
+
+      Thread[] threads = new Thread[4];
+
+      for (int i = 0; i < threads.length; i++) {
+         threads[i] = new Thread() {
+            @Override
+            public void run()
+            {
+               Collaborator collaborator = new Collaborator(true);
+
+               for (int j = 0; j < 100; j++) {
+                  collaborator.doSomething("test");
+               }
+            }
+         };
+         threads[i].start();
+      }
+
+      for (Thread thread : threads) {
+         thread.join();
+      }
+   }
+
+   @Test
+   public void setUpAndTearDownMockUpWithInvocationParameterRepeatedly()
+   {
+      for (int i = 1; i <= 3; i++) {
+         final int value = i;
+
+         MockUp<Collaborator> mockUp = new MockUp<Collaborator>() {
+            @Mock(minInvocations = 1)
+            int doSomething(Invocation inv, String s) { return value * inv.getInvocationCount(); }
+         };
+
+         Collaborator collaborator = new Collaborator(true);
+         assertEquals(value, collaborator.doSomething("test"));
+         assertEquals(2 * value, collaborator.doSomething("test"));
+
+         mockUp.tearDown();
+         assertEquals(4, collaborator.doSomething("test"));
+      }
+   }
+
    static final class Main
    {
       static final AtomicIntegerFieldUpdater<Main> atomicCount =
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.integration.internal;
+
+import java.util.*;
+
+import org.testng.annotations.*;
+import static org.testng.Assert.*;
+
+import mockit.*;
+import mockit.internal.state.*;
+
+public final class SkipUnaffectedTestsNGTest
+{
+   static final String THIS_TEST_CLASS = SkipUnaffectedTestsNGTest.class.getName();
+
+   static final class Collaborator
+   {
+      static int getValue() { return 1; }
+   }
+
+   @BeforeClass
+   public void useIndexWhereFirstTestIsUnaffectedByChanges()
+   {
+      String coveredClass = "mockit/integration/internal/TestSelection";
+      ClassLoader loader = SkipUnaffectedTestsNGTest.class.getClassLoader();
+      Map<String, Long> classHashes = new HashMap<String, Long>();
+      classHashes.put(coveredClass, TestImpactIndex.getClassfileHash(loader, coveredClass));
+
+      TestImpactIndex index = new TestImpactIndex();
+      index.addTest(THIS_TEST_CLASS + "#firstTestUnaffectedByChanges", classHashes);
+
+      TestSelection.useIndexOfPreviousRun(index);
+   }
+
+   @AfterClass
+   public void stopUsingIndex() { TestSelection.useIndexOfPreviousRun(null); }
+
+   @Mocked Collaborator mock;
+
+   @BeforeMethod
+   public void recordExpectationForEachTest()
+   {
+      new NonStrictExpectations() {{ Collaborator.getValue(); result = 2; }};
+   }
+
+   @AfterMethod
+   public void verifyThatTestExecutionWasFinished()
+   {
+      assertNull(TestRun.getRecordAndReplayForRunningTest());
+      assertEquals(TestSelection.getCurrentTest(), THIS_TEST_CLASS);
+   }
+
+   @Test(priority = 1)
+   public void firstTestUnaffectedByChanges()
+   {
+      fail("Should have been skipped");
+   }
+
+   @Test(priority = 2)
+   public void secondTestNotInIndex()
+   {
+      assertEquals(TestSelection.getCurrentTest(), THIS_TEST_CLASS + "#secondTestNotInIndex");
+      assertEquals(Collaborator.getValue(), 2);
+   }
+}
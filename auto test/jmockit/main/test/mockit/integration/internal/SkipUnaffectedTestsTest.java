@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.integration.internal;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.runners.*;
+
+import mockit.*;
+import mockit.internal.state.*;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public final class SkipUnaffectedTestsTest
+{
+   static final String THIS_TEST_CLASS = SkipUnaffectedTestsTest.class.getName();
+   static int fixtureExecutions;
+
+   static final class Collaborator
+   {
+      static int getValue() { return 1; }
+   }
+
+   @BeforeClass
+   public static void useIndexWhereFirstTestIsUnaffectedByChanges()
+   {
+      String coveredClass = "mockit/integration/internal/TestSelection";
+      ClassLoader loader = SkipUnaffectedTestsTest.class.getClassLoader();
+      Map<String, Long> classHashes = new HashMap<String, Long>();
+      classHashes.put(coveredClass, TestImpactIndex.getClassfileHash(loader, coveredClass));
+
+      TestImpactIndex index = new TestImpactIndex();
+      index.addTest(THIS_TEST_CLASS + "#firstTestUnaffectedByChanges", classHashes);
+
+      TestSelection.useIndexOfPreviousRun(index);
+   }
+
+   @AfterClass
+   public static void stopUsingIndex()
+   {
+      TestSelection.useIndexOfPreviousRun(null);
+      assertEquals("fixtures executed for skipped test", 1, fixtureExecutions);
+   }
+
+   @Mocked Collaborator mock;
+
+   @Before
+   public void recordExpectationForEachTest()
+   {
+      fixtureExecutions++;
+      new NonStrictExpectations() {{ Collaborator.getValue(); result = 2; }};
+   }
+
+   @After
+   public void verifyThatTestExecutionWasFinished()
+   {
+      assertNull(TestRun.getRecordAndReplayForRunningTest());
+      assertEquals(THIS_TEST_CLASS, TestSelection.getCurrentTest());
+   }
+
+   @Test
+   public void firstTestUnaffectedByChanges()
+   {
+      fail("Should have been skipped");
+   }
+
+   @Test
+   public void secondTestNotInIndex()
+   {
+      assertEquals(THIS_TEST_CLASS + "#secondTestNotInIndex", TestSelection.getCurrentTest());
+      assertEquals(2, Collaborator.getValue());
+   }
+}
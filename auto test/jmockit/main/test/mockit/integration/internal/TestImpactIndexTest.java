@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2006-2014 Rogério Liesenfeld
+ * This file is subject to the terms of the MIT license (see LICENSE.txt).
+ */
+package mockit.integration.internal;
+
+import java.io.*;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import org.junit.*;
+import org.junit.runner.*;
+
+public final class TestImpactIndexTest
+{
+   static class BaseTest {}
+
+   static final class SomeTest extends BaseTest
+   {
+      static final class Nested {}
+      final Runnable anonymous = new Runnable() { @Override public void run() {} };
+   }
+
+   static final String SOME_TEST = SomeTest.class.getName();
+   static final String COVERED_CLASS = "mockit/integration/internal/TestSelection";
+   static final String OTHER_COVERED_CLASS = "mockit/integration/internal/TestRunnerDecorator";
+
+   final ClassLoader loader = TestImpactIndexTest.class.getClassLoader();
+   final TestImpactIndex index = new TestImpactIndex();
+
+   @Test
+   public void treatTestAsUnaffectedWhenCoveredClassesAreUnchanged()
+   {
+      index.addTest(SOME_TEST + "#test", currentHashes(COVERED_CLASS, OTHER_COVERED_CLASS));
+      index.addTest(SOME_TEST, currentHashes(COVERED_CLASS));
+
+      assertTrue(index.isUnaffectedByChanges(SomeTest.class, "test"));
+   }
+
+   Map<String, Long> currentHashes(String... internalClassNames)
+   {
+      Map<String, Long> classHashes = new HashMap<String, Long>();
+
+      for (String internalClassName : internalClassNames) {
+         classHashes.put(internalClassName, TestImpactIndex.getClassfileHash(loader, internalClassName));
+      }
+
+      return classHashes;
+   }
+
+   @Test
+   public void treatTestAsAffectedWhenAnyCoveredClassChanged()
+   {
+      Map<String, Long> classHashes = currentHashes(COVERED_CLASS, OTHER_COVERED_CLASS);
+      classHashes.put(OTHER_COVERED_CLASS, classHashes.get(OTHER_COVERED_CLASS) + 1);
+      index.addTest(SOME_TEST + "#test", classHashes);
+
+      assertFalse(index.isUnaffectedByChanges(SomeTest.class, "test"));
+   }
+
+   @Test
+   public void treatTestAsAffectedWhenClassCoveredOutsideTestMethodsChanged()
+   {
+      index.addTest(SOME_TEST + "#test", currentHashes(COVERED_CLASS));
+      Map<String, Long> classHashes = new HashMap<String, Long>();
+      classHashes.put(OTHER_COVERED_CLASS, 0L);
+      index.addTest(SOME_TEST, classHashes);
+
+      assertFalse(index.isUnaffectedByChanges(SomeTest.class, "test"));
+   }
+
+   @Test
+   public void treatTestAsAffectedWhenCoveredClassNoLongerExists()
+   {
+      Map<String, Long> classHashes = currentHashes(COVERED_CLASS);
+      classHashes.put("mockit/integration/internal/RemovedClass", 123L);
+      index.addTest(SOME_TEST + "#test", classHashes);
+
+      assertFalse(index.isUnaffectedByChanges(SomeTest.class, "test"));
+   }
+
+   @Test
+   public void treatTestNotInIndexAsAffected()
+   {
+      index.addTest(SOME_TEST + "#test", currentHashes(COVERED_CLASS));
+
+      assertFalse(index.isUnaffectedByChanges(SomeTest.class, "anotherTest"));
+   }
+
+   @Test
+   public void addHashesForTestClassWithNestedAndAnonymousClassesAndSuperclasses()
+   {
+      Map<String, Long> classHashes = new HashMap<String, Long>();
+
+      TestImpactIndex.addTestClassHashes(SomeTest.class, classHashes);
+
+      String testClassName = SOME_TEST.replace('.', '/');
+      String baseClassName = BaseTest.class.getName().replace('.', '/');
+      List<String> expectedClasses =
+         Arrays.asList(testClassName, testClassName + "$1", testClassName + "$Nested", baseClassName);
+      assertEquals(new HashSet<String>(expectedClasses), classHashes.keySet());
+      assertEquals(TestImpactIndex.getClassfileHash(loader, testClassName), classHashes.get(testClassName));
+   }
+
+   @Test
+   public void writeIndexToFileAndReadItBack() throws Exception
+   {
+      index.addTest(SOME_TEST + "#test1", currentHashes(COVERED_CLASS, OTHER_COVERED_CLASS));
+      index.addTest(SOME_TEST + "#test2", currentHashes(COVERED_CLASS));
+      File indexFile = File.createTempFile("coverage-impact", ".idx");
+      indexFile.deleteOnExit();
+
+      index.writeToFile(indexFile);
+      TestImpactIndex indexRead = TestImpactIndex.readFromFile(indexFile);
+
+      assertEquals(2, indexRead.getTestCount());
+      assertTrue(indexRead.isUnaffectedByChanges(SomeTest.class, "test1"));
+      assertTrue(indexRead.isUnaffectedByChanges(SomeTest.class, "test2"));
+   }
+
+   @Test
+   public void keepTestsFromPreviousIndexWhichDidNotRun()
+   {
+      TestImpactIndex previousIndex = new TestImpactIndex();
+      previousIndex.addTest(SOME_TEST + "#skipped", currentHashes(COVERED_CLASS));
+      previousIndex.addTest(SOME_TEST + "#ranWithUnknownHashes", currentHashes(COVERED_CLASS));
+      previousIndex.addTest(SOME_TEST + "#ran", currentHashes(COVERED_CLASS));
+      index.addTest(SOME_TEST + "#ran", currentHashes(OTHER_COVERED_CLASS));
+      Set<String> testsRun = new HashSet<String>();
+      testsRun.add(SOME_TEST + "#ran");
+      testsRun.add(SOME_TEST + "#ranWithUnknownHashes");
+
+      index.addTestsNotRunFrom(previousIndex, testsRun);
+
+      assertEquals(2, index.getTestCount());
+      assertTrue(index.isUnaffectedByChanges(SomeTest.class, "skipped"));
+      assertFalse(index.isUnaffectedByChanges(SomeTest.class, "ranWithUnknownHashes"));
+      assertTrue(index.isUnaffectedByChanges(SomeTest.class, "ran"));
+   }
+
+   public static final class TestClassWithFailingTest
+   {
+      @Test public void failingTest() { fail("Expected to fail"); }
+      @Test public void passingTest() {}
+   }
+
+   @Test
+   public void recordTestWhichFailedSoThatItIsNotSkippedNextTime()
+   {
+      Result result = JUnitCore.runClasses(TestClassWithFailingTest.class);
+
+      assertEquals(1, result.getFailureCount());
+      String testClassName = TestClassWithFailingTest.class.getName();
+      assertTrue(TestSelection.hasFailed(testClassName + "#failingTest"));
+      assertFalse(TestSelection.hasFailed(testClassName + "#passingTest"));
+   }
+}